@@ -2,6 +2,7 @@ package eu.kalodiodev.customersnote;
 
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.espresso.action.ViewActions;
 import android.support.test.rule.ActivityTestRule;
@@ -13,6 +14,7 @@ import org.junit.runner.RunWith;
 
 import eu.kalodiodev.customersnote.addeditcustomer.AddEditCustomerActivity;
 import eu.kalodiodev.customersnote.data.Customer;
+import eu.kalodiodev.customersnote.data.source.CustomersContract;
 
 import static android.support.test.InstrumentationRegistry.getInstrumentation;
 import static android.support.test.espresso.Espresso.onView;
@@ -229,7 +231,10 @@ public class AddEditActivityTest {
     private void startEditCustomer() {
         Context targetContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
         Intent intent = new Intent(targetContext, AddEditCustomerActivity.class);
-        intent.putExtra(Customer.class.getSimpleName(), customer);
+        // Customer edited is read by id
+        Uri uri = targetContext.getContentResolver()
+                .insert(CustomersContract.CONTENT_URI, customer.toContentValues());
+        intent.putExtra(AddEditCustomerActivity.EXTRA_CUSTOMER_ID, CustomersContract.getCustomerId(uri));
         mActivityRule.launchActivity(intent);
     }
 }
@@ -0,0 +1,307 @@
+package eu.kalodiodev.customersnote.customers;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import eu.kalodiodev.customersnote.R;
+import eu.kalodiodev.customersnote.data.Customer;
+import eu.kalodiodev.customersnote.data.source.CustomerPages;
+import eu.kalodiodev.customersnote.data.source.CustomersContract;
+import eu.kalodiodev.customersnote.data.source.CustomersPage;
+import eu.kalodiodev.customersnote.data.source.CustomersProvider;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Cursor RecyclerView Adapter Allocation Test
+ *
+ * <p>Binds the rows of a fling through a pool of recycled holders and counts the objects
+ * allocated by binding, once holders are warm. Holders are not attached, layout passes
+ * of the list are left out of the count</p>
+ *
+ * <p>Rows are bound from a cursor, or from {@link CustomerPages} once every page is read
+ * and resident. Reading a page is left out of the count: its query and cursor allocate,
+ * once per page rather than per bind, on a background thread</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CursorRecyclerViewAdapterAllocationTest {
+
+    private static final String TAG = "AdapterAllocationTest";
+
+    private static final int CUSTOMERS = 1000;
+    // Holders a list keeps while flinging, rows visible and those cached
+    private static final int HOLDERS = 12;
+    // Last page is not full, no page is read past it
+    private static final int PAGE_SIZE = 64;
+    // Every page read stays resident
+    private static final int MAX_RESIDENT_PAGES = CUSTOMERS / PAGE_SIZE;
+    private static final long PAGES_TIMEOUT_MILLIS = 10000;
+
+    private static final String[] PROJECTION = {
+            CustomersContract.Columns._ID,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY
+    };
+
+    private CursorRecyclerViewAdapter adapter;
+    private CursorRecyclerViewAdapter.CustomerViewHolder[] holders;
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(),
+                        R.style.AppTheme);
+                FrameLayout parent = new FrameLayout(context);
+
+                adapter = new CursorRecyclerViewAdapter(null,
+                        new CursorRecyclerViewAdapter.OnCustomerClickListener() {
+                            @Override
+                            public void onEditClick(Customer customer) {
+                                // Not clicked
+                            }
+                        });
+                adapter.swapCursor(customers());
+
+                holders = new CursorRecyclerViewAdapter.CustomerViewHolder[HOLDERS];
+                for(int i = 0; i < HOLDERS; i++) {
+                    holders[i] = adapter.onCreateViewHolder(parent, 0);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testNoAllocationsPerBindOnceWarm() {
+        final int[] allocations = new int[1];
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                // Warm up: first bind of each holder, metrics of first bind recorded
+                fling();
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                fling();
+                Debug.stopAllocCounting();
+                allocations[0] = Debug.getThreadAllocCount();
+            }
+        });
+
+        Log.d(TAG, "testNoAllocationsPerBindOnceWarm: " + allocations[0] + " objects allocated by " +
+                CUSTOMERS + " binds");
+        assertEquals(0, allocations[0]);
+    }
+
+    @Test
+    public void testNoAllocationsPerBindFromPagesOnceRead() throws InterruptedException {
+        MockContentResolver contentResolver = new MockContentResolver();
+        ContentProvider provider = new PagesProvider();
+        provider.attachInfo(InstrumentationRegistry.getTargetContext(), null);
+        contentResolver.addProvider(CustomersProvider.CONTENT_AUTHORITY, provider);
+
+        Cursor firstPage = contentResolver.query(CustomersContract.buildPageUri(null, PAGE_SIZE),
+                PROJECTION, null, null, null);
+        final CustomerPages pages = new CustomerPages(contentResolver, firstPage, PROJECTION,
+                PAGE_SIZE, MAX_RESIDENT_PAGES);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.swapPages(pages);
+            }
+        });
+
+        // Warm up: pages are read as rows near their end are bound
+        long deadline = SystemClock.uptimeMillis() + PAGES_TIMEOUT_MILLIS;
+        final int[] count = new int[1];
+        do {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    fling();
+                    count[0] = adapter.getItemCount();
+                }
+            });
+            Thread.sleep(10);
+        } while((count[0] < CUSTOMERS) && (SystemClock.uptimeMillis() < deadline));
+        assertEquals(CUSTOMERS, count[0]);
+
+        final int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                // Rows of pages read last are bound once before counting
+                fling();
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                fling();
+                Debug.stopAllocCounting();
+                allocations[0] = Debug.getThreadAllocCount();
+            }
+        });
+
+        Log.d(TAG, "testNoAllocationsPerBindFromPagesOnceRead: " + allocations[0] +
+                " objects allocated by " + CUSTOMERS + " binds");
+        assertEquals(0, allocations[0]);
+        assertEquals(firstName(CUSTOMERS - 1),
+                holders[(CUSTOMERS - 1) % HOLDERS].firstName.getText().toString());
+    }
+
+    @Test
+    public void testRowsBoundFromCursor() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                fling();
+            }
+        });
+
+        // Last rows bound by each holder
+        for(int i = 0; i < HOLDERS; i++) {
+            int position = CUSTOMERS - HOLDERS + i;
+            CursorRecyclerViewAdapter.CustomerViewHolder holder = holders[position % HOLDERS];
+            assertEquals(firstName(position), holder.firstName.getText().toString());
+            assertEquals(lastName(position), holder.lastName.getText().toString());
+            // Null shown as no text
+            assertEquals(profession(position) == null ? "" : profession(position),
+                    holder.profession.getText().toString());
+        }
+    }
+
+    @Test
+    public void testCustomerResolvedWhenClicked() {
+        final Customer[] customer = new Customer[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                fling();
+                customer[0] = adapter.getCustomer(42);
+            }
+        });
+
+        // Then customer is read from its row, not kept by the holder
+        assertEquals(42, customer[0].getId());
+        assertEquals(firstName(42), customer[0].getFirstName());
+        assertEquals(lastName(42), customer[0].getLastName());
+        assertEquals(profession(42), customer[0].getProfession());
+    }
+
+    private void fling() {
+        for(int position = 0; position < adapter.getItemCount(); position++) {
+            adapter.onBindViewHolder(holders[position % HOLDERS], position);
+        }
+    }
+
+    private static MatrixCursor customers() {
+        return customers(0, CUSTOMERS);
+    }
+
+    private static MatrixCursor customers(int from, int to) {
+        MatrixCursor cursor = new MatrixCursor(PROJECTION, to - from);
+        for(int i = from; i < to; i++) {
+            cursor.addRow(new Object[] {(long) i, firstName(i), lastName(i), profession(i),
+                    "Company " + i, "2100" + i, firstNameKey(i)});
+        }
+        return cursor;
+    }
+
+    private static String firstNameKey(int position) {
+        return firstName(position).toLowerCase();
+    }
+
+    private static String firstName(int position) {
+        return "First " + position;
+    }
+
+    private static String lastName(int position) {
+        return "Last " + position;
+    }
+
+    private static String profession(int position) {
+        return position % 3 == 0 ? null : "Profession " + position;
+    }
+
+    /**
+     * Customers in position order, pages of them found by their tokens
+     */
+    private static class PagesProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(@NonNull Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            String after = uri.getQueryParameter(CustomersContract.PARAM_AFTER);
+            String until = uri.getQueryParameter(CustomersContract.PARAM_UNTIL);
+            String limit = uri.getQueryParameter(CustomersContract.PARAM_LIMIT);
+
+            int from = after != null ? positionOf(after) + 1 : 0;
+            int to = until != null ? positionOf(until) + 1 : CUSTOMERS;
+            if(limit != null) {
+                to = Math.min(to, from + Integer.parseInt(limit));
+            }
+            return customers(from, to);
+        }
+
+        private static int positionOf(String token) {
+            for(int i = 0; i < CUSTOMERS; i++) {
+                if(CustomersPage.token(firstNameKey(i), i).equals(token)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Unknown page token: " + token);
+        }
+
+        @Override
+        public String getType(@NonNull Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(@NonNull Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(@NonNull Uri uri, ContentValues values, String selection,
+                          String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
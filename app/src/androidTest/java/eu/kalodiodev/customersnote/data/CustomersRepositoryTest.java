@@ -0,0 +1,211 @@
+package eu.kalodiodev.customersnote.data;
+
+import android.net.Uri;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import eu.kalodiodev.customersnote.data.source.CustomersContract;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customers Repository Test
+ *
+ * <p>Writes customers from the main thread under a strict mode policy that kills the
+ * process on any disk access, the writes must all happen on the writer thread</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomersRepositoryTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private CustomersRepository repository;
+
+    private final Customer customer = new Customer("First Name", "Last Name",
+            "Profession", "Company Name", "123456", "Dummy Notes");
+
+    @Before
+    public void setUp() {
+        repository = CustomersRepository.getInstance(
+                InstrumentationRegistry.getTargetContext().getContentResolver());
+    }
+
+    @Test
+    public void testWritesLeaveMainThreadAlone() throws InterruptedException {
+        final CountDownLatch saved = new CountDownLatch(1);
+        final AtomicReference<Uri> customerUri = new AtomicReference<>();
+        final AtomicReference<Boolean> onMainThread = new AtomicReference<>();
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                repository.save(customer, new ICustomersRepository.SaveCustomerCallBack() {
+                    @Override
+                    public void onCustomerSaved(Uri uri) {
+                        customerUri.set(uri);
+                        onMainThread.set(Looper.myLooper() == Looper.getMainLooper());
+                        saved.countDown();
+                    }
+
+                    @Override
+                    public void onSaveFailed(RuntimeException error) {
+                        saved.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue(saved.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Then customer is saved, its uri delivered on main thread
+        assertNotNull(customerUri.get());
+        assertTrue(onMainThread.get());
+
+        customer.setId(CustomersContract.getCustomerId(customerUri.get()));
+        assertEquals(1, write(true));
+        assertEquals(1, write(false));
+
+        // and customer deleted already is not written again
+        assertEquals(0, write(false));
+    }
+
+    @Test
+    public void testWriteErrorIsDelivered() throws InterruptedException {
+        final CountDownLatch failed = new CountDownLatch(1);
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                // Customer without first name breaks its NOT NULL constraint
+                repository.save(new Customer(null, null, null),
+                        new ICustomersRepository.SaveCustomerCallBack() {
+                            @Override
+                            public void onCustomerSaved(Uri uri) {
+                            }
+
+                            @Override
+                            public void onSaveFailed(RuntimeException error) {
+                                failed.countDown();
+                            }
+                        });
+            }
+        });
+
+        assertTrue(failed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEditConflictIsReportedToResultListeners() throws InterruptedException {
+        final CountDownLatch conflict = new CountDownLatch(1);
+        final AtomicLong conflictId = new AtomicLong(-1);
+        final ICustomersRepository.OnWriteResultListener listener =
+                new ICustomersRepository.OnWriteResultListener() {
+                    @Override
+                    public void onEditConflict(long customerId) {
+                        conflictId.set(customerId);
+                        conflict.countDown();
+                    }
+
+                    @Override
+                    public void onWriteFailed(RuntimeException error) {
+                    }
+                };
+
+        Uri uri = InstrumentationRegistry.getTargetContext().getContentResolver()
+                .insert(CustomersContract.CONTENT_URI, customer.toContentValues());
+        assertNotNull(uri);
+        customer.setId(CustomersContract.getCustomerId(uri));
+        // Edited from a version since changed elsewhere
+        customer.setVersion(customer.getVersion() + 1);
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                repository.addOnWriteResultListener(listener);
+                // Editor closes at once, without a callback
+                repository.update(customer, null);
+            }
+        });
+
+        try {
+            // Then conflict is reported to the listener outliving the editor
+            assertTrue(conflict.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(customer.getId(), conflictId.get());
+        } finally {
+            onMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    repository.removeOnWriteResultListener(listener);
+                }
+            });
+        }
+    }
+
+    // Update, or delete, customer from main thread, returns rows affected
+    private int write(final boolean update) throws InterruptedException {
+        final CountDownLatch written = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger(-1);
+        final ICustomersRepository.WriteCustomerCallBack callback =
+                new ICustomersRepository.WriteCustomerCallBack() {
+                    @Override
+                    public void onCustomerWritten(int rows) {
+                        count.set(rows);
+                        written.countDown();
+                    }
+
+                    @Override
+                    public void onWriteFailed(RuntimeException error) {
+                        written.countDown();
+                    }
+                };
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                if(update) {
+                    repository.update(customer, callback);
+                } else {
+                    repository.delete(customer, callback);
+                }
+            }
+        });
+
+        assertTrue(written.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return count.get();
+    }
+
+    // Run on main thread, any disk access kills the process
+    private static void onMainThread(final Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.ThreadPolicy policy = StrictMode.getThreadPolicy();
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        .penaltyDeath()
+                        .build());
+                try {
+                    runnable.run();
+                } finally {
+                    StrictMode.setThreadPolicy(policy);
+                }
+            }
+        });
+    }
+}
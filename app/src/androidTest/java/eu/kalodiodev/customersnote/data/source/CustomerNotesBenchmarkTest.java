@@ -0,0 +1,180 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import eu.kalodiodev.customersnote.data.Customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customer Notes Benchmark
+ *
+ * <p>Measures a full table scan and the customers list load with large notes stored inline,
+ * in a copy of Customers table, and stored out of row</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomerNotesBenchmarkTest {
+
+    private static final String TAG = "CustomerNotesBenchmark";
+
+    private static final String DATABASE_NAME = "notes-benchmark.db";
+
+    // Customers table as it was, notes inline
+    private static final String INLINE_TABLE_NAME = "InlineCustomers";
+
+    private static final int CUSTOMERS = 1000;
+    // Meeting logs of tens of kilobytes
+    private static final int NOTES_LENGTH = 20 * 1024;
+    private static final int RUNS = 5;
+
+    private static final String[] LIST_PROJECTION = {
+            CustomersContract.Columns._ID,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION
+    };
+
+    private Context context;
+    private DbHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testNotesReadBack() {
+        long id = insert(1);
+
+        assertEquals(notes(1), CustomerNotes.read(db, id));
+
+        Cursor cursor = CustomerNotes.wrap(db.query(CustomersContract.TABLE_NAME,
+                CustomerNotes.projection(db, null), CustomersContract.Columns._ID + " = " + id,
+                null, null, null, null));
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(notes(1), Customer.from(cursor).getNotes());
+        } finally {
+            cursor.close();
+        }
+
+        // Then notes of a deleted customer are deleted with it
+        db.delete(CustomersContract.TABLE_NAME, CustomersContract.Columns._ID + " = " + id, null);
+        assertNull(CustomerNotes.read(db, id));
+    }
+
+    @Test
+    public void testScanAndListLoad() {
+        db.execSQL("CREATE TABLE " + INLINE_TABLE_NAME + " AS SELECT * FROM " +
+                CustomersContract.TABLE_NAME + " WHERE 0");
+        db.execSQL("CREATE INDEX " + INLINE_TABLE_NAME + "_FirstNameKey ON " + INLINE_TABLE_NAME +
+                " (" + CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + " COLLATE NOCASE)");
+
+        db.beginTransaction();
+        try {
+            for(int i = 0; i < CUSTOMERS; i++) {
+                insert(i);
+                db.insert(INLINE_TABLE_NAME, null, customer(i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        long inlineScanNanos = Long.MAX_VALUE;
+        long outOfRowScanNanos = Long.MAX_VALUE;
+        long inlineListNanos = Long.MAX_VALUE;
+        long outOfRowListNanos = Long.MAX_VALUE;
+        for(int run = 0; run < RUNS; run++) {
+            inlineScanNanos = Math.min(inlineScanNanos, scan(INLINE_TABLE_NAME));
+            outOfRowScanNanos = Math.min(outOfRowScanNanos, scan(CustomersContract.TABLE_NAME));
+            inlineListNanos = Math.min(inlineListNanos, loadList(INLINE_TABLE_NAME));
+            outOfRowListNanos = Math.min(outOfRowListNanos, loadList(CustomersContract.TABLE_NAME));
+        }
+
+        Log.i(TAG, CUSTOMERS + " customers, table scan inline: " + inlineScanNanos / 1000 +
+                " us, out of row: " + outOfRowScanNanos / 1000 + " us");
+        Log.i(TAG, CUSTOMERS + " customers, list load inline: " + inlineListNanos / 1000 +
+                " us, out of row: " + outOfRowListNanos / 1000 + " us");
+
+        assertTrue("Table scan must be faster, inline " + inlineScanNanos / 1000 +
+                " us, out of row " + outOfRowScanNanos / 1000 + " us",
+                outOfRowScanNanos < inlineScanNanos);
+        assertTrue("List load must not be slower, inline " + inlineListNanos / 1000 +
+                " us, out of row " + outOfRowListNanos / 1000 + " us",
+                outOfRowListNanos <= inlineListNanos);
+    }
+
+    // Search falling back to LIKE reads every row
+    private long scan(String table) {
+        long start = System.nanoTime();
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table + " WHERE " +
+                CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY + " LIKE '%7%'", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+        } finally {
+            cursor.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long loadList(String table) {
+        long start = System.nanoTime();
+        Cursor cursor = db.query(table, LIST_PROJECTION, null, null, null, null,
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + " COLLATE NOCASE");
+        try {
+            // Statement runs and first window fills on count, like the list's loader
+            assertEquals(CUSTOMERS, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long insert(int i) {
+        ContentValues values = customer(i);
+        long id = db.insert(CustomersContract.TABLE_NAME, null, CustomerNotes.withoutNotes(values));
+        CustomerNotes.write(db, id, values);
+        return id;
+    }
+
+    private static ContentValues customer(int i) {
+        return DerivedKeys.complete(new Customer("First" + i, "Last" + (i % 97),
+                "Profession" + (i % 13), "Company" + (i % 31), "210" + (1000000 + i),
+                notes(i)).toContentValues());
+    }
+
+    private static String notes(int i) {
+        StringBuilder notes = new StringBuilder(NOTES_LENGTH);
+        for(int meeting = 0; notes.length() < NOTES_LENGTH; meeting++) {
+            notes.append("Meeting ").append(meeting).append(" with customer ").append(i)
+                    .append(": reviewed open orders and agreed on next delivery.\n");
+        }
+        return notes.toString();
+    }
+}
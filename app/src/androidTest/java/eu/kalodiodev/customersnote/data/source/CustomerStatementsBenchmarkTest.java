@@ -0,0 +1,167 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import eu.kalodiodev.customersnote.data.Customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customer Statements Benchmark
+ *
+ * <p>Measures single customer insert, update and delete throughput, compiled statements
+ * against {@link SQLiteDatabase}'s insert, update and delete</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomerStatementsBenchmarkTest {
+
+    private static final String TAG = "CustomerStatementsBench";
+
+    private static final String DATABASE_NAME = "statements-benchmark.db";
+
+    private static final int CUSTOMERS = 2000;
+    private static final int RUNS = 5;
+
+    private Context context;
+    private DbHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testStatementsWriteSameRows() {
+        CustomerStatements statements = new CustomerStatements(db);
+        ContentValues values = CustomerNotes.withoutNotes(customer(1).toContentValues());
+
+        long id = statements.insert(values);
+        assertTrue(id > 0);
+        assertCustomer(id, values);
+
+        ContentValues updated = CustomerNotes.withoutNotes(customer(2).toContentValues());
+        assertTrue(CustomerStatements.canUpdate(updated));
+
+        // Notes are not a column of the statements, they are written out of row
+        assertTrue(!CustomerStatements.canInsert(customer(3).toContentValues()));
+        assertEquals(1, statements.updateById(id, updated, null));
+        assertCustomer(id, updated);
+
+        assertEquals(1, statements.deleteById(id));
+        assertEquals(0, statements.deleteById(id));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, CustomersContract.TABLE_NAME));
+
+        // Partial values are not updated by the statement, it would null other fields
+        ContentValues partial = new ContentValues();
+        partial.put(CustomersContract.Columns.CUSTOMERS_PROFESSION, "Profession");
+        assertTrue(CustomerStatements.canInsert(partial));
+        assertTrue(!CustomerStatements.canUpdate(partial));
+
+        // Missing first name violates its constraint, reported like SQLiteDatabase.insert
+        assertEquals(-1, statements.insert(partial));
+        statements.close();
+    }
+
+    @Test
+    public void testWriteThroughput() {
+        ContentValues[] customers = new ContentValues[CUSTOMERS];
+        for(int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = CustomerNotes.withoutNotes(customer(i).toContentValues());
+        }
+
+        long databaseNanos = Long.MAX_VALUE;
+        long statementNanos = Long.MAX_VALUE;
+        for(int run = 0; run < RUNS; run++) {
+            databaseNanos = Math.min(databaseNanos, writeWithDatabase(customers));
+            statementNanos = Math.min(statementNanos, writeWithStatements(customers));
+        }
+
+        Log.i(TAG, CUSTOMERS + " customers inserted, updated and deleted, SQLiteDatabase: " +
+                databaseNanos / 1000000 + " ms, statements: " + statementNanos / 1000000 + " ms");
+
+        assertTrue("Statements must write faster, SQLiteDatabase " + databaseNanos / 1000 +
+                " us, statements " + statementNanos / 1000 + " us", statementNanos < databaseNanos);
+    }
+
+    private long writeWithDatabase(ContentValues[] customers) {
+        long[] ids = new long[customers.length];
+        long start = System.nanoTime();
+
+        for(int i = 0; i < customers.length; i++) {
+            ids[i] = db.insert(CustomersContract.TABLE_NAME, null, customers[i]);
+        }
+        for(int i = 0; i < customers.length; i++) {
+            db.update(CustomersContract.TABLE_NAME, customers[customers.length - 1 - i],
+                    CustomersContract.Columns._ID + " = " + ids[i], null);
+        }
+        for(long id : ids) {
+            db.delete(CustomersContract.TABLE_NAME, CustomersContract.Columns._ID + " = " + id, null);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private long writeWithStatements(ContentValues[] customers) {
+        CustomerStatements statements = new CustomerStatements(db);
+        long[] ids = new long[customers.length];
+        long start = System.nanoTime();
+
+        for(int i = 0; i < customers.length; i++) {
+            ids[i] = statements.insert(customers[i]);
+        }
+        for(int i = 0; i < customers.length; i++) {
+            statements.updateById(ids[i], customers[customers.length - 1 - i], null);
+        }
+        for(long id : ids) {
+            statements.deleteById(id);
+        }
+
+        long nanos = System.nanoTime() - start;
+        statements.close();
+        return nanos;
+    }
+
+    private void assertCustomer(long id, ContentValues values) {
+        Cursor cursor = db.query(CustomersContract.TABLE_NAME, CustomerStatements.COLUMNS,
+                CustomersContract.Columns._ID + " = " + id, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            for(int i = 0; i < CustomerStatements.COLUMNS.length; i++) {
+                assertEquals(CustomerStatements.COLUMNS[i],
+                        values.getAsString(CustomerStatements.COLUMNS[i]), cursor.getString(i));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Customer customer(int i) {
+        return new Customer("Fírst" + i, "Last" + i, "Profession" + (i % 7),
+                "Company" + (i % 11), "+30 210 " + (1000000 + i), "Notes " + i);
+    }
+}
@@ -0,0 +1,145 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import eu.kalodiodev.customersnote.data.Customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customer Version Contention Test
+ *
+ * <p>Many writers increment a counter kept in one customer through the app's provider,
+ * each reading the customer then updating the version read, retrying on conflict. No
+ * increment may be lost</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomerVersionContentionTest {
+    private static final String TAG = "VersionContentionTest";
+
+    private static final int WRITERS = 8;
+    private static final int INCREMENTS = 25;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private ContentResolver contentResolver;
+    private Uri customerUri;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        customerUri = contentResolver.insert(CustomersContract.CONTENT_URI, new Customer("Counter",
+                "Last Name", "Profession", "0", "123456", "Dummy Notes").toContentValues());
+        assertNotNull(customerUri);
+        executor = Executors.newFixedThreadPool(WRITERS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        contentResolver.delete(customerUri, null, null);
+    }
+
+    @Test
+    public void testStaleVersionIsNotUpdated() {
+        Customer customer = read();
+        assertEquals(1, update(customer, "1"));
+
+        // Then update of version already replaced conflicts, customer is left as it is
+        assertEquals(0, update(customer, "2"));
+        Customer updated = read();
+        assertEquals("1", updated.getCompanyName());
+        assertEquals(customer.getVersion() + 1, updated.getVersion());
+    }
+
+    @Test
+    public void testUpdateWithoutVersionRaisesIt() {
+        Customer customer = read();
+        ContentValues values = new ContentValues();
+        values.put(CustomersContract.Columns.CUSTOMERS_NOTES, "Notes only");
+        assertEquals(1, contentResolver.update(customerUri, values, null, null));
+
+        // Then editor of version read before conflicts, notes included
+        assertEquals(customer.getVersion() + 1, read().getVersion());
+        assertEquals(0, update(customer, "1"));
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> writers = new ArrayList<>();
+        for(int i = 0; i < WRITERS; i++) {
+            writers.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    int conflicts = 0;
+                    for(int increment = 0; increment < INCREMENTS; increment++) {
+                        while(true) {
+                            Customer customer = read();
+                            String counter = String.valueOf(
+                                    Integer.parseInt(customer.getCompanyName()) + 1);
+                            if(update(customer, counter) == 1) {
+                                break;
+                            }
+                            conflicts++;
+                        }
+                    }
+                    return conflicts;
+                }
+            }));
+        }
+        start.countDown();
+
+        int conflicts = 0;
+        for(Future<Integer> writer : writers) {
+            conflicts += writer.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        // Then every increment is applied once, conflicting writers retried theirs
+        Customer customer = read();
+        assertEquals(String.valueOf(WRITERS * INCREMENTS), customer.getCompanyName());
+        assertEquals(WRITERS * INCREMENTS, customer.getVersion());
+        Log.d(TAG, "testConcurrentIncrementsAreNotLost: " + conflicts + " conflicts retried");
+    }
+
+    private Customer read() {
+        Cursor cursor = contentResolver.query(customerUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return Customer.from(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int update(Customer customer, String companyName) {
+        customer.setCompanyName(companyName);
+        return contentResolver.update(customerUri, customer.toUpdateValues(), null, null);
+    }
+}
@@ -0,0 +1,233 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.kalodiodev.customersnote.data.Customer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customer Write Buffer Test
+ *
+ * <p>Writes customers behind through the app's provider, reading back the change log to
+ * count statements written</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomerWriteBufferTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int EDITS = 5;
+
+    private ContentResolver contentResolver;
+    private CustomerWriteBuffer buffer;
+    private long customerId;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        buffer = CustomerWriteBuffer.getInstance(contentResolver);
+
+        Uri uri = contentResolver.insert(CustomersContract.CONTENT_URI, new Customer("First Name",
+                "Last Name", "Profession", "Company Name", "123456", "Dummy Notes").toContentValues());
+        assertNotNull(uri);
+        customerId = CustomersContract.getCustomerId(uri);
+    }
+
+    @Test
+    public void testEditsAreCoalescedIntoOneUpdate() throws InterruptedException {
+        long since = lastSequence();
+        Listener listener = new Listener(EDITS);
+
+        for(int i = 0; i < EDITS; i++) {
+            buffer.update(customerId, companyName("Company " + i), listener);
+        }
+        buffer.flush();
+
+        // Then every edit is told of the one update written, holding latest values
+        assertTrue(listener.await());
+        assertEquals(EDITS, listener.counts.size());
+        for(int count : listener.counts) {
+            assertEquals(1, count);
+        }
+        assertEquals("Company " + (EDITS - 1), readCompanyName());
+        assertEquals(1, changesSince(since));
+    }
+
+    @Test
+    public void testReadSeesPendingUpdate() {
+        buffer.update(customerId, companyName("Pending Company"), null);
+
+        // Then update is written before customer is read, well before its delay ends
+        assertEquals("Pending Company", readCompanyName());
+    }
+
+    @Test
+    public void testDeleteDropsPendingUpdate() throws InterruptedException {
+        long since = lastSequence();
+        Listener listener = new Listener(2);
+
+        buffer.update(customerId, companyName("Deleted Company"), listener);
+        buffer.delete(customerId, listener);
+        buffer.flush();
+
+        // Then only the delete is written
+        assertTrue(listener.await());
+        assertEquals(1, changesSince(since));
+        Cursor cursor = contentResolver.query(CustomersContract.buildCustomerUri(customerId),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testFailingWriteFailsAlone() throws InterruptedException {
+        Uri uri = contentResolver.insert(CustomersContract.CONTENT_URI, new Customer("Other",
+                "Customer", null, null, null, null).toContentValues());
+        assertNotNull(uri);
+        Listener updated = new Listener(1);
+        Listener failing = new Listener(1);
+
+        buffer.update(customerId, companyName("Batched Company"), updated);
+        // Customer without first name breaks its NOT NULL constraint, failing the batch
+        ContentValues noFirstName = new ContentValues();
+        noFirstName.putNull(CustomersContract.Columns.CUSTOMERS_FIRST_NAME);
+        buffer.update(CustomersContract.getCustomerId(uri), noFirstName, failing);
+        buffer.flush();
+
+        // Then write of the other customer in its batch is still written
+        assertTrue(updated.await());
+        assertTrue(failing.await());
+        assertEquals(Collections.singletonList(1), updated.counts);
+        assertEquals(1, failing.errors.size());
+        assertEquals("Batched Company", readCompanyName());
+    }
+
+    @Test
+    public void testWriteQueuedDuringFlushIsNotOverwritten() throws InterruptedException {
+        Uri uri = contentResolver.insert(CustomersContract.CONTENT_URI, new Customer("Other",
+                "Customer", null, null, null, null).toContentValues());
+        assertNotNull(uri);
+        final Listener newer = new Listener(1);
+        Listener older = new Listener(1);
+        Listener failing = new Listener(1) {
+            @Override
+            public synchronized void onFailed(RuntimeException error) {
+                // Customer is edited again while its older edit is being applied alone
+                buffer.update(customerId, companyName("Newer Company"), newer);
+                super.onFailed(error);
+            }
+        };
+
+        // Failing write first, other writes of its batch are applied alone after it
+        ContentValues noFirstName = new ContentValues();
+        noFirstName.putNull(CustomersContract.Columns.CUSTOMERS_FIRST_NAME);
+        buffer.update(CustomersContract.getCustomerId(uri), noFirstName, failing);
+        buffer.update(customerId, companyName("Older Company"), older);
+        buffer.flush();
+
+        assertTrue(failing.await());
+        assertTrue(older.await());
+        buffer.flush();
+        assertTrue(newer.await());
+
+        // Then newer edit is written after the older one, not overwritten by it
+        assertEquals("Newer Company", readCompanyName());
+    }
+
+    private static ContentValues companyName(String companyName) {
+        ContentValues values = new ContentValues();
+        values.put(CustomersContract.Columns.CUSTOMERS_COMPANY_NAME, companyName);
+        return values;
+    }
+
+    private String readCompanyName() {
+        Cursor cursor = contentResolver.query(CustomersContract.buildCustomerUri(customerId),
+                new String[] {CustomersContract.Columns.CUSTOMERS_COMPANY_NAME}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long lastSequence() {
+        Cursor cursor = contentResolver.query(CustomersContract.buildChangesUri(0, 1),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getExtras().getLong(CustomersContract.EXTRA_LAST_SEQUENCE);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Changes logged of customer since sequence, one per statement written
+    private int changesSince(long since) {
+        Cursor cursor = contentResolver.query(CustomersContract.buildChangesUri(since, 100),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            int changes = 0;
+            int idColumn = cursor.getColumnIndex(CustomersContract.ChangeColumns.CUSTOMER_ID);
+            while(cursor.moveToNext()) {
+                if(cursor.getLong(idColumn) == customerId) {
+                    changes++;
+                }
+            }
+            return changes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static class Listener implements CustomerWriteBuffer.OnWrittenListener {
+        final List<Integer> counts = new ArrayList<>();
+        final List<RuntimeException> errors = new ArrayList<>();
+        private final CountDownLatch written;
+
+        Listener(int writes) {
+            written = new CountDownLatch(writes);
+        }
+
+        @Override
+        public synchronized void onWritten(Uri customerUri, int count) {
+            counts.add(count);
+            written.countDown();
+        }
+
+        @Override
+        public synchronized void onFailed(RuntimeException error) {
+            errors.add(error);
+            written.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return written.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
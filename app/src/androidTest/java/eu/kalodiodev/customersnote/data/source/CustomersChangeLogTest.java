@@ -0,0 +1,155 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customers Change Log Test
+ *
+ * <p>Writes customers to a database of its own, reading back changes logged by triggers</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomersChangeLogTest {
+
+    private static final String DATABASE_NAME = "change-log-test.db";
+
+    private Context context;
+    private DbHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testChangesAreLoggedInOrder() {
+        long first = insert("John");
+        long second = insert("Maria");
+
+        ContentValues values = new ContentValues();
+        values.put(CustomersContract.Columns.CUSTOMERS_LAST_NAME, "Doe");
+        db.update(CustomersContract.TABLE_NAME, values,
+                CustomersContract.Columns._ID + " = " + first, null);
+        CustomerNotes.write(db, second, "Call back on Monday");
+        db.delete(CustomersContract.TABLE_NAME, CustomersContract.Columns._ID + " = " + second, null);
+
+        // Then every change is logged once, deleted customer's notes go with it unlogged
+        Cursor changes = CustomersChangeLog.query(db, 0, 100);
+        try {
+            assertEquals(Arrays.asList(
+                    first + " " + CustomersContract.OPERATION_INSERT,
+                    second + " " + CustomersContract.OPERATION_INSERT,
+                    first + " " + CustomersContract.OPERATION_UPDATE,
+                    second + " " + CustomersContract.OPERATION_UPDATE,
+                    second + " " + CustomersContract.OPERATION_DELETE), entries(changes));
+            assertTrue(changes.getExtras().getBoolean(CustomersContract.EXTRA_CHANGES_COMPLETE));
+            assertEquals(5, changes.getExtras().getLong(CustomersContract.EXTRA_LAST_SEQUENCE));
+        } finally {
+            changes.close();
+        }
+    }
+
+    @Test
+    public void testChangesSinceSequence() {
+        insert("John");
+        long sequence = CustomersChangeLog.lastSequence(db);
+        long second = insert("Maria");
+
+        Cursor changes = CustomersChangeLog.query(db, sequence, 100);
+        try {
+            // Then only changes after sequence are read
+            assertEquals(Arrays.asList(second + " " + CustomersContract.OPERATION_INSERT),
+                    entries(changes));
+            assertTrue(changes.getExtras().getBoolean(CustomersContract.EXTRA_CHANGES_COMPLETE));
+        } finally {
+            changes.close();
+        }
+    }
+
+    @Test
+    public void testCompactedChangesAreIncomplete() {
+        for(int i = 0; i < 10; i++) {
+            insert("Customer" + i);
+        }
+
+        assertEquals(7, CustomersChangeLog.compact(db, 3));
+
+        // Then readers behind the log scan again, readers at its oldest entry do not
+        assertFalse(isComplete(0));
+        assertFalse(isComplete(6));
+        assertTrue(isComplete(7));
+        assertTrue(isComplete(10));
+
+        // and readers ahead of the log, e.g. of a database since replaced, scan again too
+        assertFalse(isComplete(11));
+    }
+
+    @Test
+    public void testSequenceGrowsOnceLogIsEmpty() {
+        insert("John");
+        CustomersChangeLog.compact(db, 0);
+        long second = insert("Maria");
+
+        Cursor changes = CustomersChangeLog.query(db, 1, 100);
+        try {
+            // Then sequences of compacted changes are not reused
+            assertTrue(changes.moveToFirst());
+            assertEquals(2, changes.getLong(0));
+            assertEquals(second, changes.getLong(1));
+        } finally {
+            changes.close();
+        }
+    }
+
+    private long insert(String firstName) {
+        ContentValues values = new ContentValues();
+        values.put(CustomersContract.Columns.CUSTOMERS_FIRST_NAME, firstName);
+        return db.insert(CustomersContract.TABLE_NAME, null, values);
+    }
+
+    private boolean isComplete(long since) {
+        Cursor changes = CustomersChangeLog.query(db, since, 100);
+        try {
+            return changes.getExtras().getBoolean(CustomersContract.EXTRA_CHANGES_COMPLETE);
+        } finally {
+            changes.close();
+        }
+    }
+
+    private static List<String> entries(Cursor changes) {
+        List<String> entries = new ArrayList<>();
+        while(changes.moveToNext()) {
+            entries.add(changes.getLong(1) + " " + changes.getString(2));
+        }
+        return entries;
+    }
+}
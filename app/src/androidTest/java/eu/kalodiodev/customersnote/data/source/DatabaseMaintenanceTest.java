@@ -0,0 +1,147 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Database Maintenance Test
+ *
+ * <p>Maintains a database of its own, after many of its customers were deleted</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMaintenanceTest {
+
+    private static final String DATABASE_NAME = "maintenance-test.db";
+    private static final String PREFERENCES_NAME = "maintenance-test";
+
+    private static final int ROWS = 2000;
+
+    private Context context;
+    private DbHelper dbHelper;
+    private SharedPreferences preferences;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+        preferences.edit().clear().commit();
+    }
+
+    @Test
+    public void testNewDatabaseVacuumsIncrementally() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        assertTrue(DatabaseMaintenance.isIncrementalVacuum(db));
+    }
+
+    @Test
+    public void testMaintenanceFreesDeletedPages() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        insertAndDeleteCustomers(db);
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+
+        DatabaseMaintenance.Report report = new DatabaseMaintenance(dbHelper, preferences).run();
+
+        // Then file shrinks by the pages deleted customers took, and statistics are gathered
+        assertFalse(report.aborted);
+        assertTrue(report.analyzed);
+        assertTrue("Freed " + report.freedPages + " pages", report.freedPages > 0);
+        assertEquals(pageCount - report.freedPages,
+                DatabaseUtils.longForQuery(db, "PRAGMA page_count", null));
+        assertEquals(0, DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null));
+        assertTrue(DatabaseUtils.queryNumEntries(db, "sqlite_stat1") > 0);
+
+        assertTrue(report.checked);
+        assertTrue(report.intact);
+    }
+
+    @Test
+    public void testMaintenanceIsThrottledBetweenRuns() {
+        new DatabaseMaintenance(dbHelper, preferences).run();
+
+        DatabaseMaintenance.Report report = new DatabaseMaintenance(dbHelper, preferences).run();
+
+        // Then nothing changed is not analyzed nor checked again
+        assertFalse(report.analyzed);
+        assertFalse(report.checked);
+        assertEquals(0, report.freedPages);
+    }
+
+    @Test
+    public void testAbortedMaintenanceStops() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        insertAndDeleteCustomers(db);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+
+        DatabaseMaintenance maintenance = new DatabaseMaintenance(dbHelper, preferences);
+        maintenance.abort();
+        DatabaseMaintenance.Report report = maintenance.run();
+
+        // Then no statement runs once aborted
+        assertTrue(report.aborted);
+        assertFalse(report.analyzed);
+        assertEquals(freePages, DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null));
+    }
+
+    @Test
+    public void testMaintenanceEnablesIncrementalVacuum() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        // As databases created before incremental vacuum are
+        db.execSQL("PRAGMA auto_vacuum = NONE");
+        db.execSQL("VACUUM");
+        assertFalse(DatabaseMaintenance.isIncrementalVacuum(db));
+
+        DatabaseMaintenance.Report report = new DatabaseMaintenance(dbHelper, preferences).run();
+
+        assertTrue(report.vacuumEnabled);
+        assertTrue(DatabaseMaintenance.isIncrementalVacuum(db));
+    }
+
+    private static void insertAndDeleteCustomers(SQLiteDatabase db) {
+        StringBuilder notes = new StringBuilder();
+        while(notes.length() < 400) {
+            notes.append("Discussed renewal of the service contract. ");
+        }
+
+        db.beginTransaction();
+        try {
+            for(int i = 0; i < ROWS; i++) {
+                ContentValues values = new ContentValues();
+                values.put(CustomersContract.Columns.CUSTOMERS_FIRST_NAME, "Customer" + i);
+                values.put(CustomersContract.Columns.CUSTOMERS_COMPANY_NAME, "Company" + (i % 200));
+                long id = db.insert(CustomersContract.TABLE_NAME, null, values);
+                CustomerNotes.write(db, id, notes.toString());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        db.delete(CustomersContract.TABLE_NAME, CustomersContract.Columns._ID + " % 4 != 0", null);
+    }
+}
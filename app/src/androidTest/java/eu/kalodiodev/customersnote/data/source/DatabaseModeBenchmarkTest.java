@@ -0,0 +1,163 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import eu.kalodiodev.customersnote.data.Customer;
+import eu.kalodiodev.customersnote.utils.metrics.LatencyHistogram;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Database Mode Benchmark
+ *
+ * <p>Measures latency of loading the customers list while customers are saved, and of the
+ * saves themselves, in rollback journal mode and in write-ahead logging mode</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseModeBenchmarkTest {
+
+    private static final String TAG = "DatabaseModeBenchmark";
+
+    private static final String DATABASE_NAME = "mode-benchmark.db";
+
+    private static final int CUSTOMERS = 5000;
+    private static final int SAVES = 300;
+    // Customers written per save transaction, with their trigram postings
+    private static final int CUSTOMERS_PER_SAVE = 5;
+
+    // Write-ahead logging p90 list load may be this much slower at most, measurement noise
+    private static final double MAX_WAL_READ_RATIO = 1.25;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testMixedReadWriteLatency() throws InterruptedException {
+        LatencyHistogram.Snapshot[] rollback = run(DatabaseMode.rollbackJournal());
+        context.deleteDatabase(DATABASE_NAME);
+        LatencyHistogram.Snapshot[] wal = run(DatabaseMode.fromConstants());
+
+        Log.i(TAG, "rollback journal: list " + rollback[0] + ", save " + rollback[1]);
+        Log.i(TAG, "write-ahead log: list " + wal[0] + ", save " + wal[1]);
+
+        assertTrue("List load p90 must not regress, rollback " + rollback[0].p90Micros +
+                        " us, write-ahead log " + wal[0].p90Micros + " us",
+                wal[0].p90Micros <= rollback[0].p90Micros * MAX_WAL_READ_RATIO);
+    }
+
+    /**
+     * Load list repeatedly while saves run on another thread
+     *
+     * @return list load and save latency
+     */
+    private LatencyHistogram.Snapshot[] run(DatabaseMode mode) throws InterruptedException {
+        final DbHelper dbHelper = new DbHelper(context, DATABASE_NAME, mode);
+        final LatencyHistogram reads = new LatencyHistogram();
+        final LatencyHistogram writes = new LatencyHistogram();
+
+        try {
+            final SQLiteDatabase db = dbHelper.getWritableDatabase();
+            // Compiled once, as the provider's statements are
+            final SQLiteStatement insertTrigram = CustomersTrigramIndex.compileInsert(db);
+            db.beginTransactionNonExclusive();
+            try {
+                for(int i = 0; i < CUSTOMERS; i++) {
+                    insert(db, insertTrigram, i);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            final AtomicBoolean saving = new AtomicBoolean(true);
+            final CountDownLatch done = new CountDownLatch(1);
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i < SAVES; i++) {
+                            long start = System.nanoTime();
+                            db.beginTransactionNonExclusive();
+                            try {
+                                for(int j = 0; j < CUSTOMERS_PER_SAVE; j++) {
+                                    insert(db, insertTrigram, CUSTOMERS + i * CUSTOMERS_PER_SAVE + j);
+                                }
+                                db.setTransactionSuccessful();
+                            } finally {
+                                db.endTransaction();
+                            }
+                            writes.record((System.nanoTime() - start) / 1000);
+                            Thread.sleep(1);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        saving.set(false);
+                        done.countDown();
+                    }
+                }
+            });
+            writer.start();
+
+            while(saving.get()) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(CustomersContract.TABLE_NAME, new String[] {
+                                CustomersContract.Columns._ID,
+                                CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+                                CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+                                CustomersContract.Columns.CUSTOMERS_PROFESSION},
+                        null, null, null, null,
+                        CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + " COLLATE NOCASE");
+                try {
+                    // Statement runs and first window fills on count, like the list's loader
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+                reads.record((System.nanoTime() - start) / 1000);
+            }
+            done.await();
+            insertTrigram.close();
+        } finally {
+            dbHelper.close();
+        }
+
+        return new LatencyHistogram.Snapshot[] {reads.snapshot(), writes.snapshot()};
+    }
+
+    private static void insert(SQLiteDatabase db, SQLiteStatement insertTrigram, int i) {
+        ContentValues values = DerivedKeys.complete(new Customer("First" + i, "Last" + (i % 97),
+                "Profession" + (i % 13), "Company" + (i % 31), "210" + (1000000 + i),
+                "Notes of customer " + i).toContentValues());
+        long id = db.insert(CustomersContract.TABLE_NAME, null, values);
+        CustomersTrigramIndex.index(db, insertTrigram, id, values);
+    }
+}
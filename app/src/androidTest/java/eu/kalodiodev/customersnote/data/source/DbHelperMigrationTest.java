@@ -0,0 +1,252 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.kalodiodev.customersnote.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Database Helper Migration Test
+ *
+ * <p>Migrates databases of their own, created new or at a version predating recorded
+ * migrations</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class DbHelperMigrationTest {
+
+    private static final String TAG = "DbHelperMigrationTest";
+
+    private static final String DATABASE_NAME = "migration-test.db";
+
+    // Several migration batches
+    private static final int LEGACY_ROWS = 1234;
+
+    // Rows of a large customer list, migrated in many short transactions
+    private static final int LARGE_ROWS = 100000;
+    private static final long MAX_LARGE_UPGRADE_MILLIS = 60000;
+
+    private Context context;
+    private DbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if(dbHelper != null) {
+            dbHelper.close();
+        }
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testNewDatabaseAppliesAllMigrations() {
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        assertEquals(dbHelper.migrations().size(), DatabaseUtils.queryNumEntries(db,
+                SchemaMigrator.TABLE_NAME));
+        assertEquals(Constants.Database.DATABASE_VERSION, db.getVersion());
+        assertSortUsesIndex(db);
+    }
+
+    @Test
+    public void testOpeningWaitsWhileDatabaseFileIsReplaced() throws InterruptedException {
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        dbHelper.getWritableDatabase();
+        dbHelper.beginReplace();
+
+        final CountDownLatch opened = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dbHelper.getWritableDatabase();
+                opened.countDown();
+            }
+        }).start();
+
+        // Then database is opened only once its file is in place
+        assertFalse(opened.await(200, TimeUnit.MILLISECONDS));
+        dbHelper.endReplace();
+        assertTrue(opened.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUpgradeFromLegacyVersionMigratesRows() {
+        createLegacyDatabase(3, LEGACY_ROWS);
+
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Then migrations the legacy version had applied are recorded without running
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " +
+                SchemaMigrator.TABLE_NAME + " WHERE " + SchemaMigrator.COLUMN_VERSION +
+                " <= 3 AND " + SchemaMigrator.COLUMN_APPLIED_AT + " > 0", null));
+        assertEquals(dbHelper.migrations().size(), DatabaseUtils.queryNumEntries(db,
+                SchemaMigrator.TABLE_NAME));
+
+        // And keys of every row are filled
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, CustomersContract.TABLE_NAME,
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + " IS NULL OR " +
+                CustomersContract.Columns.CUSTOMERS_PHONE_KEY + " IS NULL"));
+        assertEquals(LEGACY_ROWS, DatabaseUtils.queryNumEntries(db,
+                CustomersContract.SEARCH_TEXT_TABLE_NAME));
+        if(DbHelper.hasFullTextSearch(db)) {
+            assertEquals(LEGACY_ROWS, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " +
+                    CustomersContract.FTS_TABLE_NAME + " WHERE " + CustomersContract.FTS_TABLE_NAME +
+                    " MATCH 'customer*'", null));
+        }
+        assertSortUsesIndex(db);
+    }
+
+    @Test
+    public void testUpgradeMovesNotesOutOfRow() {
+        createLegacyDatabase(4, LEGACY_ROWS);
+        SQLiteDatabase legacy = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            legacy.execSQL("UPDATE " + CustomersContract.TABLE_NAME + " SET " +
+                    CustomersContract.Columns.CUSTOMERS_NOTES + " = 'Notes of ' || " +
+                    CustomersContract.Columns.CUSTOMERS_FIRST_NAME + " WHERE " +
+                    CustomersContract.Columns._ID + " % 2 = 0");
+        } finally {
+            legacy.close();
+        }
+
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Then inline notes are emptied into notes table
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, CustomersContract.TABLE_NAME,
+                CustomersContract.Columns.CUSTOMERS_NOTES + " IS NOT NULL"));
+        assertEquals(LEGACY_ROWS / 2, DatabaseUtils.queryNumEntries(db,
+                CustomersContract.NOTES_TABLE_NAME));
+        assertEquals("Notes of Customer1", CustomerNotes.read(db, 2));
+    }
+
+    @Test
+    public void testInterruptedMigrationRunsAgain() {
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Migrations are forgotten as if interrupted before being recorded
+        db.delete(SchemaMigrator.TABLE_NAME, SchemaMigrator.COLUMN_VERSION + " > 1", null);
+        dbHelper.close();
+
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        db = dbHelper.getWritableDatabase();
+
+        // Then steps run again over their own results
+        assertEquals(dbHelper.migrations().size(), DatabaseUtils.queryNumEntries(db,
+                SchemaMigrator.TABLE_NAME));
+        assertSortUsesIndex(db);
+    }
+
+    @Test
+    public void testUpgradeOfLargeTable() {
+        createLegacyDatabase(4, LARGE_ROWS);
+
+        long start = System.nanoTime();
+        dbHelper = new DbHelper(context, DATABASE_NAME);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        Cursor cursor = db.query(SchemaMigrator.TABLE_NAME, new String[] {
+                SchemaMigrator.COLUMN_VERSION, SchemaMigrator.COLUMN_DURATION},
+                SchemaMigrator.COLUMN_VERSION + " > 4", null, null, null,
+                SchemaMigrator.COLUMN_VERSION);
+        try {
+            while(cursor.moveToNext()) {
+                Log.i(TAG, "upgrade: version " + cursor.getInt(0) + " in " +
+                        cursor.getLong(1) + " ms");
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.i(TAG, "upgrade: " + LARGE_ROWS + " customers in " + millis + " ms");
+
+        assertTrue("Upgrade must take under " + MAX_LARGE_UPGRADE_MILLIS + " ms, took " +
+                millis + " ms", millis < MAX_LARGE_UPGRADE_MILLIS);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, CustomersContract.TABLE_NAME,
+                CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY + " IS NULL"));
+    }
+
+    // Customers table of a version before search keys, at given user version
+    private void createLegacyDatabase(int version, int rows) {
+        SQLiteDatabase db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            db.execSQL("CREATE TABLE " + CustomersContract.TABLE_NAME + "(" +
+                    CustomersContract.Columns._ID + " INTEGER PRIMARY KEY NOT NULL, " +
+                    CustomersContract.Columns.CUSTOMERS_FIRST_NAME + " TEXT NOT NULL, " +
+                    CustomersContract.Columns.CUSTOMERS_LAST_NAME + " TEXT, " +
+                    CustomersContract.Columns.CUSTOMERS_PROFESSION + " TEXT, " +
+                    CustomersContract.Columns.CUSTOMERS_COMPANY_NAME + " TEXT, " +
+                    CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER + " TEXT, " +
+                    CustomersContract.Columns.CUSTOMERS_NOTES + " TEXT" +
+                    (version >= 4 ? ", " + CustomersContract.Columns.CUSTOMERS_PHONE_KEY + " TEXT" : "") +
+                    ");");
+            if(version >= 3) {
+                CustomersTrigramIndex.createTables(db);
+            }
+
+            db.beginTransaction();
+            try {
+                for(int i = 0; i < rows; i++) {
+                    db.execSQL("INSERT INTO " + CustomersContract.TABLE_NAME + " (" +
+                            CustomersContract.Columns.CUSTOMERS_FIRST_NAME + ", " +
+                            CustomersContract.Columns.CUSTOMERS_LAST_NAME + ", " +
+                            CustomersContract.Columns.CUSTOMERS_PROFESSION + ", " +
+                            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME + ", " +
+                            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER + ") VALUES (?, ?, ?, ?, ?)",
+                            new Object[] {"Customer" + i, "Λάστνεϊμ" + i, "Profession" + (i % 50),
+                                    "Company" + (i % 200), "+30 210 " + (1000000 + i)});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    // List sort order is read from its index, not sorted in a temporary b-tree
+    private void assertSortUsesIndex(SQLiteDatabase db) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM " +
+                CustomersContract.TABLE_NAME + " ORDER BY " +
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + " COLLATE NOCASE", null);
+        try {
+            while(cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertFalse("Sort must use index: " + plan, plan.toString().contains("TEMP B-TREE"));
+    }
+}
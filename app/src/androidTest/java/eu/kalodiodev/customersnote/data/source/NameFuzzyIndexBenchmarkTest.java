@@ -0,0 +1,82 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Name Fuzzy Index Benchmark
+ *
+ * <p>Measures correction of misspelled names against 100k distinct name terms. Timings
+ * depend on the device and are logged, only corrections are asserted</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class NameFuzzyIndexBenchmarkTest {
+
+    private static final String TAG = "NameFuzzyIndexBenchmark";
+
+    private static final int NAMES = 100000;
+    private static final int LOOKUPS = 200;
+
+    private static final String[] SYLLABLES = {"an", "dre", "as", "ni", "ko", "la", "os",
+            "ma", "ri", "el", "ge", "or", "gi", "ou", "ka", "te", "ri", "na", "pa", "vlos",
+            "jo", "hn", "si", "mon", "be", "th", "ly", "di", "mi", "tra"};
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void testCorrectionAt100kNames() {
+        String[] names = new String[NAMES];
+        for(int i = 0; i < NAMES; i++) {
+            names[i] = randomName();
+        }
+
+        long start = System.nanoTime();
+        FuzzyTermDictionary dictionary = FuzzyTermDictionary.of(Arrays.asList(names));
+        Log.i(TAG, "build: " + dictionary.size() + " distinct terms in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+
+        long[] nanos = new long[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++) {
+            String misspelled = misspell(names[random.nextInt(NAMES)]);
+
+            start = System.nanoTime();
+            String suggestion = NameFuzzyIndex.correct(dictionary, misspelled);
+            nanos[i] = System.nanoTime() - start;
+
+            assertNotNull("Misspelled name must be corrected: " + misspelled, suggestion);
+        }
+
+        Arrays.sort(nanos);
+        long median = nanos[LOOKUPS / 2];
+        Log.i(TAG, "lookup: median " + median / 1000 + " us, p95 " +
+                nanos[LOOKUPS * 95 / 100] / 1000 + " us, max " +
+                nanos[LOOKUPS - 1] / 1000 + " us");
+    }
+
+    private String randomName() {
+        StringBuilder name = new StringBuilder();
+        int syllables = 3 + random.nextInt(3);
+        for(int i = 0; i < syllables; i++) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return name.toString();
+    }
+
+    // Substitutes one character, a typo one edit away
+    private String misspell(String name) {
+        char[] chars = name.toCharArray();
+        int position = random.nextInt(chars.length);
+        chars[position] = chars[position] == 'x' ? 'q' : 'x';
+        return new String(chars);
+    }
+}
@@ -1,7 +1,11 @@
 package eu.kalodiodev.customersnote.provider;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.ProviderTestCase2;
@@ -10,8 +14,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
 import eu.kalodiodev.customersnote.data.Customer;
 import eu.kalodiodev.customersnote.data.source.CustomersContract;
+import eu.kalodiodev.customersnote.data.source.CustomersPage;
 import eu.kalodiodev.customersnote.data.source.CustomersProvider;
 
 /**
@@ -22,6 +31,10 @@ import eu.kalodiodev.customersnote.data.source.CustomersProvider;
 @RunWith(AndroidJUnit4.class)
 public class CustomersProviderTest extends ProviderTestCase2<CustomersProvider> {
 
+    // Customers imported at once, in seconds rather than minutes
+    private static final int IMPORTED_CUSTOMERS = 10000;
+    private static final long MAX_IMPORT_MILLIS = 10000;
+
     private Customer customer = new Customer("First Name", "Last Name",
             "Profession", "Company Name", "123456", "Dummy Notes");
 
@@ -93,4 +106,299 @@ public class CustomersProviderTest extends ProviderTestCase2<CustomersProvider>
 
         assertTrue("Deleted customers must be greater than zero", count > 0);
     }
+
+    @Test
+    public void testSearch() {
+        // Insert Customer
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, customer.toContentValues());
+
+        // Search using prefixes of first name and profession
+        Cursor c = getMockContentResolver()
+                .query(CustomersContract.buildSearchUri("Fir Prof"), null, null, null, null);
+
+        assertNotNull(c);
+        assertTrue("Search must find inserted customer", c.getCount() > 0);
+        c.close();
+
+        // Search term matching no customer
+        c = getMockContentResolver()
+                .query(CustomersContract.buildSearchUri("Fir Zzz"), null, null, null, null);
+
+        assertNotNull(c);
+        assertEquals(0, c.getCount());
+        c.close();
+    }
+
+    @Test
+    public void testSubstringSearch() {
+        // Insert Customer
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, customer.toContentValues());
+
+        // Search using fragments of phone number and notes
+        Cursor c = getMockContentResolver().query(CustomersContract.buildSearchUri("2345 MMY",
+                CustomersContract.SEARCH_MODE_SUBSTRING), null, null, null, null);
+
+        assertNotNull(c);
+        assertTrue("Substring search must find inserted customer", c.getCount() > 0);
+        c.close();
+
+        // Fragment spanning two fields matches no customer
+        c = getMockContentResolver().query(CustomersContract.buildSearchUri("Name123",
+                CustomersContract.SEARCH_MODE_SUBSTRING), null, null, null, null);
+
+        assertNotNull(c);
+        assertEquals(0, c.getCount());
+        c.close();
+    }
+
+    @Test
+    public void testPhoneLookup() {
+        Customer caller = new Customer("Caller", "Last Name", "Profession", "Company Name",
+                "210 555 0199", "Dummy Notes");
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, caller.toContentValues());
+
+        // Incoming number carries country code, stored number does not
+        Cursor c = getMockContentResolver().query(
+                CustomersContract.buildPhoneLookupUri("+30 2105550199"), null, null, null, null);
+
+        assertNotNull(c);
+        assertTrue("Phone lookup must find caller", c.moveToFirst());
+        assertEquals("Caller", c.getString(
+                c.getColumnIndex(CustomersContract.Columns.CUSTOMERS_FIRST_NAME)));
+        c.close();
+
+        // Number sharing too few trailing digits
+        c = getMockContentResolver().query(
+                CustomersContract.buildPhoneLookupUri("210 999 0199"), null, null, null, null);
+
+        assertNotNull(c);
+        assertEquals(0, c.getCount());
+        c.close();
+    }
+
+    @Test
+    public void testSearchIgnoresAccentsAndCase() {
+        Customer greek = new Customer("Γιώργος", "Παπαδόπουλος", "Μηχανικός", "Company Name",
+                "123456", "Dummy Notes");
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, greek.toContentValues());
+
+        // Typed without tonos, in another case
+        Cursor c = getMockContentResolver()
+                .query(CustomersContract.buildSearchUri("γιωργος ΠΑΠΑΔ"), null, null, null, null);
+
+        assertNotNull(c);
+        assertTrue("Search must find customer whatever accents and case", c.getCount() > 0);
+        c.close();
+    }
+
+    @Test
+    public void testRankedSearch() {
+        Customer byProfession = new Customer("Anna", "Smith", "Baker", "Company Name",
+                "123456", "Dummy Notes");
+        Customer byLastName = new Customer("Maria", "Baker", "Teacher", "Company Name",
+                "123456", "Dummy Notes");
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, byProfession.toContentValues());
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, byLastName.toContentValues());
+
+        Cursor c = getMockContentResolver().query(CustomersContract.buildRankedSearchUri("baker",
+                CustomersContract.SEARCH_MODE_PREFIX, 1), null, null, null, null);
+
+        assertNotNull(c);
+        // Only the best match is returned, exact last name ranks above profession
+        assertEquals(1, c.getCount());
+        assertTrue(c.moveToFirst());
+        assertEquals("Baker", c.getString(
+                c.getColumnIndex(CustomersContract.Columns.CUSTOMERS_LAST_NAME)));
+        assertTrue(c.getExtras().getInt(CustomersContract.EXTRA_MATCH_COUNT) >= 2);
+        c.close();
+    }
+
+    @Test
+    public void testRepeatedQueryServedFromCache() {
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, customer.toContentValues());
+
+        Cursor c = getMockContentResolver()
+                .query(CustomersContract.CONTENT_URI, null, null, null, null);
+        assertNotNull(c);
+        int count = c.getCount();
+        c.close();
+        long hits = cacheStats().getLong(CustomersContract.EXTRA_CACHE_HITS);
+
+        // Same query again
+        c = getMockContentResolver().query(CustomersContract.CONTENT_URI, null, null, null, null);
+        assertNotNull(c);
+        assertEquals(count, c.getCount());
+        c.close();
+
+        assertEquals(hits + 1, cacheStats().getLong(CustomersContract.EXTRA_CACHE_HITS));
+    }
+
+    @Test
+    public void testInsertInvalidatesCachedQuery() {
+        Cursor c = getMockContentResolver()
+                .query(CustomersContract.CONTENT_URI, null, null, null, null);
+        assertNotNull(c);
+        int count = c.getCount();
+        c.close();
+
+        getMockContentResolver().insert(CustomersContract.CONTENT_URI, customer.toContentValues());
+
+        // Then cached list is not served, inserted customer is listed
+        c = getMockContentResolver().query(CustomersContract.CONTENT_URI, null, null, null, null);
+        assertNotNull(c);
+        assertEquals(count + 1, c.getCount());
+        c.close();
+    }
+
+    @Test
+    public void testBulkInsertOfLargeImport() {
+        ContentValues[] values = new ContentValues[IMPORTED_CUSTOMERS];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = new Customer("Imported" + i, "Last Name", "Profession",
+                    "Company Name", "210" + (1000000 + i), "Notes").toContentValues();
+        }
+
+        long start = System.nanoTime();
+        int count = getMockContentResolver().bulkInsert(CustomersContract.CONTENT_URI, values);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(IMPORTED_CUSTOMERS, count);
+        assertTrue("Import must take under " + MAX_IMPORT_MILLIS + " ms, took " + millis + " ms",
+                millis < MAX_IMPORT_MILLIS);
+
+        // Then imported customers are searchable
+        Cursor c = getMockContentResolver().query(CustomersContract.buildSearchUri("imported9999"),
+                null, null, null, null);
+        assertNotNull(c);
+        assertEquals(1, c.getCount());
+        c.close();
+    }
+
+    @Test
+    public void testApplyBatch() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(CustomersContract.CONTENT_URI)
+                .withValues(new Customer("Batch", "Last Name", "Profession",
+                        "Company Name", "123", "Notes").toContentValues())
+                .build());
+        operations.add(ContentProviderOperation.newInsert(CustomersContract.CONTENT_URI)
+                .withValues(new Customer("Batch Deleted", "Last Name", "Profession",
+                        "Company Name", "456", "Notes").toContentValues())
+                .withYieldAllowed(true)
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(CustomersContract.CONTENT_URI)
+                .withSelection(CustomersContract.Columns.CUSTOMERS_FIRST_NAME + " = ?",
+                        new String[] {"Batch"})
+                .withValue(CustomersContract.Columns.CUSTOMERS_NOTES, "Batch Notes")
+                .build());
+        operations.add(ContentProviderOperation.newDelete(CustomersContract.CONTENT_URI)
+                .withSelection(CustomersContract.Columns.CUSTOMERS_FIRST_NAME + " = ?",
+                        new String[] {"Batch Deleted"})
+                .withYieldAllowed(true)
+                .build());
+
+        ContentProviderResult[] results = getMockContentResolver()
+                .applyBatch(CustomersProvider.CONTENT_AUTHORITY, operations);
+
+        assertEquals(4, results.length);
+        assertNotNull(results[0].uri);
+        assertEquals(Integer.valueOf(1), results[3].count);
+
+        // Then every operation took effect
+        Cursor c = getMockContentResolver().query(results[0].uri, null, null, null, null);
+        assertNotNull(c);
+        assertTrue(c.moveToFirst());
+        assertEquals("Batch Notes", c.getString(
+                c.getColumnIndex(CustomersContract.Columns.CUSTOMERS_NOTES)));
+        c.close();
+
+        c = getMockContentResolver().query(results[1].uri, null, null, null, null);
+        assertNotNull(c);
+        assertEquals(0, c.getCount());
+        c.close();
+    }
+
+    @Test
+    public void testPagesWalkAllCustomersOnce() {
+        int customers = 120;
+        int pageSize = 50;
+        ContentValues[] values = new ContentValues[customers];
+        for(int i = 0; i < customers; i++) {
+            // Names repeat, pages must split customers of the same name correctly
+            values[i] = new Customer("Name" + (i % 7), "Last Name", "Profession",
+                    "Company Name", "123", "Notes").toContentValues();
+        }
+        getMockContentResolver().bulkInsert(CustomersContract.CONTENT_URI, values);
+
+        String[] projection = {CustomersContract.Columns._ID,
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY};
+        Set<Long> ids = new HashSet<>();
+        String previousKey = null;
+        String after = null;
+        int pages = 0;
+
+        do {
+            Cursor page = getMockContentResolver().query(
+                    CustomersContract.buildPageUri(after, pageSize), projection, null, null, null);
+            assertNotNull(page);
+            pages++;
+            after = null;
+
+            while(page.moveToNext()) {
+                String key = page.getString(1);
+                assertTrue(ids.add(page.getLong(0)));
+                assertTrue((previousKey == null) || (previousKey.compareTo(key) <= 0));
+                previousKey = key;
+                if(page.isLast() && (page.getCount() == pageSize)) {
+                    after = CustomersPage.token(key, page.getLong(0));
+                }
+            }
+            page.close();
+        } while(after != null);
+
+        // Then every customer is read once, a page at a time
+        assertEquals(customers, ids.size());
+        assertEquals(3, pages);
+    }
+
+    @Test
+    public void testPageReadAgainKeepsItsSpan() {
+        int pageSize = 50;
+        ContentValues[] values = new ContentValues[120];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = new Customer("Name" + (i % 7), "Last Name", "Profession",
+                    "Company Name", "123", "Notes").toContentValues();
+        }
+        getMockContentResolver().bulkInsert(CustomersContract.CONTENT_URI, values);
+
+        String[] projection = {CustomersContract.Columns._ID,
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY};
+        Cursor page = getMockContentResolver().query(
+                CustomersContract.buildPageUri(null, pageSize), projection, null, null, null);
+        assertNotNull(page);
+        assertTrue(page.moveToLast());
+        String until = CustomersPage.token(page.getString(1), page.getLong(0));
+        page.close();
+
+        // Customer sorting within the page is inserted
+        Uri inserted = getMockContentResolver().insert(CustomersContract.CONTENT_URI,
+                new Customer("Name0", "Last Name", "Profession", "Company Name", "123", "Notes")
+                        .toContentValues());
+        assertNotNull(inserted);
+
+        page = getMockContentResolver().query(
+                CustomersContract.buildPageRangeUri(null, until), projection, null, null, null);
+        assertNotNull(page);
+
+        // Then page grows by the customer, and still ends with its last customer
+        assertEquals(pageSize + 1, page.getCount());
+        assertTrue(page.moveToLast());
+        assertEquals(until, CustomersPage.token(page.getString(1), page.getLong(0)));
+        page.close();
+    }
+
+    private Bundle cacheStats() {
+        return getMockContentResolver().call(CustomersContract.CONTENT_URI,
+                CustomersContract.METHOD_QUERY_CACHE_STATS, null, null);
+    }
 }
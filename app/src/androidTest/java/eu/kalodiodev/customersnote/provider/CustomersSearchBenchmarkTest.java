@@ -0,0 +1,124 @@
+package eu.kalodiodev.customersnote.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import eu.kalodiodev.customersnote.data.Customer;
+import eu.kalodiodev.customersnote.data.source.CustomersContract;
+import eu.kalodiodev.customersnote.data.source.CustomersProvider;
+
+/**
+ * Customers Search Benchmark
+ *
+ * <p>Measures substring search latency as the number of customers grows, trigram index
+ * search against a LIKE scan of all customers. Timings depend on the device and are
+ * logged, only searches finding their customer are asserted</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(AndroidJUnit4.class)
+public class CustomersSearchBenchmarkTest extends ProviderTestCase2<CustomersProvider> {
+
+    private static final String TAG = "CustomersSearchBenchmark";
+
+    private static final int[] SIZES = {1000, 2000, 4000, 8000};
+    private static final int RUNS = 15;
+
+    private static final String[] WORDS = {"alpha", "bravo", "charlie", "delta", "echo",
+            "foxtrot", "golf", "hotel", "india", "juliet", "kilo", "lima", "mike", "november"};
+
+    private final Random random = new Random(42);
+
+    public CustomersSearchBenchmarkTest() {
+        super(CustomersProvider.class, CustomersProvider.CONTENT_AUTHORITY);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        setContext(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void testSubstringSearchLatencyAsCustomersGrow() {
+        getMockContentResolver().delete(CustomersContract.CONTENT_URI, null, null);
+
+        long[] indexNanos = new long[SIZES.length];
+        int inserted = 0;
+
+        for(int i = 0; i < SIZES.length; i++) {
+            ContentValues[] values = new ContentValues[SIZES[i] - inserted];
+            for(int j = 0; j < values.length; j++) {
+                values[j] = randomCustomer().toContentValues();
+            }
+            getMockContentResolver().bulkInsert(CustomersContract.CONTENT_URI, values);
+            inserted = SIZES[i];
+
+            // Fragment of the phone number of the last customer inserted
+            String phone = values[values.length - 1]
+                    .getAsString(CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER);
+            String fragment = phone.substring(3, 9);
+
+            indexNanos[i] = median(CustomersContract.buildSearchUri(fragment,
+                    CustomersContract.SEARCH_MODE_SUBSTRING), null, null);
+            long scanNanos = median(CustomersContract.CONTENT_URI,
+                    CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER + " LIKE ?",
+                    new String[] {"%" + fragment + "%"});
+
+            Log.i(TAG, "customers: " + inserted + ", trigram search: " + indexNanos[i] / 1000 +
+                    " us, LIKE scan: " + scanNanos / 1000 + " us");
+        }
+
+        // Customers grew eightfold, linear search time would grow eightfold too
+        Log.i(TAG, "trigram search grew " + (float) indexNanos[SIZES.length - 1] /
+                Math.max(1, indexNanos[0]) + "x over " + SIZES[SIZES.length - 1] / SIZES[0] +
+                "x customers");
+    }
+
+    private long median(Uri uri, String selection, String[] selectionArgs) {
+        long[] nanos = new long[RUNS];
+
+        for(int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            Cursor c = getMockContentResolver().query(uri, null, selection, selectionArgs, null);
+            assertNotNull(c);
+            assertTrue("Search must find customer", c.getCount() > 0);
+            c.close();
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(nanos);
+        return nanos[RUNS / 2];
+    }
+
+    private Customer randomCustomer() {
+        StringBuilder phone = new StringBuilder();
+        for(int i = 0; i < 10; i++) {
+            phone.append(random.nextInt(10));
+        }
+
+        StringBuilder notes = new StringBuilder();
+        for(int i = 0; i < 12; i++) {
+            notes.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+
+        return new Customer(WORDS[random.nextInt(WORDS.length)],
+                WORDS[random.nextInt(WORDS.length)],
+                WORDS[random.nextInt(WORDS.length)],
+                WORDS[random.nextInt(WORDS.length)],
+                phone.toString(),
+                notes.toString());
+    }
+}
@@ -11,7 +11,40 @@ public class Constants {
     public static class Database {
 
         public static final String DATABASE_NAME = "customers.db";
-        public static final int DATABASE_VERSION = 1;
+        // Version of the latest schema migration
+        public static final int DATABASE_VERSION = 9;
+
+        // Database mode, write-ahead logging lets the list be read while a customer is saved
+        public static final boolean WRITE_AHEAD_LOGGING = true;
+
+        // Committed changes survive an app crash, only the last ones may be lost on power loss
+        public static final String WAL_SYNCHRONOUS = "NORMAL";
+
+        // Page cache and memory mapped reads of the database connection
+        public static final int CACHE_SIZE_KIB = 2048;
+        public static final long MMAP_SIZE_BYTES = 8 * 1024 * 1024;
+
+        // Log is copied into the database by a background checkpoint this long after a write,
+        // commits checkpoint themselves only once the log grows past the pages limit
+        public static final long CHECKPOINT_DELAY_MILLIS = 2000;
+        public static final int WAL_AUTOCHECKPOINT_PAGES = 4000;
+
+        // Customer changes kept in change log, compacted every so many single customer writes
+        public static final int CHANGE_LOG_MAX_ENTRIES = 10000;
+        public static final int CHANGE_LOG_COMPACT_WRITES = 100;
+
+        // Customer updates and deletes are held this long, then written together as one batch
+        public static final long WRITE_BEHIND_MILLIS = 1000;
+
+        // Maintenance runs daily while the device is idle and charging, statistics are
+        // gathered again after so many customer changes, corruption is checked for weekly
+        public static final long MAINTENANCE_INTERVAL_MILLIS = 24 * 60 * 60 * 1000L;
+        public static final int ANALYZE_CHANGES = 1000;
+        public static final long QUICK_CHECK_INTERVAL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+        // Databases created before incremental vacuum are rebuilt by maintenance only up to
+        // this size, and only with room for the rebuilt copy and its journal to spare
+        public static final long VACUUM_REBUILD_MAX_BYTES = 32 * 1024 * 1024L;
 
         // Database backup
         public static final String BACKUP_FOLDER = "/CustomerNotesBackup";
@@ -23,4 +56,19 @@ public class Constants {
             // private constructor to prevent instantiation
         }
     }
+
+    // Search constants
+    public static class Search {
+
+        // Terms typed within this window are coalesced into a single search
+        public static final long QUERY_DELAY_MILLIS = 300;
+
+        // Customer queries observed are loaded on so many threads, a search being typed
+        // does not wait behind the list loading again
+        public static final int QUERY_THREADS = 2;
+
+        private Search() {
+            // private constructor to prevent instantiation
+        }
+    }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
@@ -40,20 +41,26 @@ import android.view.MenuItem;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import eu.kalodiodev.customersnote.addeditcustomer.AddEditCustomerActivity;
 import eu.kalodiodev.customersnote.addeditcustomer.AddEditCustomerPresenter;
 import eu.kalodiodev.customersnote.customers.CustomersContract;
 import eu.kalodiodev.customersnote.customers.CustomersFragment;
 import eu.kalodiodev.customersnote.customers.CustomersPresenter;
 import eu.kalodiodev.customersnote.customers.CursorRecyclerViewAdapter;
+import eu.kalodiodev.customersnote.customers.SearchScheduler;
 import eu.kalodiodev.customersnote.data.CustomersRepository;
+import eu.kalodiodev.customersnote.data.ICustomersRepository;
 import eu.kalodiodev.customersnote.addeditcustomer.AddEditCustomerFragment;
 import eu.kalodiodev.customersnote.data.Customer;
-import eu.kalodiodev.customersnote.data.source.LoaderProvider;
+import eu.kalodiodev.customersnote.data.source.QueryProvider;
 import eu.kalodiodev.customersnote.utils.AppDialog;
 import eu.kalodiodev.customersnote.utils.DialogHelper;
 import eu.kalodiodev.customersnote.utils.backup.BackupDBTask;
 import eu.kalodiodev.customersnote.utils.backup.RestoreDBTask;
+import eu.kalodiodev.customersnote.utils.metrics.SearchMetrics;
 
 /**
  * Main Activity
@@ -86,6 +93,22 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
     private CustomersContract.Presenter mCustomersPresenter;
     private MainContract.Presenter mainPresenter;
 
+    // Customers are written after their editor closed, conflicts and failures are shown here
+    private final ICustomersRepository.OnWriteResultListener mWriteResultListener =
+            new ICustomersRepository.OnWriteResultListener() {
+                @Override
+                public void onEditConflict(long customerId) {
+                    Toast.makeText(MainActivity.this, R.string.edit_conflict_message,
+                            Toast.LENGTH_LONG).show();
+                }
+
+                @Override
+                public void onWriteFailed(RuntimeException error) {
+                    Toast.makeText(MainActivity.this, R.string.write_failed_message,
+                            Toast.LENGTH_LONG).show();
+                }
+            };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -103,16 +126,19 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
         // Main Presenter
         mainPresenter = createMainPresenter();
         // Customers Presenter
-        LoaderProvider loaderProvider = new LoaderProvider(this);
-        mCustomersPresenter = createCustomersPresenter(loaderProvider, customersFragment);
+        QueryProvider queryProvider = new QueryProvider(this);
+        mCustomersPresenter = createCustomersPresenter(queryProvider, customersFragment);
+
+        CustomersRepository.getInstance(getContentResolver())
+                .addOnWriteResultListener(mWriteResultListener);
     }
 
-    private CustomersContract.Presenter createCustomersPresenter(LoaderProvider loaderProvider,
+    private CustomersContract.Presenter createCustomersPresenter(QueryProvider queryProvider,
                                                                  CustomersFragment customersFragment) {
-        CustomersContract.Presenter customersPresenter = new CustomersPresenter(loaderProvider,
-                this.getSupportLoaderManager(),
+        CustomersContract.Presenter customersPresenter = new CustomersPresenter(queryProvider,
                 customersFragment,
-                CustomersRepository.getInstance(getContentResolver()));
+                CustomersRepository.getInstance(getContentResolver()),
+                new SearchScheduler(new Handler(), Constants.Search.QUERY_DELAY_MILLIS));
 
         customersFragment.setPresenter(customersPresenter);
 
@@ -120,7 +146,8 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
     }
 
     private MainContract.Presenter createMainPresenter() {
-        return new MainPresenter(this, new BackupDBTask(), new RestoreDBTask());
+        return new MainPresenter(this, new BackupDBTask(getContentResolver()),
+                new RestoreDBTask(getContentResolver()));
     }
 
     private CustomersFragment setupCustomersFragment() {
@@ -316,6 +343,23 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
         if(mDialog != null && mDialog.isShowing()) {
             mDialog.dismiss();
         }
+        // Edits held behind are written before the app may be killed in background
+        CustomersRepository.getInstance(getContentResolver()).flushPendingWrites();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CustomersRepository.getInstance(getContentResolver()).flushPendingWrites();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Customers are no longer observed, their cursors are closed
+        mCustomersPresenter.destroy();
+        CustomersRepository.getInstance(getContentResolver())
+                .removeOnWriteResultListener(mWriteResultListener);
+        super.onDestroy();
     }
 
     @Override
@@ -344,7 +388,8 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
         Intent intent = new Intent(this, AddEditCustomerActivity.class);
         if (customer != null) {
             // Editing customer1
-            intent.putExtra(Customer.class.getSimpleName(), customer);
+            // Customer is read in full by id
+            intent.putExtra(AddEditCustomerActivity.EXTRA_CUSTOMER_ID, customer.getId());
         }
         startActivity(intent);
     }
@@ -355,14 +400,16 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
 
         if (customer != null) {
             Bundle arguments = new Bundle();
-            arguments.putSerializable(Customer.class.getSimpleName(), customer);
+            arguments.putLong(AddEditCustomerActivity.EXTRA_CUSTOMER_ID, customer.getId());
             addEditFragment.setArguments(arguments);
         }
 
         replaceFragment(R.id.customer_details_container, addEditFragment);
 
+        // Customer is read in full by id, list items hold a summary only
         AddEditCustomerPresenter mAddEditCustomerPresenter = new AddEditCustomerPresenter(
-                customer, addEditFragment, CustomersRepository.getInstance(getContentResolver()));
+                customer != null ? customer.getId() : AddEditCustomerPresenter.NO_CUSTOMER_ID,
+                addEditFragment, CustomersRepository.getInstance(getContentResolver()));
 
         addEditFragment.setPresenter(mAddEditCustomerPresenter);
     }
@@ -476,6 +523,11 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
 
     @Override
     public void refreshCustomersList() {
+        // Database file was replaced, nothing remembered of the previous one may be served
+        getContentResolver().call(
+                eu.kalodiodev.customersnote.data.source.CustomersContract.CONTENT_URI,
+                eu.kalodiodev.customersnote.data.source.CustomersContract.METHOD_DATABASE_REPLACED,
+                null, null);
         ((CustomersFragment) getSupportFragmentManager().findFragmentById(R.id.fragment)).refresh();
     }
 
@@ -488,4 +540,17 @@ public class MainActivity extends AppCompatActivity implements MainContract.View
                 R.string.overwrite,
                 R.string.cancel);
     }
-}
\ No newline at end of file
+
+    /**
+     * Debug builds print search latencies, e.g.
+     * adb shell dumpsys activity eu.kalodiodev.customersnote/.MainActivity
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        if(BuildConfig.DEBUG) {
+            SearchMetrics.getInstance().dump(prefix, writer);
+        }
+    }
+}
@@ -24,7 +24,6 @@ import android.util.Log;
 import android.view.MenuItem;
 
 import eu.kalodiodev.customersnote.R;
-import eu.kalodiodev.customersnote.data.Customer;
 import eu.kalodiodev.customersnote.data.CustomersRepository;
 import eu.kalodiodev.customersnote.utils.AppDialog;
 
@@ -38,6 +37,11 @@ public class AddEditCustomerActivity extends AppCompatActivity implements AppDia
 
     private static final String TAG = "AddEditCustomerActivity";
 
+    /**
+     * Id of customer edited, absent to add a new customer
+     */
+    public static final String EXTRA_CUSTOMER_ID = "customerId";
+
     public static final int DIALOG_ID_DELETE = 1;
     public static final int DIALOG_ID_CANCEL_EDIT = 2;
 
@@ -58,15 +62,15 @@ public class AddEditCustomerActivity extends AppCompatActivity implements AppDia
         // Setup AddEditCustomer Fragment
         AddEditCustomerFragment addEditFragment = setupAddEditCustomerFragment();
 
-        Customer customer = selectedCustomer(arguments);
-        createPresenter(customer, addEditFragment);
+        long customerId = selectedCustomerId(arguments);
+        createPresenter(customerId, addEditFragment);
     }
 
-    private Customer selectedCustomer(Bundle arguments) {
+    private long selectedCustomerId(Bundle arguments) {
         if(arguments != null) {
-            return  (Customer) arguments.getSerializable(Customer.class.getSimpleName());
+            return arguments.getLong(EXTRA_CUSTOMER_ID, AddEditCustomerPresenter.NO_CUSTOMER_ID);
         }
-        return null;
+        return AddEditCustomerPresenter.NO_CUSTOMER_ID;
     }
 
     private AddEditCustomerFragment setupAddEditCustomerFragment() {
@@ -84,8 +88,8 @@ public class AddEditCustomerActivity extends AppCompatActivity implements AppDia
         return addEditFragment;
     }
 
-    private void createPresenter(Customer customer, AddEditCustomerFragment fragment) {
-        AddEditCustomerPresenter mAddEditCustomerPresenter = new AddEditCustomerPresenter(customer,
+    private void createPresenter(long customerId, AddEditCustomerFragment fragment) {
+        AddEditCustomerPresenter mAddEditCustomerPresenter = new AddEditCustomerPresenter(customerId,
                 fragment, CustomersRepository.getInstance(getContentResolver()));
 
         fragment.setPresenter(mAddEditCustomerPresenter);
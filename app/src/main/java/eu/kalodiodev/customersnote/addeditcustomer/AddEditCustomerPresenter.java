@@ -26,7 +26,13 @@ import eu.kalodiodev.customersnote.data.ICustomersRepository;
  *
  * @author Athanasios Raptodimos
  */
-public class AddEditCustomerPresenter implements AddEditCustomerContract.Presenter {
+public class AddEditCustomerPresenter implements AddEditCustomerContract.Presenter,
+        ICustomersRepository.GetCustomerCallBack {
+
+    /**
+     * No customer to be read, customer is new or already read
+     */
+    public static final long NO_CUSTOMER_ID = -1;
 
     private ICustomersRepository mCustomersRepository;
 
@@ -34,6 +40,9 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
 
     private Customer mCustomer;
 
+    // Id of customer edited while it is being read, fields are filled once read
+    private long mPendingCustomerId = NO_CUSTOMER_ID;
+
     public AddEditCustomerPresenter(@Nullable Customer customer,
                                     @NonNull AddEditCustomerContract.View view,
                                     @NonNull ICustomersRepository customersRepository) {
@@ -43,6 +52,21 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
         this.mCustomer = customer;
     }
 
+    /**
+     * Presenter of customer to be read by id before it is edited
+     *
+     * @param customerId id of customer edited, {@link #NO_CUSTOMER_ID} to add a new customer
+     * @param view view
+     * @param customersRepository customers repository
+     */
+    public AddEditCustomerPresenter(long customerId,
+                                    @NonNull AddEditCustomerContract.View view,
+                                    @NonNull ICustomersRepository customersRepository) {
+
+        this(null, view, customersRepository);
+        this.mPendingCustomerId = customerId;
+    }
+
     @Override
     public void bind(@NonNull AddEditCustomerContract.View view) {
         this.view = view;
@@ -55,7 +79,10 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
 
     @Override
     public void initializeFields() {
-        if(! isNewCustomer()) {
+        if(isLoading()) {
+            // Fields are filled once customer is read
+            mCustomersRepository.getCustomer(this, mPendingCustomerId);
+        } else if(! isNewCustomer()) {
             view.setFirstName(mCustomer.getFirstName());
             view.setLastName(mCustomer.getLastName());
             view.setProfession(mCustomer.getProfession());
@@ -65,8 +92,35 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
         }
     }
 
+    @Override
+    public void onCustomerLoaded(Customer customer) {
+        if(!isLoading()) {
+            // Read again after a configuration change, already filled
+            return;
+        }
+
+        if(customer == null) {
+            // Customer deleted meanwhile, nothing to edit
+            if(view != null) {
+                view.close();
+            }
+            return;
+        }
+
+        mCustomer = customer;
+        mPendingCustomerId = NO_CUSTOMER_ID;
+        if(view != null) {
+            initializeFields();
+        }
+    }
+
     @Override
     public void save() {
+        if(isLoading()) {
+            // Fields not filled yet, saving them would erase customer
+            return;
+        }
+
         Customer newCustomer = setupCustomerFromFields();
 
         if(newCustomer.getFirstName().isEmpty()) {
@@ -84,11 +138,12 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
                 // Requires confirmation
                 view.showDeleteConfirmation();
             } else {
-                // Confirmation not required or already confirmed
-                mCustomersRepository.delete(this.mCustomer);
-                // Customer deleted, show message
+                // Confirmation not required or already confirmed, deleted on writer thread.
+                // Failure is reported by the repository's write result listeners, view is
+                // closed by then
+                mCustomersRepository.delete(customerToDelete(), null);
                 view.showDeleteCompletedMessage();
-                // Close view
+                // Close view, without waiting for the write
                 view.close();
             }
         }
@@ -104,7 +159,10 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
     }
 
     private boolean canClose() {
-        if(isNewCustomer()) {
+        if(isLoading()) {
+            // Fields not filled yet, nothing changed
+            return true;
+        } else if(isNewCustomer()) {
             // New customer, to close fields must be empty
             return areFieldsEmpty();
         } else {
@@ -141,8 +199,10 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
                 view.getNotes());
 
         if(!isNewCustomer()) {
-            // Not a new customer, setting customer's id for update
+            // Not a new customer, setting customer's id for update, applied only to the
+            // version edited
             newCustomer.setId(this.mCustomer.getId());
+            newCustomer.setVersion(this.mCustomer.getVersion());
         }
 
         return newCustomer;
@@ -152,16 +212,33 @@ public class AddEditCustomerPresenter implements AddEditCustomerContract.Present
         // customer can be saved
         if(isNewCustomer()) {
             // Add new customer
-            mCustomersRepository.save(newCustomer);
+            mCustomersRepository.save(newCustomer, null);
         } else {
             // Update customer
-            mCustomersRepository.update(newCustomer);
+            mCustomersRepository.update(newCustomer, null);
         }
+        // Customer is written on writer thread, view closes without waiting for it. Edit
+        // conflicts and failures are reported by the repository's write result listeners
         view.showSaveCompletedMessage();
         view.close();
     }
 
+    private Customer customerToDelete() {
+        if(mCustomer != null) {
+            return mCustomer;
+        }
+
+        // Not read yet, deleted by id
+        Customer customer = new Customer(null, null, null);
+        customer.setId(mPendingCustomerId);
+        return customer;
+    }
+
     private boolean isNewCustomer() {
-        return this.mCustomer == null;
+        return (this.mCustomer == null) && !isLoading();
+    }
+
+    private boolean isLoading() {
+        return mPendingCustomerId != NO_CUSTOMER_ID;
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
  */
 package eu.kalodiodev.customersnote.customers;
 
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -25,19 +26,39 @@ import android.widget.TextView;
 
 import eu.kalodiodev.customersnote.R;
 import eu.kalodiodev.customersnote.data.Customer;
+import eu.kalodiodev.customersnote.data.source.CustomerPages;
 import eu.kalodiodev.customersnote.data.source.CustomersContract;
+import eu.kalodiodev.customersnote.utils.metrics.SearchMetrics;
 
 /**
  * Cursor - RecyclerView Adapter
  *
+ * <p>Shows either a cursor of customers, or {@link CustomerPages} read as they are
+ * scrolled to</p>
+ *
+ * <p>Binding allocates nothing once holders are warm: column indices are resolved when
+ * a cursor is swapped in, text is copied into buffers of the holder, and a row's customer
+ * is only read when it is clicked</p>
+ *
  * @author Raptodimos Athanasios
  */
-public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecyclerViewAdapter.CustomerViewHolder> {
-    private static final String TAG = "CursorRecyclerViewAdapt";
+public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecyclerViewAdapter.CustomerViewHolder>
+        implements CustomerPages.OnPagesChangedListener {
+
+    // Initial capacity of a holder's text buffers, grown to the longest text bound
+    private static final int TEXT_BUFFER_SIZE = 32;
 
     private Cursor mCursor;
+    private CustomerPages mPages = null;
     private OnCustomerClickListener mListener;
 
+    // Columns of the cursor swapped in. Pages after the first are read with its projection,
+    // their columns are the same
+    private int mIdColumn = -1;
+    private int mFirstNameColumn = -1;
+    private int mLastNameColumn = -1;
+    private int mProfessionColumn = -1;
+
     public interface OnCustomerClickListener {
         void onEditClick(Customer customer);
     }
@@ -55,39 +76,87 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
     @Override
     public CustomerViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.customer_list_item, parent, false);
-        return new CustomerViewHolder(view);
+        final CustomerViewHolder holder = new CustomerViewHolder(view);
+
+        // One listener per holder, customer of the row clicked is read then
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Customer customer = getCustomer(holder.getAdapterPosition());
+                if(customer != null) {
+                    mListener.onEditClick(customer);
+                }
+            }
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(CustomerViewHolder holder, int position) {
-        if((mCursor != null) && (mCursor.getCount() > 0)) {
-            if(!mCursor.moveToPosition(position)) {
-                throw new IllegalStateException("Couldn't move cursor to position " + position);
-            }
+        long bindStart = SearchMetrics.getInstance().now();
+
+        Cursor cursor = moveToPosition(position);
+        if(cursor == null) {
+            // Page is being read, bound again once read
+            holder.firstName.setText(null);
+            holder.lastName.setText(null);
+            holder.profession.setText(null);
+        } else {
+            // Summary of customer shown, customer edited is read in full by id
+            bindText(cursor, mFirstNameColumn, holder.firstNameBuffer, holder.firstName);
+            bindText(cursor, mLastNameColumn, holder.lastNameBuffer, holder.lastName);
+            bindText(cursor, mProfessionColumn, holder.professionBuffer, holder.profession);
+        }
+
+        SearchMetrics.getInstance().onBind(bindStart);
+    }
 
-            final Customer customer = Customer.from(mCursor);
+    /**
+     * Get customer shown at position, summary of list item with its id
+     *
+     * @param position adapter position
+     * @return customer, null if position is gone or its page is being read
+     */
+    Customer getCustomer(int position) {
+        if(position == RecyclerView.NO_POSITION) {
+            return null;
+        }
 
-            // Set customer ID
-            customer.setId(mCursor.getLong(mCursor.getColumnIndex(CustomersContract.Columns._ID)));
+        Cursor cursor = moveToPosition(position);
+        if(cursor == null) {
+            return null;
+        }
 
-            holder.firstName.setText(customer.getFirstName());
-            holder.lastName.setText(customer.getLastName());
-            holder.profession.setText(customer.getProfession());
+        Customer customer = new Customer(cursor.getString(mFirstNameColumn),
+                cursor.getString(mLastNameColumn), cursor.getString(mProfessionColumn));
+        customer.setId(cursor.getLong(mIdColumn));
+        return customer;
+    }
 
-            // Item Click Listener
-            holder.itemView.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    mListener.onEditClick(customer);
-                }
-            });
+    private Cursor moveToPosition(int position) {
+        if(mPages != null) {
+            return mPages.moveToPosition(position);
+        }
+        if((mCursor == null) || (mCursor.getCount() == 0)) {
+            return null;
+        }
+        if(!mCursor.moveToPosition(position)) {
+            throw new IllegalStateException("Couldn't move cursor to position " + position);
         }
+        return mCursor;
+    }
+
+    private static void bindText(Cursor cursor, int column, CharArrayBuffer buffer, TextView textView) {
+        // Copied into the holder's buffer, no string is made
+        cursor.copyStringToBuffer(column, buffer);
+        textView.setText(buffer.data, 0, buffer.sizeCopied);
     }
 
     @Override
     public int getItemCount() {
-        Log.d(TAG, "getItemCount: starts");
-        if((mCursor == null) || (mCursor.getCount() == 0)) {
+        if(mPages != null) {
+            return mPages.getCount();
+        } else if((mCursor == null) || (mCursor.getCount() == 0)) {
             return 0;
         } else {
             return mCursor.getCount();
@@ -103,14 +172,59 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
     * If the given new Cursor is the same instance as the previously set Cursor, null is also returned.
     */
     public Cursor swapCursor(Cursor newCursor) {
-        if(newCursor == mCursor) {
+        return swap(newCursor, null);
+    }
+
+    /**
+     * Swap in new customer pages, returning the old cursor or first page.
+     * Pages swapped out are closed, except their first page.
+     *
+     * @param newPages The new pages to be used
+     * @return The previously set Cursor or first page, or null if there wasn't one.
+     */
+    public Cursor swapPages(CustomerPages newPages) {
+        return swap(newPages.getFirstPage(), newPages);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
+    private Cursor swap(Cursor newCursor, CustomerPages newPages) {
+        if((newCursor == mCursor) && (newPages == mPages)) {
             return null;
         }
 
-        final Cursor oldCursor = mCursor;
+        if(mPages != null) {
+            mPages.setOnPagesChangedListener(null);
+            mPages.close();
+        }
+        mPages = newPages;
+        if(newPages != null) {
+            newPages.setOnPagesChangedListener(this);
+        }
+
+        final Cursor oldCursor = (newCursor == mCursor) ? null : mCursor;
         mCursor = newCursor;
         if(newCursor != null) {
+            mIdColumn = newCursor.getColumnIndexOrThrow(CustomersContract.Columns._ID);
+            mFirstNameColumn = newCursor.getColumnIndexOrThrow(CustomersContract.Columns.CUSTOMERS_FIRST_NAME);
+            mLastNameColumn = newCursor.getColumnIndexOrThrow(CustomersContract.Columns.CUSTOMERS_LAST_NAME);
+            mProfessionColumn = newCursor.getColumnIndexOrThrow(CustomersContract.Columns.CUSTOMERS_PROFESSION);
+
             // notify the observers about the new cursor
+            SearchMetrics.getInstance().onResultsShown();
             notifyDataSetChanged();
         } else {
             // notify the observers about the lack of a data set
@@ -132,6 +246,11 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
         TextView lastName = null;
         TextView profession = null;
 
+        // Text bound, reused by every row the holder shows
+        final CharArrayBuffer firstNameBuffer = new CharArrayBuffer(TEXT_BUFFER_SIZE);
+        final CharArrayBuffer lastNameBuffer = new CharArrayBuffer(TEXT_BUFFER_SIZE);
+        final CharArrayBuffer professionBuffer = new CharArrayBuffer(TEXT_BUFFER_SIZE);
+
         CustomerViewHolder(View itemView) {
             super(itemView);
             Log.d(TAG, "CustomerViewHolder: starts");
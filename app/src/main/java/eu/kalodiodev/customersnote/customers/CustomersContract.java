@@ -18,6 +18,7 @@ package eu.kalodiodev.customersnote.customers;
 import android.database.Cursor;
 
 import eu.kalodiodev.customersnote.data.Customer;
+import eu.kalodiodev.customersnote.data.source.CustomerPages;
 
 /**
  * Customers MVP Contract
@@ -38,6 +39,20 @@ public interface CustomersContract {
          */
         void showCustomers(Cursor customers);
 
+        /**
+         * Show all customers, read a page at a time as they are scrolled to
+         *
+         * @param customerPages pages of customers, first page read
+         */
+        void showCustomerPages(CustomerPages customerPages);
+
+        /**
+         * Show that customers shown are those of a corrected search term
+         *
+         * @param suggestion corrected search term, null to hide
+         */
+        void showSearchSuggestion(String suggestion);
+
         /**
          * Start Edit Customer
          *
@@ -70,6 +85,22 @@ public interface CustomersContract {
          */
         void setQueryText(String searchTerm);
 
+        /**
+         * Set whether search terms are matched anywhere in any customer field, notes included,
+         * instead of the beginning of words
+         *
+         * @param searchEverywhere true to search everywhere
+         */
+        void setSearchEverywhere(boolean searchEverywhere);
+
+        /**
+         * Set whether searches show the best matching customers first, instead of all
+         * matching customers by name
+         *
+         * @param searchRanked true to rank search results
+         */
+        void setSearchRanked(boolean searchRanked);
+
         /**
          * Open Customer edit
          *
@@ -81,5 +112,10 @@ public interface CustomersContract {
          * Open Add Customer
          */
         void addCustomer();
+
+        /**
+         * Stop observing customers, view is going away
+         */
+        void destroy();
     }
 }
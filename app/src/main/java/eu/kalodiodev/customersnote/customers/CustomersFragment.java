@@ -32,10 +32,12 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import eu.kalodiodev.customersnote.R;
 import eu.kalodiodev.customersnote.data.Customer;
 import eu.kalodiodev.customersnote.customers.CustomersContract.Presenter;
+import eu.kalodiodev.customersnote.data.source.CustomerPages;
 
 /**
  * Customers Fragment containing customers list recycler view
@@ -67,7 +69,10 @@ public class CustomersFragment extends Fragment implements SearchView.OnQueryTex
     private static final String TAG = "CustomersFragment";
 
     private CursorRecyclerViewAdapter mAdapter;
+    private TextView mSuggestionView;
     private static String searchQuery = "";
+    private static boolean searchEverywhere = false;
+    private static boolean searchRanked = false;
 
     private Presenter customersPresenter;
 
@@ -89,6 +94,8 @@ public class CustomersFragment extends Fragment implements SearchView.OnQueryTex
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
 
+        this.customersPresenter.setSearchEverywhere(searchEverywhere);
+        this.customersPresenter.setSearchRanked(searchRanked);
         this.customersPresenter.loadCustomers(searchQuery);
     }
 
@@ -104,6 +111,8 @@ public class CustomersFragment extends Fragment implements SearchView.OnQueryTex
         mAdapter = new CursorRecyclerViewAdapter(null, customerClickListener);
         recyclerView.setAdapter(mAdapter);
 
+        mSuggestionView = (TextView) view.findViewById(R.id.customers_suggestion);
+
         Log.d(TAG, "onCreateView: returning");
         setHasOptionsMenu(true);
 
@@ -141,6 +150,28 @@ public class CustomersFragment extends Fragment implements SearchView.OnQueryTex
             searchView.clearFocus();
         }
         searchView.setOnQueryTextListener(this);
+
+        menu.findItem(R.id.menu_search_everywhere).setChecked(searchEverywhere);
+        menu.findItem(R.id.menu_search_ranked).setChecked(searchRanked);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if(item.getItemId() == R.id.menu_search_everywhere) {
+            searchEverywhere = !item.isChecked();
+            item.setChecked(searchEverywhere);
+            customersPresenter.setSearchEverywhere(searchEverywhere);
+            return true;
+        }
+
+        if(item.getItemId() == R.id.menu_search_ranked) {
+            searchRanked = !item.isChecked();
+            item.setChecked(searchRanked);
+            customersPresenter.setSearchRanked(searchRanked);
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
     }
 
     @Override
@@ -167,6 +198,21 @@ public class CustomersFragment extends Fragment implements SearchView.OnQueryTex
         mAdapter.swapCursor(customers);
     }
 
+    @Override
+    public void showCustomerPages(CustomerPages customerPages) {
+        mAdapter.swapPages(customerPages);
+    }
+
+    @Override
+    public void showSearchSuggestion(String suggestion) {
+        if(suggestion == null) {
+            mSuggestionView.setVisibility(View.GONE);
+        } else {
+            mSuggestionView.setText(getString(R.string.search_suggestion, suggestion));
+            mSuggestionView.setVisibility(View.VISIBLE);
+        }
+    }
+
     @Override
     public void showEditCustomer(Customer customer) {
         ((OnAddEditCustomer) getActivity()).onEditCustomer(customer);
@@ -16,14 +16,16 @@
 package eu.kalodiodev.customersnote.customers;
 
 import android.database.Cursor;
-import android.os.Bundle;
 import android.support.annotation.NonNull;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.Loader;
+import android.util.Log;
 
 import eu.kalodiodev.customersnote.data.Customer;
 import eu.kalodiodev.customersnote.data.ICustomersRepository;
-import eu.kalodiodev.customersnote.data.source.LoaderProvider;
+import eu.kalodiodev.customersnote.data.observable.ObservableQuery;
+import eu.kalodiodev.customersnote.data.source.CustomerPages;
+import eu.kalodiodev.customersnote.data.source.CustomersQuery;
+import eu.kalodiodev.customersnote.data.source.QueryProvider;
+import eu.kalodiodev.customersnote.utils.metrics.SearchMetrics;
 
 /**
  * Customers Presenter
@@ -31,18 +33,13 @@ import eu.kalodiodev.customersnote.data.source.LoaderProvider;
  * @author Athanasios Raptodimos
  */
 public class CustomersPresenter implements CustomersContract.Presenter,
-        LoaderManager.LoaderCallbacks<Cursor>, ICustomersRepository.GetCustomersCallBack {
-
-    /**
-     * Customers Loader ID
-     */
-    private final static int CUSTOMERS_LOADER = 1;
-
-    @NonNull
-    private final LoaderProvider mLoaderProvider;
+        ICustomersRepository.GetCustomersCallBack,
+        ICustomersRepository.GetSearchSuggestionCallBack, SearchScheduler.OnSearchListener,
+        ICustomersRepository.OnCustomerChangedListener {
+    private static final String TAG = "CustomersPresenter";
 
     @NonNull
-    private final LoaderManager mLoaderManager;
+    private final QueryProvider mQueryProvider;
 
     @NonNull
     private final CustomersContract.View view;
@@ -50,24 +47,92 @@ public class CustomersPresenter implements CustomersContract.Presenter,
     @NonNull
     private final ICustomersRepository mCustomersRepository;
 
+    @NonNull
+    private final SearchScheduler mSearchScheduler;
+
     private String searchTerm = "";
 
+    private boolean searchEverywhere = false;
+
+    private boolean searchRanked = false;
+
+    // Search term shown in place of a misspelled one finding no customers
+    private String suggestedTerm = null;
+
+    // Pages of all customers shown, null while search results are shown
+    private CustomerPages mCustomerPages = null;
+
+    // Query of current search term, and query whose customers are shown until it delivers
+    private CustomersObserver mObserver = null;
+    private CustomersObserver mShownObserver = null;
+
+    /**
+     * Observer of the customers query of a search term
+     */
+    private final class CustomersObserver implements ObservableQuery.Observer<Cursor> {
+
+        @NonNull
+        private final ObservableQuery<Cursor> mQuery;
+
+        private ObservableQuery.Subscription mSubscription = null;
+
+        CustomersObserver(@NonNull ObservableQuery<Cursor> query) {
+            this.mQuery = query;
+        }
+
+        void subscribe() {
+            mSubscription = mQuery.subscribe(this);
+        }
+
+        void unsubscribe() {
+            if(mSubscription != null) {
+                mSubscription.unsubscribe();
+                mSubscription = null;
+            }
+        }
+
+        @Override
+        public void onNext(Cursor data) {
+            if(this == mObserver) {
+                showCustomers((CustomersQuery) mQuery.getSource(), data, true);
+
+                // Customers of the previous query are no longer shown, its cursor is released
+                if((mShownObserver != null) && (mShownObserver != this)) {
+                    mShownObserver.unsubscribe();
+                }
+                mShownObserver = this;
+            } else if(this == mShownObserver) {
+                // Customers shown changed while a new search loads, the cursor they replace
+                // is released once delivered
+                showCustomers((CustomersQuery) mQuery.getSource(), data, false);
+            }
+        }
+
+        @Override
+        public void onError(RuntimeException error) {
+            Log.e(TAG, "onError: customers query failed", error);
+        }
+    }
+
     /**
      * Customers Presenter
      *
-     * @param loaderProvider content provider loader
-     * @param loaderManager loader manager
+     * @param queryProvider provider of observable customer queries
      * @param view activity or fragment that implements {@link CustomersContract.View}
+     * @param customersRepository customers repository
+     * @param searchScheduler scheduler coalescing search terms typed
      */
-    public CustomersPresenter(@NonNull LoaderProvider loaderProvider,
-                              @NonNull LoaderManager loaderManager,
+    public CustomersPresenter(@NonNull QueryProvider queryProvider,
                               @NonNull CustomersContract.View view,
-                              @NonNull ICustomersRepository customersRepository) {
+                              @NonNull ICustomersRepository customersRepository,
+                              @NonNull SearchScheduler searchScheduler) {
 
-        this.mLoaderProvider = loaderProvider;
-        this.mLoaderManager = loaderManager;
+        this.mQueryProvider = queryProvider;
         this.mCustomersRepository = customersRepository;
+        this.mSearchScheduler = searchScheduler;
         this.view = view;
+
+        this.mSearchScheduler.setOnSearchListener(this);
     }
 
     @Override
@@ -78,36 +143,124 @@ public class CustomersPresenter implements CustomersContract.Presenter,
     @Override
     public void onLoadCustomers(String searchTerm) {
         // Set search term
-        this.searchTerm = searchTerm;
+        this.searchTerm = searchTerm == null ? "" : searchTerm;
+
+        if((suggestedTerm != null) && !suggestedTerm.equals(this.searchTerm)) {
+            // New search term typed, suggestion no longer applies
+            suggestedTerm = null;
+            view.showSearchSuggestion(null);
+        }
 
-        if(mLoaderManager.getLoader(CUSTOMERS_LOADER) == null) {
-            // Loader does not exist, start new loader
-            mLoaderManager.initLoader(CUSTOMERS_LOADER, new Bundle(), this);
+        // Identical query observed already is shared, its load in flight or latest customers
+        CustomersObserver superseded = mObserver;
+        mObserver = new CustomersObserver(mQueryProvider.createCustomersQuery(this.searchTerm,
+                searchEverywhere, searchRanked));
+        mObserver.subscribe();
+
+        if((superseded != null) && (superseded != mShownObserver)) {
+            // Superseded before its customers were shown, its load is cancelled
+            superseded.unsubscribe();
+        }
+    }
+
+    private void showCustomers(CustomersQuery query, Cursor data, boolean current) {
+        if((data != null) && query.isPaged()) {
+            // First page of all customers, following pages are read as they are scrolled to
+            mCustomerPages = mQueryProvider.createCustomerPages(data);
+            mCustomersRepository.addOnCustomerChangedListener(this);
+            view.showCustomerPages(mCustomerPages);
         } else {
-            // Loader exists, restart
-            mLoaderManager.restartLoader(CUSTOMERS_LOADER, new Bundle(), this);
+            mCustomerPages = null;
+            view.showCustomers(data);
+        }
+
+        if(current && (data != null) && (data.getCount() == 0) && !searchTerm.trim().isEmpty() &&
+                (suggestedTerm == null)) {
+            // Nothing found, search term may be misspelled
+            mCustomersRepository.getSearchSuggestion(this, searchTerm);
         }
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return mLoaderProvider.createCustomerLoader(LoaderProvider.LOADER_ID, searchTerm);
+    public void onSearchSuggestion(String searchTerm, String suggestion) {
+        if((suggestion == null) || !searchTerm.equals(this.searchTerm)) {
+            // No correction, or user kept typing meanwhile
+            return;
+        }
+
+        // Fall back to customers of corrected search term
+        suggestedTerm = suggestion;
+        view.showSearchSuggestion(suggestion);
+        loadCustomers(suggestion);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        view.showCustomers(data);
+    public void destroy() {
+        mSearchScheduler.cancel();
+        mCustomerPages = null;
+        mCustomersRepository.removeOnCustomerChangedListener(this);
+        view.showCustomers(null);
+
+        // Cursors shown are released once no longer observed
+        if(mObserver != null) {
+            mObserver.unsubscribe();
+            mObserver = null;
+        }
+        if(mShownObserver != null) {
+            mShownObserver.unsubscribe();
+            mShownObserver = null;
+        }
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        view.showCustomers(null);
+    public void onCustomerChanged(long customerId, String operation) {
+        if(mCustomerPages == null) {
+            // Search results are loaded again by their query
+            return;
+        }
+
+        // Only the rows of the changed customer are updated, instead of all customers reloaded
+        if(!mCustomerPages.applyChange(customerId, operation) && (mShownObserver != null)) {
+            mShownObserver.mQuery.invalidate();
+        }
     }
 
     @Override
     public void setQueryText(String searchTerm) {
-        this.searchTerm = searchTerm;
+        SearchMetrics.getInstance().onQueryText();
 
+        // Load once typing settles, query of the previous term is cancelled
+        mSearchScheduler.schedule(searchTerm, mObserver != null ? mObserver.mQuery : null);
+    }
+
+    @Override
+    public void setSearchEverywhere(boolean searchEverywhere) {
+        if(this.searchEverywhere == searchEverywhere) {
+            return;
+        }
+        this.searchEverywhere = searchEverywhere;
+
+        if(mObserver != null) {
+            // Search again with current search term
+            loadCustomers(searchTerm);
+        }
+    }
+
+    @Override
+    public void setSearchRanked(boolean searchRanked) {
+        if(this.searchRanked == searchRanked) {
+            return;
+        }
+        this.searchRanked = searchRanked;
+
+        if(mObserver != null) {
+            // Search again with current search term
+            loadCustomers(searchTerm);
+        }
+    }
+
+    @Override
+    public void onSearch(String searchTerm) {
         loadCustomers(searchTerm);
     }
 
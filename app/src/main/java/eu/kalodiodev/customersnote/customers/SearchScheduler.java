@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.customers;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import eu.kalodiodev.customersnote.data.observable.ObservableQuery;
+
+/**
+ * Search Scheduler
+ *
+ * <p>Coalesces search terms typed within the delay window into a single search.
+ * A new term cancels the load still running for a superseded term</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class SearchScheduler {
+    private static final String TAG = "SearchScheduler";
+
+    /**
+     * On Search Listener, called once the search term settles
+     */
+    public interface OnSearchListener {
+
+        /**
+         * Search customers
+         *
+         * @param searchTerm latest search term
+         */
+        void onSearch(String searchTerm);
+    }
+
+    @NonNull
+    private final Handler mHandler;
+
+    private final long mDelayMillis;
+
+    private OnSearchListener mListener;
+
+    private String mPendingSearchTerm;
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String searchTerm = mPendingSearchTerm;
+            mPendingSearchTerm = null;
+
+            if(mListener != null) {
+                mListener.onSearch(searchTerm);
+            }
+        }
+    };
+
+    /**
+     * Search Scheduler Constructor
+     *
+     * @param handler handler of the thread searches are delivered on
+     * @param delayMillis delay window, terms typed within it are coalesced
+     */
+    public SearchScheduler(@NonNull Handler handler, long delayMillis) {
+        this.mHandler = handler;
+        this.mDelayMillis = delayMillis;
+    }
+
+    /**
+     * Set listener to be called when a search is due
+     *
+     * @param listener on search listener
+     */
+    public void setOnSearchListener(@Nullable OnSearchListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Schedule search, replacing the search still waiting for the delay window
+     *
+     * @param searchTerm new search term
+     * @param inFlightQuery query possibly loading the customers of the superseded term
+     */
+    public void schedule(String searchTerm, @Nullable ObservableQuery<?> inFlightQuery) {
+        mHandler.removeCallbacks(mSearchRunnable);
+
+        // Query cancels its load, the CancellationSignal of which aborts the SQLite query
+        if((inFlightQuery != null) && inFlightQuery.cancelLoad()) {
+            Log.d(TAG, "schedule: cancelled query of superseded search term");
+        }
+
+        mPendingSearchTerm = searchTerm;
+        mHandler.postDelayed(mSearchRunnable, mDelayMillis);
+    }
+
+    /**
+     * Cancel search waiting for the delay window
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mPendingSearchTerm = null;
+    }
+}
@@ -22,6 +22,8 @@ import android.support.annotation.NonNull;
 import java.io.Serializable;
 
 import eu.kalodiodev.customersnote.data.source.CustomersContract;
+import eu.kalodiodev.customersnote.data.source.PhoneNumberKey;
+import eu.kalodiodev.customersnote.data.source.SearchKey;
 
 /**
  * Customer Model
@@ -178,7 +180,17 @@ public class Customer implements Serializable{
         values.put(CustomersContract.Columns.CUSTOMERS_LAST_NAME, this.getLastName());
         values.put(CustomersContract.Columns.CUSTOMERS_PROFESSION, this.getProfession());
         values.put(CustomersContract.Columns.CUSTOMERS_COMPANY_NAME, this.getCompanyName());
+        values.put(CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY,
+                SearchKey.from(this.getFirstName()));
+        values.put(CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY,
+                SearchKey.from(this.getLastName()));
+        values.put(CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY,
+                SearchKey.from(this.getProfession()));
+        values.put(CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY,
+                SearchKey.from(this.getCompanyName()));
         values.put(CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER, this.getPhoneNumber());
+        values.put(CustomersContract.Columns.CUSTOMERS_PHONE_KEY,
+                PhoneNumberKey.from(this.getPhoneNumber()));
         values.put(CustomersContract.Columns.CUSTOMERS_NOTES, this.getNotes());
 
         return values;
@@ -191,7 +203,7 @@ public class Customer implements Serializable{
      * @return customer
      */
     public static Customer from(@NonNull Cursor cursor) {
-        return new Customer(
+        Customer customer = new Customer(
                 cursor.getString(cursor.getColumnIndex(CustomersContract.Columns.CUSTOMERS_FIRST_NAME)),
                 cursor.getString(cursor.getColumnIndex(CustomersContract.Columns.CUSTOMERS_LAST_NAME)),
                 cursor.getString(cursor.getColumnIndex(CustomersContract.Columns.CUSTOMERS_PROFESSION)),
@@ -199,12 +211,31 @@ public class Customer implements Serializable{
                 cursor.getString(cursor.getColumnIndex(CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER)),
                 cursor.getString(cursor.getColumnIndex(CustomersContract.Columns.CUSTOMERS_NOTES)));
 
+        // Version read is the one customer's update is expected to replace
+        int versionIndex = cursor.getColumnIndex(CustomersContract.Columns.CUSTOMERS_VERSION);
+        if(versionIndex >= 0) {
+            customer.setVersion(cursor.getInt(versionIndex));
+        }
+        return customer;
+    }
+
+    /**
+     * Convert customer to content values of its update, applied only if the customer is
+     * still at the version read
+     *
+     * @return customer content values, with version expected
+     */
+    public ContentValues toUpdateValues() {
+        ContentValues values = toContentValues();
+        values.put(CustomersContract.Columns.CUSTOMERS_VERSION, this.getVersion());
+        return values;
     }
 
     @Override
     public String toString() {
         return "Customer{" +
                 "id=" + id +
+                ", version=" + version +
                 ", firstName='" + firstName + '\'' +
                 ", lastName='" + lastName + '\'' +
                 ", profession='" + profession + '\'' +
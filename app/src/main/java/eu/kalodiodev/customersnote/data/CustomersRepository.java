@@ -16,10 +16,22 @@
 package eu.kalodiodev.customersnote.data;
 
 import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import eu.kalodiodev.customersnote.data.source.CustomerWriteBuffer;
 import eu.kalodiodev.customersnote.data.source.CustomersContract;
+import eu.kalodiodev.customersnote.data.source.NameFuzzyIndex;
 
 /**
  * Customers Repository
@@ -27,10 +39,40 @@ import eu.kalodiodev.customersnote.data.source.CustomersContract;
  * @author Athanasios Raptodimos
  */
 public class CustomersRepository implements ICustomersRepository {
-
     private static CustomersRepository INSTANCE = null;
     private final ContentResolver mContentResolver;
 
+    // Customers opened are read off the main thread
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final List<OnCustomerChangedListener> mChangedListeners = new ArrayList<>();
+
+    // Listeners of write results, added and notified on main thread
+    private final List<OnWriteResultListener> mWriteResultListeners = new ArrayList<>();
+
+    // Registered while there are listeners, notified on main thread
+    private final ContentObserver mChangeObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Change without uri is of the whole table
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            String operation = uri != null ? CustomersContract.getOperation(uri) : null;
+            if(operation == null) {
+                return;
+            }
+
+            long customerId = CustomersContract.getCustomerId(uri);
+            for(OnCustomerChangedListener listener : new ArrayList<>(mChangedListeners)) {
+                listener.onCustomerChanged(customerId, operation);
+            }
+        }
+    };
+
     // Prevent direct instantiation
     private CustomersRepository(@NonNull ContentResolver contentResolver) {
         this.mContentResolver = contentResolver;
@@ -52,6 +94,198 @@ public class CustomersRepository implements ICustomersRepository {
         callback.onLoadCustomers(searchTerm);
     }
 
+    @Override
+    public void getCustomer(@NonNull final GetCustomerCallBack callback, final long customerId) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Customer customer = readCustomer(customerId);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCustomerLoaded(customer);
+                    }
+                });
+            }
+        });
+    }
+
+    private Customer readCustomer(long customerId) {
+        Cursor cursor = mContentResolver.query(CustomersContract.buildCustomerUri(customerId),
+                null, null, null, null);
+        if(cursor == null) {
+            return null;
+        }
+
+        try {
+            if(!cursor.moveToFirst()) {
+                return null;
+            }
+            Customer customer = Customer.from(cursor);
+            customer.setId(customerId);
+            return customer;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void getSearchSuggestion(@NonNull final GetSearchSuggestionCallBack callback,
+                                    String searchTerm) {
+        NameFuzzyIndex.getInstance(mContentResolver).suggest(searchTerm == null ? "" : searchTerm,
+                new NameFuzzyIndex.SuggestionCallback() {
+                    @Override
+                    public void onSuggestion(String searchQuery, String suggestion) {
+                        callback.onSearchSuggestion(searchQuery, suggestion);
+                    }
+                });
+    }
+
+    @Override
+    public void addOnCustomerChangedListener(@NonNull OnCustomerChangedListener listener) {
+        if(mChangedListeners.isEmpty()) {
+            mContentResolver.registerContentObserver(CustomersContract.CONTENT_URI, true,
+                    mChangeObserver);
+        }
+        if(!mChangedListeners.contains(listener)) {
+            mChangedListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeOnCustomerChangedListener(@NonNull OnCustomerChangedListener listener) {
+        if(mChangedListeners.remove(listener) && mChangedListeners.isEmpty()) {
+            mContentResolver.unregisterContentObserver(mChangeObserver);
+        }
+    }
+
+    @Override
+    public void addOnWriteResultListener(@NonNull OnWriteResultListener listener) {
+        if(!mWriteResultListeners.contains(listener)) {
+            mWriteResultListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeOnWriteResultListener(@NonNull OnWriteResultListener listener) {
+        mWriteResultListeners.remove(listener);
+    }
+
+    @Override
+    public void save(@NonNull final Customer customer,
+                     @Nullable final SaveCustomerCallBack callback) {
+        writeBuffer().insert(customer.toContentValues(), new CustomerWriteBuffer.OnWrittenListener() {
+            @Override
+            public void onWritten(final Uri customerUri, int count) {
+                if(callback == null) {
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCustomerSaved(customerUri);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(final RuntimeException error) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(callback != null) {
+                            callback.onSaveFailed(error);
+                        }
+                        notifyWriteFailed(error);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void update(@NonNull Customer customer, @Nullable WriteCustomerCallBack callback) {
+        writeBuffer().update(customer.getId(), customer.toUpdateValues(),
+                new WrittenListener(customer.getId(), false, callback));
+    }
+
+    @Override
+    public void delete(@NonNull Customer customer, @Nullable WriteCustomerCallBack callback) {
+        writeBuffer().delete(customer.getId(),
+                new WrittenListener(customer.getId(), true, callback));
+    }
+
+    @Override
+    public void flushPendingWrites() {
+        writeBuffer().flush();
+    }
+
+    // Customers are written off the main thread, one batch at a time in the order they are
+    // made, a slow disk or a database locked by a backup never holds up the UI
+    private CustomerWriteBuffer writeBuffer() {
+        return CustomerWriteBuffer.getInstance(mContentResolver);
+    }
+
+    private void notifyEditConflict(long customerId) {
+        for(OnWriteResultListener listener : new ArrayList<>(mWriteResultListeners)) {
+            listener.onEditConflict(customerId);
+        }
+    }
+
+    private void notifyWriteFailed(RuntimeException error) {
+        for(OnWriteResultListener listener : new ArrayList<>(mWriteResultListeners)) {
+            listener.onWriteFailed(error);
+        }
+    }
+
+    /**
+     * Result of a write on the writer thread, delivered to its callback and to write result
+     * listeners on main thread
+     */
+    private class WrittenListener implements CustomerWriteBuffer.OnWrittenListener {
+
+        private final long mCustomerId;
+
+        // Customer deleted meanwhile is not deleted again, nothing written is no conflict
+        private final boolean mDelete;
+
+        private final WriteCustomerCallBack mCallback;
+
+        WrittenListener(long customerId, boolean delete, WriteCustomerCallBack callback) {
+            this.mCustomerId = customerId;
+            this.mDelete = delete;
+            this.mCallback = callback;
+        }
+
+        @Override
+        public void onWritten(Uri customerUri, final int count) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(mCallback != null) {
+                        mCallback.onCustomerWritten(count);
+                    }
+                    if((count == 0) && !mDelete) {
+                        notifyEditConflict(mCustomerId);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onFailed(final RuntimeException error) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(mCallback != null) {
+                        mCallback.onWriteFailed(error);
+                    }
+                    notifyWriteFailed(error);
+                }
+            });
+        }
+    }
+
     @Override
     public Uri save(Customer customer) {
         return mContentResolver.insert(CustomersContract.CONTENT_URI, customer.toContentValues());
@@ -60,7 +294,7 @@ public class CustomersRepository implements ICustomersRepository {
     @Override
     public int update(Customer customer) {
         return mContentResolver.update(CustomersContract
-                .buildCustomerUri(customer.getId()), customer.toContentValues(), null, null);
+                .buildCustomerUri(customer.getId()), customer.toUpdateValues(), null, null);
     }
 
     @Override
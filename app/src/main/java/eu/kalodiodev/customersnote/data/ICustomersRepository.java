@@ -17,6 +17,8 @@ package eu.kalodiodev.customersnote.data;
 
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
 /**
  * Customers Repository Contract
@@ -36,6 +38,112 @@ public interface ICustomersRepository {
         void onLoadCustomers(String searchTerm);
 
     }
+
+    /**
+     * Get Search Suggestion Callback, called on main thread
+     */
+    interface GetSearchSuggestionCallBack {
+
+        /**
+         * On search suggestion
+         *
+         * @param searchTerm search term corrected
+         * @param suggestion corrected search term, null if no correction was found
+         */
+        void onSearchSuggestion(String searchTerm, String suggestion);
+    }
+
+    /**
+     * Get Customer Callback, called on main thread
+     */
+    interface GetCustomerCallBack {
+
+        /**
+         * On customer loaded
+         *
+         * @param customer customer with all its fields, null if customer no longer exists
+         */
+        void onCustomerLoaded(Customer customer);
+    }
+
+    /**
+     * Save Customer Callback, called on main thread
+     */
+    interface SaveCustomerCallBack {
+
+        /**
+         * On customer saved
+         *
+         * @param customerUri uri of new customer
+         */
+        void onCustomerSaved(Uri customerUri);
+
+        /**
+         * On customer not saved
+         *
+         * @param error error saving customer
+         */
+        void onSaveFailed(RuntimeException error);
+    }
+
+    /**
+     * Write Customer Callback, of customer updated or deleted, called on main thread
+     */
+    interface WriteCustomerCallBack {
+
+        /**
+         * On customer written
+         *
+         * @param count number of rows affected, 0 if customer no longer exists or, of an
+         *              update, if customer was changed since its version was read
+         */
+        void onCustomerWritten(int count);
+
+        /**
+         * On customer not written
+         *
+         * @param error error writing customer
+         */
+        void onWriteFailed(RuntimeException error);
+    }
+
+    /**
+     * On Customer Changed Listener, called on main thread
+     */
+    interface OnCustomerChangedListener {
+
+        /**
+         * On customer changed, by a write of this single customer
+         *
+         * @param customerId id of changed customer
+         * @param operation insert, update or delete, see
+         *                  {@link eu.kalodiodev.customersnote.data.source.CustomersContract#OPERATION_INSERT}
+         */
+        void onCustomerChanged(long customerId, String operation);
+    }
+
+    /**
+     * On Write Result Listener, of customers written after their editor was closed, called
+     * on main thread. Outlives editors, so that edits not saved are still reported
+     */
+    interface OnWriteResultListener {
+
+        /**
+         * On edit conflict, customer changed or deleted elsewhere since it was read, its
+         * update was not written
+         *
+         * @param customerId id of customer not updated
+         */
+        void onEditConflict(long customerId);
+
+        /**
+         * On customer not saved, updated or deleted
+         *
+         * @param error error writing customer
+         */
+        void onWriteFailed(RuntimeException error);
+    }
+
     /**
      * Get Customers
      *
@@ -45,25 +153,106 @@ public interface ICustomersRepository {
     void getCustomers(@NonNull GetCustomersCallBack callback, String searchTerm);
 
     /**
-     * Save Customer
+     * Get Customer, read in full on a background thread
+     *
+     * @param callback getting customer callback
+     * @param customerId id of customer
+     */
+    void getCustomer(@NonNull GetCustomerCallBack callback, long customerId);
+
+    /**
+     * Get search term correcting misspelled customer names
+     *
+     * @param callback getting suggestion callback
+     * @param searchTerm search term to correct
+     */
+    void getSearchSuggestion(@NonNull GetSearchSuggestionCallBack callback, String searchTerm);
+
+    /**
+     * Listen to changes of single customers. Changes of many customers at once are not
+     * reported, loaders of customers reload on them
+     *
+     * @param listener listener
+     */
+    void addOnCustomerChangedListener(@NonNull OnCustomerChangedListener listener);
+
+    /**
+     * Stop listening to changes of single customers
+     *
+     * @param listener listener added
+     */
+    void removeOnCustomerChangedListener(@NonNull OnCustomerChangedListener listener);
+
+    /**
+     * Listen to results of customers written, edit conflicts and failures of every save,
+     * update and delete
+     *
+     * @param listener listener
+     */
+    void addOnWriteResultListener(@NonNull OnWriteResultListener listener);
+
+    /**
+     * Stop listening to results of customers written
+     *
+     * @param listener listener added
+     */
+    void removeOnWriteResultListener(@NonNull OnWriteResultListener listener);
+
+    /**
+     * Save Customer, on the writer thread. Writes are applied in the order they are made
      *
      * @param customer customer to save
+     * @param callback saving customer callback, null if result is not needed
      */
+    void save(@NonNull Customer customer, @Nullable SaveCustomerCallBack callback);
+
+    /**
+     * Update Customer, written behind on the writer thread. Updates and deletes of a
+     * customer made close together are written once, reads see them at once. Customer
+     * changed since its version was read is not updated, 0 rows are written then
+     *
+     * @param customer customer to be updated
+     * @param callback writing customer callback, null if result is not needed
+     */
+    void update(@NonNull Customer customer, @Nullable WriteCustomerCallBack callback);
+
+    /**
+     * Delete Customer, written behind on the writer thread
+     *
+     * @param customer customer to be deleted
+     * @param callback writing customer callback, null if result is not needed
+     */
+    void delete(@NonNull Customer customer, @Nullable WriteCustomerCallBack callback);
+
+    /**
+     * Write updates and deletes held behind now, without waiting for them e.g. when the app
+     * leaves the foreground or memory runs low
+     */
+    void flushPendingWrites();
+
+    /**
+     * Save Customer, blocking the calling thread
+     *
+     * @param customer customer to save
+     */
+    @WorkerThread
     Uri save(Customer customer);
 
     /**
-     * Update Customer
+     * Update Customer, blocking the calling thread
      *
      * @param customer customer to be updated
-     * @return number of rows affected
+     * @return number of rows affected, 0 if customer changed since its version was read
      */
+    @WorkerThread
     int update(Customer customer);
 
     /**
-     * Delete Customer
+     * Delete Customer, blocking the calling thread
      *
      * @param customer customer to be deleted
      * @return number of rows affected
      */
+    @WorkerThread
     int delete(Customer customer);
 }
\ No newline at end of file
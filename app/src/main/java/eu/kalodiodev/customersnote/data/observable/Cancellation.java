@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.observable;
+
+/**
+ * Cancellation
+ *
+ * <p>Cancellation of a single load of a {@link QuerySource}. Sources pass it on to whatever
+ * runs the query, e.g. a CancellationSignal aborting the SQLite statement</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class Cancellation {
+
+    /**
+     * On Cancel Listener, called on the thread cancelling the load
+     */
+    public interface OnCancelListener {
+
+        /**
+         * Load has been cancelled
+         */
+        void onCancel();
+    }
+
+    private boolean mCanceled = false;
+
+    private OnCancelListener mListener = null;
+
+    /**
+     * Cancel load, listener set is called once
+     */
+    public void cancel() {
+        OnCancelListener listener;
+        synchronized (this) {
+            if(mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            listener = mListener;
+        }
+        if(listener != null) {
+            listener.onCancel();
+        }
+    }
+
+    /**
+     * Whether load has been cancelled
+     *
+     * @return true if cancelled, its result is never delivered
+     */
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Set listener to be called on cancel, at once if already cancelled
+     *
+     * @param listener on cancel listener
+     */
+    public void setOnCancelListener(OnCancelListener listener) {
+        synchronized (this) {
+            mListener = listener;
+            if(!mCanceled) {
+                return;
+            }
+        }
+        if(listener != null) {
+            listener.onCancel();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.observable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Invalidation Tracker
+ *
+ * <p>Maps tables to the {@link ObservableQuery observable queries} reading them while they
+ * are observed, a table invalidated loads its queries again. Queries of the same key are
+ * shared: identical subscribers get one query, one load in flight and one result</p>
+ *
+ * <p>Tables are names the queries and their invalidations agree on, not necessarily
+ * database tables e.g. a table may stand for the pages of a list</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class InvalidationTracker {
+
+    private final Executor mQueryExecutor;
+    private final Executor mDeliveryExecutor;
+
+    // Queries by key, guarded by this
+    private final Map<String, ObservableQuery<?>> mQueries = new HashMap<>();
+
+    // Observed queries by table read, guarded by this
+    private final Map<String, Set<ObservableQuery<?>>> mObserved = new HashMap<>();
+
+    /**
+     * Invalidation Tracker Constructor
+     *
+     * @param queryExecutor executor queries are loaded on
+     * @param deliveryExecutor executor results are delivered on, e.g. the main thread's
+     */
+    public InvalidationTracker(Executor queryExecutor, Executor deliveryExecutor) {
+        this.mQueryExecutor = queryExecutor;
+        this.mDeliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Query of key, the one already made for the key if there is one
+     *
+     * @param key key of query, identical for identical queries
+     * @param tables tables query reads, invalidating any of them loads it again
+     * @param source source query is loaded from, unused if query of key exists
+     * @param <T> result type, the same for every query of a key
+     * @return observable query
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> ObservableQuery<T> query(String key, String[] tables, QuerySource<T> source) {
+        ObservableQuery<?> query = mQueries.get(key);
+        if(query == null) {
+            query = new ObservableQuery<>(this, key, tables.clone(), source,
+                    mQueryExecutor, mDeliveryExecutor);
+            mQueries.put(key, query);
+        }
+        return (ObservableQuery<T>) query;
+    }
+
+    /**
+     * Load again observed queries reading any of the tables
+     *
+     * @param tables tables changed
+     */
+    public void invalidate(String... tables) {
+        Set<ObservableQuery<?>> invalidated = new HashSet<>();
+        synchronized (this) {
+            for(String table : tables) {
+                Set<ObservableQuery<?>> queries = mObserved.get(table);
+                if(queries != null) {
+                    invalidated.addAll(queries);
+                }
+            }
+        }
+
+        // Queries lock themselves, never within the tracker's lock
+        for(ObservableQuery<?> query : invalidated) {
+            query.invalidate();
+        }
+    }
+
+    /**
+     * Number of queries observed
+     *
+     * @return queries observed, of any table
+     */
+    public synchronized int getObservedCount() {
+        Set<ObservableQuery<?>> observed = new HashSet<>();
+        for(Set<ObservableQuery<?>> queries : mObserved.values()) {
+            observed.addAll(queries);
+        }
+        return observed.size();
+    }
+
+    synchronized void activate(ObservableQuery<?> query) {
+        if(!mQueries.containsKey(query.getKey())) {
+            mQueries.put(query.getKey(), query);
+        }
+        for(String table : query.getTables()) {
+            Set<ObservableQuery<?>> queries = mObserved.get(table);
+            if(queries == null) {
+                queries = new HashSet<>();
+                mObserved.put(table, queries);
+            }
+            queries.add(query);
+        }
+    }
+
+    synchronized void deactivate(ObservableQuery<?> query) {
+        if(mQueries.get(query.getKey()) == query) {
+            mQueries.remove(query.getKey());
+        }
+
+        List<String> unobserved = new ArrayList<>();
+        for(String table : query.getTables()) {
+            Set<ObservableQuery<?>> queries = mObserved.get(table);
+            if((queries != null) && queries.remove(query) && queries.isEmpty()) {
+                unobserved.add(table);
+            }
+        }
+        for(String table : unobserved) {
+            mObserved.remove(table);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.observable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Observable Query
+ *
+ * <p>Stream of results of a query, loaded while it is observed: once on first subscription
+ * and again whenever {@link InvalidationTracker} invalidates a table it reads. Observers
+ * subscribed to it share its load in flight and its latest result, a late subscriber is
+ * given the latest result at once</p>
+ *
+ * <p>Latest result wins. Invalidations made while a load runs are coalesced into one load
+ * after it, and a result not yet delivered is replaced by a newer one, released
+ * undelivered. Results are owned by the query: a result is released once a newer one has
+ * been delivered, or once the last observer unsubscribes, cancelling the load in flight</p>
+ *
+ * <p>Queries run on the tracker's query executor, observers are called on its delivery
+ * executor, never with a lock held</p>
+ *
+ * @param <T> result type
+ * @author Athanasios Raptodimos
+ */
+public final class ObservableQuery<T> {
+
+    /**
+     * Observer of query results, called on the delivery executor
+     *
+     * @param <T> result type
+     */
+    public interface Observer<T> {
+
+        /**
+         * New result, valid until a newer one is delivered or observer unsubscribes
+         *
+         * @param result result loaded
+         */
+        void onNext(T result);
+
+        /**
+         * Query failed, a later invalidation loads it again
+         *
+         * @param error error of load
+         */
+        void onError(RuntimeException error);
+    }
+
+    /**
+     * Subscription of an observer
+     */
+    public interface Subscription {
+
+        /**
+         * Stop observing, last observer leaving releases the query's results
+         */
+        void unsubscribe();
+    }
+
+    /**
+     * Outcome of a load, waiting for delivery
+     */
+    private static final class Outcome<T> {
+        final T result;
+        final RuntimeException error;
+
+        Outcome(T result, RuntimeException error) {
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    private final InvalidationTracker mTracker;
+    private final String mKey;
+    private final String[] mTables;
+    private final QuerySource<T> mSource;
+    private final Executor mQueryExecutor;
+    private final Executor mDeliveryExecutor;
+
+    // Guarded by this
+    private final List<Observer<T>> mObservers = new ArrayList<>();
+    private boolean mHasLatest = false;
+    private T mLatest = null;
+    // Loaded, not delivered yet
+    private Outcome<T> mPending = null;
+    private Cancellation mRunning = null;
+    // Latest result is no longer current, query is loaded again unless paused
+    private boolean mStale = true;
+    // Load cancelled, not loaded again until invalidated or subscribed to
+    private boolean mPaused = false;
+    // Raised once no longer observed, loads of earlier generations are released
+    private int mGeneration = 0;
+
+    private final Runnable mDeliver = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    ObservableQuery(InvalidationTracker tracker, String key, String[] tables, QuerySource<T> source,
+                    Executor queryExecutor, Executor deliveryExecutor) {
+        this.mTracker = tracker;
+        this.mKey = key;
+        this.mTables = tables;
+        this.mSource = source;
+        this.mQueryExecutor = queryExecutor;
+        this.mDeliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Key of query, identical queries share one key
+     *
+     * @return key
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Source query is loaded from
+     *
+     * @return query source
+     */
+    public QuerySource<T> getSource() {
+        return mSource;
+    }
+
+    String[] getTables() {
+        return mTables;
+    }
+
+    /**
+     * Observe results. Query is loaded if it is not already, observer is given the latest
+     * result first if there is one, possibly before this returns when delivered directly
+     *
+     * @param observer observer
+     * @return subscription, to stop observing
+     */
+    public Subscription subscribe(final Observer<T> observer) {
+        Runnable delivery = null;
+        Runnable load;
+        synchronized (this) {
+            if(mObservers.isEmpty()) {
+                mTracker.activate(this);
+            }
+            mObservers.add(observer);
+            mPaused = false;
+            if(mHasLatest) {
+                final T latest = mLatest;
+                delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (ObservableQuery.this) {
+                            // Replaced or released meanwhile
+                            if(!mObservers.contains(observer) || !mHasLatest || (mLatest != latest)) {
+                                return;
+                            }
+                        }
+                        observer.onNext(latest);
+                    }
+                };
+            }
+            load = loadIfNeeded();
+        }
+
+        if(delivery != null) {
+            mDeliveryExecutor.execute(delivery);
+        }
+        execute(load);
+
+        return new Subscription() {
+            private boolean mUnsubscribed = false;
+
+            @Override
+            public void unsubscribe() {
+                if(!mUnsubscribed) {
+                    mUnsubscribed = true;
+                    ObservableQuery.this.unsubscribe(observer);
+                }
+            }
+        };
+    }
+
+    /**
+     * Load query again, tables it reads have changed. Coalesced with other invalidations
+     * into one load after the one in flight
+     */
+    public void invalidate() {
+        Runnable load;
+        synchronized (this) {
+            mStale = true;
+            mPaused = false;
+            load = loadIfNeeded();
+        }
+        execute(load);
+    }
+
+    /**
+     * Cancel load in flight, e.g. of a superseded search. Query is not loaded again until
+     * invalidated or subscribed to
+     *
+     * @return true if a load was cancelled
+     */
+    public boolean cancelLoad() {
+        Cancellation running;
+        synchronized (this) {
+            running = mRunning;
+            if(running == null) {
+                return false;
+            }
+            mRunning = null;
+            mStale = true;
+            mPaused = true;
+        }
+        running.cancel();
+        return true;
+    }
+
+    /**
+     * Whether query is loading
+     *
+     * @return true if a load is in flight
+     */
+    public synchronized boolean isLoading() {
+        return mRunning != null;
+    }
+
+    private void unsubscribe(Observer<T> observer) {
+        Cancellation running;
+        T latest;
+        Outcome<T> pending;
+        synchronized (this) {
+            if(!mObservers.remove(observer) || !mObservers.isEmpty()) {
+                return;
+            }
+
+            // No longer observed, nothing is loaded nor kept
+            mTracker.deactivate(this);
+            mGeneration++;
+            running = mRunning;
+            mRunning = null;
+            latest = mHasLatest ? mLatest : null;
+            mLatest = null;
+            mHasLatest = false;
+            pending = mPending;
+            mPending = null;
+            mStale = true;
+            mPaused = false;
+        }
+
+        if(running != null) {
+            running.cancel();
+        }
+        release(latest);
+        if(pending != null) {
+            release(pending.result);
+        }
+    }
+
+    // Holding lock, returns load to be executed once lock is released, null if none is due
+    private Runnable loadIfNeeded() {
+        if(mObservers.isEmpty() || (mRunning != null) || !mStale || mPaused) {
+            return null;
+        }
+
+        mStale = false;
+        final Cancellation cancellation = new Cancellation();
+        final int generation = mGeneration;
+        mRunning = cancellation;
+        return new Runnable() {
+            @Override
+            public void run() {
+                load(cancellation, generation);
+            }
+        };
+    }
+
+    private void execute(Runnable load) {
+        if(load != null) {
+            mQueryExecutor.execute(load);
+        }
+    }
+
+    private void load(Cancellation cancellation, int generation) {
+        T result = null;
+        RuntimeException error = null;
+        if(!cancellation.isCanceled()) {
+            try {
+                result = mSource.load(cancellation);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        T released = null;
+        boolean deliver = false;
+        Runnable next;
+        synchronized (this) {
+            if(mRunning == cancellation) {
+                mRunning = null;
+            }
+
+            if(cancellation.isCanceled() || (generation != mGeneration)) {
+                // Error of a cancelled load is its cancellation
+                released = result;
+            } else {
+                // Latest wins, result still waiting for delivery is dropped
+                if(mPending != null) {
+                    released = mPending.result;
+                }
+                deliver = (mPending == null);
+                mPending = new Outcome<>(result, error);
+            }
+
+            // Invalidated while loading
+            next = loadIfNeeded();
+        }
+
+        release(released);
+        if(deliver) {
+            mDeliveryExecutor.execute(mDeliver);
+        }
+        execute(next);
+    }
+
+    private void deliver() {
+        Outcome<T> outcome;
+        List<Observer<T>> observers;
+        T previous = null;
+        synchronized (this) {
+            outcome = mPending;
+            mPending = null;
+            if((outcome == null) || mObservers.isEmpty()) {
+                // Released when observers left
+                return;
+            }
+
+            observers = new ArrayList<>(mObservers);
+            if(outcome.error == null) {
+                previous = mLatest;
+                mLatest = outcome.result;
+                mHasLatest = true;
+            }
+        }
+
+        for(Observer<T> observer : observers) {
+            if(outcome.error != null) {
+                observer.onError(outcome.error);
+            } else {
+                observer.onNext(outcome.result);
+            }
+        }
+
+        // Observers have moved on to the new result
+        if(previous != outcome.result) {
+            release(previous);
+        }
+    }
+
+    private void release(T result) {
+        if(result != null) {
+            mSource.release(result);
+        }
+    }
+}
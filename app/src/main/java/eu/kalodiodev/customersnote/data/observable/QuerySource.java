@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.observable;
+
+/**
+ * Query Source
+ *
+ * <p>Query run by an {@link ObservableQuery}, once when first observed and again whenever
+ * the tables it reads are invalidated</p>
+ *
+ * @param <T> result type, e.g. a cursor
+ * @author Athanasios Raptodimos
+ */
+public interface QuerySource<T> {
+
+    /**
+     * Run query, on the query executor
+     *
+     * @param cancellation cancellation of this load, its result is released if cancelled
+     * @return result, owned by the observable query until released
+     */
+    T load(Cancellation cancellation);
+
+    /**
+     * Release result no longer delivered nor shown, e.g. close a cursor
+     *
+     * @param result result loaded, may be null
+     */
+    void release(T result);
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Cursor Snapshot
+ *
+ * <p>Immutable copy of a query result, along with an estimate of the memory it takes.
+ * Any number of cursors read the same snapshot, each with its own position</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CursorSnapshot {
+
+    // Rough sizes of objects on the heap, in bytes
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int BOXED_NUMBER_SIZE = 24;
+
+    @NonNull
+    private final String[] mColumnNames;
+
+    @NonNull
+    private final Object[][] mRows;
+
+    @Nullable
+    private final Bundle mExtras;
+
+    private final long mSizeBytes;
+
+    /**
+     * Cursor Snapshot Constructor
+     *
+     * @param columnNames column names
+     * @param rows row values, Long, Double, String, byte[] or null
+     * @param extras cursor extras, may be null
+     */
+    CursorSnapshot(@NonNull String[] columnNames, @NonNull Object[][] rows,
+                   @Nullable Bundle extras) {
+        this(columnNames, rows, extras, estimateSize(rows));
+    }
+
+    private CursorSnapshot(String[] columnNames, Object[][] rows, Bundle extras, long sizeBytes) {
+        this.mColumnNames = columnNames;
+        this.mRows = rows;
+        this.mExtras = extras;
+        this.mSizeBytes = sizeBytes;
+    }
+
+    /**
+     * Copy all rows of cursor, leaving cursor open. Copying stops as soon as the snapshot
+     * grows too large
+     *
+     * @param cursor cursor
+     * @param maxRows maximum number of rows copied
+     * @param maxBytes maximum estimated memory of snapshot
+     * @return snapshot, null if cursor has more rows than maxRows or they take more than
+     * maxBytes
+     */
+    @Nullable
+    static CursorSnapshot of(@NonNull Cursor cursor, int maxRows, long maxBytes) {
+        int count = cursor.getCount();
+        long size = OBJECT_OVERHEAD + (long) REFERENCE_SIZE * count;
+        if((count > maxRows) || (size > maxBytes)) {
+            return null;
+        }
+
+        int columns = cursor.getColumnCount();
+        Object[][] rows = new Object[count][];
+        cursor.moveToPosition(-1);
+        for(int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columns];
+            for(int j = 0; j < columns; j++) {
+                switch (cursor.getType(j)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        row[j] = null;
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[j] = cursor.getLong(j);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[j] = cursor.getDouble(j);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[j] = cursor.getBlob(j);
+                        break;
+                    default:
+                        row[j] = cursor.getString(j);
+                        break;
+                }
+            }
+            rows[i] = row;
+
+            size += estimateRowSize(row);
+            if(size > maxBytes) {
+                return null;
+            }
+        }
+
+        Bundle extras = cursor.getExtras();
+        return new CursorSnapshot(cursor.getColumnNames(), rows,
+                (extras == null) || extras.isEmpty() ? null : extras, size);
+    }
+
+    /**
+     * Estimated memory taken by snapshot
+     *
+     * @return size in bytes
+     */
+    long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Number of rows
+     *
+     * @return row count
+     */
+    int getCount() {
+        return mRows.length;
+    }
+
+    /**
+     * Create cursor reading snapshot
+     *
+     * @return cursor positioned before first row
+     */
+    @NonNull
+    Cursor newCursor() {
+        return new SnapshotCursor(this);
+    }
+
+    static long estimateSize(@NonNull Object[][] rows) {
+        long size = OBJECT_OVERHEAD + (long) REFERENCE_SIZE * rows.length;
+
+        for(Object[] row : rows) {
+            size += estimateRowSize(row);
+        }
+
+        return size;
+    }
+
+    private static long estimateRowSize(Object[] row) {
+        long size = OBJECT_OVERHEAD + REFERENCE_SIZE * row.length;
+        for(Object value : row) {
+            if(value instanceof String) {
+                size += OBJECT_OVERHEAD + 24 + 2 * ((String) value).length();
+            } else if(value instanceof byte[]) {
+                size += OBJECT_OVERHEAD + ((byte[]) value).length;
+            } else if(value != null) {
+                size += BOXED_NUMBER_SIZE;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Cursor over snapshot rows, values converted the way SQLite cursors do
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+
+        private final CursorSnapshot mSnapshot;
+
+        SnapshotCursor(CursorSnapshot snapshot) {
+            this.mSnapshot = snapshot;
+        }
+
+        private Object value(int column) {
+            checkPosition();
+            return mSnapshot.mRows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mSnapshot.mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mSnapshot.mColumnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = value(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = value(column);
+            if(value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value == null ? 0 : Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = value(column);
+            if(value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return value == null ? 0 : Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = value(column);
+            if(value instanceof String) {
+                return ((String) value).getBytes();
+            }
+            return (byte[]) value;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = value(column);
+            if(value == null) {
+                return FIELD_TYPE_NULL;
+            } else if(value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if(value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if(value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return value(column) == null;
+        }
+
+        @Override
+        public Bundle getExtras() {
+            return mSnapshot.mExtras == null ? Bundle.EMPTY : mSnapshot.mExtras;
+        }
+    }
+}
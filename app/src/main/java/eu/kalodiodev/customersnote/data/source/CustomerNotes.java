@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Customer Notes
+ *
+ * <p>Notes are stored out of row, in a table of their own keyed by customer id, so that
+ * scans of Customers and list cursor windows never carry them. Notes longer than
+ * {@link #COMPRESSION_THRESHOLD_BYTES} are deflated, meeting logs shrink to a fraction
+ * of their size. Queries projecting notes look them up by customer id as rows are read,
+ * and inflate them only once they are read from the cursor, e.g. for the customer opened
+ * for editing</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CustomerNotes {
+
+    /**
+     * Notes of this many UTF-8 bytes or more are compressed, shorter ones gain little
+     */
+    static final int COMPRESSION_THRESHOLD_BYTES = 512;
+
+    private static final String COLUMN_COMPRESSED = "Compressed";
+    private static final String COLUMN_NOTES = "Notes";
+    private static final String COLUMN_NOTES_COMPRESSED = "NotesCompressed";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CustomerNotes() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Create notes table, and the trigger deleting notes of deleted customers
+     *
+     * @param db database
+     */
+    static void createTable(@NonNull SQLiteDatabase db) {
+        // CREATE TABLE IF NOT EXISTS CustomersNotes (_id INTEGER PRIMARY KEY NOT NULL,
+        // Compressed INTEGER NOT NULL, Notes BLOB NOT NULL);
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + CustomersContract.NOTES_TABLE_NAME + " (" +
+                CustomersContract.Columns._ID + " INTEGER PRIMARY KEY NOT NULL, " +
+                COLUMN_COMPRESSED + " INTEGER NOT NULL, " +
+                COLUMN_NOTES + " BLOB NOT NULL);");
+
+        // Customers deleted by any selection lose their notes
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + CustomersContract.NOTES_TABLE_NAME +
+                "_bd BEFORE DELETE ON " + CustomersContract.TABLE_NAME + " BEGIN DELETE FROM " +
+                CustomersContract.NOTES_TABLE_NAME + " WHERE " + CustomersContract.Columns._ID +
+                " = old." + CustomersContract.Columns._ID + "; END;");
+    }
+
+    /**
+     * Replace trigger deleting notes of deleted customers by one running after the delete,
+     * notes of a customer are gone with it then, not changed before it is deleted
+     *
+     * @param db database
+     */
+    static void deleteNotesAfterCustomers(@NonNull SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + CustomersContract.NOTES_TABLE_NAME + "_bd;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + CustomersContract.NOTES_TABLE_NAME +
+                "_ad AFTER DELETE ON " + CustomersContract.TABLE_NAME + " BEGIN DELETE FROM " +
+                CustomersContract.NOTES_TABLE_NAME + " WHERE " + CustomersContract.Columns._ID +
+                " = old." + CustomersContract.Columns._ID + "; END;");
+    }
+
+    /**
+     * Check whether notes table exists, notes are inline in Customers before it does
+     *
+     * @param db database
+     * @return true if notes are stored out of row
+     */
+    static boolean hasTable(@NonNull SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] {CustomersContract.NOTES_TABLE_NAME});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Move next batch of inline notes out of row, used when migrating existing database
+     *
+     * @param db database
+     * @param afterId customers with greater ids are moved
+     * @param batchSize maximum number of customers moved
+     * @return id of last customer moved, -1 if there were no more inline notes
+     */
+    static long moveBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+        long lastId = -1;
+        Cursor cursor = db.query(CustomersContract.TABLE_NAME,
+                new String[] {CustomersContract.Columns._ID, CustomersContract.Columns.CUSTOMERS_NOTES},
+                CustomersContract.Columns._ID + " > ? AND " +
+                        CustomersContract.Columns.CUSTOMERS_NOTES + " IS NOT NULL",
+                new String[] {String.valueOf(afterId)},
+                null, null, CustomersContract.Columns._ID, String.valueOf(batchSize));
+        try {
+            while(cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                write(db, lastId, cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if(lastId >= 0) {
+            // Inline column is left empty, dropping it would copy the whole table
+            ContentValues values = new ContentValues();
+            values.putNull(CustomersContract.Columns.CUSTOMERS_NOTES);
+            db.update(CustomersContract.TABLE_NAME, values,
+                    CustomersContract.Columns._ID + " > ? AND " + CustomersContract.Columns._ID +
+                            " <= ? AND " + CustomersContract.Columns.CUSTOMERS_NOTES + " IS NOT NULL",
+                    new String[] {String.valueOf(afterId), String.valueOf(lastId)});
+        }
+        return lastId;
+    }
+
+    /**
+     * Values written to Customers table
+     *
+     * @param contentValues customer values, may be null
+     * @return values without notes, a copy if values contained notes
+     */
+    static ContentValues withoutNotes(ContentValues contentValues) {
+        if((contentValues == null) ||
+                !contentValues.containsKey(CustomersContract.Columns.CUSTOMERS_NOTES)) {
+            return contentValues;
+        }
+
+        ContentValues customerValues = new ContentValues(contentValues);
+        customerValues.remove(CustomersContract.Columns.CUSTOMERS_NOTES);
+        return customerValues;
+    }
+
+    /**
+     * Write notes of customer, if values contain notes
+     *
+     * @param db database
+     * @param customerId customer id
+     * @param contentValues customer values, may be null
+     */
+    static void write(@NonNull SQLiteDatabase db, long customerId, ContentValues contentValues) {
+        if((contentValues == null) ||
+                !contentValues.containsKey(CustomersContract.Columns.CUSTOMERS_NOTES)) {
+            return;
+        }
+        write(db, customerId, contentValues.getAsString(CustomersContract.Columns.CUSTOMERS_NOTES));
+    }
+
+    /**
+     * Write notes of customer
+     *
+     * @param db database
+     * @param customerId customer id
+     * @param notes notes, null or empty removes customer's notes
+     */
+    static void write(@NonNull SQLiteDatabase db, long customerId, @Nullable String notes) {
+        if((notes == null) || notes.isEmpty()) {
+            db.delete(CustomersContract.NOTES_TABLE_NAME,
+                    CustomersContract.Columns._ID + " = " + customerId, null);
+            return;
+        }
+
+        byte[] bytes = notes.getBytes(UTF_8);
+        boolean compressed = bytes.length >= COMPRESSION_THRESHOLD_BYTES;
+
+        ContentValues values = new ContentValues();
+        values.put(CustomersContract.Columns._ID, customerId);
+        values.put(COLUMN_COMPRESSED, compressed ? 1 : 0);
+        values.put(COLUMN_NOTES, compressed ? deflate(bytes) : bytes);
+        db.insertWithOnConflict(CustomersContract.NOTES_TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Read notes of customer
+     *
+     * @param db database
+     * @param customerId customer id
+     * @return notes, null if customer has none
+     */
+    @Nullable
+    static String read(@NonNull SQLiteDatabase db, long customerId) {
+        Cursor cursor = db.query(CustomersContract.NOTES_TABLE_NAME,
+                new String[] {COLUMN_COMPRESSED, COLUMN_NOTES},
+                CustomersContract.Columns._ID + " = " + customerId, null, null, null, null);
+        try {
+            if(!cursor.moveToFirst()) {
+                return null;
+            }
+            return decode(cursor.getBlob(1), cursor.getInt(0) != 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Projection reading notes of customers from notes table, in place of the inline column
+     *
+     * <p>Notes are looked up by customer id in the statement itself, so they are read
+     * together with their customers, as the cursor window fills, and stay stored bytes
+     * until asked for, see {@link #wrap}</p>
+     *
+     * @param db database
+     * @param projection projection of customers, null for all columns
+     * @return projection with notes looked up, their compression flag last, the projection
+     * itself if it has no notes column
+     */
+    @Nullable
+    static String[] projection(@NonNull SQLiteDatabase db, @Nullable String[] projection) {
+        String[] columns = projection != null ? projection : columns(db);
+        int notesColumn = Arrays.asList(columns).indexOf(CustomersContract.Columns.CUSTOMERS_NOTES);
+        if(notesColumn < 0) {
+            return projection;
+        }
+
+        // (SELECT Notes FROM CustomersNotes WHERE CustomersNotes._id = Customers._id)
+        String lookup = " FROM " + CustomersContract.NOTES_TABLE_NAME + " WHERE " +
+                CustomersContract.NOTES_TABLE_NAME + "." + CustomersContract.Columns._ID + " = " +
+                CustomersContract.TABLE_NAME + "." + CustomersContract.Columns._ID + ")";
+
+        String[] withNotes = Arrays.copyOf(columns, columns.length + 1);
+        // Inline notes of a database not migrated yet are kept
+        withNotes[notesColumn] = "COALESCE(" + CustomersContract.TABLE_NAME + "." +
+                CustomersContract.Columns.CUSTOMERS_NOTES + ", (SELECT " + COLUMN_NOTES + lookup +
+                ") AS " + CustomersContract.Columns.CUSTOMERS_NOTES;
+        withNotes[columns.length] = "(SELECT " + COLUMN_COMPRESSED + lookup + " AS " +
+                COLUMN_NOTES_COMPRESSED;
+        return withNotes;
+    }
+
+    /**
+     * Wrap customers queried with {@link #projection}, notes are decoded as each is read
+     *
+     * @param cursor customers
+     * @return customers with their notes, the cursor itself if notes were not looked up
+     */
+    @NonNull
+    static Cursor wrap(@NonNull Cursor cursor) {
+        int flagColumn = cursor.getColumnCount() - 1;
+        if((flagColumn < 1) || !COLUMN_NOTES_COMPRESSED.equals(cursor.getColumnName(flagColumn))) {
+            return cursor;
+        }
+        return new NotesCursor(cursor,
+                cursor.getColumnIndexOrThrow(CustomersContract.Columns.CUSTOMERS_NOTES), flagColumn);
+    }
+
+    /**
+     * Encode notes as stored
+     *
+     * @param notes notes
+     * @param compressed whether notes are compressed
+     * @return stored bytes
+     */
+    @NonNull
+    static byte[] encode(@NonNull String notes, boolean compressed) {
+        byte[] bytes = notes.getBytes(UTF_8);
+        return compressed ? deflate(bytes) : bytes;
+    }
+
+    /**
+     * Decode stored notes
+     *
+     * @param data stored bytes
+     * @param compressed whether bytes are compressed
+     * @return notes
+     * @throws IllegalStateException if compressed bytes are corrupt
+     */
+    @NonNull
+    static String decode(@NonNull byte[] data, boolean compressed) {
+        return new String(compressed ? inflate(data) : data, UTF_8);
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            byte[] buffer = new byte[4096];
+            while(!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[4096];
+            while(!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if((length == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated notes");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt notes", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String[] columns(SQLiteDatabase db) {
+        Cursor cursor = db.query(CustomersContract.TABLE_NAME, null, "0", null, null, null, null);
+        try {
+            return cursor.getColumnNames();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Customers with notes looked up, stored bytes decoded only for the rows notes are read
+     * from, compression flag column hidden
+     */
+    private static final class NotesCursor extends CursorWrapper {
+
+        private final int mNotesColumn;
+        private final int mFlagColumn;
+
+        private int mDecodedPosition = -1;
+        private String mDecoded;
+
+        NotesCursor(Cursor cursor, int notesColumn, int flagColumn) {
+            super(cursor);
+            this.mNotesColumn = notesColumn;
+            this.mFlagColumn = flagColumn;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return mFlagColumn;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return Arrays.copyOf(super.getColumnNames(), mFlagColumn);
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            int column = super.getColumnIndex(columnName);
+            return column == mFlagColumn ? -1 : column;
+        }
+
+        @Override
+        public int getColumnIndexOrThrow(String columnName) {
+            int column = getColumnIndex(columnName);
+            if(column < 0) {
+                throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+            }
+            return column;
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            int type = super.getType(columnIndex);
+            return (columnIndex == mNotesColumn) && (type == FIELD_TYPE_BLOB) ? FIELD_TYPE_STRING : type;
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            if((columnIndex != mNotesColumn) || (super.getType(columnIndex) != FIELD_TYPE_BLOB)) {
+                return super.getString(columnIndex);
+            }
+
+            int position = getPosition();
+            if(position != mDecodedPosition) {
+                mDecoded = decode(super.getBlob(columnIndex), getInt(mFlagColumn) != 0);
+                mDecodedPosition = position;
+            }
+            return mDecoded;
+        }
+
+        @Override
+        public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+            if(columnIndex != mNotesColumn) {
+                super.copyStringToBuffer(columnIndex, buffer);
+                return;
+            }
+
+            String notes = getString(columnIndex);
+            if(notes == null) {
+                buffer.sizeCopied = 0;
+                return;
+            }
+            char[] data = buffer.data;
+            if((data == null) || (data.length < notes.length())) {
+                buffer.data = notes.toCharArray();
+            } else {
+                notes.getChars(0, notes.length(), data, 0);
+            }
+            buffer.sizeCopied = notes.length();
+        }
+    }
+}
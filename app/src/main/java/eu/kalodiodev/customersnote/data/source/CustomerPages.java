@@ -0,0 +1,622 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Customer Pages
+ *
+ * <p>Customers list read a page at a time, see {@link CustomersPage}. The first page is
+ * loaded by the observable customers query, see {@link QueryProvider#createCustomersQuery},
+ * following pages are read on a background thread as positions near the end of the pages
+ * read are asked for. Only a bounded number of pages stay resident, least recently used
+ * ones are closed and read again if asked for, so memory stays flat however many customers
+ * are scrolled through</p>
+ *
+ * <p>Once read, a page spans the customers between the token it starts after and the token
+ * of its last customer. Pages read again keep their span, they grow or shrink as customers
+ * are inserted into or deleted from it. A change of a single customer is applied by reading
+ * again the pages it left and entered, and reported as the customers inserted, changed and
+ * removed, see {@link #applyChange(long, String)}</p>
+ *
+ * <p>Accessed on main thread only. Changes of the whole table are not followed, they
+ * invalidate the customers query, which delivers a new first page and new pages replace
+ * these</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class CustomerPages {
+    private static final String TAG = "CustomerPages";
+
+    /**
+     * On Pages Changed Listener, called on main thread
+     */
+    public interface OnPagesChangedListener {
+
+        /**
+         * Customers have been inserted, following ones moved down
+         *
+         * @param positionStart position of first customer inserted
+         * @param itemCount number of customers inserted
+         */
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        /**
+         * Customers have changed, or have been read again
+         *
+         * @param positionStart position of first customer changed
+         * @param itemCount number of customers changed
+         */
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        /**
+         * Customers have been removed, following ones moved up
+         *
+         * @param positionStart position of first customer removed
+         * @param itemCount number of customers removed
+         */
+        void onItemRangeRemoved(int positionStart, int itemCount);
+    }
+
+    // Pages are read one at a time, in the order asked for
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    // Pages read are applied on main thread
+    private static final Executor sMainExecutor = new Executor() {
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            mMainHandler.post(runnable);
+        }
+    };
+
+    private static final String[] KEY_PROJECTION = {
+            CustomersContract.Columns._ID,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY
+    };
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    @NonNull
+    private final Cursor mFirstPage;
+
+    private final String[] mProjection;
+    private final int mPageSize;
+    private final int mMaxResidentPages;
+
+    // Pages are read on the background executor, applied on the main one
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+
+    // Token of the customer each page starts after, page i + 1 starts after last of page i
+    private final List<String> mAfterTokens = new ArrayList<>();
+
+    // Customers in each page read, and position of each page's first customer
+    private final List<Integer> mPageCounts = new ArrayList<>();
+    private final List<Integer> mPageStarts = new ArrayList<>();
+
+    // Pages read after the first one, least recently used first
+    private final LinkedHashMap<Integer, Cursor> mResidentPages =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    // First page read again after a change, replaces the query's
+    private Cursor mFirstPageReread = null;
+
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+
+    private int mCount;
+    private boolean mHasMore;
+    private boolean mClosed = false;
+
+    private OnPagesChangedListener mListener = null;
+
+    /**
+     * Customer Pages Constructor
+     *
+     * @param contentResolver content resolver
+     * @param firstPage first page of customers, owned by its query
+     * @param projection projection of pages, containing id and first name key
+     * @param pageSize customers in a page
+     * @param maxResidentPages pages kept open besides first page
+     */
+    public CustomerPages(@NonNull ContentResolver contentResolver, @NonNull Cursor firstPage,
+                         String[] projection, int pageSize, int maxResidentPages) {
+        this(contentResolver, firstPage, projection, pageSize, maxResidentPages, sExecutor,
+                sMainExecutor);
+    }
+
+    /**
+     * Customer Pages read and applied on the given executors
+     *
+     * @param backgroundExecutor executor pages are read on
+     * @param mainExecutor executor pages read are applied on, main thread's
+     */
+    CustomerPages(@NonNull ContentResolver contentResolver, @NonNull Cursor firstPage,
+                  String[] projection, int pageSize, int maxResidentPages,
+                  @NonNull Executor backgroundExecutor, @NonNull Executor mainExecutor) {
+        this.mBackgroundExecutor = backgroundExecutor;
+        this.mMainExecutor = mainExecutor;
+        this.mContentResolver = contentResolver;
+        this.mFirstPage = firstPage;
+        this.mProjection = projection;
+        this.mPageSize = pageSize;
+        this.mMaxResidentPages = maxResidentPages;
+
+        this.mAfterTokens.add(null);
+        this.mPageCounts.add(firstPage.getCount());
+        this.mPageStarts.add(0);
+        this.mCount = firstPage.getCount();
+        String nextToken = nextToken(firstPage, pageSize);
+        this.mHasMore = nextToken != null;
+        if(mHasMore) {
+            mAfterTokens.add(nextToken);
+        }
+    }
+
+    /**
+     * Set listener of pages read
+     *
+     * @param listener listener, null to remove
+     */
+    public void setOnPagesChangedListener(@Nullable OnPagesChangedListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Get first page
+     *
+     * @return first page, owned by its query
+     */
+    @NonNull
+    public Cursor getFirstPage() {
+        return mFirstPage;
+    }
+
+    /**
+     * Number of customers read so far, grows as pages following them are read
+     *
+     * @return count
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Move to customer at position, reading its page or the next one if needed
+     *
+     * @param position position of customer
+     * @return page cursor at position, null if its page is being read
+     */
+    @Nullable
+    public Cursor moveToPosition(int position) {
+        if(mHasMore && (position >= mCount - mPageSize / 2)) {
+            // Near end of customers read, read on before they are scrolled to
+            load(mPageCounts.size());
+        }
+
+        int page = pageOf(position);
+        Cursor cursor = page(page);
+        if(cursor == null) {
+            load(page);
+            return null;
+        }
+
+        return cursor.moveToPosition(position - mPageStarts.get(page)) ? cursor : null;
+    }
+
+    /**
+     * Apply change of a single customer, reading again only the pages it left and entered.
+     * Customers inserted, changed and removed are reported to the listener once read
+     *
+     * @param customerId id of changed customer
+     * @param operation {@link CustomersContract#OPERATION_INSERT},
+     *                  {@link CustomersContract#OPERATION_UPDATE} or
+     *                  {@link CustomersContract#OPERATION_DELETE}
+     * @return false if change cannot be applied, customer left a page no longer resident.
+     * Customers must be read again from the first page then
+     */
+    public boolean applyChange(final long customerId, @NonNull String operation) {
+        if(mClosed) {
+            return true;
+        }
+
+        final int oldPage = residentPageOf(customerId);
+        boolean inserted = CustomersContract.OPERATION_INSERT.equals(operation);
+        if((oldPage < 0) && !inserted) {
+            // Customer was never read, or its page was closed, where it was is unknown
+            return false;
+        }
+
+        final boolean deleted = CustomersContract.OPERATION_DELETE.equals(operation);
+        final List<String> tokens = new ArrayList<>(mAfterTokens);
+        final int pagesRead = mPageCounts.size();
+
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int newPage = deleted ? -1 : pageOfCustomer(customerId, tokens, pagesRead);
+
+                // Later page first, positions of the earlier one stay valid meanwhile
+                final int first = Math.max(oldPage, newPage);
+                final int second = Math.min(oldPage, newPage);
+                final Cursor firstCursor = first >= 0 ? readPage(first, tokens) : null;
+                final Cursor secondCursor = (second >= 0) && (second != first) ?
+                        readPage(second, tokens) : null;
+
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        replacePage(first, firstCursor);
+                        replacePage(second, secondCursor);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Close pages read, pages being read are closed once read. First page is left
+     * to its query
+     */
+    public void close() {
+        mClosed = true;
+        for(Cursor cursor : mResidentPages.values()) {
+            cursor.close();
+        }
+        mResidentPages.clear();
+        if(mFirstPageReread != null) {
+            mFirstPageReread.close();
+            mFirstPageReread = null;
+        }
+    }
+
+    private Cursor page(int page) {
+        if(page == 0) {
+            return mFirstPageReread != null ? mFirstPageReread : mFirstPage;
+        }
+        return mResidentPages.get(page);
+    }
+
+    private int pageOf(int position) {
+        int low = 0;
+        int high = mPageStarts.size() - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(mPageStarts.get(middle) <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int residentPageOf(long customerId) {
+        if(indexOf(page(0), customerId) >= 0) {
+            return 0;
+        }
+        for(Map.Entry<Integer, Cursor> entry : mResidentPages.entrySet()) {
+            if(indexOf(entry.getValue(), customerId) >= 0) {
+                return entry.getKey();
+            }
+        }
+        return -1;
+    }
+
+    private void load(final int page) {
+        if(mClosed || (page >= mAfterTokens.size()) || !mLoadingPages.add(page)) {
+            return;
+        }
+
+        final List<String> tokens = new ArrayList<>(mAfterTokens);
+        final boolean read = page < mPageCounts.size();
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Page read before keeps its span, a new one is filled up to page size
+                final Cursor cursor = read ? readPage(page, tokens) :
+                        mContentResolver.query(CustomersContract.buildPageUri(
+                                tokens.get(page), mPageSize), mProjection, null, null, null);
+                final String nextToken = (!read && (cursor != null)) ?
+                        nextToken(cursor, mPageSize) : null;
+
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoadingPages.remove(page);
+                        if(read) {
+                            replacePage(page, cursor);
+                        } else {
+                            onPageLoaded(page, cursor, nextToken);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Read page again within its span, last page read is filled up to page size
+     */
+    private Cursor readPage(int page, List<String> tokens) {
+        String after = tokens.get(page);
+        if(page + 1 < tokens.size()) {
+            return mContentResolver.query(CustomersContract.buildPageRangeUri(after,
+                    tokens.get(page + 1)), mProjection, null, null, null);
+        }
+        return mContentResolver.query(CustomersContract.buildPageUri(after, mPageSize),
+                mProjection, null, null, null);
+    }
+
+    /**
+     * Page whose span customer is in, read on calling thread
+     *
+     * @return page, -1 if customer no longer exists or is past pages read
+     */
+    private int pageOfCustomer(long customerId, List<String> tokens, int pagesRead) {
+        Cursor cursor = mContentResolver.query(CustomersContract.buildCustomerUri(customerId),
+                KEY_PROJECTION, null, null, null);
+        if(cursor == null) {
+            return -1;
+        }
+
+        try {
+            if(!cursor.moveToFirst()) {
+                return -1;
+            }
+            String sortKey = cursor.getString(1);
+
+            int page = 0;
+            while((page + 1 < pagesRead) &&
+                    (CustomersPage.compare(sortKey, customerId, tokens.get(page + 1)) > 0)) {
+                page++;
+            }
+            if((page + 1 < tokens.size()) &&
+                    (CustomersPage.compare(sortKey, customerId, tokens.get(page + 1)) > 0)) {
+                // Past the last page read, shown once scrolled to
+                return -1;
+            }
+            return page;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void onPageLoaded(int page, Cursor cursor, String nextToken) {
+        if(cursor == null) {
+            return;
+        }
+        if(mClosed || (page != mPageCounts.size())) {
+            // Closed, or read meanwhile
+            cursor.close();
+            return;
+        }
+
+        mResidentPages.put(page, cursor);
+        evict();
+
+        int positionStart = mCount;
+        mPageStarts.add(mCount);
+        mPageCounts.add(cursor.getCount());
+        mCount += cursor.getCount();
+        mHasMore = nextToken != null;
+        if(mHasMore) {
+            mAfterTokens.add(nextToken);
+        }
+        if(mListener != null) {
+            mListener.onItemRangeInserted(positionStart, cursor.getCount());
+        }
+    }
+
+    /**
+     * Replace page read again, reporting customers that left, entered or stayed in it
+     */
+    private void replacePage(int page, Cursor cursor) {
+        if(cursor == null) {
+            return;
+        }
+        if(mClosed || (page >= mPageCounts.size())) {
+            cursor.close();
+            return;
+        }
+
+        Cursor oldCursor = page(page);
+        int positionStart = mPageStarts.get(page);
+        int oldCount = mPageCounts.get(page);
+        int newCount = cursor.getCount();
+        // Customers shown, read before the page they were shown from is closed
+        long[] oldIds = (oldCursor != null) && !oldCursor.isClosed() ?
+                ids(oldCursor, oldCount) : null;
+
+        // Page shown from now on
+        if(page == 0) {
+            if(mFirstPageReread != null) {
+                mFirstPageReread.close();
+            }
+            mFirstPageReread = cursor;
+        } else {
+            if(oldCursor != null) {
+                oldCursor.close();
+            }
+            mResidentPages.put(page, cursor);
+            evict();
+        }
+
+        mPageCounts.set(page, newCount);
+        mCount += newCount - oldCount;
+        for(int i = page + 1; i < mPageStarts.size(); i++) {
+            mPageStarts.set(i, mPageStarts.get(i) + newCount - oldCount);
+        }
+        if(page == mPageCounts.size() - 1) {
+            // Last page filled up, customers follow it
+            String nextToken = nextToken(cursor, mPageSize);
+            if(!mHasMore && (nextToken != null)) {
+                mHasMore = true;
+                mAfterTokens.add(nextToken);
+            }
+        }
+
+        if(mListener == null) {
+            return;
+        }
+        if(oldIds != null) {
+            dispatchDiff(positionStart, oldIds, ids(cursor, newCount));
+        } else {
+            // Customers of page were not shown, page is told read again
+            Log.d(TAG, "replacePage: page " + page + " read again");
+            mListener.onItemRangeChanged(positionStart, Math.min(oldCount, newCount));
+            if(newCount > oldCount) {
+                mListener.onItemRangeInserted(positionStart + oldCount, newCount - oldCount);
+            } else if(newCount < oldCount) {
+                mListener.onItemRangeRemoved(positionStart + newCount, oldCount - newCount);
+            }
+        }
+    }
+
+    /**
+     * Report customers removed from and inserted into page, in page order, and those
+     * still in place as changed. Customers stay in order within a page, only the changed
+     * one may move, it is reported removed and inserted then
+     */
+    private void dispatchDiff(int positionStart, long[] oldIds, long[] newIds) {
+        Set<Long> oldSet = new HashSet<>();
+        for(long id : oldIds) {
+            oldSet.add(id);
+        }
+        Set<Long> newSet = new HashSet<>();
+        for(long id : newIds) {
+            newSet.add(id);
+        }
+
+        // Customers staying, in their old and new order
+        List<Long> oldStaying = new ArrayList<>();
+        for(long id : oldIds) {
+            if(newSet.contains(id)) {
+                oldStaying.add(id);
+            }
+        }
+        List<Long> newStaying = new ArrayList<>();
+        for(long id : newIds) {
+            if(oldSet.contains(id)) {
+                newStaying.add(id);
+            }
+        }
+        Set<Long> moved = new HashSet<>();
+        for(int i = 0; i < oldStaying.size(); i++) {
+            if(!oldStaying.get(i).equals(newStaying.get(i))) {
+                // Order differs from here on, one of the two customers out of place moved
+                if(inOrderWithout(oldStaying, newStaying, oldStaying.get(i))) {
+                    moved.add(oldStaying.get(i));
+                } else if(inOrderWithout(oldStaying, newStaying, newStaying.get(i))) {
+                    moved.add(newStaying.get(i));
+                } else {
+                    // Several customers moved, whole page is replaced
+                    moved.addAll(oldStaying);
+                }
+                break;
+            }
+        }
+
+        // Removals last to first, positions before stay valid
+        for(int i = oldIds.length - 1; i >= 0; i--) {
+            if(!newSet.contains(oldIds[i]) || moved.contains(oldIds[i])) {
+                mListener.onItemRangeRemoved(positionStart + i, 1);
+            }
+        }
+        // Insertions first to last, customers before are in place already
+        for(int i = 0; i < newIds.length; i++) {
+            if(!oldSet.contains(newIds[i]) || moved.contains(newIds[i])) {
+                mListener.onItemRangeInserted(positionStart + i, 1);
+            } else {
+                mListener.onItemRangeChanged(positionStart + i, 1);
+            }
+        }
+    }
+
+    private static boolean inOrderWithout(List<Long> oldOrder, List<Long> newOrder, Long id) {
+        List<Long> oldWithout = new ArrayList<>(oldOrder);
+        oldWithout.remove(id);
+        List<Long> newWithout = new ArrayList<>(newOrder);
+        newWithout.remove(id);
+        return oldWithout.equals(newWithout);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Integer, Cursor>> iterator = mResidentPages.entrySet().iterator();
+        while((mResidentPages.size() > mMaxResidentPages) && iterator.hasNext()) {
+            iterator.next().getValue().close();
+            iterator.remove();
+        }
+    }
+
+    private static long[] ids(Cursor page, int count) {
+        long[] ids = new long[count];
+        int idColumn = page.getColumnIndexOrThrow(CustomersContract.Columns._ID);
+        for(int i = 0; (i < count) && page.moveToPosition(i); i++) {
+            ids[i] = page.getLong(idColumn);
+        }
+        return ids;
+    }
+
+    private static int indexOf(Cursor page, long customerId) {
+        if((page == null) || page.isClosed()) {
+            return -1;
+        }
+        int idColumn = page.getColumnIndexOrThrow(CustomersContract.Columns._ID);
+        for(int i = 0; page.moveToPosition(i); i++) {
+            if(page.getLong(idColumn) == customerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Token of the last customer in a full page, window is filled on calling thread
+     */
+    private static String nextToken(Cursor page, int pageSize) {
+        if((page.getCount() < pageSize) || !page.moveToLast()) {
+            // Last page
+            return null;
+        }
+
+        return CustomersPage.token(
+                page.getString(page.getColumnIndexOrThrow(
+                        CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY)),
+                page.getLong(page.getColumnIndexOrThrow(CustomersContract.Columns._ID)));
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Customer Statements
+ *
+ * <p>Precompiled statements of the single customer writes, insert, update by id and delete
+ * by id, compiled once per database connection. Values are bound straight from the
+ * customer's fields in a fixed column order, no SQL is built nor are bind arguments
+ * copied per write. Inserts of other shapes go through {@link SQLiteDatabase}'s
+ * methods, updates of other shapes through {@link #update}. The insert of trigram postings
+ * indexing customers written is compiled here too, see {@link #insertTrigram()}</p>
+ *
+ * <p>Every update raises the customer's version, so that an editor holding an older
+ * version is told its update conflicts rather than overwriting the change</p>
+ *
+ * <p>Bindings are held by the statements, so writes are serialized on this object. Writers
+ * hold the database's write transaction already, so they are never contended</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CustomerStatements {
+    private static final String TAG = "CustomerStatements";
+
+    // Customer fields and their keys, in bind order. Notes are stored out of row, see CustomerNotes
+    static final String[] COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER,
+            CustomersContract.Columns.CUSTOMERS_PHONE_KEY,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY
+    };
+
+    private static final String VERSION = CustomersContract.Columns.CUSTOMERS_VERSION;
+
+    private final SQLiteDatabase mDb;
+
+    // Compiled on first use
+    private SQLiteStatement mInsert = null;
+    private SQLiteStatement mUpdate = null;
+    private SQLiteStatement mDelete = null;
+    private SQLiteStatement mInsertTrigram = null;
+
+    /**
+     * Statements of database connection
+     *
+     * @param db database
+     */
+    CustomerStatements(@NonNull SQLiteDatabase db) {
+        this.mDb = db;
+    }
+
+    /**
+     * Database statements are compiled on
+     *
+     * @return database
+     */
+    @NonNull
+    SQLiteDatabase getDatabase() {
+        return mDb;
+    }
+
+    /**
+     * Whether values can be inserted by the insert statement
+     *
+     * @param contentValues values
+     * @return true if values contain customer columns only
+     */
+    static boolean canInsert(@NonNull ContentValues contentValues) {
+        for(String column : contentValues.keySet()) {
+            if(indexOf(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether customer can be updated with values by the update statement
+     *
+     * @param contentValues values
+     * @return true if values contain every customer column and nothing else, the way a
+     * customer is saved
+     */
+    static boolean canUpdate(@NonNull ContentValues contentValues) {
+        return (contentValues.size() == COLUMNS.length) && canInsert(contentValues);
+    }
+
+    /**
+     * Insert customer, columns missing from values are null
+     *
+     * @param contentValues values, see {@link #canInsert(ContentValues)}
+     * @return row id of customer inserted, -1 on failure e.g. a constraint violation
+     */
+    synchronized long insert(@NonNull ContentValues contentValues) {
+        if(mInsert == null) {
+            // INSERT INTO Customers (FirstName, ..., CompanyNameKey) VALUES (?, ..., ?)
+            StringBuilder sql = new StringBuilder("INSERT INTO " + CustomersContract.TABLE_NAME + " (");
+            StringBuilder parameters = new StringBuilder();
+            for(int i = 0; i < COLUMNS.length; i++) {
+                sql.append(i > 0 ? ", " : "").append(COLUMNS[i]);
+                parameters.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(") VALUES (").append(parameters).append(")");
+            mInsert = mDb.compileStatement(sql.toString());
+        }
+
+        bind(mInsert, contentValues);
+        try {
+            return mInsert.executeInsert();
+        } catch (SQLException e) {
+            // Failure reported as SQLiteDatabase.insert does
+            Log.e(TAG, "insert: error inserting " + contentValues, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Update customer, raising its version
+     *
+     * @param customerId customer id
+     * @param contentValues values, see {@link #canUpdate(ContentValues)}
+     * @param expectedVersion version customer must still be at, null to update any version
+     * @return number of customers updated, 0 if customer is at another version
+     */
+    synchronized int updateById(long customerId, @NonNull ContentValues contentValues,
+                                @Nullable Long expectedVersion) {
+        if(mUpdate == null) {
+            // UPDATE Customers SET FirstName = ?, ..., CompanyNameKey = ?, Version = Version + 1
+            // WHERE _id = ? AND Version = IFNULL(?, Version)
+            StringBuilder sql = new StringBuilder("UPDATE " + CustomersContract.TABLE_NAME + " SET ");
+            for(int i = 0; i < COLUMNS.length; i++) {
+                sql.append(COLUMNS[i]).append(" = ?, ");
+            }
+            sql.append(VERSION + " = " + VERSION + " + 1");
+            sql.append(" WHERE " + CustomersContract.Columns._ID + " = ? AND " +
+                    VERSION + " = IFNULL(?, " + VERSION + ")");
+            mUpdate = mDb.compileStatement(sql.toString());
+        }
+
+        bind(mUpdate, contentValues);
+        mUpdate.bindLong(COLUMNS.length + 1, customerId);
+        if(expectedVersion != null) {
+            mUpdate.bindLong(COLUMNS.length + 2, expectedVersion);
+        } else {
+            mUpdate.bindNull(COLUMNS.length + 2);
+        }
+        return mUpdate.executeUpdateDelete();
+    }
+
+    /**
+     * Update customers matching selection with values of any shape, raising their version.
+     * Compiled per call, as {@link SQLiteDatabase#update} is
+     *
+     * @param db database
+     * @param contentValues values, customers are updated to a new version only if empty or null
+     * @param selection selection, null to update every customer
+     * @param selectionArgs selection arguments
+     * @return number of customers updated
+     */
+    static int update(@NonNull SQLiteDatabase db, @Nullable ContentValues contentValues,
+                      @Nullable String selection, @Nullable String[] selectionArgs) {
+        // UPDATE Customers SET LastName = ?, ..., Version = Version + 1 WHERE selection
+        StringBuilder sql = new StringBuilder("UPDATE " + CustomersContract.TABLE_NAME + " SET ");
+        List<Object> bindArgs = new ArrayList<>();
+        if(contentValues != null) {
+            for(String column : contentValues.keySet()) {
+                sql.append(column).append(" = ?, ");
+                bindArgs.add(contentValues.get(column));
+            }
+        }
+        sql.append(VERSION + " = " + VERSION + " + 1");
+        if((selection != null) && (selection.length() > 0)) {
+            sql.append(" WHERE ").append(selection);
+        }
+        if(selectionArgs != null) {
+            bindArgs.addAll(Arrays.asList((Object[]) selectionArgs));
+        }
+
+        SQLiteStatement statement = db.compileStatement(sql.toString());
+        try {
+            for(int i = 0; i < bindArgs.size(); i++) {
+                bindValue(statement, i + 1, bindArgs.get(i));
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Delete customer
+     *
+     * @param customerId customer id
+     * @return number of customers deleted
+     */
+    synchronized int deleteById(long customerId) {
+        if(mDelete == null) {
+            // DELETE FROM Customers WHERE _id = ?
+            mDelete = mDb.compileStatement("DELETE FROM " + CustomersContract.TABLE_NAME +
+                    " WHERE " + CustomersContract.Columns._ID + " = ?");
+        }
+
+        mDelete.bindLong(1, customerId);
+        return mDelete.executeUpdateDelete();
+    }
+
+    /**
+     * Insert of a trigram posting, bound by {@link CustomersTrigramIndex} for every trigram
+     * of customers it indexes. Bound within the writer's transaction only
+     *
+     * @return statement, compiled on first use
+     */
+    @NonNull
+    synchronized SQLiteStatement insertTrigram() {
+        if(mInsertTrigram == null) {
+            mInsertTrigram = CustomersTrigramIndex.compileInsert(mDb);
+        }
+        return mInsertTrigram;
+    }
+
+    /**
+     * Release statements, before their database is closed
+     */
+    synchronized void close() {
+        for(SQLiteStatement statement : new SQLiteStatement[] {mInsert, mUpdate, mDelete,
+                mInsertTrigram}) {
+            if(statement != null) {
+                statement.close();
+            }
+        }
+        mInsert = null;
+        mUpdate = null;
+        mDelete = null;
+        mInsertTrigram = null;
+    }
+
+    private static void bind(SQLiteStatement statement, ContentValues contentValues) {
+        for(int i = 0; i < COLUMNS.length; i++) {
+            bindValue(statement, i + 1, contentValues.get(COLUMNS[i]));
+        }
+    }
+
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if(value == null) {
+            statement.bindNull(index);
+        } else if(value instanceof String) {
+            statement.bindString(index, (String) value);
+        } else if((value instanceof Long) || (value instanceof Integer) ||
+                (value instanceof Short) || (value instanceof Byte)) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if((value instanceof Double) || (value instanceof Float)) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if(value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else if(value instanceof Boolean) {
+            statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    private static int indexOf(String column) {
+        for(int i = 0; i < COLUMNS.length; i++) {
+            if(COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import eu.kalodiodev.customersnote.Constants;
+
+/**
+ * Customer Write Buffer
+ *
+ * <p>Single writer of customers, writing behind. Updates and deletes are held for
+ * {@link Constants.Database#WRITE_BEHIND_MILLIS}, writes of the same customer meanwhile
+ * collapse into its latest state, then all of them are applied as one batch: one
+ * transaction, one commit to disk and one change notification for a burst of edits.
+ * New customers are inserted at once, their id is needed</p>
+ *
+ * <p>A batch failing is applied again write by write, so that a write failing fails
+ * alone, writes of other customers in its batch are not lost with it</p>
+ *
+ * <p>Reads through {@link CustomersProvider} see pending writes, the provider flushes them
+ * before reading customers they change. Pending writes are also flushed when the app
+ * leaves the foreground or memory runs low, see {@link #flush()}</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class CustomerWriteBuffer {
+    private static final String TAG = "CustomerWriteBuffer";
+
+    /**
+     * On Written Listener, called on the thread that applied the write
+     */
+    public interface OnWrittenListener {
+
+        /**
+         * On customer written
+         *
+         * @param customerUri uri of customer inserted, null for updates and deletes
+         * @param count number of rows affected
+         */
+        void onWritten(@Nullable Uri customerUri, int count);
+
+        /**
+         * On customer not written
+         *
+         * @param error error writing customer, its write failed with it even on its own
+         */
+        void onFailed(RuntimeException error);
+    }
+
+    private static CustomerWriteBuffer instance = null;
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "CustomersWriter");
+                }
+            });
+
+    // Pending writes by customer id in order first written, guarded by this
+    private final Map<Long, PendingWrite> mPending = new LinkedHashMap<>();
+
+    // Flush scheduled once first write is pending, guarded by this
+    private ScheduledFuture<?> mScheduledFlush = null;
+
+    // Batches are applied one at a time, a read waits for the batch being applied
+    private final Object mFlushLock = new Object();
+
+    // Set on the thread applying a batch. Writes queued meanwhile are newer than the batch,
+    // they wait for the next one instead of being applied, and overwritten, within it
+    private final ThreadLocal<Boolean> mFlushing = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    private static final class PendingWrite {
+        final long customerId;
+        // Values of latest update
+        ContentValues values = null;
+        boolean deleted = false;
+        final List<OnWrittenListener> listeners = new ArrayList<>(1);
+
+        PendingWrite(long customerId) {
+            this.customerId = customerId;
+        }
+    }
+
+    private CustomerWriteBuffer(@NonNull ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
+    }
+
+    public static synchronized CustomerWriteBuffer getInstance(@NonNull ContentResolver contentResolver) {
+        if(instance == null) {
+            instance = new CustomerWriteBuffer(contentResolver);
+        }
+        return instance;
+    }
+
+    /**
+     * Insert customer on writer thread, after writes pending before it
+     *
+     * @param values customer values
+     * @param listener listener, null if result is not needed
+     */
+    public void insert(@NonNull final ContentValues values, @Nullable final OnWrittenListener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushNow();
+                Uri customerUri;
+                try {
+                    customerUri = mContentResolver.insert(CustomersContract.CONTENT_URI, values);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "insert: customer not saved", e);
+                    if(listener != null) {
+                        listener.onFailed(e);
+                    }
+                    return;
+                }
+                if(listener != null) {
+                    listener.onWritten(customerUri, customerUri != null ? 1 : 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Update customer, written behind. Values are merged into customer's pending update
+     *
+     * @param customerId customer's id
+     * @param values values updated
+     * @param listener listener, null if result is not needed
+     */
+    public synchronized void update(long customerId, @NonNull ContentValues values,
+                                    @Nullable OnWrittenListener listener) {
+        PendingWrite write = pendingWrite(customerId);
+        // Customer deleted before has nothing left to update
+        if(!write.deleted) {
+            if(write.values == null) {
+                write.values = new ContentValues(values);
+            } else {
+                write.values.putAll(values);
+            }
+        }
+        addListener(write, listener);
+    }
+
+    /**
+     * Delete customer, written behind. Customer's pending update is dropped
+     *
+     * @param customerId customer's id
+     * @param listener listener, null if result is not needed
+     */
+    public synchronized void delete(long customerId, @Nullable OnWrittenListener listener) {
+        PendingWrite write = pendingWrite(customerId);
+        write.deleted = true;
+        write.values = null;
+        addListener(write, listener);
+    }
+
+    /**
+     * Flush pending writes on writer thread, without waiting for them e.g. when the app
+     * leaves the foreground or memory runs low
+     */
+    public void flush() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushNow();
+            }
+        });
+    }
+
+    /**
+     * Apply pending writes of customer before it is read or written directly, blocking
+     * the calling thread. Nothing is applied on the thread applying a batch, the write
+     * being applied is older than those pending
+     *
+     * @param customerId customer's id, or any customer if negative
+     */
+    static void flushPending(long customerId) {
+        CustomerWriteBuffer buffer;
+        synchronized (CustomerWriteBuffer.class) {
+            buffer = instance;
+        }
+        if((buffer != null) && !buffer.mFlushing.get() && buffer.hasPending(customerId)) {
+            buffer.flushNow();
+        }
+    }
+
+    private synchronized boolean hasPending(long customerId) {
+        return customerId < 0 ? !mPending.isEmpty() : mPending.containsKey(customerId);
+    }
+
+    private PendingWrite pendingWrite(long customerId) {
+        PendingWrite write = mPending.get(customerId);
+        if(write == null) {
+            write = new PendingWrite(customerId);
+            mPending.put(customerId, write);
+        }
+
+        if(mScheduledFlush == null) {
+            mScheduledFlush = mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushNow();
+                }
+            }, Constants.Database.WRITE_BEHIND_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return write;
+    }
+
+    private static void addListener(PendingWrite write, OnWrittenListener listener) {
+        if(listener != null) {
+            write.listeners.add(listener);
+        }
+    }
+
+    private void flushNow() {
+        synchronized (mFlushLock) {
+            mFlushing.set(true);
+            try {
+                applyPending();
+            } finally {
+                mFlushing.set(false);
+            }
+        }
+    }
+
+    // Apply pending writes as one batch, holding flush lock
+    private void applyPending() {
+        List<PendingWrite> writes;
+        synchronized (this) {
+            if(mScheduledFlush != null) {
+                mScheduledFlush.cancel(false);
+                mScheduledFlush = null;
+            }
+            if(mPending.isEmpty()) {
+                return;
+            }
+            writes = new ArrayList<>(mPending.values());
+            mPending.clear();
+        }
+
+        if(writes.size() == 1) {
+            applyAlone(writes.get(0));
+            return;
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(writes.size());
+        for(PendingWrite write : writes) {
+            Uri uri = CustomersContract.buildCustomerUri(write.customerId);
+            operations.add(write.deleted ?
+                    ContentProviderOperation.newDelete(uri).build() :
+                    ContentProviderOperation.newUpdate(uri).withValues(write.values).build());
+        }
+
+        ContentProviderResult[] results;
+        try {
+            results = mContentResolver.applyBatch(CustomersProvider.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            // Batch is rolled back as a whole, the write failing is found by applying
+            // each on its own
+            Log.w(TAG, "flush: batch failed, " + writes.size() + " writes applied alone", e);
+            for(PendingWrite write : writes) {
+                applyAlone(write);
+            }
+            return;
+        }
+
+        Log.d(TAG, "flush: " + writes.size() + " writes applied");
+        for(int i = 0; i < writes.size(); i++) {
+            int count = results[i].count != null ? results[i].count : 0;
+            for(OnWrittenListener listener : writes.get(i).listeners) {
+                listener.onWritten(null, count);
+            }
+        }
+    }
+
+    // Apply write in a transaction of its own
+    private void applyAlone(PendingWrite write) {
+        Uri uri = CustomersContract.buildCustomerUri(write.customerId);
+        int count;
+        try {
+            count = write.deleted ? mContentResolver.delete(uri, null, null) :
+                    mContentResolver.update(uri, write.values, null, null);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "flush: write of customer " + write.customerId + " failed", e);
+            for(OnWrittenListener listener : write.listeners) {
+                listener.onFailed(e);
+            }
+            return;
+        }
+
+        for(OnWrittenListener listener : write.listeners) {
+            listener.onWritten(null, count);
+        }
+    }
+}
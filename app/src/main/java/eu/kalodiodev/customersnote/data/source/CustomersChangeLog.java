@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+/**
+ * Customers Change Log
+ *
+ * <p>Append-only log of customer changes, one entry per customer inserted, updated or
+ * deleted, written by triggers so that no write path can miss it. Entries are numbered by
+ * a sequence that only grows, even across compaction, so that caches, indexes and exports
+ * catch up by reading the entries after the last one they saw, instead of scanning
+ * Customers table</p>
+ *
+ * <p>Only the latest entries are kept, see {@link #compact(SQLiteDatabase, int)}. A reader
+ * whose last sequence was compacted away, or which is ahead of the log e.g. after a backup
+ * was restored, is told its changes are incomplete and scans Customers table again</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CustomersChangeLog {
+
+    private static final String[] COLUMNS = {
+            CustomersContract.ChangeColumns.SEQUENCE,
+            CustomersContract.ChangeColumns.CUSTOMER_ID,
+            CustomersContract.ChangeColumns.OPERATION
+    };
+
+    private CustomersChangeLog() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Create change log table and the triggers filling it
+     *
+     * @param db database
+     */
+    static void createTable(@NonNull SQLiteDatabase db) {
+        // AUTOINCREMENT never reuses a sequence, not even of entries compacted away:
+        // CREATE TABLE IF NOT EXISTS CustomersChanges (Sequence INTEGER PRIMARY KEY AUTOINCREMENT,
+        // CustomerId INTEGER NOT NULL, Operation TEXT NOT NULL);
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + CustomersContract.CHANGES_TABLE_NAME + " (" +
+                CustomersContract.ChangeColumns.SEQUENCE + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                CustomersContract.ChangeColumns.CUSTOMER_ID + " INTEGER NOT NULL, " +
+                CustomersContract.ChangeColumns.OPERATION + " TEXT NOT NULL);");
+
+        createTrigger(db, "_ai", "AFTER INSERT ON " + CustomersContract.TABLE_NAME,
+                "new", CustomersContract.OPERATION_INSERT, null);
+        createTrigger(db, "_au", "AFTER UPDATE ON " + CustomersContract.TABLE_NAME,
+                "new", CustomersContract.OPERATION_UPDATE, null);
+        createTrigger(db, "_ad", "AFTER DELETE ON " + CustomersContract.TABLE_NAME,
+                "old", CustomersContract.OPERATION_DELETE, null);
+
+        // Notes are part of the customer, notes of deleted customers go with them unlogged
+        createTrigger(db, "_notes_ai", "AFTER INSERT ON " + CustomersContract.NOTES_TABLE_NAME,
+                "new", CustomersContract.OPERATION_UPDATE, null);
+        createTrigger(db, "_notes_au", "AFTER UPDATE ON " + CustomersContract.NOTES_TABLE_NAME,
+                "new", CustomersContract.OPERATION_UPDATE, null);
+        createTrigger(db, "_notes_ad", "AFTER DELETE ON " + CustomersContract.NOTES_TABLE_NAME,
+                "old", CustomersContract.OPERATION_UPDATE, "EXISTS (SELECT 1 FROM " +
+                        CustomersContract.TABLE_NAME + " WHERE " + CustomersContract.Columns._ID +
+                        " = old." + CustomersContract.Columns._ID + ")");
+    }
+
+    /**
+     * Query entries following a sequence, oldest first
+     *
+     * <p>Extras of cursor returned hold {@link CustomersContract#EXTRA_LAST_SEQUENCE} and
+     * {@link CustomersContract#EXTRA_CHANGES_COMPLETE}</p>
+     *
+     * @param db database
+     * @param since last sequence reader has seen
+     * @param limit maximum number of entries returned
+     * @return entries, columns of {@link CustomersContract.ChangeColumns}
+     */
+    @NonNull
+    static Cursor query(@NonNull SQLiteDatabase db, long since, int limit) {
+        Cursor cursor = db.query(CustomersContract.CHANGES_TABLE_NAME, COLUMNS,
+                CustomersContract.ChangeColumns.SEQUENCE + " > ?",
+                new String[] {String.valueOf(since)}, null, null,
+                CustomersContract.ChangeColumns.SEQUENCE, String.valueOf(limit));
+        // Entries are read before the bounds, entries compacted meanwhile make them look
+        // incomplete rather than complete
+        cursor.getCount();
+
+        long lastSequence = lastSequence(db);
+        long oldestSequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MIN(" +
+                CustomersContract.ChangeColumns.SEQUENCE + "), ?) FROM " +
+                CustomersContract.CHANGES_TABLE_NAME,
+                new String[] {String.valueOf(lastSequence + 1)});
+
+        Bundle extras = new Bundle();
+        extras.putLong(CustomersContract.EXTRA_LAST_SEQUENCE, lastSequence);
+        extras.putBoolean(CustomersContract.EXTRA_CHANGES_COMPLETE,
+                isComplete(since, oldestSequence, lastSequence));
+        return new ChangesCursor(cursor, extras);
+    }
+
+    /**
+     * Whether entries following a sequence are all still in the log
+     *
+     * @param since last sequence reader has seen
+     * @param oldestSequence sequence of oldest entry kept, last sequence + 1 if log is empty
+     * @param lastSequence sequence of latest entry ever logged
+     * @return true if no entry after since was compacted, and since is not ahead of the log
+     */
+    static boolean isComplete(long since, long oldestSequence, long lastSequence) {
+        return (since >= oldestSequence - 1) && (since <= lastSequence);
+    }
+
+    /**
+     * Sequence of latest entry ever logged
+     *
+     * @param db database
+     * @return sequence, 0 if nothing was ever logged
+     */
+    static long lastSequence(@NonNull SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL((SELECT seq FROM sqlite_sequence " +
+                "WHERE name = ?), 0)", new String[] {CustomersContract.CHANGES_TABLE_NAME});
+    }
+
+    /**
+     * Delete all but the latest entries
+     *
+     * @param db database
+     * @param maxEntries entries kept
+     * @return number of entries deleted
+     */
+    static int compact(@NonNull SQLiteDatabase db, int maxEntries) {
+        return db.delete(CustomersContract.CHANGES_TABLE_NAME,
+                CustomersContract.ChangeColumns.SEQUENCE + " <= ?",
+                new String[] {String.valueOf(lastSequence(db) - maxEntries)});
+    }
+
+    private static void createTrigger(SQLiteDatabase db, String suffix, String event, String row,
+                                      String operation, String condition) {
+        // CREATE TRIGGER IF NOT EXISTS CustomersChanges_ai AFTER INSERT ON Customers
+        // BEGIN INSERT INTO CustomersChanges (CustomerId, Operation) VALUES (new._id, 'insert'); END;
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + CustomersContract.CHANGES_TABLE_NAME + suffix +
+                " " + event + (condition != null ? " WHEN " + condition : "") +
+                " BEGIN INSERT INTO " + CustomersContract.CHANGES_TABLE_NAME + " (" +
+                CustomersContract.ChangeColumns.CUSTOMER_ID + ", " +
+                CustomersContract.ChangeColumns.OPERATION + ") VALUES (" + row + "." +
+                CustomersContract.Columns._ID + ", '" + operation + "'); END;");
+    }
+
+    /**
+     * Entries cursor carrying the log's bounds in its extras
+     */
+    private static final class ChangesCursor extends CursorWrapper {
+
+        private final Bundle mExtras;
+
+        ChangesCursor(Cursor cursor, Bundle extras) {
+            super(cursor);
+            this.mExtras = extras;
+        }
+
+        @Override
+        public Bundle getExtras() {
+            return mExtras;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package eu.kalodiodev.customersnote.data.source;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
 
 /**
  * Customers Contract
@@ -30,6 +31,21 @@ public class CustomersContract {
 
     public static final String TABLE_NAME = "Customers";
 
+    // Full text search table, mirrors the searchable Customers columns
+    public static final String FTS_TABLE_NAME = TABLE_NAME + "Fts";
+
+    // Trigram postings of customer fields, used by substring search
+    public static final String TRIGRAMS_TABLE_NAME = TABLE_NAME + "Trigrams";
+
+    // Case folded text of customer fields, substring search candidates are verified against it
+    public static final String SEARCH_TEXT_TABLE_NAME = TABLE_NAME + "SearchText";
+
+    // Customer notes stored out of row, compressed once they are large
+    public static final String NOTES_TABLE_NAME = TABLE_NAME + "Notes";
+
+    // Append-only log of customer changes, filled by triggers
+    public static final String CHANGES_TABLE_NAME = TABLE_NAME + "Changes";
+
     // Customer fields
     public static class Columns {
         public static final String _ID = BaseColumns._ID;
@@ -39,24 +55,190 @@ public class CustomersContract {
         public static final String CUSTOMERS_COMPANY_NAME = "CompanyName";
         public static final String CUSTOMERS_PHONE_NUMBER = "PhoneNumber";
         public static final String CUSTOMERS_NOTES = "Notes";
+        // Phone number digits reversed, see PhoneNumberKey
+        public static final String CUSTOMERS_PHONE_KEY = "PhoneKey";
+        // Accent and case folded fields, see SearchKey
+        public static final String CUSTOMERS_FIRST_NAME_KEY = "FirstNameKey";
+        public static final String CUSTOMERS_LAST_NAME_KEY = "LastNameKey";
+        public static final String CUSTOMERS_PROFESSION_KEY = "ProfessionKey";
+        public static final String CUSTOMERS_COMPANY_NAME_KEY = "CompanyNameKey";
+        // Raised by every update. Given in values updated, update is applied only to the
+        // customer still at that version, see CustomersProvider#update
+        public static final String CUSTOMERS_VERSION = "Version";
 
         private Columns() {
             // private constructor to prevent instantiation
         }
     }
 
+    // Change log entry fields, see CustomersChangeLog
+    public static class ChangeColumns {
+        // Grows with every change logged, never reused
+        public static final String SEQUENCE = "Sequence";
+        public static final String CUSTOMER_ID = "CustomerId";
+        // OPERATION_INSERT, OPERATION_UPDATE or OPERATION_DELETE
+        public static final String OPERATION = "Operation";
+
+        private ChangeColumns() {
+            // private constructor to prevent instantiation
+        }
+    }
+
     /**
      * The URI to access the Customers table
      */
     public static final Uri CONTENT_URI = Uri.withAppendedPath(CustomersProvider
             .CONTENT_AUTHORITY_URI, TABLE_NAME);
 
+    /**
+     * The URI to search Customers
+     */
+    public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, "search");
+
+    /**
+     * The URI to look up Customers by phone number
+     */
+    public static final Uri PHONE_URI = Uri.withAppendedPath(CONTENT_URI, "phone");
+
+    /**
+     * Notification uri of customer pages. Only changes of the whole table reach it, changes
+     * of single customers are applied to pages shown, see {@link CustomerPages}
+     */
+    public static final Uri PAGES_URI = Uri.withAppendedPath(CONTENT_URI, "pages");
+
+    /**
+     * The URI to read customer changes logged after a sequence, oldest first
+     */
+    public static final Uri CHANGES_URI = Uri.withAppendedPath(CONTENT_URI, "changes");
+
+    public static final String PARAM_SEARCH_QUERY = "q";
+
+    public static final String PARAM_SEARCH_MODE = "mode";
+
+    /**
+     * Search mode matching terms as prefixes of words in name, profession, company and phone
+     */
+    public static final String SEARCH_MODE_PREFIX = "prefix";
+
+    /**
+     * Search mode matching terms anywhere in any customer field, notes included
+     */
+    public static final String SEARCH_MODE_SUBSTRING = "substring";
+
+    public static final String PARAM_ORDER = "order";
+
+    public static final String PARAM_LIMIT = "limit";
+
+    /**
+     * Page token of the customer a page of customers starts after, see {@link CustomersPage}
+     */
+    public static final String PARAM_AFTER = "after";
+
+    /**
+     * Page token of the last customer in a page of customers read again
+     */
+    public static final String PARAM_UNTIL = "until";
+
+    /**
+     * Operation a customer changed by, in uri of change notifications
+     */
+    public static final String PARAM_OPERATION = "op";
+
+    public static final String OPERATION_INSERT = "insert";
+
+    public static final String OPERATION_UPDATE = "update";
+
+    public static final String OPERATION_DELETE = "delete";
+
+    /**
+     * Sequence of the last change a reader has seen, changes after it are returned
+     */
+    public static final String PARAM_SINCE = "since";
+
+    /**
+     * Sequence of the latest change logged, in changes cursor's extras. Reader resumes from
+     * it, or from the sequence of the last change returned if changes were limited
+     */
+    public static final String EXTRA_LAST_SEQUENCE = "lastSequence";
+
+    /**
+     * Whether changes returned are all changes since sequence asked, in changes cursor's
+     * extras. When false, changes were compacted away or the database was replaced, and
+     * reader scans customers again then resumes from {@link #EXTRA_LAST_SEQUENCE}
+     */
+    public static final String EXTRA_CHANGES_COMPLETE = "changesComplete";
+
+    /**
+     * Search order, best matching customers first instead of sort order given, see
+     * {@link RankedCursor}
+     */
+    public static final String ORDER_RELEVANCE = "relevance";
+
+    /**
+     * Number of customers ranked search results are chosen from, in ranked cursor's extras
+     */
+    public static final String EXTRA_MATCH_COUNT = "matchCount";
+
+    /**
+     * Provider call method, returns whether searches use full text search in
+     * {@link #EXTRA_FULL_TEXT_SEARCH}
+     */
+    public static final String METHOD_FULL_TEXT_SEARCH = "fullTextSearch";
+
+    public static final String EXTRA_FULL_TEXT_SEARCH = "fullTextSearch";
+
+    /**
+     * Provider call method, returns query result cache counters in {@link #EXTRA_CACHE_HITS},
+     * {@link #EXTRA_CACHE_MISSES}, {@link #EXTRA_CACHE_EVICTIONS} and {@link #EXTRA_CACHE_BYTES}
+     */
+    public static final String METHOD_QUERY_CACHE_STATS = "queryCacheStats";
+
+    public static final String EXTRA_CACHE_HITS = "cacheHits";
+
+    public static final String EXTRA_CACHE_MISSES = "cacheMisses";
+
+    public static final String EXTRA_CACHE_EVICTIONS = "cacheEvictions";
+
+    public static final String EXTRA_CACHE_BYTES = "cacheBytes";
+
+    /**
+     * Provider call method, tells that the database file was replaced e.g. restored from
+     * backup. Everything the provider remembers of the database is dropped and observers
+     * of customers are notified
+     */
+    public static final String METHOD_DATABASE_REPLACED = "databaseReplaced";
+
+    /**
+     * Provider call method, copies the write-ahead log into the database file so that the
+     * file alone holds every committed change, e.g. before it is backed up. Returns whether
+     * the log was copied in full in {@link #EXTRA_CHECKPOINT_COMPLETE}
+     */
+    public static final String METHOD_CHECKPOINT = "checkpoint";
+
+    public static final String EXTRA_CHECKPOINT_COMPLETE = "checkpointComplete";
+
+    /**
+     * Provider call method, closes the database before its file is replaced. Until
+     * {@link #METHOD_REOPEN_DATABASE}, reads and writes wait for the database to be opened
+     */
+    public static final String METHOD_CLOSE_DATABASE = "closeDatabase";
+
+    /**
+     * Provider call method, ends a replacement begun by {@link #METHOD_CLOSE_DATABASE} once
+     * the database file is in place, or failed to be. The database is opened again on next
+     * access
+     */
+    public static final String METHOD_REOPEN_DATABASE = "reopenDatabase";
+
     public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd." +
             CustomersProvider.CONTENT_AUTHORITY + "." + TABLE_NAME;
 
     public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd." +
             CustomersProvider.CONTENT_AUTHORITY + "." + TABLE_NAME;
 
+    public static final String CHANGES_CONTENT_TYPE = "vnd.android.cursor.dir/vnd." +
+            CustomersProvider.CONTENT_AUTHORITY + "." + CHANGES_TABLE_NAME;
+
     /**
      * Build Customer Uri
      *
@@ -76,4 +258,235 @@ public class CustomersContract {
     public static long getCustomerId(Uri uri) {
         return ContentUris.parseId(uri);
     }
-}
\ No newline at end of file
+
+    /**
+     * Build Customers search Uri
+     *
+     * @param searchQuery search terms, separated by spaces
+     * @return search uri
+     */
+    public static Uri buildSearchUri(String searchQuery) {
+        return buildSearchUri(searchQuery, SEARCH_MODE_PREFIX);
+    }
+
+    /**
+     * Build Customers search Uri
+     *
+     * @param searchQuery search terms, separated by spaces
+     * @param searchMode {@link #SEARCH_MODE_PREFIX} or {@link #SEARCH_MODE_SUBSTRING}
+     * @return search uri
+     */
+    public static Uri buildSearchUri(String searchQuery, String searchMode) {
+        return SEARCH_URI.buildUpon()
+                .appendQueryParameter(PARAM_SEARCH_QUERY, searchQuery)
+                .appendQueryParameter(PARAM_SEARCH_MODE, searchMode)
+                .build();
+    }
+
+    /**
+     * Build Customers ranked search Uri
+     *
+     * @param searchQuery search terms, separated by spaces
+     * @param searchMode {@link #SEARCH_MODE_PREFIX} or {@link #SEARCH_MODE_SUBSTRING}
+     * @param limit maximum number of best matching customers returned
+     * @return ranked search uri
+     */
+    public static Uri buildRankedSearchUri(String searchQuery, String searchMode, int limit) {
+        return buildSearchUri(searchQuery, searchMode).buildUpon()
+                .appendQueryParameter(PARAM_ORDER, ORDER_RELEVANCE)
+                .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    /**
+     * Build Customers page Uri, customers in {@link CustomersPage#SORT_ORDER}
+     *
+     * @param after page token of the customer page starts after, null for first page
+     * @param limit maximum number of customers in page
+     * @return page uri
+     */
+    public static Uri buildPageUri(String after, int limit) {
+        Uri.Builder builder = CONTENT_URI.buildUpon();
+        if(after != null) {
+            builder.appendQueryParameter(PARAM_AFTER, after);
+        }
+        return builder.appendQueryParameter(PARAM_LIMIT, String.valueOf(limit)).build();
+    }
+
+    /**
+     * Build Customers page Uri of a page read again, customers between two page tokens
+     *
+     * @param after page token of the customer page starts after, null for first page
+     * @param until page token of the last customer of page
+     * @return page uri
+     */
+    public static Uri buildPageRangeUri(String after, @NonNull String until) {
+        Uri.Builder builder = CONTENT_URI.buildUpon();
+        if(after != null) {
+            builder.appendQueryParameter(PARAM_AFTER, after);
+        }
+        return builder.appendQueryParameter(PARAM_UNTIL, until).build();
+    }
+
+    /**
+     * Whether customers uri asks for a page of customers
+     *
+     * @param uri customers uri
+     * @return true if uri contains a limit or a page token
+     */
+    public static boolean isPageUri(Uri uri) {
+        return (uri.getQueryParameter(PARAM_LIMIT) != null) ||
+                (uri.getQueryParameter(PARAM_AFTER) != null) ||
+                (uri.getQueryParameter(PARAM_UNTIL) != null);
+    }
+
+    /**
+     * Get page token in uri
+     *
+     * @param uri page uri
+     * @return page token of the customer page starts after, null for first page
+     */
+    public static String getAfter(Uri uri) {
+        return uri.getQueryParameter(PARAM_AFTER);
+    }
+
+    /**
+     * Get page token of page's last customer in uri
+     *
+     * @param uri page uri
+     * @return page token, null if page is bounded by its limit instead
+     */
+    public static String getUntil(Uri uri) {
+        return uri.getQueryParameter(PARAM_UNTIL);
+    }
+
+    /**
+     * Build change notification Uri of a customer
+     *
+     * @param customerId customer's id
+     * @param operation {@link #OPERATION_INSERT}, {@link #OPERATION_UPDATE} or
+     *                  {@link #OPERATION_DELETE}
+     * @return customer uri with operation
+     */
+    public static Uri buildChangeUri(long customerId, String operation) {
+        return buildCustomerUri(customerId).buildUpon()
+                .appendQueryParameter(PARAM_OPERATION, operation)
+                .build();
+    }
+
+    /**
+     * Get operation in change notification uri
+     *
+     * @param uri notified uri
+     * @return operation, null if uri is not of a single customer's change e.g. whole table changed
+     */
+    public static String getOperation(Uri uri) {
+        return uri.getQueryParameter(PARAM_OPERATION);
+    }
+
+    /**
+     * Build Customers changes Uri
+     *
+     * @param since sequence of the last change reader has seen, 0 for all changes kept
+     * @param limit maximum number of changes returned
+     * @return changes uri
+     */
+    public static Uri buildChangesUri(long since, int limit) {
+        return CHANGES_URI.buildUpon()
+                .appendQueryParameter(PARAM_SINCE, String.valueOf(since))
+                .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    /**
+     * Get sequence in changes uri
+     *
+     * @param uri changes uri
+     * @return sequence of the last change reader has seen, 0 if uri contains no valid sequence
+     */
+    public static long getSince(Uri uri) {
+        String since = uri.getQueryParameter(PARAM_SINCE);
+        if(since == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(Long.parseLong(since), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Build Customers phone lookup Uri
+     *
+     * @param phoneNumber phone number e.g. of incoming call, any formatting
+     * @return phone lookup uri
+     */
+    public static Uri buildPhoneLookupUri(String phoneNumber) {
+        return Uri.withAppendedPath(PHONE_URI, Uri.encode(phoneNumber));
+    }
+
+    /**
+     * Get phone number in phone lookup uri
+     *
+     * @param uri phone lookup uri
+     * @return phone number
+     */
+    public static String getPhoneNumber(Uri uri) {
+        return uri.getLastPathSegment();
+    }
+
+    /**
+     * Get search query in uri
+     *
+     * @param uri search uri
+     * @return search query, empty if uri contains no search query
+     */
+    public static String getSearchQuery(Uri uri) {
+        String searchQuery = uri.getQueryParameter(PARAM_SEARCH_QUERY);
+        return searchQuery == null ? "" : searchQuery;
+    }
+
+    /**
+     * Get search mode in uri
+     *
+     * @param uri search uri
+     * @return search mode, {@link #SEARCH_MODE_PREFIX} if uri contains no search mode
+     */
+    public static String getSearchMode(Uri uri) {
+        String searchMode = uri.getQueryParameter(PARAM_SEARCH_MODE);
+        return searchMode == null ? SEARCH_MODE_PREFIX : searchMode;
+    }
+
+    /**
+     * Whether search uri asks for best matching customers first
+     *
+     * @param uri search uri
+     * @return true if search is ranked
+     */
+    public static boolean isRankedSearch(Uri uri) {
+        return ORDER_RELEVANCE.equals(uri.getQueryParameter(PARAM_ORDER));
+    }
+
+    /**
+     * Get limit in uri
+     *
+     * @param uri search or page uri
+     * @param defaultLimit limit if uri contains no valid limit
+     * @return maximum number of customers returned
+     */
+    public static int getLimit(Uri uri, int defaultLimit) {
+        String limit = uri.getQueryParameter(PARAM_LIMIT);
+        if(limit == null) {
+            return defaultLimit;
+        }
+
+        try {
+            int value = Integer.parseInt(limit);
+            return value > 0 ? value : defaultLimit;
+        } catch (NumberFormatException e) {
+            return defaultLimit;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Customers Page
+ *
+ * <p>Keyset pagination of customers in name order. A page starts after the customer whose
+ * token, folded first name and id, is given, e.g. "γιωργοσ,42". Each page is a range
+ * lookup on the first name key index, reading no row before the page however deep it is,
+ * unlike an offset which skips every row before it</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class CustomersPage {
+
+    /**
+     * Order of customers paged, folded first name then id, collation matches its index
+     */
+    public static final String SORT_ORDER = CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY +
+            " COLLATE NOCASE, " + CustomersContract.Columns._ID;
+
+    // Separates sort key from id, sort key may contain it too, id never does
+    private static final char TOKEN_SEPARATOR = ',';
+
+    private CustomersPage() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Build token of customer, next page starts after it
+     *
+     * @param sortKey first name key of customer, may be null
+     * @param id customer's id
+     * @return page token
+     */
+    @NonNull
+    public static String token(@Nullable String sortKey, long id) {
+        // Customers without key sort first, their token is their id alone
+        return sortKey == null ? String.valueOf(id) : sortKey + TOKEN_SEPARATOR + id;
+    }
+
+    /**
+     * Get sort key of token
+     *
+     * @param token page token
+     * @return first name key, null if customer had none
+     */
+    @Nullable
+    static String sortKeyOf(@NonNull String token) {
+        int separator = token.lastIndexOf(TOKEN_SEPARATOR);
+        return separator < 0 ? null : token.substring(0, separator);
+    }
+
+    /**
+     * Get id of token
+     *
+     * @param token page token
+     * @return customer's id
+     * @throws IllegalArgumentException if token does not end with an id
+     */
+    static long idOf(@NonNull String token) {
+        String id = token.substring(token.lastIndexOf(TOKEN_SEPARATOR) + 1);
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+    }
+
+    /**
+     * Compare customers in {@link #SORT_ORDER}, as SQLite does
+     *
+     * <p>Customers without key sort first. Keys compare by code point, ASCII letters case
+     * folded, the way NOCASE collation compares UTF-8 text</p>
+     *
+     * @param sortKey first name key of customer, may be null
+     * @param id customer's id
+     * @param otherSortKey first name key of other customer, may be null
+     * @param otherId other customer's id
+     * @return negative, zero or positive as customer sorts before, with or after other
+     */
+    static int compare(@Nullable String sortKey, long id,
+                       @Nullable String otherSortKey, long otherId) {
+        if((sortKey == null) != (otherSortKey == null)) {
+            return sortKey == null ? -1 : 1;
+        }
+
+        if(sortKey != null) {
+            int i = 0;
+            int j = 0;
+            while((i < sortKey.length()) && (j < otherSortKey.length())) {
+                int c = foldAscii(sortKey.codePointAt(i));
+                int d = foldAscii(otherSortKey.codePointAt(j));
+                if(c != d) {
+                    return c < d ? -1 : 1;
+                }
+                i += Character.charCount(c);
+                j += Character.charCount(d);
+            }
+            if((i < sortKey.length()) != (j < otherSortKey.length())) {
+                // Shorter key is a prefix of the longer one
+                return i < sortKey.length() ? 1 : -1;
+            }
+        }
+
+        return id < otherId ? -1 : (id == otherId ? 0 : 1);
+    }
+
+    /**
+     * Compare customer with page token
+     *
+     * @param sortKey first name key of customer, may be null
+     * @param id customer's id
+     * @param token page token
+     * @return negative, zero or positive as customer sorts before, at or after token
+     */
+    static int compare(@Nullable String sortKey, long id, @NonNull String token) {
+        return compare(sortKey, id, sortKeyOf(token), idOf(token));
+    }
+
+    /**
+     * Append selection of customers following token in {@link #SORT_ORDER}
+     *
+     * @param queryBuilder query builder of Customers table
+     * @param token page token
+     * @throws IllegalArgumentException if token is invalid
+     */
+    static void appendAfterSelection(@NonNull SQLiteQueryBuilder queryBuilder,
+                                     @NonNull String token) {
+        String column = CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY;
+        String sortKey = sortKeyOf(token);
+        long id = idOf(token);
+
+        if(sortKey == null) {
+            // (FirstNameKey IS NOT NULL OR _id > 42)
+            queryBuilder.appendWhere("(" + column + " IS NOT NULL OR " +
+                    CustomersContract.Columns._ID + " > " + id + ")");
+            return;
+        }
+
+        // Range on index, customers of same name before token are skipped by the second term:
+        // FirstNameKey COLLATE NOCASE >= 'key' AND (FirstNameKey COLLATE NOCASE > 'key' OR _id > 42)
+        queryBuilder.appendWhere(column + " COLLATE NOCASE >= ");
+        queryBuilder.appendWhereEscapeString(sortKey);
+        queryBuilder.appendWhere(" AND (" + column + " COLLATE NOCASE > ");
+        queryBuilder.appendWhereEscapeString(sortKey);
+        queryBuilder.appendWhere(" OR " + CustomersContract.Columns._ID + " > " + id + ")");
+    }
+
+    /**
+     * Append selection of customers up to and including token in {@link #SORT_ORDER}
+     *
+     * @param queryBuilder query builder of Customers table
+     * @param token page token
+     * @throws IllegalArgumentException if token is invalid
+     */
+    static void appendUntilSelection(@NonNull SQLiteQueryBuilder queryBuilder,
+                                     @NonNull String token) {
+        String column = CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY;
+        String sortKey = sortKeyOf(token);
+        long id = idOf(token);
+
+        if(sortKey == null) {
+            // (FirstNameKey IS NULL AND _id <= 42)
+            queryBuilder.appendWhere("(" + column + " IS NULL AND " +
+                    CustomersContract.Columns._ID + " <= " + id + ")");
+            return;
+        }
+
+        // Customers without key sort first:
+        // (FirstNameKey IS NULL OR FirstNameKey COLLATE NOCASE < 'key' OR
+        // (FirstNameKey COLLATE NOCASE = 'key' AND _id <= 42))
+        queryBuilder.appendWhere("(" + column + " IS NULL OR " + column + " COLLATE NOCASE < ");
+        queryBuilder.appendWhereEscapeString(sortKey);
+        queryBuilder.appendWhere(" OR (" + column + " COLLATE NOCASE = ");
+        queryBuilder.appendWhereEscapeString(sortKey);
+        queryBuilder.appendWhere(" AND " + CustomersContract.Columns._ID + " <= " + id + "))");
+    }
+
+    private static int foldAscii(int codePoint) {
+        return ((codePoint >= 'A') && (codePoint <= 'Z')) ? codePoint + ('a' - 'A') : codePoint;
+    }
+}
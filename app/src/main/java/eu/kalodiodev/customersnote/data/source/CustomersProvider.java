@@ -16,16 +16,31 @@
 package eu.kalodiodev.customersnote.data.source;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.kalodiodev.customersnote.Constants;
+import eu.kalodiodev.customersnote.utils.metrics.SearchMetrics;
+
 /**
  * Customers Content Provider
  *
@@ -37,13 +52,59 @@ public class CustomersProvider extends ContentProvider {
 
     private DbHelper dbHelper;
 
+    // Whether database has full text search table, resolved on first search
+    private Boolean mFullTextSearch = null;
+
     public static final UriMatcher sUriMatcher = buildUriMather();
 
     public static final String CONTENT_AUTHORITY = "eu.kalodiodev.customersnote.provider";
     public static final Uri CONTENT_AUTHORITY_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
 
     private static final int CUSTOMERS = 100;
-    private static final int CUSTOMERS_ID = 101;
+    // Item uri code, observers tell changes of a single customer apart
+    static final int CUSTOMERS_ID = 101;
+    private static final int CUSTOMERS_SEARCH = 102;
+    private static final int CUSTOMERS_PHONE = 103;
+    private static final int CUSTOMERS_CHANGES = 104;
+
+    // Customers returned by a ranked search whose uri has no limit
+    private static final int RANKED_SEARCH_LIMIT = 50;
+
+    // Customers in a page whose uri has no limit
+    private static final int PAGE_LIMIT = 50;
+
+    // Changes returned by a changes uri with no limit
+    private static final int CHANGES_LIMIT = 500;
+
+    // Single customer writes since change log was last compacted, batches compact it at once
+    private final AtomicInteger mWritesSinceCompaction = new AtomicInteger();
+
+    // Memory taken by cached query results, and rows of the largest result cached
+    private static final long QUERY_CACHE_BYTES = 1024 * 1024;
+    private static final int QUERY_CACHE_MAX_ROWS = 1000;
+
+    private final QueryResultCache mQueryCache = new QueryResultCache(QUERY_CACHE_BYTES);
+
+    // Background checkpoints of write-ahead log, null in rollback journal mode
+    private WalCheckpointer mCheckpointer = null;
+
+    // Statements of single customer writes, compiled on the database they are used with
+    private CustomerStatements mStatements = null;
+
+    // Rows written between yield points of a batch, other writers may take over in between
+    private static final int BATCH_YIELD_ROWS = 500;
+
+    // Batch applied by the calling thread, its writes notify once when it ends
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    // Single customer changes a batch notifies by row, more are notified as a table change
+    private static final int BATCH_ROW_NOTIFICATIONS = 10;
+
+    private static final class Batch {
+        boolean changed = false;
+        // Changes of single customers, null once the batch changed more, or the whole table
+        List<Uri> changeUris = new ArrayList<>();
+    }
 
 
     private static UriMatcher buildUriMather() {
@@ -52,6 +113,12 @@ public class CustomersProvider extends ContentProvider {
         matcher.addURI(CONTENT_AUTHORITY, CustomersContract.TABLE_NAME, CUSTOMERS);
         // eg. content://eu.kalodiodev.customersnote.provider/Customers/8
         matcher.addURI(CONTENT_AUTHORITY, CustomersContract.TABLE_NAME + "/#", CUSTOMERS_ID);
+        // eg. content://eu.kalodiodev.customersnote.provider/Customers/search?q=jo
+        matcher.addURI(CONTENT_AUTHORITY, CustomersContract.TABLE_NAME + "/search", CUSTOMERS_SEARCH);
+        // eg. content://eu.kalodiodev.customersnote.provider/Customers/phone/%2B302101234567
+        matcher.addURI(CONTENT_AUTHORITY, CustomersContract.TABLE_NAME + "/phone/*", CUSTOMERS_PHONE);
+        // eg. content://eu.kalodiodev.customersnote.provider/Customers/changes?since=42
+        matcher.addURI(CONTENT_AUTHORITY, CustomersContract.TABLE_NAME + "/changes", CUSTOMERS_CHANGES);
 
         return matcher;
     }
@@ -59,6 +126,10 @@ public class CustomersProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         dbHelper = DbHelper.getInstance(getContext());
+        if(dbHelper.getMode().isWriteAheadLogging()) {
+            mCheckpointer = new WalCheckpointer(dbHelper, Constants.Database.CHECKPOINT_DELAY_MILLIS);
+        }
+        DatabaseMaintenanceService.schedule(getContext());
 
         return true;
     }
@@ -67,43 +138,257 @@ public class CustomersProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
                         @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Query, aborting the running SQLite statement when cancellation signal is cancelled
+     * e.g. when the loader's search term has been superseded
+     */
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder,
+                        @Nullable CancellationSignal cancellationSignal) {
 
         Log.d(TAG, "query: called with URI " + uri);
         final int match = sUriMatcher.match(uri);
         Log.d(TAG, "query: match is " + match);
+        flushPendingWrites(match, uri);
+
+        if(match == CUSTOMERS_CHANGES) {
+            // Readers ask for changes since their own sequence, answers are never repeated
+            Cursor changes = CustomersChangeLog.query(dbHelper.getReadableDatabase(),
+                    CustomersContract.getSince(uri), CustomersContract.getLimit(uri, CHANGES_LIMIT));
+            changes.setNotificationUri(getContext().getContentResolver(), notificationUri(match, uri));
+            return changes;
+        }
+
+        String cacheKey = QueryResultCache.buildKey(uri.toString(), projection, selection,
+                selectionArgs, sortOrder);
+        CursorSnapshot cached = mQueryCache.get(cacheKey);
+        if(cached != null) {
+            Log.d(TAG, "query: served from cache, " + mQueryCache);
+            Cursor cursor = cached.newCursor();
+            cursor.setNotificationUri(getContext().getContentResolver(), notificationUri(match, uri));
+            return cursor;
+        }
+        int cacheGeneration = mQueryCache.generation();
+        long cacheScope = QueryResultCache.SCOPE_ALL;
+
+        SearchMetrics metrics = SearchMetrics.getInstance();
+        long queryStart = metrics.now();
 
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        String limit = null;
 
         switch (match) {
             case CUSTOMERS:
                 queryBuilder.setTables(CustomersContract.TABLE_NAME);
+                if(CustomersContract.isPageUri(uri)) {
+                    // Tokens only make sense in page order, whatever sort order was asked
+                    String after = CustomersContract.getAfter(uri);
+                    String until = CustomersContract.getUntil(uri);
+                    if(after != null) {
+                        CustomersPage.appendAfterSelection(queryBuilder, after);
+                    }
+                    if(until != null) {
+                        if(after != null) {
+                            queryBuilder.appendWhere(" AND ");
+                        }
+                        CustomersPage.appendUntilSelection(queryBuilder, until);
+                    }
+                    sortOrder = CustomersPage.SORT_ORDER;
+                    // Page read again is bounded by its tokens, it may have grown or shrunk
+                    limit = until != null ? null :
+                            String.valueOf(CustomersContract.getLimit(uri, PAGE_LIMIT));
+                }
                 break;
             case CUSTOMERS_ID:
                 queryBuilder.setTables(CustomersContract.TABLE_NAME);
                 long customerId = CustomersContract.getCustomerId(uri);
                 queryBuilder.appendWhere(CustomersContract.Columns._ID + " = " + customerId);
+                cacheScope = customerId;
+                break;
+            case CUSTOMERS_SEARCH:
+                queryBuilder.setTables(CustomersContract.TABLE_NAME);
+                String[] terms = CustomersSearch.terms(CustomersContract.getSearchQuery(uri));
+                if(CustomersContract.SEARCH_MODE_SUBSTRING.equals(
+                        CustomersContract.getSearchMode(uri))) {
+                    CustomersTrigramIndex.appendSubstringSelection(queryBuilder, terms);
+                } else if(hasFullTextSearch(db)) {
+                    CustomersSearch.appendMatchSelection(queryBuilder, terms);
+                } else {
+                    CustomersSearch.appendLikeSelection(queryBuilder, terms);
+                }
+                if(CustomersContract.isRankedSearch(uri)) {
+                    cursor = queryRanked(db, queryBuilder, terms, projection, selection,
+                            selectionArgs, CustomersContract.getLimit(uri, RANKED_SEARCH_LIMIT),
+                            cancellationSignal);
+                }
+                break;
+            case CUSTOMERS_PHONE:
+                queryBuilder.setTables(CustomersContract.TABLE_NAME);
+                String phoneKey = PhoneNumberKey.from(CustomersContract.getPhoneNumber(uri));
+                if(phoneKey != null) {
+                    PhoneNumberKey.appendLookupSelection(queryBuilder, phoneKey);
+                } else {
+                    // Number without digits matches no customer
+                    queryBuilder.appendWhere("0");
+                }
                 break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
 
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+        if(cursor == null) {
+            // Notes are read only if asked for, and inflated as each is read
+            cursor = CustomerNotes.wrap(queryBuilder.query(db, CustomerNotes.projection(db, projection),
+                    selection, selectionArgs, null, null, sortOrder, limit, cancellationSignal));
+        }
+        metrics.record(SearchMetrics.Stage.PROVIDER_QUERY, queryStart);
+
+        // Statement runs and cursor window fills on first count
+        long countStart = metrics.now();
+        cursor.getCount();
+        metrics.record(SearchMetrics.Stage.FIRST_GET_COUNT, countStart);
+
+        // Repeated queries are answered from memory, until customers change. Results that
+        // would not be cached, customers changed meanwhile or too large, are not copied
+        CursorSnapshot snapshot = mQueryCache.isCurrent(cacheGeneration) ?
+                CursorSnapshot.of(cursor, QUERY_CACHE_MAX_ROWS, mQueryCache.maxResultBytes()) :
+                null;
+        if(snapshot != null) {
+            cursor.close();
+            mQueryCache.put(cacheKey, cacheScope, snapshot, cacheGeneration);
+            cursor = snapshot.newCursor();
+        }
 
         // Set Notification Uri to Cursor, needed to notify changed
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri(match, uri));
         return cursor;
     }
 
+    private static Uri notificationUri(int match, Uri uri) {
+        switch (match) {
+            case CUSTOMERS:
+                if(CustomersContract.isPageUri(uri)) {
+                    // Pages shown apply changes of single customers themselves
+                    return CustomersContract.PAGES_URI;
+                }
+                return CustomersContract.CONTENT_URI;
+            case CUSTOMERS_SEARCH:
+            case CUSTOMERS_PHONE:
+            case CUSTOMERS_CHANGES:
+                // Pages and search results change whenever any customer changes, and so does the log
+                return CustomersContract.CONTENT_URI;
+            default:
+                return uri;
+        }
+    }
+
+    /**
+     * Query best matching customers, best first
+     *
+     * <p>Every matching customer is scored on its search key columns alone, keeping the best
+     * ones in a bounded heap, so matches are never sorted nor read in full. Only the rows of
+     * the best customers are then read, with the projection asked</p>
+     */
+    private static Cursor queryRanked(SQLiteDatabase db, SQLiteQueryBuilder queryBuilder,
+                                      String[] terms, String[] projection, String selection,
+                                      String[] selectionArgs, int limit,
+                                      CancellationSignal cancellationSignal) {
+        String[] rankedProjection = new String[CustomersRanking.RANKED_COLUMNS.length + 1];
+        rankedProjection[0] = CustomersContract.Columns._ID;
+        System.arraycopy(CustomersRanking.RANKED_COLUMNS, 0, rankedProjection, 1,
+                CustomersRanking.RANKED_COLUMNS.length);
+
+        String[] tokens = CustomersRanking.queryTokens(terms);
+        String[] fields = new String[CustomersRanking.RANKED_COLUMNS.length];
+        TopKSelection topK = new TopKSelection(limit);
+
+        Cursor candidates = queryBuilder.query(db, rankedProjection, selection, selectionArgs,
+                null, null, null, null, cancellationSignal);
+        try {
+            while(candidates.moveToNext()) {
+                for(int i = 0; i < fields.length; i++) {
+                    fields[i] = candidates.getString(i + 1);
+                }
+                // Equally scored customers in first name order
+                topK.offer(candidates.getLong(0), CustomersRanking.score(tokens, fields), fields[0]);
+            }
+        } finally {
+            candidates.close();
+        }
+
+        int matchCount = topK.offered();
+        long[] rankedIds = topK.drainIds();
+        Log.d(TAG, "queryRanked: " + rankedIds.length + " best of " + matchCount + " matches");
+
+        // Rows of ranked customers, id appended if projection lacks it
+        String[] pageProjection = projection;
+        int idColumn = -1;
+        if(projection != null) {
+            idColumn = Arrays.asList(projection).indexOf(CustomersContract.Columns._ID);
+            if(idColumn < 0) {
+                pageProjection = Arrays.copyOf(projection, projection.length + 1);
+                idColumn = projection.length;
+                pageProjection[idColumn] = CustomersContract.Columns._ID;
+            }
+        }
+
+        StringBuilder pageSelection = new StringBuilder(CustomersContract.Columns._ID + " IN (");
+        for(int i = 0; i < rankedIds.length; i++) {
+            if(i > 0) {
+                pageSelection.append(',');
+            }
+            pageSelection.append(rankedIds[i]);
+        }
+        pageSelection.append(')');
+
+        Cursor page = CustomerNotes.wrap(db.query(CustomersContract.TABLE_NAME,
+                CustomerNotes.projection(db, pageProjection), pageSelection.toString(),
+                null, null, null, null));
+        try {
+            if(idColumn < 0) {
+                idColumn = page.getColumnIndexOrThrow(CustomersContract.Columns._ID);
+            }
+
+            Map<Long, Integer> positions = new HashMap<>(rankedIds.length * 2);
+            while(page.moveToNext()) {
+                positions.put(page.getLong(idColumn), page.getPosition());
+            }
+
+            RankedCursor ranked = new RankedCursor(projection != null ? projection :
+                    page.getColumnNames(), rankedIds.length, matchCount);
+            for(long id : rankedIds) {
+                Integer position = positions.get(id);
+                // Customer deleted since it was scored
+                if((position != null) && page.moveToPosition(position)) {
+                    ranked.addRow(page);
+                }
+            }
+            return ranked;
+        } finally {
+            page.close();
+        }
+    }
+
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case CUSTOMERS:
+            case CUSTOMERS_SEARCH:
+            case CUSTOMERS_PHONE:
                 return CustomersContract.CONTENT_TYPE;
             case CUSTOMERS_ID:
                 return CustomersContract.CONTENT_ITEM_TYPE;
+            case CUSTOMERS_CHANGES:
+                return CustomersContract.CHANGES_CONTENT_TYPE;
             default:
                 throw new IllegalArgumentException("unknown Uri: " + uri);
         }
@@ -118,14 +403,34 @@ public class CustomersProvider extends ContentProvider {
 
         final SQLiteDatabase db;
         Uri returnUri;
+        Uri changeUri;
         long recordId;
 
         switch (match) {
             case CUSTOMERS:
+                contentValues = DerivedKeys.complete(contentValues);
                 db = dbHelper.getWritableDatabase();
-                recordId = db.insert(CustomersContract.TABLE_NAME, null, contentValues);
+                db.beginTransactionNonExclusive();
+                try {
+                    ContentValues customerValues = CustomerNotes.withoutNotes(contentValues);
+                    if((customerValues != null) && CustomerStatements.canInsert(customerValues)) {
+                        recordId = statements(db).insert(customerValues);
+                    } else {
+                        recordId = db.insert(CustomersContract.TABLE_NAME, null, customerValues);
+                    }
+                    if(recordId >= 0) {
+                        CustomerNotes.write(db, recordId, contentValues);
+                        CustomersTrigramIndex.index(db, statements(db).insertTrigram(), recordId,
+                                contentValues);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 if(recordId >= 0) {
                     returnUri = CustomersContract.buildCustomerUri(recordId);
+                    changeUri = CustomersContract.buildChangeUri(recordId,
+                            CustomersContract.OPERATION_INSERT);
                 } else {
                     throw new android.database.SQLException("Failed to insert into " + uri.toString());
                 }
@@ -134,10 +439,12 @@ public class CustomersProvider extends ContentProvider {
                 throw new IllegalArgumentException("Unknown uri:" + uri);
         }
 
-        // Notify insertion
+        // Notify insertion, with the inserted customer's uri
         if(recordId >= 0) {
-            Log.d(TAG, "insert: setting notifyChanged with " + uri);
-            getContext().getContentResolver().notifyChange(uri, null);
+            onWrite();
+            mQueryCache.invalidate(new long[] {recordId});
+            Log.d(TAG, "insert: setting notifyChanged with " + changeUri);
+            notifyChange(changeUri);
         } else {
             Log.d(TAG, "insert: nothing inserted");
         }
@@ -147,6 +454,143 @@ public class CustomersProvider extends ContentProvider {
         return returnUri;
     }
 
+    /**
+     * Insert customers in a single transaction, yielding to other writers every
+     * {@link #BATCH_YIELD_ROWS} rows, and notify observers once
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        Log.d(TAG, "bulkInsert: " + values.length + " rows, called with uri: " + uri);
+        if(sUriMatcher.match(uri) != CUSTOMERS) {
+            throw new IllegalArgumentException("Unknown uri:" + uri);
+        }
+
+        long start = System.nanoTime();
+        int count = 0;
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            for(int i = 0; i < values.length; i++) {
+                if((i > 0) && (i % BATCH_YIELD_ROWS == 0)) {
+                    db.yieldIfContendedSafely();
+                }
+
+                ContentValues contentValues = DerivedKeys.complete(values[i]);
+                ContentValues customerValues = CustomerNotes.withoutNotes(contentValues);
+                long recordId = CustomerStatements.canInsert(customerValues) ?
+                        statements(db).insert(customerValues) :
+                        db.insert(CustomersContract.TABLE_NAME, null, customerValues);
+                if(recordId >= 0) {
+                    CustomerNotes.write(db, recordId, contentValues);
+                    CustomersTrigramIndex.index(db, statements(db).insertTrigram(), recordId,
+                            contentValues);
+                    count++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+
+            // Rows committed at yield points are visible even if the rest rolled back
+            if(count > 0) {
+                onBatchWritten(null);
+            }
+        }
+
+        Log.d(TAG, "bulkInsert: inserted " + count + " in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+        return count;
+    }
+
+    /**
+     * Apply operations in a single transaction, yielding to other writers where operations
+     * allow it, and notify observers once
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        Log.d(TAG, "applyBatch: " + operations.size() + " operations");
+
+        Batch batch = new Batch();
+        mBatch.set(batch);
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+            for(int i = 0; i < results.length; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if((i > 0) && operation.isYieldAllowed()) {
+                    db.yieldIfContendedSafely();
+                }
+                results[i] = operation.apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+            mBatch.remove();
+
+            if(batch.changed) {
+                onBatchWritten(batch.changeUris);
+            }
+        }
+    }
+
+    /**
+     * Notify observers of change, or defer notification to the end of the calling
+     * thread's batch
+     *
+     * <p>Change of a single customer is notified with its uri and operation, see
+     * {@link CustomersContract#buildChangeUri(long, String)}, other changes with
+     * {@link CustomersContract#CONTENT_URI}. Batches notify once they end, by row if
+     * they changed no more than {@link #BATCH_ROW_NOTIFICATIONS} single customers, else the
+     * whole table once</p>
+     *
+     * @param uri uri of changed customers
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if(batch != null) {
+            batch.changed = true;
+            if((batch.changeUris != null) && (CustomersContract.getOperation(uri) != null) &&
+                    (batch.changeUris.size() < BATCH_ROW_NOTIFICATIONS)) {
+                batch.changeUris.add(uri);
+            } else {
+                batch.changeUris = null;
+            }
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Batch has been committed, results cached while it ran may be stale
+     *
+     * @param changeUris changes of the few single customers batch wrote, null to notify
+     *                   a change of the whole table
+     */
+    private void onBatchWritten(List<Uri> changeUris) {
+        if(mCheckpointer != null) {
+            mCheckpointer.onWrite();
+        }
+        compactChangeLog();
+        mQueryCache.invalidateAll();
+
+        if(changeUris == null) {
+            Log.d(TAG, "onBatchWritten: Setting notifyChange with " + CustomersContract.CONTENT_URI);
+            getContext().getContentResolver().notifyChange(CustomersContract.CONTENT_URI, null);
+            return;
+        }
+        // Pages shown apply a few customers changed in place, rather than load again
+        for(Uri changeUri : changeUris) {
+            Log.d(TAG, "onBatchWritten: Setting notifyChange with " + changeUri);
+            getContext().getContentResolver().notifyChange(changeUri, null);
+        }
+    }
+
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection,
                       @Nullable String[] selectionArgs) {
@@ -154,25 +598,51 @@ public class CustomersProvider extends ContentProvider {
         Log.d(TAG, "delete called with uri:" + uri);
         final int match = sUriMatcher.match(uri);
         Log.d(TAG, "match id " + match);
+        flushPendingWrites(match, uri);
 
         final SQLiteDatabase db;
         int count;
+        long[] customerIds;
+        Uri changeUri;
 
         String selectionCriteria;
 
         switch (match) {
             case CUSTOMERS:
                 db = dbHelper.getWritableDatabase();
-                count = db.delete(CustomersContract.TABLE_NAME, selection, selectionArgs);
+                db.beginTransactionNonExclusive();
+                try {
+                    customerIds = CustomersTrigramIndex.queryIds(db, selection, selectionArgs);
+                    changeUri = CustomersContract.CONTENT_URI;
+                    count = db.delete(CustomersContract.TABLE_NAME, selection, selectionArgs);
+                    for(long id : customerIds) {
+                        CustomersTrigramIndex.remove(db, id);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case CUSTOMERS_ID:
                 db = dbHelper.getWritableDatabase();
                 long customerId = CustomersContract.getCustomerId(uri);
-                selectionCriteria = CustomersContract.Columns._ID + " = " + customerId;
-                if((selection != null) && (selection.length() > 0)) {
-                    selectionCriteria += " AND (" + selection + ")";
+                boolean byId = (selection == null) || (selection.length() == 0);
+                selectionCriteria = byId ? null : CustomersContract.Columns._ID + " = " +
+                        customerId + " AND (" + selection + ")";
+                db.beginTransactionNonExclusive();
+                try {
+                    customerIds = new long[] {customerId};
+                    changeUri = CustomersContract.buildChangeUri(customerId,
+                            CustomersContract.OPERATION_DELETE);
+                    count = byId ? statements(db).deleteById(customerId) :
+                            db.delete(CustomersContract.TABLE_NAME, selectionCriteria, selectionArgs);
+                    if(count > 0) {
+                        CustomersTrigramIndex.remove(db, customerId);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                count = db.delete(CustomersContract.TABLE_NAME, selectionCriteria, selectionArgs);
                 break;
             default:
                 throw new IllegalArgumentException("Unknown uri:" + uri);
@@ -180,9 +650,11 @@ public class CustomersProvider extends ContentProvider {
 
         // notify deletion
         if(count > 0) {
+            onWrite();
+            mQueryCache.invalidate(customerIds);
             // something was deleted
-            Log.d(TAG, "delete: Setting notifyChange with " + uri);
-            getContext().getContentResolver().notifyChange(uri, null);
+            Log.d(TAG, "delete: Setting notifyChange with " + changeUri);
+            notifyChange(changeUri);
         } else {
             Log.d(TAG, "delete: nothing deleted");
         }
@@ -198,27 +670,88 @@ public class CustomersProvider extends ContentProvider {
         Log.d(TAG, "update with uri:" + uri);
         int match = sUriMatcher.match(uri);
         Log.d(TAG, "match is " + match);
+        flushPendingWrites(match, uri);
 
         int count;
+        long[] customerIds;
+        Uri changeUri;
         SQLiteDatabase db;
         String selectionCriteria;
 
+        // Version given makes the update a compare-and-set, customers at another version
+        // are left as they are and not counted. It is raised, not set, by the update
+        Long expectedVersion = null;
+        if((contentValues != null) &&
+                contentValues.containsKey(CustomersContract.Columns.CUSTOMERS_VERSION)) {
+            expectedVersion = contentValues.getAsLong(CustomersContract.Columns.CUSTOMERS_VERSION);
+            contentValues = new ContentValues(contentValues);
+            contentValues.remove(CustomersContract.Columns.CUSTOMERS_VERSION);
+        }
+
+        contentValues = DerivedKeys.complete(contentValues);
+        // Notes are written to their own table, after the customers they belong to
+        ContentValues customerValues = CustomerNotes.withoutNotes(contentValues);
+
         switch (match) {
             case CUSTOMERS:
+                if(expectedVersion != null) {
+                    selection = versionSelection(selection, expectedVersion);
+                }
                 db = dbHelper.getWritableDatabase();
-                count = db.update(CustomersContract.TABLE_NAME, contentValues,
-                        selection, selectionArgs);
+                db.beginTransactionNonExclusive();
+                try {
+                    customerIds = CustomersTrigramIndex.queryIds(db, selection, selectionArgs);
+                    changeUri = CustomersContract.CONTENT_URI;
+                    count = updateCustomers(db, customerValues, selection, selectionArgs);
+                    if(count > 0) {
+                        for(long id : customerIds) {
+                            CustomerNotes.write(db, id, contentValues);
+                        }
+                    }
+                    if((count > 0) && CustomersTrigramIndex.isIndexed(contentValues)) {
+                        CustomersTrigramIndex.reindex(db, statements(db).insertTrigram(),
+                                customerIds);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case CUSTOMERS_ID:
                 db = dbHelper.getWritableDatabase();
                 long customerId = CustomersContract.getCustomerId(uri);
-                selectionCriteria = CustomersContract.Columns._ID + " = " + customerId;
-                if((selection != null) && (selection.length() > 0)) {
-                    selectionCriteria += " AND (" + selection + ")";
+                // Customer saved with all its fields is updated by the compiled statement
+                boolean byId = ((selection == null) || (selection.length() == 0)) &&
+                        (customerValues != null) && CustomerStatements.canUpdate(customerValues);
+                selectionCriteria = null;
+                if(!byId) {
+                    selectionCriteria = CustomersContract.Columns._ID + " = " + customerId;
+                    if((selection != null) && (selection.length() > 0)) {
+                        selectionCriteria += " AND (" + selection + ")";
+                    }
+                    if(expectedVersion != null) {
+                        selectionCriteria = versionSelection(selectionCriteria, expectedVersion);
+                    }
+                }
+                db.beginTransactionNonExclusive();
+                try {
+                    customerIds = new long[] {customerId};
+                    changeUri = CustomersContract.buildChangeUri(customerId,
+                            CustomersContract.OPERATION_UPDATE);
+                    count = byId ?
+                            statements(db).updateById(customerId, customerValues, expectedVersion) :
+                            updateCustomers(db, customerValues, selectionCriteria, selectionArgs);
+                    if(count > 0) {
+                        CustomerNotes.write(db, customerId, contentValues);
+                    }
+                    if((count > 0) && CustomersTrigramIndex.isIndexed(contentValues)) {
+                        CustomersTrigramIndex.reindex(db, statements(db).insertTrigram(),
+                                customerIds);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                count = db.update(CustomersContract.TABLE_NAME, contentValues,
-                        selectionCriteria, selectionArgs);
-
                 break;
             default:
                 throw new IllegalArgumentException("Unknown uri " + uri);
@@ -226,9 +759,11 @@ public class CustomersProvider extends ContentProvider {
 
         // notify of update
         if(count > 0) {
+            onWrite();
+            mQueryCache.invalidate(customerIds);
             // something was updated
-            Log.d(TAG, "update: Setting notifyChange with " + uri);
-            getContext().getContentResolver().notifyChange(uri, null);
+            Log.d(TAG, "update: Setting notifyChange with " + changeUri);
+            notifyChange(changeUri);
         } else {
             Log.d(TAG, "update: nothing updated");
         }
@@ -236,4 +771,135 @@ public class CustomersProvider extends ContentProvider {
         Log.d(TAG, "Exiting update, returning " + count);
         return count;
     }
-}
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if(CustomersContract.METHOD_FULL_TEXT_SEARCH.equals(method)) {
+            Bundle result = new Bundle();
+            result.putBoolean(CustomersContract.EXTRA_FULL_TEXT_SEARCH,
+                    hasFullTextSearch(dbHelper.getReadableDatabase()));
+            return result;
+        }
+
+        if(CustomersContract.METHOD_QUERY_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(CustomersContract.EXTRA_CACHE_HITS, mQueryCache.hits());
+            result.putLong(CustomersContract.EXTRA_CACHE_MISSES, mQueryCache.misses());
+            result.putLong(CustomersContract.EXTRA_CACHE_EVICTIONS, mQueryCache.evictions());
+            result.putLong(CustomersContract.EXTRA_CACHE_BYTES, mQueryCache.sizeBytes());
+            return result;
+        }
+
+        if(CustomersContract.METHOD_DATABASE_REPLACED.equals(method)) {
+            Log.d(TAG, "call: database replaced, dropping cached results");
+            mQueryCache.invalidateAll();
+            mFullTextSearch = null;
+            getContext().getContentResolver().notifyChange(CustomersContract.CONTENT_URI, null);
+            return null;
+        }
+
+        if(CustomersContract.METHOD_CHECKPOINT.equals(method)) {
+            Bundle result = new Bundle();
+            result.putBoolean(CustomersContract.EXTRA_CHECKPOINT_COMPLETE, WalCheckpointer.checkpoint(
+                    dbHelper.getWritableDatabase(), WalCheckpointer.MODE_FULL));
+            return result;
+        }
+
+        if(CustomersContract.METHOD_CLOSE_DATABASE.equals(method)) {
+            Log.d(TAG, "call: closing database");
+            if(mCheckpointer != null) {
+                mCheckpointer.cancel();
+            }
+            synchronized (this) {
+                if(mStatements != null) {
+                    mStatements.close();
+                    mStatements = null;
+                }
+            }
+            dbHelper.beginReplace();
+            return null;
+        }
+
+        if(CustomersContract.METHOD_REOPEN_DATABASE.equals(method)) {
+            dbHelper.endReplace();
+            return null;
+        }
+
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Update customers in Customers table, raising their version. Values left once notes
+     * are taken out may be empty, customers matching selection are still updated to a new
+     * version then
+     */
+    private static int updateCustomers(SQLiteDatabase db, ContentValues customerValues,
+                                       String selection, String[] selectionArgs) {
+        return CustomerStatements.update(db, customerValues, selection, selectionArgs);
+    }
+
+    /**
+     * Selection of customers still at version expected
+     */
+    private static String versionSelection(String selection, long expectedVersion) {
+        String versionCriteria = CustomersContract.Columns.CUSTOMERS_VERSION + " = " + expectedVersion;
+        if((selection == null) || (selection.length() == 0)) {
+            return versionCriteria;
+        }
+        return "(" + selection + ") AND " + versionCriteria;
+    }
+
+    /**
+     * Customer statements of database, compiled again once database has been reopened
+     */
+    private synchronized CustomerStatements statements(SQLiteDatabase db) {
+        if((mStatements == null) || (mStatements.getDatabase() != db)) {
+            if(mStatements != null) {
+                mStatements.close();
+            }
+            mStatements = new CustomerStatements(db);
+        }
+        return mStatements;
+    }
+
+    /**
+     * Apply writes pending in {@link CustomerWriteBuffer} to customers of uri, before they
+     * are read or written here. Not within a batch, it holds the database the pending writes
+     * would wait for
+     */
+    private void flushPendingWrites(int match, Uri uri) {
+        if(mBatch.get() == null) {
+            CustomerWriteBuffer.flushPending(match == CUSTOMERS_ID ?
+                    CustomersContract.getCustomerId(uri) : -1);
+        }
+    }
+
+    private void onWrite() {
+        if(mCheckpointer != null) {
+            mCheckpointer.onWrite();
+        }
+        if(mWritesSinceCompaction.incrementAndGet() >= Constants.Database.CHANGE_LOG_COMPACT_WRITES) {
+            compactChangeLog();
+        }
+    }
+
+    /**
+     * Keep latest {@link Constants.Database#CHANGE_LOG_MAX_ENTRIES} changes only, readers
+     * further behind are told their changes are incomplete
+     */
+    private void compactChangeLog() {
+        mWritesSinceCompaction.set(0);
+        int compacted = CustomersChangeLog.compact(dbHelper.getWritableDatabase(),
+                Constants.Database.CHANGE_LOG_MAX_ENTRIES);
+        Log.d(TAG, "compactChangeLog: deleted " + compacted + " changes");
+    }
+
+    private boolean hasFullTextSearch(SQLiteDatabase db) {
+        if(mFullTextSearch == null) {
+            mFullTextSearch = DbHelper.hasFullTextSearch(db);
+            Log.d(TAG, "hasFullTextSearch: " + mFullTextSearch);
+        }
+        return mFullTextSearch;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+
+import eu.kalodiodev.customersnote.data.observable.Cancellation;
+import eu.kalodiodev.customersnote.data.observable.QuerySource;
+
+/**
+ * Customers Query
+ *
+ * <p>Query of customers loaded by an observable query, remembering the search query it was
+ * created for, so that results of a superseded search can be recognised and dropped.
+ * Searches refining the cached search result are answered from {@link CustomersSearchCache}
+ * without querying the database</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class CustomersQuery implements QuerySource<Cursor> {
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    @NonNull
+    private final Uri mUri;
+
+    private final String[] mProjection;
+
+    private final String mSortOrder;
+
+    @NonNull
+    private final String mSearchQuery;
+
+    @Nullable
+    private final CustomersSearchCache mSearchCache;
+
+    CustomersQuery(@NonNull ContentResolver contentResolver, @NonNull Uri uri, String[] projection,
+                   String sortOrder, String searchQuery, @Nullable CustomersSearchCache searchCache) {
+        this.mContentResolver = contentResolver;
+        this.mUri = uri;
+        this.mProjection = projection;
+        this.mSortOrder = sortOrder;
+        this.mSearchQuery = searchQuery == null ? "" : searchQuery;
+        this.mSearchCache = searchCache;
+    }
+
+    /**
+     * Get search query
+     *
+     * @return search query loaded customers are filtered with, empty for all customers
+     */
+    @NonNull
+    public String getSearchQuery() {
+        return mSearchQuery;
+    }
+
+    /**
+     * Whether query reads the first page of all customers
+     *
+     * @return true if following pages are read as they are scrolled to, see {@link CustomerPages}
+     */
+    public boolean isPaged() {
+        return CustomersContract.isPageUri(mUri);
+    }
+
+    @Override
+    public Cursor load(Cancellation cancellation) {
+        if(mSearchCache == null) {
+            return query(cancellation);
+        }
+
+        int generation = mSearchCache.beginLoad();
+
+        // Loaded again from database once customers change, query is invalidated
+        Cursor refined = mSearchCache.refine(mSearchQuery, mProjection, mSortOrder);
+        if(refined != null) {
+            return refined;
+        }
+
+        Cursor cursor = query(cancellation);
+        if(cursor != null) {
+            mSearchCache.capture(generation, mSearchQuery, mProjection, mSortOrder, cursor);
+        }
+        return cursor;
+    }
+
+    @Override
+    public void release(Cursor result) {
+        if((result != null) && !result.isClosed()) {
+            result.close();
+        }
+    }
+
+    private Cursor query(Cancellation cancellation) {
+        // Cancelling the load aborts the SQLite query
+        final CancellationSignal signal = new CancellationSignal();
+        cancellation.setOnCancelListener(new Cancellation.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                signal.cancel();
+            }
+        });
+
+        Cursor cursor = ContentResolverCompat.query(mContentResolver, mUri, mProjection,
+                null, null, mSortOrder, signal);
+        if(cursor != null) {
+            try {
+                // Window is filled here, not on the main thread
+                cursor.getCount();
+            } catch (RuntimeException e) {
+                cursor.close();
+                throw e;
+            }
+        }
+        return cursor;
+    }
+}
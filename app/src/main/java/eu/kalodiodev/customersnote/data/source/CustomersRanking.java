@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Customers Ranking
+ *
+ * <p>Relevance score of a customer matching a search query. Every query token scores
+ * its best match among the customer's fields, the weight of the field times the weight
+ * of the match type, e.g. a last name equal to the token scores far more than a word of
+ * the profession starting with it. A customer scores the sum of its tokens' scores</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CustomersRanking {
+
+    // Customer fields scored, search keys or already folded, in the order of FIELD_WEIGHTS
+    static final String[] RANKED_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER
+    };
+
+    // Names matter most, then company, then profession and phone
+    private static final int[] FIELD_WEIGHTS = {3, 3, 2, 1, 1};
+
+    // Match types, token equal to a word of field, prefix of the field's first word,
+    // prefix of any other word, anywhere else in field
+    static final int MATCH_EXACT = 4;
+    static final int MATCH_FIELD_PREFIX = 3;
+    static final int MATCH_WORD_PREFIX = 2;
+    static final int MATCH_SUBSTRING = 1;
+    static final int MATCH_NONE = 0;
+
+    private CustomersRanking() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Split search terms into folded tokens, the way fields are tokenized
+     *
+     * @param terms search terms
+     * @return query tokens
+     */
+    @NonNull
+    static String[] queryTokens(@NonNull String[] terms) {
+        List<String> tokens = new ArrayList<>();
+
+        for(String term : terms) {
+            String folded = SearchKey.fold(term);
+            int start = -1;
+            for(int i = 0; i <= folded.length(); i++) {
+                boolean tokenChar = (i < folded.length()) &&
+                        CustomersSearch.isTokenChar(folded.charAt(i));
+                if(tokenChar && (start < 0)) {
+                    start = i;
+                } else if(!tokenChar && (start >= 0)) {
+                    tokens.add(folded.substring(start, i));
+                    start = -1;
+                }
+            }
+        }
+
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    /**
+     * Score customer
+     *
+     * @param tokens query tokens, see {@link #queryTokens(String[])}
+     * @param fields values of {@link #RANKED_COLUMNS}, may be null
+     * @return relevance score, higher is better
+     */
+    static int score(@NonNull String[] tokens, @NonNull String[] fields) {
+        int score = 0;
+
+        for(String token : tokens) {
+            int best = 0;
+            for(int i = 0; i < fields.length; i++) {
+                if(fields[i] != null) {
+                    best = Math.max(best, FIELD_WEIGHTS[i] * matchType(token, fields[i]));
+                }
+            }
+            score += best;
+        }
+
+        return score;
+    }
+
+    /**
+     * Best match type of token in folded field
+     *
+     * @param token query token
+     * @param field folded field
+     * @return one of the MATCH constants
+     */
+    static int matchType(@NonNull String token, @NonNull String field) {
+        int best = MATCH_NONE;
+        boolean firstWord = true;
+        int i = 0;
+
+        while(i < field.length()) {
+            if(!CustomersSearch.isTokenChar(field.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            // Word of field starts at i
+            int end = i;
+            while((end < field.length()) && CustomersSearch.isTokenChar(field.charAt(end))) {
+                end++;
+            }
+
+            if(field.regionMatches(i, token, 0, token.length())) {
+                if(end - i == token.length()) {
+                    return MATCH_EXACT;
+                }
+                best = Math.max(best, firstWord ? MATCH_FIELD_PREFIX : MATCH_WORD_PREFIX);
+            }
+
+            firstWord = false;
+            i = end;
+        }
+
+        if((best == MATCH_NONE) && field.contains(token)) {
+            best = MATCH_SUBSTRING;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Customers Search
+ *
+ * <p>Translates a search query into either a full text search MATCH expression
+ * or, on devices without full text search, into a LIKE selection. Both match the
+ * search key columns, terms are folded the same way</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CustomersSearch {
+
+    // Customer fields a search query is matched against, through their search keys
+    static final String[] SEARCH_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER
+    };
+
+    // Columns matched by LIKE selection, search keys of SEARCH_COLUMNS
+    private static final String[] LIKE_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER
+    };
+
+    private CustomersSearch() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Split search query into terms
+     *
+     * @param searchQuery search query, terms separated by white space
+     * @return search terms, never empty strings
+     */
+    @NonNull
+    static String[] terms(String searchQuery) {
+        List<String> terms = new ArrayList<>();
+
+        if(searchQuery != null) {
+            for(String term : searchQuery.trim().split("\\s+")) {
+                if(!term.isEmpty()) {
+                    terms.add(term);
+                }
+            }
+        }
+
+        return terms.toArray(new String[terms.size()]);
+    }
+
+    /**
+     * Build full text search MATCH expression
+     *
+     * <p>Every term is matched as a prefix, all terms must match</p>
+     *
+     * @param terms search terms
+     * @return match expression
+     */
+    @NonNull
+    static String buildMatchExpression(@NonNull String[] terms) {
+        StringBuilder expression = new StringBuilder();
+
+        for(String term : terms) {
+            String token = toMatchToken(SearchKey.fold(term));
+            if(token.isEmpty()) {
+                continue;
+            }
+
+            if(expression.length() > 0) {
+                expression.append(' ');
+            }
+            // e.g. "jo*" matches every token starting with jo
+            expression.append('"').append(token).append("*\"");
+        }
+
+        return expression.toString();
+    }
+
+    /**
+     * Append full text search selection to query builder
+     *
+     * @param queryBuilder query builder of Customers table
+     * @param terms search terms
+     */
+    static void appendMatchSelection(@NonNull SQLiteQueryBuilder queryBuilder,
+                                     @NonNull String[] terms) {
+        String expression = buildMatchExpression(terms);
+        if(expression.isEmpty()) {
+            return;
+        }
+
+        // _id IN (SELECT docid FROM CustomersFts WHERE CustomersFts MATCH '"jo*" "sm*"')
+        queryBuilder.appendWhere(CustomersContract.Columns._ID + " IN (SELECT docid FROM " +
+                CustomersContract.FTS_TABLE_NAME + " WHERE " +
+                CustomersContract.FTS_TABLE_NAME + " MATCH ");
+        queryBuilder.appendWhereEscapeString(expression);
+        queryBuilder.appendWhere(")");
+    }
+
+    /**
+     * Append LIKE selection to query builder
+     *
+     * <p>Fallback for devices whose SQLite lacks full text search. Every term must be
+     * the prefix of at least one of the search columns</p>
+     *
+     * @param queryBuilder query builder of Customers table
+     * @param terms search terms
+     */
+    static void appendLikeSelection(@NonNull SQLiteQueryBuilder queryBuilder,
+                                    @NonNull String[] terms) {
+        for(int i = 0; i < terms.length; i++) {
+            if(i > 0) {
+                queryBuilder.appendWhere(" AND ");
+            }
+
+            queryBuilder.appendWhere("(");
+            for(int j = 0; j < LIKE_COLUMNS.length; j++) {
+                if(j > 0) {
+                    queryBuilder.appendWhere(" OR ");
+                }
+                queryBuilder.appendWhere(LIKE_COLUMNS[j] + " LIKE ");
+                queryBuilder.appendWhereEscapeString(SearchKey.fold(terms[i]) + "%");
+            }
+            queryBuilder.appendWhere(")");
+        }
+    }
+
+    /**
+     * Build search key of a customer
+     *
+     * <p>Folds fields like their search key columns and tokenizes them the way the full
+     * text search tokenizer does, every token preceded by a space, so that a term
+     * matches if key contains " " + term</p>
+     *
+     * @param fields search column values, may be null
+     * @return search key
+     */
+    @NonNull
+    static String searchKey(@NonNull String[] fields) {
+        StringBuilder key = new StringBuilder();
+
+        for(String field : fields) {
+            if(field == null) {
+                continue;
+            }
+
+            String folded = SearchKey.fold(field);
+            boolean inToken = false;
+            for(int i = 0; i < folded.length(); i++) {
+                char c = folded.charAt(i);
+                if(isTokenChar(c)) {
+                    if(!inToken) {
+                        key.append(' ');
+                        inToken = true;
+                    }
+                    key.append(c);
+                } else {
+                    inToken = false;
+                }
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Normalize search term to be matched against search keys
+     *
+     * @param term search term
+     * @return normalized term, null if term is not a single token
+     */
+    static String searchKeyTerm(@NonNull String term) {
+        String folded = SearchKey.fold(term);
+
+        for(int i = 0; i < folded.length(); i++) {
+            if(!isTokenChar(folded.charAt(i))) {
+                return null;
+            }
+        }
+
+        return folded.length() > 0 ? folded : null;
+    }
+
+    // Simple full text search tokenizer: ASCII letters and digits or any non ASCII character
+    static boolean isTokenChar(char c) {
+        return c >= 0x80 || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+                (c >= '0' && c <= '9');
+    }
+
+    /**
+     * The full text search tokenizer splits on anything that is not a token char, replacing
+     * those characters keeps MATCH syntax (quotes, stars, parentheses) out of the query.
+     * Split by {@link #isTokenChar(char)} as search keys are, so that a cached result is
+     * refined to exactly what the MATCH query returns
+     */
+    private static String toMatchToken(String term) {
+        StringBuilder token = new StringBuilder(term.length());
+
+        for(int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            token.append(isTokenChar(c) ? c : ' ');
+        }
+
+        return token.toString().trim();
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Customers Search Cache
+ *
+ * <p>Keeps the rows of the last search result in memory. A search extending the cached
+ * search (e.g. "jo" to "joh") can only match a subset of the cached rows, so it is answered
+ * by filtering them instead of querying the database. Any change notified for customers
+ * invalidates the cache</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class CustomersSearchCache {
+    private static final String TAG = "CustomersSearchCache";
+
+    // Larger results are not cached, reading them whole costs more than it saves
+    private static final int MAX_ROWS = 5000;
+    private static final int MAX_CHARS = 1024 * 1024;
+
+    private static CustomersSearchCache instance = null;
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    // Incremented on every change, a load started before a change is not cached
+    private int mGeneration = 0;
+
+    private Snapshot mSnapshot = null;
+
+    // Refinement matches full text search semantics, resolved on first load
+    private Boolean mRefinable = null;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    // Prevent direct instantiation
+    private CustomersSearchCache(@NonNull ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
+        this.mContentResolver.registerContentObserver(CustomersContract.CONTENT_URI, true, mObserver);
+    }
+
+    /**
+     * Get an instance of the app's singleton search cache
+     *
+     * @param context context
+     * @return customers search cache
+     */
+    public static synchronized CustomersSearchCache getInstance(@NonNull Context context) {
+        if(instance == null) {
+            instance = new CustomersSearchCache(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    /**
+     * Begin loading customers
+     *
+     * @return generation to pass to {@link #capture}
+     */
+    synchronized int beginLoad() {
+        return mGeneration;
+    }
+
+    /**
+     * Invalidate cached search result
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        if(mSnapshot != null) {
+            Log.d(TAG, "invalidate: dropping cached search result");
+            mSnapshot = null;
+        }
+    }
+
+    /**
+     * Refine cached search result
+     *
+     * @param searchQuery search query
+     * @param projection columns requested
+     * @param sortOrder sort order requested
+     * @return cursor of customers matching search query,
+     *         null if search query does not refine cached search
+     */
+    @Nullable
+    Cursor refine(String searchQuery, String[] projection, String sortOrder) {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = mSnapshot;
+        }
+
+        if((snapshot == null) || !snapshot.matches(projection, sortOrder)) {
+            return null;
+        }
+
+        String[] terms = searchKeyTerms(searchQuery);
+        if((terms == null) || !isRefinement(snapshot.terms, terms)) {
+            return null;
+        }
+
+        return snapshot.filter(terms);
+    }
+
+    /**
+     * Cache search result, cursor is left before its first row
+     *
+     * @param generation generation returned by {@link #beginLoad} before querying
+     * @param searchQuery search query
+     * @param projection columns queried
+     * @param sortOrder sort order queried
+     * @param cursor search result
+     */
+    void capture(int generation, String searchQuery, String[] projection, String sortOrder,
+                 @NonNull Cursor cursor) {
+
+        String[] terms = searchKeyTerms(searchQuery);
+        if((terms == null) || !isRefinable() || (cursor.getCount() > MAX_ROWS)) {
+            return;
+        }
+
+        Snapshot snapshot = Snapshot.from(terms, projection, sortOrder, cursor);
+        cursor.moveToPosition(-1);
+
+        if(snapshot == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if(generation == mGeneration) {
+                mSnapshot = snapshot;
+            }
+        }
+    }
+
+    private boolean isRefinable() {
+        if(mRefinable == null) {
+            Bundle result = mContentResolver.call(CustomersContract.CONTENT_URI,
+                    CustomersContract.METHOD_FULL_TEXT_SEARCH, null, null);
+            mRefinable = (result != null) &&
+                    result.getBoolean(CustomersContract.EXTRA_FULL_TEXT_SEARCH);
+        }
+        return mRefinable;
+    }
+
+    /**
+     * Search result refines cached result if every cached term is the prefix of the
+     * term at the same position. Extra terms narrow the result further.
+     */
+    private static boolean isRefinement(String[] cachedTerms, String[] terms) {
+        if(terms.length < cachedTerms.length) {
+            return false;
+        }
+
+        for(int i = 0; i < cachedTerms.length; i++) {
+            if(!terms[i].startsWith(cachedTerms[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String[] searchKeyTerms(String searchQuery) {
+        String[] terms = CustomersSearch.terms(searchQuery);
+
+        for(int i = 0; i < terms.length; i++) {
+            terms[i] = CustomersSearch.searchKeyTerm(terms[i]);
+            if(terms[i] == null) {
+                // Phrase terms are left to the database
+                return null;
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * Rows of a search result along with their search keys
+     */
+    private static class Snapshot {
+
+        final String[] terms;
+        final String[] projection;
+        final String sortOrder;
+        final String[] columns;
+        final int idColumn;
+
+        final long[] ids;
+        // Row values flattened, row i column j at i * columns.length + j
+        final String[] values;
+        final String[] keys;
+
+        private Snapshot(String[] terms, String[] projection, String sortOrder, String[] columns,
+                         int idColumn, long[] ids, String[] values, String[] keys) {
+            this.terms = terms;
+            this.projection = projection;
+            this.sortOrder = sortOrder;
+            this.columns = columns;
+            this.idColumn = idColumn;
+            this.ids = ids;
+            this.values = values;
+            this.keys = keys;
+        }
+
+        static Snapshot from(String[] terms, String[] projection, String sortOrder, Cursor cursor) {
+            String[] columns = cursor.getColumnNames();
+            int idColumn = cursor.getColumnIndex(CustomersContract.Columns._ID);
+            int[] searchColumns = new int[CustomersSearch.SEARCH_COLUMNS.length];
+
+            for(int i = 0; i < searchColumns.length; i++) {
+                searchColumns[i] = cursor.getColumnIndex(CustomersSearch.SEARCH_COLUMNS[i]);
+                if(searchColumns[i] < 0) {
+                    return null;
+                }
+            }
+            if(idColumn < 0) {
+                return null;
+            }
+
+            int count = cursor.getCount();
+            long[] ids = new long[count];
+            String[] values = new String[count * columns.length];
+            String[] keys = new String[count];
+            String[] fields = new String[searchColumns.length];
+            int chars = 0;
+
+            cursor.moveToPosition(-1);
+            for(int row = 0; cursor.moveToNext(); row++) {
+                ids[row] = cursor.getLong(idColumn);
+
+                for(int column = 0; column < columns.length; column++) {
+                    if(column != idColumn) {
+                        String value = cursor.getString(column);
+                        values[row * columns.length + column] = value;
+                        chars += (value == null) ? 0 : value.length();
+                    }
+                }
+                if(chars > MAX_CHARS) {
+                    return null;
+                }
+
+                for(int i = 0; i < searchColumns.length; i++) {
+                    fields[i] = cursor.getString(searchColumns[i]);
+                }
+                keys[row] = CustomersSearch.searchKey(fields);
+            }
+
+            return new Snapshot(terms, projection, sortOrder, columns, idColumn, ids, values, keys);
+        }
+
+        boolean matches(String[] projection, String sortOrder) {
+            return Arrays.equals(this.projection, projection) &&
+                    (this.sortOrder == null ? sortOrder == null : this.sortOrder.equals(sortOrder));
+        }
+
+        Cursor filter(String[] terms) {
+            int columnCount = columns.length;
+            MatrixCursor cursor = new MatrixCursor(columns);
+
+            for(int row = 0; row < keys.length; row++) {
+                if(!matchesAll(keys[row], terms)) {
+                    continue;
+                }
+
+                Object[] rowValues = new Object[columnCount];
+                for(int column = 0; column < columnCount; column++) {
+                    rowValues[column] = (column == idColumn) ?
+                            Long.valueOf(ids[row]) : values[row * columnCount + column];
+                }
+                cursor.addRow(rowValues);
+            }
+
+            return cursor;
+        }
+
+        private static boolean matchesAll(String key, String[] terms) {
+            for(String term : terms) {
+                // Key tokens are preceded by a space, term must be a token prefix
+                int from = 0;
+                boolean found = false;
+                while(!found) {
+                    int index = key.indexOf(term, from);
+                    if(index < 0) {
+                        return false;
+                    }
+                    found = (index > 0) && (key.charAt(index - 1) == ' ');
+                    from = index + 1;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Customers Trigram Index
+ *
+ * <p>Indexes every three character substring of the folded customer fields, notes
+ * included. A substring search term of three or more characters can only match customers
+ * having all of its trigrams, so the intersection of their postings gives the candidates
+ * which are then verified against the folded text</p>
+ *
+ * <p>Postings are inserted by one statement, compiled once per database connection by
+ * {@link CustomerStatements} for the provider's writes, once per batch when the index is
+ * built, and bound again for every trigram</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class CustomersTrigramIndex {
+    private static final String COLUMN_TRIGRAM = "Trigram";
+    private static final String COLUMN_CUSTOMER_ID = "CustomerId";
+    private static final String COLUMN_TEXT = "Text";
+
+    // Customer fields indexed, any of them may contain a search term
+    static final String[] INDEXED_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER,
+            CustomersContract.Columns.CUSTOMERS_NOTES
+    };
+
+    // Separates fields in search text, trigrams never span two fields
+    private static final char FIELD_SEPARATOR = '\n';
+
+    private static final int TRIGRAM_LENGTH = 3;
+
+    // Postings intersected per term, candidates are verified anyway
+    private static final int MAX_TERM_TRIGRAMS = 8;
+
+    private CustomersTrigramIndex() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Create trigram and search text tables
+     *
+     * @param db database
+     */
+    static void createTables(@NonNull SQLiteDatabase db) {
+        // CREATE TABLE IF NOT EXISTS CustomersTrigrams (Trigram TEXT NOT NULL, CustomerId INTEGER NOT NULL,
+        // PRIMARY KEY (Trigram, CustomerId));
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + CustomersContract.TRIGRAMS_TABLE_NAME + " (" +
+                COLUMN_TRIGRAM + " TEXT NOT NULL, " +
+                COLUMN_CUSTOMER_ID + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + COLUMN_TRIGRAM + ", " + COLUMN_CUSTOMER_ID + "));");
+
+        // Postings of a customer are removed by customer id
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + CustomersContract.TRIGRAMS_TABLE_NAME + "_" +
+                COLUMN_CUSTOMER_ID + " ON " + CustomersContract.TRIGRAMS_TABLE_NAME +
+                " (" + COLUMN_CUSTOMER_ID + ");");
+
+        // CREATE TABLE IF NOT EXISTS CustomersSearchText (_id INTEGER PRIMARY KEY NOT NULL, Text TEXT NOT NULL);
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + CustomersContract.SEARCH_TEXT_TABLE_NAME + " (" +
+                CustomersContract.Columns._ID + " INTEGER PRIMARY KEY NOT NULL, " +
+                COLUMN_TEXT + " TEXT NOT NULL);");
+    }
+
+    /**
+     * Compile insert of a trigram posting, postings already there are ignored
+     *
+     * @param db database
+     * @return statement, closed by caller
+     */
+    @NonNull
+    static SQLiteStatement compileInsert(@NonNull SQLiteDatabase db) {
+        // INSERT OR IGNORE INTO CustomersTrigrams (Trigram, CustomerId) VALUES (?, ?)
+        return db.compileStatement("INSERT OR IGNORE INTO " +
+                CustomersContract.TRIGRAMS_TABLE_NAME + " (" + COLUMN_TRIGRAM + ", " +
+                COLUMN_CUSTOMER_ID + ") VALUES (?, ?)");
+    }
+
+    /**
+     * Remove all customers from index, before it is built again
+     *
+     * @param db database
+     */
+    static void clear(@NonNull SQLiteDatabase db) {
+        db.delete(CustomersContract.TRIGRAMS_TABLE_NAME, null, null);
+        db.delete(CustomersContract.SEARCH_TEXT_TABLE_NAME, null, null);
+    }
+
+    /**
+     * Index next batch of customers, used when index is built on existing database
+     *
+     * @param db database
+     * @param afterId customers with greater ids are indexed
+     * @param batchSize maximum number of customers indexed
+     * @return id of last customer indexed, -1 if there were no more customers
+     */
+    static long indexBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+        long lastId = -1;
+        Cursor cursor = db.query(CustomersContract.TABLE_NAME, indexedProjection(),
+                CustomersContract.Columns._ID + " > ?", new String[] {String.valueOf(afterId)},
+                null, null, CustomersContract.Columns._ID, String.valueOf(batchSize));
+        SQLiteStatement insertTrigram = compileInsert(db);
+        try {
+            boolean notesOutOfRow = CustomerNotes.hasTable(db);
+            String[] fields = new String[INDEXED_COLUMNS.length];
+            while(cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                readFields(db, cursor, lastId, notesOutOfRow, fields);
+                insert(db, insertTrigram, lastId, fields);
+            }
+        } finally {
+            insertTrigram.close();
+            cursor.close();
+        }
+        return lastId;
+    }
+
+    /**
+     * Index inserted customer
+     *
+     * @param db database
+     * @param insertTrigram statement of {@link #compileInsert(SQLiteDatabase)}
+     * @param customerId customer id
+     * @param contentValues values customer has been inserted with
+     */
+    static void index(@NonNull SQLiteDatabase db, @NonNull SQLiteStatement insertTrigram,
+                      long customerId, @NonNull ContentValues contentValues) {
+        String[] fields = new String[INDEXED_COLUMNS.length];
+        for(int i = 0; i < fields.length; i++) {
+            fields[i] = contentValues.getAsString(INDEXED_COLUMNS[i]);
+        }
+
+        remove(db, customerId);
+        insert(db, insertTrigram, customerId, fields);
+    }
+
+    /**
+     * Index updated customers again, reading their fields from Customers table
+     *
+     * @param db database
+     * @param insertTrigram statement of {@link #compileInsert(SQLiteDatabase)}
+     * @param customerIds ids of updated customers
+     */
+    static void reindex(@NonNull SQLiteDatabase db, @NonNull SQLiteStatement insertTrigram,
+                        @NonNull long[] customerIds) {
+        for(long customerId : customerIds) {
+            remove(db, customerId);
+            indexRows(db, insertTrigram, CustomersContract.Columns._ID + " = " + customerId, null);
+        }
+    }
+
+    /**
+     * Remove customer from index
+     *
+     * @param db database
+     * @param customerId customer id
+     */
+    static void remove(@NonNull SQLiteDatabase db, long customerId) {
+        db.delete(CustomersContract.TRIGRAMS_TABLE_NAME,
+                COLUMN_CUSTOMER_ID + " = " + customerId, null);
+        db.delete(CustomersContract.SEARCH_TEXT_TABLE_NAME,
+                CustomersContract.Columns._ID + " = " + customerId, null);
+    }
+
+    /**
+     * Whether updating with values changes indexed fields
+     *
+     * @param contentValues update values
+     * @return true if customers must be indexed again
+     */
+    static boolean isIndexed(@NonNull ContentValues contentValues) {
+        for(String column : INDEXED_COLUMNS) {
+            if(contentValues.containsKey(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Query ids of customers matching selection, before they are updated or deleted
+     *
+     * @param db database
+     * @param selection selection
+     * @param selectionArgs selection arguments
+     * @return customer ids
+     */
+    @NonNull
+    static long[] queryIds(@NonNull SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(CustomersContract.TABLE_NAME,
+                new String[] {CustomersContract.Columns._ID},
+                selection, selectionArgs, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for(int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Append substring search selection to query builder
+     *
+     * <p>Every term must be contained in at least one of the customer's fields</p>
+     *
+     * @param queryBuilder query builder of Customers table
+     * @param terms search terms
+     */
+    static void appendSubstringSelection(@NonNull SQLiteQueryBuilder queryBuilder,
+                                         @NonNull String[] terms) {
+        for(int i = 0; i < terms.length; i++) {
+            String term = fold(terms[i]);
+
+            if(i > 0) {
+                queryBuilder.appendWhere(" AND ");
+            }
+
+            // _id IN (SELECT _id FROM CustomersSearchText WHERE _id IN (SELECT CustomerId
+            // FROM CustomersTrigrams WHERE Trigram = 'joh' INTERSECT SELECT ...)
+            // AND Text LIKE '%john%' ESCAPE '\')
+            queryBuilder.appendWhere(CustomersContract.Columns._ID + " IN (SELECT " +
+                    CustomersContract.Columns._ID + " FROM " +
+                    CustomersContract.SEARCH_TEXT_TABLE_NAME + " WHERE ");
+
+            Set<String> trigrams = termTrigrams(term);
+            if(!trigrams.isEmpty()) {
+                appendCandidates(queryBuilder, trigrams);
+                queryBuilder.appendWhere(" AND ");
+            }
+            // Shorter terms have no trigram, search text is scanned
+
+            queryBuilder.appendWhere(COLUMN_TEXT + " LIKE ");
+            queryBuilder.appendWhereEscapeString("%" + escapeLike(term) + "%");
+            queryBuilder.appendWhere(" ESCAPE '\\')");
+        }
+    }
+
+    private static void appendCandidates(SQLiteQueryBuilder queryBuilder, Set<String> trigrams) {
+        queryBuilder.appendWhere(CustomersContract.Columns._ID + " IN (");
+
+        boolean first = true;
+        for(String trigram : trigrams) {
+            if(!first) {
+                queryBuilder.appendWhere(" INTERSECT ");
+            }
+            first = false;
+
+            queryBuilder.appendWhere("SELECT " + COLUMN_CUSTOMER_ID + " FROM " +
+                    CustomersContract.TRIGRAMS_TABLE_NAME + " WHERE " + COLUMN_TRIGRAM + " = ");
+            queryBuilder.appendWhereEscapeString(trigram);
+        }
+
+        queryBuilder.appendWhere(")");
+    }
+
+    /**
+     * Fold text for matching, accents stripped and case folded like search keys
+     *
+     * @param text text
+     * @return folded text
+     */
+    @NonNull
+    static String fold(@NonNull String text) {
+        return SearchKey.fold(text);
+    }
+
+    /**
+     * Build search text of customer, folded fields separated by {@link #FIELD_SEPARATOR}
+     *
+     * @param fields indexed field values, may be null
+     * @return search text
+     */
+    @NonNull
+    static String searchText(@NonNull String[] fields) {
+        StringBuilder text = new StringBuilder();
+
+        for(int i = 0; i < fields.length; i++) {
+            if(i > 0) {
+                text.append(FIELD_SEPARATOR);
+            }
+            if(fields[i] != null) {
+                text.append(fold(fields[i].replace(FIELD_SEPARATOR, ' ')));
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Distinct trigrams of search text
+     *
+     * @param text search text
+     * @return trigrams, none spanning two fields
+     */
+    @NonNull
+    static Set<String> trigrams(@NonNull String text) {
+        Set<String> trigrams = new LinkedHashSet<>();
+
+        for(int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+            String trigram = text.substring(i, i + TRIGRAM_LENGTH);
+            if(trigram.indexOf(FIELD_SEPARATOR) < 0) {
+                trigrams.add(trigram);
+            }
+        }
+
+        return trigrams;
+    }
+
+    /**
+     * Trigrams of a folded term, spread over the term if it has too many to intersect
+     */
+    private static Set<String> termTrigrams(String term) {
+        Set<String> trigrams = trigrams(term);
+        if(trigrams.size() <= MAX_TERM_TRIGRAMS) {
+            return trigrams;
+        }
+
+        String[] all = trigrams.toArray(new String[trigrams.size()]);
+        Set<String> spread = new LinkedHashSet<>();
+        for(int i = 0; i < MAX_TERM_TRIGRAMS; i++) {
+            spread.add(all[i * (all.length - 1) / (MAX_TERM_TRIGRAMS - 1)]);
+        }
+        return spread;
+    }
+
+    private static String[] indexedProjection() {
+        String[] projection = new String[INDEXED_COLUMNS.length + 1];
+        projection[0] = CustomersContract.Columns._ID;
+        System.arraycopy(INDEXED_COLUMNS, 0, projection, 1, INDEXED_COLUMNS.length);
+        return projection;
+    }
+
+    private static void indexRows(SQLiteDatabase db, SQLiteStatement insertTrigram,
+                                  String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(CustomersContract.TABLE_NAME, indexedProjection(), selection,
+                selectionArgs, null, null, null);
+        try {
+            boolean notesOutOfRow = CustomerNotes.hasTable(db);
+            String[] fields = new String[INDEXED_COLUMNS.length];
+            while(cursor.moveToNext()) {
+                long customerId = cursor.getLong(0);
+                readFields(db, cursor, customerId, notesOutOfRow, fields);
+                insert(db, insertTrigram, customerId, fields);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read indexed fields of customer at cursor's row, notes from their own table once
+     * they are stored out of row
+     */
+    private static void readFields(SQLiteDatabase db, Cursor cursor, long customerId,
+                                   boolean notesOutOfRow, String[] fields) {
+        for(int i = 0; i < fields.length; i++) {
+            fields[i] = cursor.getString(i + 1);
+            if((fields[i] == null) && notesOutOfRow &&
+                    CustomersContract.Columns.CUSTOMERS_NOTES.equals(INDEXED_COLUMNS[i])) {
+                fields[i] = CustomerNotes.read(db, customerId);
+            }
+        }
+    }
+
+    private static void insert(SQLiteDatabase db, SQLiteStatement insertTrigram,
+                               long customerId, String[] fields) {
+        String text = searchText(fields);
+
+        ContentValues values = new ContentValues();
+        values.put(CustomersContract.Columns._ID, customerId);
+        values.put(COLUMN_TEXT, text);
+        db.insert(CustomersContract.SEARCH_TEXT_TABLE_NAME, null, values);
+
+        insertTrigram.bindLong(2, customerId);
+        for(String trigram : trigrams(text)) {
+            insertTrigram.bindString(1, trigram);
+            insertTrigram.executeInsert();
+        }
+    }
+
+    // LIKE wildcards in a term are matched literally
+    private static String escapeLike(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.File;
+
+import eu.kalodiodev.customersnote.Constants;
+
+/**
+ * Database Maintenance
+ *
+ * <p>Keeps a long used database compact and its query plans informed: statistics are
+ * gathered by ANALYZE once enough customers changed, pages freed by deletes are returned
+ * to the file system by incremental vacuum, and the database is checked for corruption
+ * now and then</p>
+ *
+ * <p>Vacuum frees a few pages per transaction, pausing in between, so that writers are
+ * never held up for long. A database created before incremental vacuum has to be copied
+ * in full to switch its mode, blocking writers meanwhile and taking twice its size on disk,
+ * so it is rebuilt only while small and with space to spare, otherwise it keeps its mode.
+ * A run is aborted between statements, or within one, rebuild included, by
+ * {@link #abort()}</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class DatabaseMaintenance {
+    private static final String TAG = "DatabaseMaintenance";
+
+    // auto_vacuum pragma value of incremental vacuum
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Pages freed per vacuum transaction, and pause before next one lets others write
+    private static final int VACUUM_PAGES_PER_STEP = 128;
+    private static final long VACUUM_STEP_PAUSE_MILLIS = 50;
+
+    // Progress kept between runs
+    private static final String KEY_ANALYZED_SEQUENCE = "analyzedSequence";
+    private static final String KEY_QUICK_CHECK_TIME = "quickCheckTime";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final SharedPreferences mPreferences;
+
+    // Cancels statement running, a new signal for each statement
+    private CancellationSignal mSignal = null;
+    private volatile boolean mAborted = false;
+
+    /**
+     * Result of a maintenance run
+     */
+    static final class Report {
+        boolean vacuumEnabled = false;
+        boolean analyzed = false;
+        long freedPages = 0;
+        boolean checked = false;
+        boolean intact = true;
+        boolean aborted = false;
+        long elapsedMillis = 0;
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "vacuumEnabled=" + vacuumEnabled +
+                    ", analyzed=" + analyzed +
+                    ", freedPages=" + freedPages +
+                    ", checked=" + checked +
+                    ", intact=" + intact +
+                    ", aborted=" + aborted +
+                    ", elapsedMillis=" + elapsedMillis +
+                    '}';
+        }
+    }
+
+    /**
+     * Maintenance of database
+     *
+     * @param dbHelper database helper
+     * @param preferences progress kept between runs
+     */
+    DatabaseMaintenance(@NonNull SQLiteOpenHelper dbHelper, @NonNull SharedPreferences preferences) {
+        this.mDbHelper = dbHelper;
+        this.mPreferences = preferences;
+    }
+
+    /**
+     * Run maintenance, until done or aborted
+     *
+     * @return report of what was done
+     */
+    @WorkerThread
+    @NonNull
+    Report run() {
+        long start = System.nanoTime();
+        Report report = new Report();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        try {
+            if(!isIncrementalVacuum(db) && canRebuild(db)) {
+                // Database created before incremental vacuum is rebuilt once
+                rebuildIncrementalVacuum(db);
+                report.vacuumEnabled = true;
+            }
+
+            long sequence = CustomersChangeLog.lastSequence(db);
+            long analyzedSequence = mPreferences.getLong(KEY_ANALYZED_SEQUENCE, -1);
+            // Sequence went back if database was replaced
+            if((analyzedSequence < 0) || (sequence < analyzedSequence) ||
+                    (sequence - analyzedSequence >= Constants.Database.ANALYZE_CHANGES)) {
+                execute(db, "ANALYZE");
+                mPreferences.edit().putLong(KEY_ANALYZED_SEQUENCE, sequence).apply();
+                report.analyzed = true;
+            }
+
+            report.freedPages = vacuum(db);
+
+            long now = System.currentTimeMillis();
+            long checkTime = mPreferences.getLong(KEY_QUICK_CHECK_TIME, 0);
+            if(Math.abs(now - checkTime) >= Constants.Database.QUICK_CHECK_INTERVAL_MILLIS) {
+                report.intact = quickCheck(db);
+                report.checked = true;
+                mPreferences.edit().putLong(KEY_QUICK_CHECK_TIME, now).apply();
+            }
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "run: statement cancelled");
+        }
+
+        report.aborted = mAborted;
+        report.elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Log.i(TAG, "run: " + report);
+        return report;
+    }
+
+    /**
+     * Abort run, statement running is cancelled. Run returns shortly after
+     */
+    void abort() {
+        mAborted = true;
+        synchronized (this) {
+            if(mSignal != null) {
+                mSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Whether pages freed by deletes can be returned by incremental vacuum
+     *
+     * @param db database
+     * @return true if database is in incremental auto vacuum mode
+     */
+    static boolean isIncrementalVacuum(@NonNull SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL;
+    }
+
+    /**
+     * Switch new database to incremental auto vacuum mode, instant while it has no tables.
+     * Existing databases are rebuilt by {@link #run()}, if small enough
+     *
+     * @param db database, not in a transaction
+     */
+    static void enableIncrementalVacuum(@NonNull SQLiteDatabase db) {
+        long start = System.nanoTime();
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+        Log.d(TAG, "enableIncrementalVacuum: rebuilt in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    // Whether database is small enough to be copied in full, with room for the copy and
+    // the journal of the copy on its file system
+    private static boolean canRebuild(SQLiteDatabase db) {
+        File file = new File(db.getPath());
+        long size = file.length();
+        long usable = file.getUsableSpace();
+        if((size > Constants.Database.VACUUM_REBUILD_MAX_BYTES) || (usable < 2 * size)) {
+            Log.i(TAG, "canRebuild: " + size + " bytes database kept in its vacuum mode, " +
+                    usable + " bytes usable");
+            return false;
+        }
+        return true;
+    }
+
+    // Copy database in full, in incremental auto vacuum mode. Cancelled copy is rolled back
+    private void rebuildIncrementalVacuum(SQLiteDatabase db) {
+        execute(db, "PRAGMA auto_vacuum = INCREMENTAL");
+        execute(db, "VACUUM");
+    }
+
+    // Free pages a few at a time, returns number of pages the file shrank by
+    private long vacuum(SQLiteDatabase db) {
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        Log.d(TAG, "vacuum: " + freePages + " of " + pageCount + " pages free");
+
+        while((freePages > 0) && !mAborted) {
+            // Statement steps once per page freed
+            execute(db, "PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_STEP + ")");
+            long remaining = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            if(remaining >= freePages) {
+                break;
+            }
+            freePages = remaining;
+            pause();
+        }
+
+        return pageCount - DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+    }
+
+    // Read only check of pages and records, indexes are not matched against tables
+    private boolean quickCheck(SQLiteDatabase db) {
+        Cursor cursor = query(db, "PRAGMA quick_check");
+        try {
+            boolean intact = true;
+            while(cursor.moveToNext()) {
+                String result = cursor.getString(0);
+                if(!"ok".equals(result)) {
+                    Log.e(TAG, "quickCheck: " + result);
+                    intact = false;
+                }
+            }
+            return intact;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void execute(SQLiteDatabase db, String sql) {
+        query(db, sql).close();
+    }
+
+    // Statement runs to completion on first count, unless cancelled
+    private Cursor query(SQLiteDatabase db, String sql) {
+        CancellationSignal signal = new CancellationSignal();
+        synchronized (this) {
+            if(mAborted) {
+                throw new OperationCanceledException();
+            }
+            mSignal = signal;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Cursor cursor = db.rawQuery(sql, null, signal);
+            try {
+                cursor.getCount();
+            } catch (RuntimeException e) {
+                cursor.close();
+                throw e;
+            }
+            return cursor;
+        } finally {
+            synchronized (this) {
+                mSignal = null;
+            }
+            Log.d(TAG, "query: " + sql + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(VACUUM_STEP_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mAborted = true;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import eu.kalodiodev.customersnote.Constants;
+
+/**
+ * Database Maintenance Service
+ *
+ * <p>Runs {@link DatabaseMaintenance} while the device is idle and charging, at most once
+ * every {@link Constants.Database#MAINTENANCE_INTERVAL_MILLIS}. A run is aborted as soon
+ * as the device is used or unplugged, and retried later</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class DatabaseMaintenanceService extends JobService {
+    private static final String TAG = "DatabaseMaintenanceSvc";
+
+    private static final int JOB_ID = 1;
+
+    private static final String PREFERENCES_NAME = "database_maintenance";
+
+    // Maintenance running, guarded by this
+    private DatabaseMaintenance mMaintenance = null;
+
+    /**
+     * Schedule maintenance, unless it is scheduled already. Devices before job scheduler
+     * are not maintained
+     *
+     * @param context context
+     */
+    public static void schedule(@NonNull Context context) {
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for(JobInfo job : scheduler.getAllPendingJobs()) {
+            if(job.getId() == JOB_ID) {
+                // Scheduling again would restart its period
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context,
+                DatabaseMaintenanceService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(Constants.Database.MAINTENANCE_INTERVAL_MILLIS)
+                .build();
+        int result = scheduler.schedule(job);
+        Log.d(TAG, "schedule: result " + result);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final DatabaseMaintenance maintenance = new DatabaseMaintenance(
+                DbHelper.getInstance(getApplicationContext()),
+                getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE));
+        synchronized (this) {
+            mMaintenance = maintenance;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean retry = false;
+                try {
+                    maintenance.run();
+                } catch (SQLiteException e) {
+                    // e.g. database closed while being restored
+                    Log.w(TAG, "run: maintenance failed", e);
+                    retry = true;
+                }
+
+                synchronized (DatabaseMaintenanceService.this) {
+                    if(mMaintenance != maintenance) {
+                        // Stopped, job scheduler retries it
+                        return;
+                    }
+                    mMaintenance = null;
+                }
+                jobFinished(params, retry);
+            }
+        }, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        DatabaseMaintenance maintenance;
+        synchronized (this) {
+            maintenance = mMaintenance;
+            mMaintenance = null;
+        }
+        if(maintenance != null) {
+            Log.d(TAG, "onStopJob: aborting");
+            maintenance.abort();
+        }
+        // Device is no longer idle or charging, run again once it is
+        return true;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.kalodiodev.customersnote.Constants;
+
+/**
+ * Database Mode
+ *
+ * <p>Journal mode and connection pragmas the database is opened with. With write-ahead
+ * logging, readers see the last commit while a writer appends to the log, so the customers
+ * list loads alongside a save instead of waiting for it. The log is copied back into the
+ * database by checkpoints, see {@link WalCheckpointer}</p>
+ *
+ * <p>Pragmas are set on the connection that writes, which also serves every read in
+ * rollback journal mode. Android configures the read connections it pools in
+ * write-ahead logging mode itself</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class DatabaseMode {
+    private static final String TAG = "DatabaseMode";
+
+    private final boolean mWriteAheadLogging;
+    private final String mSynchronous;
+    private final int mCacheSizeKib;
+    private final long mMmapSizeBytes;
+    private final int mAutoCheckpointPages;
+
+    /**
+     * Database mode
+     *
+     * @param writeAheadLogging whether the journal is a write-ahead log
+     * @param synchronous synchronous pragma, null to keep Android's default
+     * @param cacheSizeKib page cache size in KiB, 0 to keep the default
+     * @param mmapSizeBytes bytes of database file read through memory mapping, 0 for none
+     * @param autoCheckpointPages log pages a commit checkpoints at, ignored without
+     *                            write-ahead logging
+     */
+    DatabaseMode(boolean writeAheadLogging, String synchronous, int cacheSizeKib,
+                 long mmapSizeBytes, int autoCheckpointPages) {
+        this.mWriteAheadLogging = writeAheadLogging;
+        this.mSynchronous = synchronous;
+        this.mCacheSizeKib = cacheSizeKib;
+        this.mMmapSizeBytes = mmapSizeBytes;
+        this.mAutoCheckpointPages = autoCheckpointPages;
+    }
+
+    /**
+     * Mode configured in {@link Constants.Database}
+     *
+     * @return app's database mode
+     */
+    @NonNull
+    static DatabaseMode fromConstants() {
+        if(!Constants.Database.WRITE_AHEAD_LOGGING) {
+            return rollbackJournal();
+        }
+        return new DatabaseMode(true, Constants.Database.WAL_SYNCHRONOUS,
+                Constants.Database.CACHE_SIZE_KIB, Constants.Database.MMAP_SIZE_BYTES,
+                Constants.Database.WAL_AUTOCHECKPOINT_PAGES);
+    }
+
+    /**
+     * Android's default rollback journal, readers and writers exclude each other
+     *
+     * @return rollback journal mode
+     */
+    @NonNull
+    static DatabaseMode rollbackJournal() {
+        return new DatabaseMode(false, null, 0, 0, 0);
+    }
+
+    boolean isWriteAheadLogging() {
+        return mWriteAheadLogging;
+    }
+
+    /**
+     * Pragmas not returning a row, executed outside a transaction
+     *
+     * @return statements
+     */
+    @NonNull
+    List<String> settings() {
+        List<String> statements = new ArrayList<>();
+        if(mSynchronous != null) {
+            statements.add("PRAGMA synchronous = " + mSynchronous);
+        }
+        if(mCacheSizeKib > 0) {
+            // Negative size is in KiB rather than pages
+            statements.add("PRAGMA cache_size = -" + mCacheSizeKib);
+        }
+        return statements;
+    }
+
+    /**
+     * Pragmas returning the value they set
+     *
+     * @return statements
+     */
+    @NonNull
+    List<String> queries() {
+        List<String> statements = new ArrayList<>();
+        if(mMmapSizeBytes > 0) {
+            statements.add("PRAGMA mmap_size = " + mMmapSizeBytes);
+        }
+        if(mWriteAheadLogging && (mAutoCheckpointPages > 0)) {
+            statements.add("PRAGMA wal_autocheckpoint = " + mAutoCheckpointPages);
+        }
+        return statements;
+    }
+
+    /**
+     * Configure database connection, called while database is being configured
+     *
+     * @param db database
+     */
+    void configure(@NonNull SQLiteDatabase db) {
+        for(String statement : settings()) {
+            db.execSQL(statement);
+        }
+
+        // Pragmas returning a row are rejected by execSQL, run as queries within a
+        // transaction so that they reach the writing connection
+        List<String> queries = queries();
+        if(queries.isEmpty()) {
+            return;
+        }
+        db.beginTransactionNonExclusive();
+        try {
+            for(String statement : queries) {
+                SQLiteStatement query = db.compileStatement(statement);
+                try {
+                    Log.d(TAG, "configure: " + statement + ", now " + query.simpleQueryForLong());
+                } catch (SQLiteException e) {
+                    // e.g. mmap_size on SQLite versions without memory mapped I/O
+                    Log.w(TAG, "configure: " + statement + " not supported", e);
+                } finally {
+                    query.close();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseMode{writeAheadLogging=" + mWriteAheadLogging +
+                ", synchronous=" + mSynchronous +
+                ", cacheSizeKib=" + mCacheSizeKib +
+                ", mmapSizeBytes=" + mMmapSizeBytes +
+                ", autoCheckpointPages=" + mAutoCheckpointPages + "}";
+    }
+}
@@ -15,11 +15,20 @@
  */
 package eu.kalodiodev.customersnote.data.source;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 import eu.kalodiodev.customersnote.Constants;
 
 /**
@@ -30,12 +39,65 @@ import eu.kalodiodev.customersnote.Constants;
 public class DbHelper extends SQLiteOpenHelper {
     private static final String TAG = "DbHelper";
 
+    // Rows migrated per transaction, a large table is migrated in many short ones
+    private static final int MIGRATION_BATCH_SIZE = 500;
+
+    private static final String COLLATE_NOCASE = "NOCASE";
+
+    // Sorted and LIKE searched columns, the search keys of CustomersSearch LIKE columns
+    private static final String[] NOCASE_INDEXED_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER
+    };
+
+    // Search keys are indexed, the tokenizer folds ASCII case only
+    private static final String FTS_COLUMNS = CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + ", " +
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY + ", " +
+            CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY + ", " +
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY + ", " +
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER;
+
     // Implement DbHelper as a Singleton
     private static DbHelper instance = null;
 
+    private final DatabaseMode mMode;
+
+    // Database was created by this helper, its schema is built on open
+    private boolean mCreated = false;
+
+    // Database file is being replaced, opening it waits until it is in place. Guarded by this
+    private boolean mReplacing = false;
+
     private DbHelper(Context context) {
-        super(context, Constants.Database.DATABASE_NAME, null, Constants.Database.DATABASE_VERSION);
-        Log.d(TAG, "DbHelper: constructor");
+        this(context, Constants.Database.DATABASE_NAME);
+    }
+
+    /**
+     * Database helper of named database, used by tests migrating a database of their own
+     *
+     * @param context context
+     * @param name database file name
+     */
+    DbHelper(Context context, String name) {
+        this(context, name, DatabaseMode.fromConstants());
+    }
+
+    /**
+     * Database helper of named database opened in mode, used by tests comparing modes
+     *
+     * @param context context
+     * @param name database file name
+     * @param mode database mode
+     */
+    DbHelper(Context context, String name, DatabaseMode mode) {
+        super(context, name, null, Constants.Database.DATABASE_VERSION);
+        Log.d(TAG, "DbHelper: constructor, " + mode);
+        this.mMode = mode;
+        // Also switches a database opened in the other mode before
+        setWriteAheadLoggingEnabled(mode.isWriteAheadLogging());
     }
 
     /**
@@ -53,13 +115,281 @@ public class DbHelper extends SQLiteOpenHelper {
         return instance;
     }
 
+    /**
+     * Mode database is opened with
+     *
+     * @return database mode
+     */
+    DatabaseMode getMode() {
+        return mMode;
+    }
+
+    /**
+     * Close database before its file and sidecar files are replaced, e.g. restored from
+     * backup. Until {@link #endReplace()}, opening the database blocks, so that no reader,
+     * writer or checkpoint opens the old files half replaced
+     */
+    synchronized void beginReplace() {
+        Log.d(TAG, "beginReplace: closing database");
+        mReplacing = true;
+        close();
+    }
+
+    /**
+     * Database file has been replaced, database is opened again on next access
+     */
+    synchronized void endReplace() {
+        Log.d(TAG, "endReplace: database may be opened");
+        mReplacing = false;
+        notifyAll();
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        synchronized (this) {
+            awaitReplaced();
+            return super.getWritableDatabase();
+        }
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        synchronized (this) {
+            awaitReplaced();
+            return super.getReadableDatabase();
+        }
+    }
+
+    // Holding this, waiting releases it for the replacement to end
+    private void awaitReplaced() {
+        while(mReplacing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLiteException("Interrupted while database file is replaced");
+            }
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        mMode.configure(db);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
         Log.d(TAG, "onCreate: starts");
 
-        // CREATE TABLE Customers (_id INTEGER PRIMARY KEY NOT NULL, FirstName TEXT NOT NULL UNIQUE,
-        // LastName TEXT, Profession TEXT, CompanyName TEXT, phone TEXT, notes TEXT);
-        String sql = "CREATE TABLE " + CustomersContract.TABLE_NAME + "(" +
+        // Schema is built by migrations, all of them pending on a new database
+        SchemaMigrator.createTable(sqLiteDatabase);
+        mCreated = true;
+
+        Log.d(TAG, "onCreate: ends");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        Log.d(TAG, "onUpgrade: from " + oldVersion + " to " + newVersion);
+
+        if(!SchemaMigrator.hasTable(sqLiteDatabase)) {
+            // Upgraded by version before migrations were recorded
+            SchemaMigrator.markApplied(sqLiteDatabase, migrations(), oldVersion);
+        }
+        // Pending migrations run on open, each step committed on its own
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        if(db.isReadOnly()) {
+            Log.w(TAG, "onOpen: database is read only, migrations not applied");
+            return;
+        }
+
+        if(mCreated) {
+            // Pages freed by deletes are returned by incremental vacuum, see DatabaseMaintenance.
+            // Vacuum mode is switched by rebuilding the database, while it is still empty
+            mCreated = false;
+            DatabaseMaintenance.enableIncrementalVacuum(db);
+        }
+
+        long start = System.nanoTime();
+        int applied = SchemaMigrator.migrate(db, migrations());
+        if(applied > 0) {
+            Log.d(TAG, "onOpen: " + applied + " migrations applied in " +
+                    (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Schema migrations, in version order
+     *
+     * <p>A new database runs all of them. Migrations are never changed once released,
+     * schema changes are added as a migration to {@link Constants.Database#DATABASE_VERSION}</p>
+     *
+     * @return migrations
+     */
+    List<SchemaMigration> migrations() {
+        List<SchemaMigration> migrations = new ArrayList<>();
+
+        migrations.add(new SchemaMigration(1, "Customers table")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        createCustomersTable(db);
+                        return false;
+                    }
+                }));
+
+        // Full text search of version 2 indexes search keys since version 5
+
+        migrations.add(new SchemaMigration(3, "Trigram index tables")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        // Trigram index is built from search keys, filled from version 5
+                        CustomersTrigramIndex.createTables(db);
+                        return false;
+                    }
+                }));
+
+        migrations.add(new SchemaMigration(4, "Phone number key")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        addColumnIfMissing(db, CustomersContract.Columns.CUSTOMERS_PHONE_KEY,
+                                "TEXT");
+                        return false;
+                    }
+                })
+                .step(new BackfillKeysStep(
+                        new String[] {CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER},
+                        new String[] {CustomersContract.Columns.CUSTOMERS_PHONE_KEY}))
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        // Index built once, after the column is filled
+                        createIndex(db, CustomersContract.Columns.CUSTOMERS_PHONE_KEY, null);
+                        return false;
+                    }
+                }));
+
+        migrations.add(new SchemaMigration(5, "Search keys, full text search and trigram index")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        // Dropped before keys are filled, its triggers would index every row
+                        dropFullTextSearch(db);
+                        for(String keyColumn : SearchKey.KEY_COLUMNS) {
+                            addColumnIfMissing(db, keyColumn, "TEXT");
+                        }
+                        return false;
+                    }
+                })
+                .step(new BackfillKeysStep(SearchKey.SOURCE_COLUMNS, SearchKey.KEY_COLUMNS))
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        createIndex(db, CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY, null);
+                        createIndex(db, CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY, null);
+                        return false;
+                    }
+                })
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        // Index search keys instead of the fields
+                        dropFullTextSearch(db);
+                        createFullTextSearch(db);
+                        return false;
+                    }
+                })
+                .step(new SchemaMigration.BatchStep(MIGRATION_BATCH_SIZE) {
+                    @Override
+                    long runBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+                        return hasFullTextSearch(db) ?
+                                indexFullTextSearchBatch(db, afterId, batchSize) : -1;
+                    }
+                })
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        CustomersTrigramIndex.clear(db);
+                        return false;
+                    }
+                })
+                .step(new SchemaMigration.BatchStep(MIGRATION_BATCH_SIZE) {
+                    @Override
+                    long runBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+                        return CustomersTrigramIndex.indexBatch(db, afterId, batchSize);
+                    }
+                }));
+
+        // List is sorted and LIKE searches match key prefixes, both case insensitive. Only
+        // indexes of the same collation serve them, others leave SQLite sorting in a
+        // temporary b-tree and scanning the table
+        SchemaMigration noCaseIndexes = new SchemaMigration(6, "Case insensitive sort and search indexes");
+        for(final String column : NOCASE_INDEXED_COLUMNS) {
+            noCaseIndexes.step(new SchemaMigration.Step() {
+                @Override
+                public boolean run(@NonNull SQLiteDatabase db) {
+                    db.execSQL("DROP INDEX IF EXISTS " + indexName(column, null) + ";");
+                    createIndex(db, column, COLLATE_NOCASE);
+                    return false;
+                }
+            });
+        }
+        migrations.add(noCaseIndexes);
+
+        // Notes grow to tens of kilobytes, stored inline they are read by every table scan
+        migrations.add(new SchemaMigration(7, "Customer notes out of row")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        CustomerNotes.createTable(db);
+                        return false;
+                    }
+                })
+                .step(new SchemaMigration.BatchStep(MIGRATION_BATCH_SIZE) {
+                    @Override
+                    long runBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+                        return CustomerNotes.moveBatch(db, afterId, batchSize);
+                    }
+                }));
+
+        // Caches, indexes and exports catch up on changes instead of scanning customers
+        migrations.add(new SchemaMigration(8, "Customer change log")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        CustomerNotes.deleteNotesAfterCustomers(db);
+                        CustomersChangeLog.createTable(db);
+                        return false;
+                    }
+                }));
+
+        // Edits made concurrently are detected instead of overwriting each other
+        migrations.add(new SchemaMigration(9, "Customer row version")
+                .step(new SchemaMigration.Step() {
+                    @Override
+                    public boolean run(@NonNull SQLiteDatabase db) {
+                        addColumnIfMissing(db, CustomersContract.Columns.CUSTOMERS_VERSION,
+                                "INTEGER NOT NULL DEFAULT 0");
+                        return false;
+                    }
+                }));
+
+        return migrations;
+    }
+
+    private void createCustomersTable(SQLiteDatabase db) {
+        // CREATE TABLE IF NOT EXISTS Customers (_id INTEGER PRIMARY KEY NOT NULL,
+        // FirstName TEXT NOT NULL, LastName TEXT, Profession TEXT, CompanyName TEXT,
+        // PhoneNumber TEXT, Notes TEXT);
+        String sql = "CREATE TABLE IF NOT EXISTS " + CustomersContract.TABLE_NAME + "(" +
                 CustomersContract.Columns._ID + " INTEGER PRIMARY KEY NOT NULL, " +
                 CustomersContract.Columns.CUSTOMERS_FIRST_NAME + " TEXT NOT NULL, " +
                 CustomersContract.Columns.CUSTOMERS_LAST_NAME + " TEXT, " +
@@ -70,21 +400,220 @@ public class DbHelper extends SQLiteOpenHelper {
 
         Log.d(TAG, "Create table query: " + sql);
 
-        sqLiteDatabase.execSQL(sql);
+        db.execSQL(sql);
+    }
 
-        Log.d(TAG, "onCreate: ends");
+    /**
+     * Add a column to Customers table, unless a previous run has added it
+     *
+     * @param db database
+     * @param column column name
+     * @param definition column type and constraints, e.g. INTEGER NOT NULL DEFAULT 0
+     */
+    private void addColumnIfMissing(SQLiteDatabase db, String column, String definition) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + CustomersContract.TABLE_NAME + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while(cursor.moveToNext()) {
+                if(column.equalsIgnoreCase(cursor.getString(nameIndex))) {
+                    return;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.execSQL("ALTER TABLE " + CustomersContract.TABLE_NAME + " ADD COLUMN " + column + " " +
+                definition + ";");
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        Log.d(TAG, "onUpgrade: starts");
-        switch (oldVersion) {
-            case 1:
-                // upgrade logic from version 1
-                break;
-            default:
-                throw new IllegalStateException("onUpgrade() with unknown new Version: " + newVersion);
+    /**
+     * Create index of Customers column, unless it exists
+     *
+     * @param db database
+     * @param column column indexed
+     * @param collation collation of index, null for binary
+     */
+    private void createIndex(SQLiteDatabase db, String column, String collation) {
+        // CREATE INDEX IF NOT EXISTS Customers_FirstNameKey_nocase ON Customers
+        // (FirstNameKey COLLATE NOCASE);
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + indexName(column, collation) + " ON " +
+                CustomersContract.TABLE_NAME + " (" + column +
+                (collation == null ? "" : " COLLATE " + collation) + ");");
+    }
+
+    private static String indexName(String column, String collation) {
+        return CustomersContract.TABLE_NAME + "_" + column +
+                (collation == null ? "" : "_" + collation.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Create full text search table and the triggers keeping it in sync with Customers table
+     *
+     * @param db database
+     * @return true if created, false if SQLite is built without full text search support
+     */
+    private boolean createFullTextSearch(SQLiteDatabase db) {
+        String newValues = "new." + CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + ", " +
+                "new." + CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY + ", " +
+                "new." + CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY + ", " +
+                "new." + CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY + ", " +
+                "new." + CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER;
+
+        // CREATE VIRTUAL TABLE CustomersFts USING fts4(content="Customers", FirstNameKey, ...);
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + CustomersContract.FTS_TABLE_NAME +
+                    " USING fts4(content=\"" + CustomersContract.TABLE_NAME + "\", " + FTS_COLUMNS + ");");
+        } catch (SQLiteException e) {
+            Log.w(TAG, "createFullTextSearch: full text search not available", e);
+            return false;
+        }
+
+        // External content table, index entries must be removed before the row changes
+        String deleteOld = "DELETE FROM " + CustomersContract.FTS_TABLE_NAME +
+                " WHERE docid = old." + CustomersContract.Columns._ID + "; ";
+        String insertNew = "INSERT INTO " + CustomersContract.FTS_TABLE_NAME +
+                "(docid, " + FTS_COLUMNS + ") VALUES(new." + CustomersContract.Columns._ID + ", " +
+                newValues + "); ";
+
+        db.execSQL("CREATE TRIGGER " + CustomersContract.FTS_TABLE_NAME + "_bu BEFORE UPDATE ON " +
+                CustomersContract.TABLE_NAME + " BEGIN " + deleteOld + "END;");
+        db.execSQL("CREATE TRIGGER " + CustomersContract.FTS_TABLE_NAME + "_bd BEFORE DELETE ON " +
+                CustomersContract.TABLE_NAME + " BEGIN " + deleteOld + "END;");
+        db.execSQL("CREATE TRIGGER " + CustomersContract.FTS_TABLE_NAME + "_au AFTER UPDATE ON " +
+                CustomersContract.TABLE_NAME + " BEGIN " + insertNew + "END;");
+        db.execSQL("CREATE TRIGGER " + CustomersContract.FTS_TABLE_NAME + "_ai AFTER INSERT ON " +
+                CustomersContract.TABLE_NAME + " BEGIN " + insertNew + "END;");
+
+        return true;
+    }
+
+    private void dropFullTextSearch(SQLiteDatabase db) {
+        for(String trigger : new String[] {"_bu", "_bd", "_au", "_ai"}) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + CustomersContract.FTS_TABLE_NAME + trigger + ";");
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + CustomersContract.FTS_TABLE_NAME + ";");
+    }
+
+    /**
+     * Index next batch of customers in full text search table, instead of rebuilding it
+     * in a single statement
+     *
+     * @param db database
+     * @param afterId customers with greater ids are indexed
+     * @param batchSize maximum number of customers indexed
+     * @return id of last customer indexed, -1 if there were no more customers
+     */
+    private long indexFullTextSearchBatch(SQLiteDatabase db, long afterId, int batchSize) {
+        long lastId = -1;
+        Cursor cursor = db.rawQuery("SELECT MAX(" + CustomersContract.Columns._ID + ") FROM (" +
+                "SELECT " + CustomersContract.Columns._ID + " FROM " + CustomersContract.TABLE_NAME +
+                " WHERE " + CustomersContract.Columns._ID + " > ? ORDER BY " +
+                CustomersContract.Columns._ID + " LIMIT " + batchSize + ")",
+                new String[] {String.valueOf(afterId)});
+        try {
+            if(cursor.moveToFirst() && !cursor.isNull(0)) {
+                lastId = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if(lastId < 0) {
+            return -1;
+        }
+
+        // INSERT INTO CustomersFts (docid, FirstNameKey, ...) SELECT _id, FirstNameKey, ...
+        // FROM Customers WHERE _id > ? AND _id <= ?
+        db.execSQL("INSERT INTO " + CustomersContract.FTS_TABLE_NAME + " (docid, " +
+                FTS_COLUMNS + ") SELECT " + CustomersContract.Columns._ID + ", " + FTS_COLUMNS +
+                " FROM " + CustomersContract.TABLE_NAME + " WHERE " +
+                CustomersContract.Columns._ID + " > ? AND " + CustomersContract.Columns._ID + " <= ?",
+                new Object[] {afterId, lastId});
+        return lastId;
+    }
+
+    /**
+     * Fills key columns of existing customers, derived the way customers fill them
+     * when saved
+     */
+    private static final class BackfillKeysStep extends SchemaMigration.BatchStep {
+        private final String[] mSourceColumns;
+        private final String[] mKeyColumns;
+
+        /**
+         * @param sourceColumns customer fields keys are derived from
+         * @param keyColumns key columns filled
+         */
+        BackfillKeysStep(String[] sourceColumns, String[] keyColumns) {
+            super(MIGRATION_BATCH_SIZE);
+            this.mSourceColumns = sourceColumns;
+            this.mKeyColumns = keyColumns;
+        }
+
+        @Override
+        long runBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+            String[] projection = new String[mSourceColumns.length + 1];
+            projection[0] = CustomersContract.Columns._ID;
+            System.arraycopy(mSourceColumns, 0, projection, 1, mSourceColumns.length);
+
+            // UPDATE Customers SET PhoneKey = ? WHERE _id = ?
+            StringBuilder sql = new StringBuilder("UPDATE " + CustomersContract.TABLE_NAME + " SET ");
+            for(int i = 0; i < mKeyColumns.length; i++) {
+                sql.append(i > 0 ? ", " : "").append(mKeyColumns[i]).append(" = ?");
+            }
+            sql.append(" WHERE " + CustomersContract.Columns._ID + " = ?");
+            SQLiteStatement update = db.compileStatement(sql.toString());
+
+            long lastId = -1;
+            try {
+                // Keyset batches, rows are visited once whatever their keys
+                Cursor cursor = db.query(CustomersContract.TABLE_NAME, projection,
+                        CustomersContract.Columns._ID + " > ?",
+                        new String[] {String.valueOf(afterId)},
+                        null, null, CustomersContract.Columns._ID, String.valueOf(batchSize));
+                try {
+                    while(cursor.moveToNext()) {
+                        lastId = cursor.getLong(0);
+
+                        ContentValues values = new ContentValues();
+                        for(int i = 0; i < mSourceColumns.length; i++) {
+                            values.put(mSourceColumns[i], cursor.getString(i + 1));
+                        }
+                        values = DerivedKeys.complete(values);
+
+                        update.clearBindings();
+                        for(int i = 0; i < mKeyColumns.length; i++) {
+                            String key = values.getAsString(mKeyColumns[i]);
+                            if(key != null) {
+                                update.bindString(i + 1, key);
+                            }
+                        }
+                        update.bindLong(mKeyColumns.length + 1, lastId);
+                        update.executeUpdateDelete();
+                    }
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                update.close();
+            }
+            return lastId;
+        }
+    }
+
+    /**
+     * Check whether full text search table exists
+     *
+     * @param db database
+     * @return true if customers can be searched using full text search
+     */
+    static boolean hasFullTextSearch(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] {CustomersContract.FTS_TABLE_NAME});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
         }
-        Log.d(TAG, "onUpgrade: ends");
     }
-}
+}
\ No newline at end of file
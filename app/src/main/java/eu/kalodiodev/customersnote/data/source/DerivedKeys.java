@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+
+/**
+ * Derived Keys
+ *
+ * <p>Key columns derived from customer fields, phone key and search keys. Customer fills
+ * them itself, values written by other callers are completed here</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class DerivedKeys {
+
+    private DerivedKeys() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Complete values with the keys of the fields they contain
+     *
+     * @param contentValues values to be written, may be null
+     * @return values with keys, a copy if keys were missing
+     */
+    static ContentValues complete(ContentValues contentValues) {
+        if(contentValues == null) {
+            return null;
+        }
+
+        ContentValues completed = contentValues;
+
+        if(contentValues.containsKey(CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER) &&
+                !contentValues.containsKey(CustomersContract.Columns.CUSTOMERS_PHONE_KEY)) {
+            completed = new ContentValues(contentValues);
+            completed.put(CustomersContract.Columns.CUSTOMERS_PHONE_KEY, PhoneNumberKey.from(
+                    contentValues.getAsString(CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER)));
+        }
+
+        for(int i = 0; i < SearchKey.SOURCE_COLUMNS.length; i++) {
+            if(contentValues.containsKey(SearchKey.SOURCE_COLUMNS[i]) &&
+                    !contentValues.containsKey(SearchKey.KEY_COLUMNS[i])) {
+                if(completed == contentValues) {
+                    completed = new ContentValues(contentValues);
+                }
+                completed.put(SearchKey.KEY_COLUMNS[i],
+                        SearchKey.from(contentValues.getAsString(SearchKey.SOURCE_COLUMNS[i])));
+            }
+        }
+
+        return completed;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fuzzy Term Dictionary
+ *
+ * <p>Sorted dictionary of reference counted terms, searched for the term closest to a query
+ * under optimal string alignment distance, Levenshtein distance where swapping two adjacent
+ * characters is a single edit. Sorted terms are walked like a trie: the edit distance rows of
+ * a prefix shared with the previous term are reused, and once every row entry of a prefix
+ * exceeds the maximum distance, all terms starting with that prefix are skipped by binary
+ * search. A swap costs no less than the cell diagonally above its own, so a prefix out of
+ * reach stays out of reach with swaps too. Only prefixes within reach of the query are ever
+ * visited</p>
+ *
+ * <p>Not thread safe, callers confine it to one thread</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class FuzzyTermDictionary {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] mTerms = new String[INITIAL_CAPACITY];
+    private int[] mCounts = new int[INITIAL_CAPACITY];
+    private int mSize = 0;
+
+    // Edit distance rows of the walk, row i belongs to the prefix of length i
+    private int[][] mRows = new int[0][];
+
+    /**
+     * Build dictionary of terms at once, sorting them instead of inserting one by one
+     *
+     * @param terms terms, a term present many times is referenced as many times
+     * @return dictionary
+     */
+    @NonNull
+    static FuzzyTermDictionary of(@NonNull List<String> terms) {
+        String[] sorted = terms.toArray(new String[terms.size()]);
+        Arrays.sort(sorted);
+
+        FuzzyTermDictionary dictionary = new FuzzyTermDictionary();
+        int capacity = Math.max(INITIAL_CAPACITY, sorted.length);
+        dictionary.mTerms = new String[capacity];
+        dictionary.mCounts = new int[capacity];
+
+        for(String term : sorted) {
+            int last = dictionary.mSize - 1;
+            if((last >= 0) && dictionary.mTerms[last].equals(term)) {
+                dictionary.mCounts[last]++;
+            } else {
+                dictionary.mTerms[last + 1] = term;
+                dictionary.mCounts[last + 1] = 1;
+                dictionary.mSize++;
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Add a reference to term
+     *
+     * @param term term
+     */
+    void add(@NonNull String term) {
+        int index = Arrays.binarySearch(mTerms, 0, mSize, term);
+        if(index >= 0) {
+            mCounts[index]++;
+            return;
+        }
+
+        index = -(index + 1);
+        if(mSize == mTerms.length) {
+            mTerms = Arrays.copyOf(mTerms, mSize * 2);
+            mCounts = Arrays.copyOf(mCounts, mSize * 2);
+        }
+        System.arraycopy(mTerms, index, mTerms, index + 1, mSize - index);
+        System.arraycopy(mCounts, index, mCounts, index + 1, mSize - index);
+        mTerms[index] = term;
+        mCounts[index] = 1;
+        mSize++;
+    }
+
+    /**
+     * Remove a reference to term, term is dropped once no longer referenced
+     *
+     * @param term term
+     */
+    void remove(@NonNull String term) {
+        int index = Arrays.binarySearch(mTerms, 0, mSize, term);
+        if((index < 0) || (--mCounts[index] > 0)) {
+            return;
+        }
+
+        System.arraycopy(mTerms, index + 1, mTerms, index, mSize - index - 1);
+        System.arraycopy(mCounts, index + 1, mCounts, index, mSize - index - 1);
+        mSize--;
+        mTerms[mSize] = null;
+    }
+
+    /**
+     * Whether term is referenced
+     *
+     * @param term term
+     * @return true if term has been added more times than removed
+     */
+    boolean contains(@NonNull String term) {
+        return Arrays.binarySearch(mTerms, 0, mSize, term) >= 0;
+    }
+
+    /**
+     * Number of distinct terms referenced
+     *
+     * @return size
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Find closest term
+     *
+     * @param query query term
+     * @param maxDistance maximum distance of term returned
+     * @return closest term, among equally close the most referenced, null if none is close enough
+     */
+    @Nullable
+    String closest(@NonNull String query, int maxDistance) {
+        // Smaller radii prune far more prefixes, most typos are found at distance one
+        for(int distance = 1; distance < maxDistance; distance++) {
+            String closest = closestWithin(query, distance);
+            if(closest != null) {
+                return closest;
+            }
+        }
+        return closestWithin(query, maxDistance);
+    }
+
+    private String closestWithin(String query, int maxDistance) {
+        int queryLength = query.length();
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+
+        // Rows valid for the prefix of previous term up to this length
+        int validDepth = 0;
+        String previous = "";
+        ensureRows(queryLength, 0);
+        for(int j = 0; j <= queryLength; j++) {
+            mRows[0][j] = j;
+        }
+
+        int i = 0;
+        while(i < mSize) {
+            String term = mTerms[i];
+            ensureRows(queryLength, term.length());
+
+            int depth = Math.min(validDepth, commonPrefix(previous, term));
+            int radius = Math.min(maxDistance, bestDistance);
+            int skipTo = -1;
+
+            while(depth < term.length()) {
+                char c = term.charAt(depth);
+                char previousChar = depth > 0 ? term.charAt(depth - 1) : 0;
+                int[] twoAbove = depth > 0 ? mRows[depth - 1] : null;
+                int[] above = mRows[depth];
+                int[] row = mRows[depth + 1];
+                depth++;
+                row[0] = depth;
+                int rowMin = depth;
+
+                // Cells further than radius off the diagonal exceed radius, only the band
+                // around it is computed, bounded by cells marked as out of reach
+                int low = Math.max(1, depth - radius);
+                int high = Math.min(queryLength, depth + radius);
+                if(low > 1) {
+                    row[low - 1] = radius + 1;
+                }
+                for(int j = low; j <= high; j++) {
+                    int cost = (query.charAt(j - 1) == c) ? 0 : 1;
+                    row[j] = Math.min(Math.min(row[j - 1] + 1, above[j] + 1), above[j - 1] + cost);
+                    if((twoAbove != null) && (j > 1) && (query.charAt(j - 2) == c) &&
+                            (query.charAt(j - 1) == previousChar)) {
+                        // Adjacent characters swapped, cell two rows up lies within its band
+                        row[j] = Math.min(row[j], twoAbove[j - 2] + 1);
+                    }
+                    rowMin = Math.min(rowMin, row[j]);
+                }
+                if(high < queryLength) {
+                    row[high + 1] = radius + 1;
+                }
+
+                if(rowMin > radius) {
+                    // No term starting with this prefix can be close enough
+                    skipTo = skipPrefix(term.substring(0, depth), i + 1);
+                    break;
+                }
+            }
+
+            previous = term;
+            validDepth = depth;
+
+            if(skipTo >= 0) {
+                i = skipTo;
+                continue;
+            }
+
+            // Last cell lies outside the band when lengths differ by more than radius
+            int distance = (queryLength - term.length() > radius) ?
+                    radius + 1 : mRows[term.length()][queryLength];
+            if((distance < bestDistance) ||
+                    ((distance == bestDistance) && (best >= 0) && (mCounts[i] > mCounts[best]))) {
+                best = i;
+                bestDistance = distance;
+            }
+            i++;
+        }
+
+        return best < 0 ? null : mTerms[best];
+    }
+
+    /**
+     * Index of first term not starting with prefix
+     */
+    private int skipPrefix(String prefix, int from) {
+        // Terms starting with prefix sort before prefix followed by the greatest char
+        int index = Arrays.binarySearch(mTerms, from, mSize, prefix + Character.MAX_VALUE);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    private void ensureRows(int queryLength, int termLength) {
+        if((mRows.length > termLength) && (mRows[0].length > queryLength)) {
+            return;
+        }
+
+        int[][] rows = new int[Math.max(termLength + 1, mRows.length)][];
+        int width = Math.max(queryLength + 1, mRows.length > 0 ? mRows[0].length : 0);
+        for(int i = 0; i < rows.length; i++) {
+            rows[i] = (i < mRows.length) && (mRows[i].length == width) ? mRows[i] : new int[width];
+        }
+        // Existing rows are kept only if width is unchanged, first row is always valid
+        for(int j = 0; j < width; j++) {
+            rows[0][j] = j;
+        }
+        mRows = rows;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for(int i = 0; i < length; i++) {
+            if(a.charAt(i) != b.charAt(i)) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Optimal string alignment distance, three rows of the dynamic programming matrix
+     *
+     * @param a first term
+     * @param b second term
+     * @return number of single character insertions, deletions, substitutions or
+     * adjacent transpositions, no substring edited more than once
+     */
+    static int distance(@NonNull String a, @NonNull String b) {
+        int[] twoBack = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for(int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for(int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+
+            for(int j = 1; j <= b.length(); j++) {
+                int cost = (ca == b.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + cost);
+                if((i > 1) && (j > 1) && (ca == b.charAt(j - 2)) &&
+                        (a.charAt(i - 2) == b.charAt(j - 1))) {
+                    current[j] = Math.min(current[j], twoBack[j - 2] + 1);
+                }
+            }
+
+            int[] swap = twoBack;
+            twoBack = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Name Fuzzy Index
+ *
+ * <p>In memory {@link FuzzyTermDictionary} of the words in customers' first and last names, used to
+ * correct misspelled search terms. Built on a background thread on first use, then kept
+ * current from change notifications: a changed customer is read again, a change of many
+ * customers rebuilds the index</p>
+ *
+ * <p>All index access happens on the index's own thread, so lookups queue behind
+ * the initial build instead of seeing a partial index</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class NameFuzzyIndex {
+    private static final String TAG = "NameFuzzyIndex";
+
+    /**
+     * On Suggestion Callback, called on main thread
+     */
+    public interface SuggestionCallback {
+
+        /**
+         * Search query correction
+         *
+         * @param searchQuery search query corrected
+         * @param suggestion corrected search query, null if no term could be corrected
+         */
+        void onSuggestion(String searchQuery, @Nullable String suggestion);
+    }
+
+    private static final String[] PROJECTION = {
+            CustomersContract.Columns._ID,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME
+    };
+
+    private static NameFuzzyIndex instance = null;
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Accessed on executor thread only
+    private FuzzyTermDictionary mDictionary = null;
+    private final Map<Long, String[]> mCustomerTerms = new HashMap<>();
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, final Uri uri) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    update(uri);
+                }
+            });
+        }
+    };
+
+    // Prevent direct instantiation
+    private NameFuzzyIndex(@NonNull ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
+    }
+
+    /**
+     * Get an instance of the app's singleton fuzzy index
+     *
+     * @param contentResolver content resolver
+     * @return name fuzzy index
+     */
+    public static synchronized NameFuzzyIndex getInstance(@NonNull ContentResolver contentResolver) {
+        if(instance == null) {
+            instance = new NameFuzzyIndex(contentResolver);
+        }
+        return instance;
+    }
+
+    /**
+     * Suggest a correction of search query, terms not found in any name are replaced
+     * by the closest name term
+     *
+     * @param searchQuery search query
+     * @param callback callback receiving suggestion on main thread
+     */
+    public void suggest(@NonNull final String searchQuery, @NonNull final SuggestionCallback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureBuilt();
+
+                final String suggestion = correct(searchQuery);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuggestion(searchQuery, suggestion);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Correct search query against index
+     *
+     * @param searchQuery search query
+     * @return corrected search query, null if nothing was corrected
+     */
+    @Nullable
+    String correct(@NonNull String searchQuery) {
+        return correct(mDictionary, searchQuery);
+    }
+
+    /**
+     * Correct search query against dictionary of name terms
+     *
+     * @param dictionary dictionary of name terms
+     * @param searchQuery search query
+     * @return corrected search query, null if nothing was corrected
+     */
+    @Nullable
+    static String correct(@Nullable FuzzyTermDictionary dictionary, @NonNull String searchQuery) {
+        if(dictionary == null) {
+            return null;
+        }
+
+        String[] terms = CustomersSearch.terms(searchQuery);
+        boolean corrected = false;
+
+        for(int i = 0; i < terms.length; i++) {
+            String term = CustomersSearch.searchKeyTerm(terms[i]);
+            if((term == null) || dictionary.contains(term)) {
+                continue;
+            }
+
+            String closest = dictionary.closest(term, maxDistance(term));
+            if(closest != null) {
+                terms[i] = closest;
+                corrected = true;
+            }
+        }
+
+        if(!corrected) {
+            return null;
+        }
+
+        StringBuilder suggestion = new StringBuilder();
+        for(String term : terms) {
+            if(suggestion.length() > 0) {
+                suggestion.append(' ');
+            }
+            suggestion.append(term);
+        }
+        return suggestion.toString();
+    }
+
+    /**
+     * Name terms of customer, split the way searches are
+     *
+     * @param firstName first name
+     * @param lastName last name
+     * @return folded terms
+     */
+    @NonNull
+    static String[] nameTerms(String firstName, String lastName) {
+        String key = CustomersSearch.searchKey(new String[] {firstName, lastName}).trim();
+        return key.isEmpty() ? new String[0] : key.split(" ");
+    }
+
+    // Longer terms tolerate more typos, very short ones none. Two adjacent characters
+    // swapped count as one typo, "jonh" is corrected to "john"
+    private static int maxDistance(String term) {
+        if(term.length() <= 2) {
+            return 0;
+        }
+        return term.length() <= 5 ? 1 : 2;
+    }
+
+    private void ensureBuilt() {
+        if(mDictionary == null) {
+            mContentResolver.registerContentObserver(CustomersContract.CONTENT_URI, true, mObserver);
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+
+        List<String> allTerms = new ArrayList<>();
+        mCustomerTerms.clear();
+
+        Cursor cursor = mContentResolver.query(CustomersContract.CONTENT_URI, PROJECTION,
+                null, null, null);
+        if(cursor != null) {
+            try {
+                while(cursor.moveToNext()) {
+                    String[] terms = nameTerms(cursor.getString(1), cursor.getString(2));
+                    mCustomerTerms.put(cursor.getLong(0), terms);
+                    Collections.addAll(allTerms, terms);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        FuzzyTermDictionary dictionary = FuzzyTermDictionary.of(allTerms);
+        mDictionary = dictionary;
+
+        Log.d(TAG, "rebuild: " + dictionary.size() + " terms of " + mCustomerTerms.size() +
+                " customers in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void update(Uri uri) {
+        if(mDictionary == null) {
+            // Not built yet, first lookup reads current customers
+            return;
+        }
+
+        if((uri == null) ||
+                (CustomersProvider.sUriMatcher.match(uri) != CustomersProvider.CUSTOMERS_ID)) {
+            // Many customers may have changed
+            rebuild();
+            return;
+        }
+
+        long customerId = CustomersContract.getCustomerId(uri);
+        String[] oldTerms = mCustomerTerms.remove(customerId);
+        if(oldTerms != null) {
+            for(String term : oldTerms) {
+                mDictionary.remove(term);
+            }
+        }
+
+        Cursor cursor = mContentResolver.query(uri, PROJECTION, null, null, null);
+        if(cursor != null) {
+            try {
+                if(cursor.moveToFirst()) {
+                    String[] terms = nameTerms(cursor.getString(1), cursor.getString(2));
+                    mCustomerTerms.put(customerId, terms);
+                    for(String term : terms) {
+                        mDictionary.add(term);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
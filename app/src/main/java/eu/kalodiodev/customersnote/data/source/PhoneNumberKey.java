@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Phone Number Key
+ *
+ * <p>Phone number digits in reverse order, e.g. "+30 210 123 4567" has key "765432101203".
+ * Numbers ending the same way share a key prefix, so matching the end of a number
+ * becomes a range lookup on the indexed key column</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class PhoneNumberKey {
+
+    /**
+     * Minimum trailing digits two numbers must share to be considered the same number,
+     * shorter numbers only match exactly
+     */
+    static final int MIN_MATCH_DIGITS = 7;
+
+    // Character following '9', upper bound of keys starting with a given key
+    private static final char AFTER_DIGITS = ':';
+
+    private PhoneNumberKey() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Build key of phone number
+     *
+     * @param phoneNumber phone number, any formatting
+     * @return reversed digits of phone number, null if it contains no digits
+     */
+    @Nullable
+    public static String from(@Nullable String phoneNumber) {
+        if(phoneNumber == null) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(phoneNumber.length());
+        for(int i = phoneNumber.length() - 1; i >= 0; i--) {
+            char c = phoneNumber.charAt(i);
+            if(c >= '0' && c <= '9') {
+                key.append(c);
+            }
+        }
+
+        return key.length() > 0 ? key.toString() : null;
+    }
+
+    /**
+     * Append selection of customers whose phone number ends like the phone number of key
+     *
+     * <p>Either number may carry a longer prefix (e.g. country code), the stored one or
+     * the looked up one. Each alternative is an index lookup, no row is scanned</p>
+     *
+     * @param queryBuilder query builder of Customers table
+     * @param key key of looked up phone number
+     */
+    static void appendLookupSelection(@NonNull SQLiteQueryBuilder queryBuilder,
+                                      @NonNull String key) {
+        String column = CustomersContract.Columns.CUSTOMERS_PHONE_KEY;
+
+        if(key.length() < MIN_MATCH_DIGITS) {
+            queryBuilder.appendWhere(column + " = ");
+            queryBuilder.appendWhereEscapeString(key);
+            return;
+        }
+
+        // Stored numbers ending with looked up number:
+        // (PhoneKey >= '7654321' AND PhoneKey < '7654321:')
+        queryBuilder.appendWhere("((" + column + " >= ");
+        queryBuilder.appendWhereEscapeString(key);
+        queryBuilder.appendWhere(" AND " + column + " < ");
+        queryBuilder.appendWhereEscapeString(key + AFTER_DIGITS);
+        queryBuilder.appendWhere(")");
+
+        // Looked up number ending with stored numbers:
+        // OR PhoneKey IN ('7654321', '76543210', ...)
+        if(key.length() > MIN_MATCH_DIGITS) {
+            queryBuilder.appendWhere(" OR " + column + " IN (");
+            for(int length = MIN_MATCH_DIGITS; length < key.length(); length++) {
+                if(length > MIN_MATCH_DIGITS) {
+                    queryBuilder.appendWhere(", ");
+                }
+                queryBuilder.appendWhereEscapeString(key.substring(0, length));
+            }
+            queryBuilder.appendWhere(")");
+        }
+
+        queryBuilder.appendWhere(")");
+    }
+}
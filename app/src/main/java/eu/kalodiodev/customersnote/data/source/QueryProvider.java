@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import eu.kalodiodev.customersnote.Constants;
+import eu.kalodiodev.customersnote.data.observable.InvalidationTracker;
+import eu.kalodiodev.customersnote.data.observable.ObservableQuery;
+import eu.kalodiodev.customersnote.utils.metrics.SearchMetrics;
+
+/**
+ * Query Provider
+ *
+ * <p>Creates observable customer queries, loaded again as customers change. Changes notified
+ * by the content provider are mapped to the tables queries read: any change invalidates
+ * searches, pages of all customers are invalidated only when the whole table changed, they
+ * apply changes of a single customer in place</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class QueryProvider {
+    private static final String TAG = "QueryProvider";
+
+    /**
+     * Table read by customer searches
+     */
+    public static final String TABLE_CUSTOMERS = CustomersContract.TABLE_NAME;
+
+    /**
+     * Table standing for the pages of all customers
+     */
+    public static final String TABLE_PAGES = CustomersContract.TABLE_NAME + "Pages";
+
+    // Best matching customers shown by a ranked search
+    private static final int RANKED_SEARCH_LIMIT = 50;
+
+    // Customers read at a time when listing all customers, and pages kept open besides first
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_RESIDENT_PAGES = 8;
+
+    // Columns of list items. Notes are left out, a customer opened is read in full by id.
+    // Company and phone are kept for searches refined in memory, first name key and id
+    // for page tokens
+    private static final String[] PROJECTION = {
+            CustomersContract.Columns._ID,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME,
+            CustomersContract.Columns.CUSTOMERS_PHONE_NUMBER,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY
+    };
+
+    private static InvalidationTracker sTracker = null;
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final InvalidationTracker mTracker;
+
+    /**
+     * Query Provider Constructor, queries are observed through the app's invalidation tracker
+     *
+     * @param context context
+     */
+    public QueryProvider(@NonNull Context context) {
+        this(context, getTracker(context));
+    }
+
+    /**
+     * Query Provider Constructor
+     *
+     * @param context context
+     * @param tracker invalidation tracker queries are observed through
+     */
+    public QueryProvider(@NonNull Context context, @NonNull InvalidationTracker tracker) {
+        this.mContext = context.getApplicationContext();
+        this.mTracker = tracker;
+    }
+
+    /**
+     * Get the app's invalidation tracker, invalidated by changes of customers. Queries are
+     * loaded on a small pool of threads and delivered on the main thread
+     *
+     * @param context context
+     * @return invalidation tracker
+     */
+    public static synchronized InvalidationTracker getTracker(@NonNull Context context) {
+        if(sTracker == null) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            Executor queryExecutor = Executors.newFixedThreadPool(Constants.Search.QUERY_THREADS,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(@NonNull Runnable runnable) {
+                            Thread thread = new Thread(runnable, TAG);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            Executor deliveryExecutor = new Executor() {
+                @Override
+                public void execute(@NonNull Runnable runnable) {
+                    mainHandler.post(runnable);
+                }
+            };
+            sTracker = new InvalidationTracker(queryExecutor, deliveryExecutor);
+
+            final Context appContext = context.getApplicationContext();
+            appContext.getContentResolver().registerContentObserver(CustomersContract.CONTENT_URI,
+                    true, new ContentObserver(mainHandler) {
+                        @Override
+                        public void onChange(boolean selfChange) {
+                            onChange(selfChange, null);
+                        }
+
+                        @Override
+                        public void onChange(boolean selfChange, Uri uri) {
+                            // Searches must not be refined from stale rows
+                            CustomersSearchCache.getInstance(appContext).invalidate();
+
+                            if((uri == null) || (CustomersContract.getOperation(uri) == null)) {
+                                // Whole table changed
+                                sTracker.invalidate(TABLE_CUSTOMERS, TABLE_PAGES);
+                            } else {
+                                sTracker.invalidate(TABLE_CUSTOMERS);
+                            }
+                        }
+                    });
+        }
+        return sTracker;
+    }
+
+    /**
+     * Create observable customers query, identical queries are shared
+     *
+     * @param searchQuery search query, empty for all customers
+     * @param searchEverywhere whether terms are searched anywhere in any field, notes included,
+     *                         instead of matching word prefixes
+     * @param rankedSearch whether only best matching customers are loaded, best first,
+     *                     instead of every matching customer by name
+     * @return customers query, its source a {@link CustomersQuery}
+     */
+    public ObservableQuery<Cursor> createCustomersQuery(String searchQuery,
+                                                        boolean searchEverywhere,
+                                                        boolean rankedSearch) {
+        SearchMetrics.getInstance().onLoaderCreated();
+
+        // All customers are listed a page at a time, the query reads the first page
+        Uri uri = CustomersContract.buildPageUri(null, PAGE_SIZE);
+        CustomersSearchCache searchCache = null;
+        String table = TABLE_PAGES;
+
+        if((searchQuery != null) && (!searchQuery.trim().isEmpty())) {
+            table = TABLE_CUSTOMERS;
+            if(rankedSearch) {
+                // Provider scores matches, returning a page of the best ones
+                uri = CustomersContract.buildRankedSearchUri(searchQuery, searchEverywhere ?
+                        CustomersContract.SEARCH_MODE_SUBSTRING :
+                        CustomersContract.SEARCH_MODE_PREFIX, RANKED_SEARCH_LIMIT);
+            } else if(searchEverywhere) {
+                // Provider answers substring search using trigram index
+                uri = CustomersContract.buildSearchUri(searchQuery,
+                        CustomersContract.SEARCH_MODE_SUBSTRING);
+            } else {
+                // Provider answers search using full text search when available
+                uri = CustomersContract.buildSearchUri(searchQuery);
+                searchCache = CustomersSearchCache.getInstance(mContext);
+            }
+        }
+
+        // Folded first name sorts accented names along the others, collation matches its index
+        String sortOrder = CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY + " COLLATE NOCASE";
+
+        return mTracker.query(uri + " ORDER BY " + sortOrder, new String[] {table},
+                new CustomersQuery(mContext.getContentResolver(), uri, PROJECTION, sortOrder,
+                        searchQuery, searchCache));
+    }
+
+    /**
+     * Create pages of all customers, following pages are read as they are scrolled to
+     *
+     * @param firstPage first page, loaded by a customers query listing all customers
+     * @return customer pages
+     */
+    public CustomerPages createCustomerPages(@NonNull Cursor firstPage) {
+        return new CustomerPages(mContext.getContentResolver(), firstPage, PROJECTION,
+                PAGE_SIZE, MAX_RESIDENT_PAGES);
+    }
+}
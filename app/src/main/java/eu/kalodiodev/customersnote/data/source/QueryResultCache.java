@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Query Result Cache
+ *
+ * <p>Least recently used cache of provider query results, bounded by the estimated memory
+ * of the results it holds. Results are keyed by normalized uri, projection, selection,
+ * selection arguments and sort order</p>
+ *
+ * <p>A result depends either on a single customer, queried by item uri, or on any
+ * customer. A change of some customers drops the results of those customers and every
+ * result depending on any customer, results of other customers stay cached</p>
+ *
+ * <p>Results of queries running while customers change are never cached: every change
+ * starts a new generation, a result is only cached in the generation its query began</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class QueryResultCache {
+
+    /**
+     * Scope of a result depending on any customer
+     */
+    static final long SCOPE_ALL = -1;
+
+    private static final char FIELD_SEPARATOR = '\u0000';
+    private static final char VALUE_SEPARATOR = '\u0001';
+    private static final String NULL_VALUE = "\u0002";
+
+    private final long mMaxBytes;
+
+    // Access ordered, eldest entry is least recently used
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long mSizeBytes = 0;
+    private int mGeneration = 0;
+
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mEvictions = 0;
+    private long mInvalidations = 0;
+
+    /**
+     * Query Result Cache Constructor
+     *
+     * @param maxBytes maximum estimated memory of cached results
+     */
+    QueryResultCache(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Build cache key of query
+     *
+     * @param uri query uri
+     * @param projection projection, may be null
+     * @param selection selection, may be null
+     * @param selectionArgs selection arguments, may be null
+     * @param sortOrder sort order, may be null
+     * @return cache key
+     */
+    @NonNull
+    static String buildKey(@NonNull String uri, @Nullable String[] projection,
+                           @Nullable String selection, @Nullable String[] selectionArgs,
+                           @Nullable String sortOrder) {
+        StringBuilder key = new StringBuilder(normalizeUri(uri));
+        key.append(FIELD_SEPARATOR);
+        appendValues(key, projection);
+        key.append(FIELD_SEPARATOR).append(selection == null ? NULL_VALUE : selection);
+        key.append(FIELD_SEPARATOR);
+        appendValues(key, selectionArgs);
+        key.append(FIELD_SEPARATOR).append(sortOrder == null ? NULL_VALUE : sortOrder);
+        return key.toString();
+    }
+
+    /**
+     * Normalize uri, query parameters sorted and fragment dropped, so that uris
+     * differing only in parameter order share results
+     *
+     * @param uri uri
+     * @return normalized uri
+     */
+    @NonNull
+    static String normalizeUri(@NonNull String uri) {
+        int fragment = uri.indexOf('#');
+        if(fragment >= 0) {
+            uri = uri.substring(0, fragment);
+        }
+
+        int query = uri.indexOf('?');
+        if(query < 0) {
+            return uri;
+        }
+
+        String[] parameters = uri.substring(query + 1).split("&");
+        Arrays.sort(parameters);
+
+        StringBuilder normalized = new StringBuilder(uri.length());
+        normalized.append(uri, 0, query + 1);
+        for(int i = 0; i < parameters.length; i++) {
+            if(i > 0) {
+                normalized.append('&');
+            }
+            normalized.append(parameters[i]);
+        }
+        return normalized.toString();
+    }
+
+    private static void appendValues(StringBuilder key, String[] values) {
+        if(values == null) {
+            key.append(NULL_VALUE);
+            return;
+        }
+
+        for(String value : values) {
+            key.append(value == null ? NULL_VALUE : value).append(VALUE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Get cached result
+     *
+     * @param key cache key
+     * @return result, null if not cached
+     */
+    @Nullable
+    synchronized CursorSnapshot get(@NonNull String key) {
+        Entry entry = mEntries.get(key);
+        if(entry == null) {
+            mMisses++;
+            return null;
+        }
+
+        mHits++;
+        return entry.snapshot;
+    }
+
+    /**
+     * Generation a query begins in, to be passed to {@link #put}
+     *
+     * @return current generation
+     */
+    synchronized int generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Whether result of a query begun in generation may still be cached, checked before the
+     * result is copied
+     *
+     * @param generation generation query began in
+     * @return false if customers changed since, result would not be cached
+     */
+    synchronized boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    /**
+     * Estimated memory of the largest result cached, a quarter of the cache
+     *
+     * @return size in bytes
+     */
+    long maxResultBytes() {
+        return mMaxBytes / 4;
+    }
+
+    /**
+     * Cache result, unless customers changed since its query began or it is too large
+     *
+     * @param key cache key
+     * @param scope id of the customer result depends on, or {@link #SCOPE_ALL}
+     * @param snapshot result
+     * @param generation generation query began in
+     * @return true if cached
+     */
+    synchronized boolean put(@NonNull String key, long scope, @NonNull CursorSnapshot snapshot,
+                             int generation) {
+        if((generation != mGeneration) || (snapshot.getSizeBytes() > maxResultBytes())) {
+            return false;
+        }
+
+        Entry previous = mEntries.put(key, new Entry(snapshot, scope));
+        if(previous != null) {
+            mSizeBytes -= previous.snapshot.getSizeBytes();
+        }
+        mSizeBytes += snapshot.getSizeBytes();
+
+        Iterator<Entry> eldest = mEntries.values().iterator();
+        while(mSizeBytes > mMaxBytes) {
+            mSizeBytes -= eldest.next().snapshot.getSizeBytes();
+            eldest.remove();
+            mEvictions++;
+        }
+        return true;
+    }
+
+    /**
+     * Drop results depending on customers
+     *
+     * @param customerIds ids of customers changed
+     */
+    synchronized void invalidate(@NonNull long[] customerIds) {
+        mGeneration++;
+
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while(entries.hasNext()) {
+            Entry entry = entries.next();
+            if((entry.scope == SCOPE_ALL) || contains(customerIds, entry.scope)) {
+                mSizeBytes -= entry.snapshot.getSizeBytes();
+                entries.remove();
+                mInvalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drop all results
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mInvalidations += mEntries.size();
+        mEntries.clear();
+        mSizeBytes = 0;
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for(long v : values) {
+            if(v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized long hits() {
+        return mHits;
+    }
+
+    synchronized long misses() {
+        return mMisses;
+    }
+
+    synchronized long evictions() {
+        return mEvictions;
+    }
+
+    synchronized long invalidations() {
+        return mInvalidations;
+    }
+
+    synchronized long sizeBytes() {
+        return mSizeBytes;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryResultCache{entries=" + mEntries.size() + ", bytes=" + mSizeBytes +
+                ", hits=" + mHits + ", misses=" + mMisses + ", evictions=" + mEvictions +
+                ", invalidations=" + mInvalidations + "}";
+    }
+
+    private static final class Entry {
+        final CursorSnapshot snapshot;
+        final long scope;
+
+        Entry(CursorSnapshot snapshot, long scope) {
+            this.snapshot = snapshot;
+            this.scope = scope;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+/**
+ * Ranked Cursor
+ *
+ * <p>In memory page of the best matching customers of a ranked search, best first. Only
+ * the customers of the page are read from the database, however many customers match,
+ * so it is shown by any cursor adapter without loading every match</p>
+ *
+ * <p>Number of matching customers is in {@link #getExtras()} under
+ * {@link CustomersContract#EXTRA_MATCH_COUNT}, which survives the content resolver's
+ * cursor wrapping</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class RankedCursor extends MatrixCursor {
+
+    private final int mMatchCount;
+
+    private final Bundle mExtras = new Bundle();
+
+    /**
+     * Ranked Cursor Constructor
+     *
+     * @param columnNames column names
+     * @param capacity number of rows expected
+     * @param matchCount number of customers matching search
+     */
+    RankedCursor(@NonNull String[] columnNames, int capacity, int matchCount) {
+        super(columnNames, capacity);
+        this.mMatchCount = matchCount;
+        this.mExtras.putInt(CustomersContract.EXTRA_MATCH_COUNT, matchCount);
+    }
+
+    /**
+     * Get number of customers matching search, ranked customers are the best of them
+     *
+     * @return match count
+     */
+    public int getMatchCount() {
+        return mMatchCount;
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return mExtras;
+    }
+
+    /**
+     * Append current row of cursor
+     *
+     * @param cursor cursor positioned at a row, having the columns of this cursor
+     */
+    void addRow(@NonNull Cursor cursor) {
+        RowBuilder row = newRow();
+        for(int i = 0; i < getColumnCount(); i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    row.add(null);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row.add(cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row.add(cursor.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row.add(cursor.getBlob(i));
+                    break;
+                default:
+                    row.add(cursor.getString(i));
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Schema Migration
+ *
+ * <p>Changes bringing the schema to a version, as ordered steps. {@link SchemaMigrator} runs
+ * every step in its own transaction. A migration interrupted half way is run again from its
+ * first step, so steps must be idempotent: tables and indexes created if not existing,
+ * columns added if missing, rows rewritten to the same values</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class SchemaMigration {
+
+    /**
+     * Migration Step
+     */
+    interface Step {
+
+        /**
+         * Run step, or its next batch, within a transaction
+         *
+         * @param db database
+         * @return true if step has more batches to run
+         */
+        boolean run(@NonNull SQLiteDatabase db);
+    }
+
+    /**
+     * Step migrating rows in batches of ascending ids, every batch committed on its own so
+     * that a large table is neither held in one transaction nor in one cursor window
+     */
+    abstract static class BatchStep implements Step {
+
+        private final int mBatchSize;
+
+        // Last id migrated by previous batch
+        private long mLastId = -1;
+
+        BatchStep(int batchSize) {
+            this.mBatchSize = batchSize;
+        }
+
+        @Override
+        public final boolean run(@NonNull SQLiteDatabase db) {
+            long lastId = runBatch(db, mLastId, mBatchSize);
+            if(lastId < 0) {
+                return false;
+            }
+            mLastId = lastId;
+            return true;
+        }
+
+        /**
+         * Migrate next batch of rows
+         *
+         * @param db database
+         * @param afterId rows with greater ids are migrated
+         * @param batchSize maximum number of rows migrated
+         * @return id of last row migrated, -1 if there were no more rows
+         */
+        abstract long runBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize);
+    }
+
+    private final int mVersion;
+    private final String mDescription;
+    private final List<Step> mSteps = new ArrayList<>();
+
+    /**
+     * Migration to version
+     *
+     * @param version schema version after migration
+     * @param description what the migration changes, logged
+     */
+    SchemaMigration(int version, @NonNull String description) {
+        this.mVersion = version;
+        this.mDescription = description;
+    }
+
+    /**
+     * Append step
+     *
+     * @param step step, run after the steps added before it
+     * @return this migration
+     */
+    @NonNull
+    SchemaMigration step(@NonNull Step step) {
+        mSteps.add(step);
+        return this;
+    }
+
+    int getVersion() {
+        return mVersion;
+    }
+
+    @NonNull
+    String getDescription() {
+        return mDescription;
+    }
+
+    @NonNull
+    List<Step> getSteps() {
+        return Collections.unmodifiableList(mSteps);
+    }
+}
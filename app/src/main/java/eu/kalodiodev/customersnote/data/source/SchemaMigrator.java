@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Schema Migrator
+ *
+ * <p>Applies the {@link SchemaMigration}s a database is missing, in version order. Applied
+ * migrations are recorded in a table of their own rather than in the database version, so
+ * that migrations run outside the single transaction {@link android.database.sqlite.SQLiteOpenHelper}
+ * wraps an upgrade in: every step commits on its own and a migration left unfinished is
+ * resumed on next open. A migration is recorded by the transaction finishing its last step,
+ * so it is never left applied but unrecorded, to run again</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class SchemaMigrator {
+    private static final String TAG = "SchemaMigrator";
+
+    static final String TABLE_NAME = "SchemaMigrations";
+
+    static final String COLUMN_VERSION = "Version";
+    static final String COLUMN_DESCRIPTION = "Description";
+    static final String COLUMN_APPLIED_AT = "AppliedAt";
+    static final String COLUMN_DURATION = "DurationMillis";
+
+    private SchemaMigrator() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Create table of applied migrations
+     *
+     * @param db database
+     */
+    static void createTable(@NonNull SQLiteDatabase db) {
+        // CREATE TABLE IF NOT EXISTS SchemaMigrations (Version INTEGER PRIMARY KEY NOT NULL,
+        // Description TEXT, AppliedAt INTEGER, DurationMillis INTEGER);
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                COLUMN_VERSION + " INTEGER PRIMARY KEY NOT NULL, " +
+                COLUMN_DESCRIPTION + " TEXT, " +
+                COLUMN_APPLIED_AT + " INTEGER, " +
+                COLUMN_DURATION + " INTEGER);");
+    }
+
+    /**
+     * Whether table of applied migrations exists
+     *
+     * @param db database
+     * @return false if database predates migrator
+     */
+    static boolean hasTable(@NonNull SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] {TABLE_NAME});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Record migrations up to version as applied without running them, for databases
+     * upgraded before migrations were recorded
+     *
+     * @param db database
+     * @param migrations migrations
+     * @param version version database schema is at
+     */
+    static void markApplied(@NonNull SQLiteDatabase db, @NonNull List<SchemaMigration> migrations,
+                            int version) {
+        createTable(db);
+        for(SchemaMigration migration : migrations) {
+            if(migration.getVersion() <= version) {
+                record(db, migration, 0, -1);
+            }
+        }
+    }
+
+    /**
+     * Apply migrations not applied yet
+     *
+     * @param db database
+     * @param migrations migrations, in ascending version order
+     * @return number of migrations applied
+     */
+    static int migrate(@NonNull SQLiteDatabase db, @NonNull List<SchemaMigration> migrations) {
+        checkOrder(migrations);
+        createTable(db);
+
+        Set<Integer> applied = appliedVersions(db);
+        int count = 0;
+
+        for(SchemaMigration migration : migrations) {
+            if(applied.contains(migration.getVersion())) {
+                continue;
+            }
+
+            Log.d(TAG, "migrate: version " + migration.getVersion() + ", " +
+                    migration.getDescription());
+            long start = System.nanoTime();
+
+            List<SchemaMigration.Step> steps = migration.getSteps();
+            if(steps.isEmpty()) {
+                record(db, migration, System.currentTimeMillis(), 0);
+            }
+            for(int i = 0; i < steps.size(); i++) {
+                long stepStart = System.nanoTime();
+                int transactions = runStep(db, steps.get(i),
+                        i == steps.size() - 1 ? migration : null, start);
+                Log.d(TAG, "migrate: version " + migration.getVersion() + " step " +
+                        (i + 1) + " in " + transactions + " transactions, " +
+                        (System.nanoTime() - stepStart) / 1000000 + " ms");
+            }
+
+            long millis = (System.nanoTime() - start) / 1000000;
+            count++;
+
+            Log.d(TAG, "migrate: version " + migration.getVersion() + " applied in " +
+                    millis + " ms");
+        }
+
+        return count;
+    }
+
+    /**
+     * Migrations must have distinct, ascending versions
+     *
+     * @param migrations migrations
+     * @throws IllegalStateException if a migration is out of order
+     */
+    static void checkOrder(@NonNull List<SchemaMigration> migrations) {
+        int previous = 0;
+        for(SchemaMigration migration : migrations) {
+            if(migration.getVersion() <= previous) {
+                throw new IllegalStateException("Migration to version " + migration.getVersion() +
+                        " follows migration to version " + previous);
+            }
+            previous = migration.getVersion();
+        }
+    }
+
+    // Step runs in one transaction per batch, other connections get the database in between.
+    // Last step of a migration records it, in the transaction of its last batch
+    private static int runStep(SQLiteDatabase db, SchemaMigration.Step step,
+                               SchemaMigration completed, long start) {
+        int transactions = 0;
+        boolean more;
+        do {
+            db.beginTransaction();
+            try {
+                more = step.run(db);
+                if(!more && (completed != null)) {
+                    record(db, completed, System.currentTimeMillis(),
+                            (System.nanoTime() - start) / 1000000);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            transactions++;
+        } while(more);
+        return transactions;
+    }
+
+    private static Set<Integer> appliedVersions(SQLiteDatabase db) {
+        Set<Integer> versions = new HashSet<>();
+        Cursor cursor = db.query(TABLE_NAME, new String[] {COLUMN_VERSION},
+                null, null, null, null, null);
+        try {
+            while(cursor.moveToNext()) {
+                versions.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return versions;
+    }
+
+    private static void record(SQLiteDatabase db, SchemaMigration migration, long appliedAt,
+                               long millis) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_VERSION, migration.getVersion());
+        values.put(COLUMN_DESCRIPTION, migration.getDescription());
+        values.put(COLUMN_APPLIED_AT, appliedAt);
+        values.put(COLUMN_DURATION, millis);
+        db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
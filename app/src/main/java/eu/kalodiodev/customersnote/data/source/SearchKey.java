@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.text.Normalizer;
+
+/**
+ * Search Key
+ *
+ * <p>Text folded for searching and sorting: accents stripped and case folded in any
+ * alphabet, e.g. "Γιώργος" and "ΓΙΩΡΓΟΣ" both have key "γιωργοσ". SQLite folds ASCII
+ * only, so keys are computed once when a customer is saved and stored in indexed columns</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class SearchKey {
+
+    // Customer fields having a search key column, in the order of KEY_COLUMNS
+    static final String[] SOURCE_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME
+    };
+
+    // Search key columns, in the order of SOURCE_COLUMNS
+    static final String[] KEY_COLUMNS = {
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_LAST_NAME_KEY,
+            CustomersContract.Columns.CUSTOMERS_PROFESSION_KEY,
+            CustomersContract.Columns.CUSTOMERS_COMPANY_NAME_KEY
+    };
+
+    private SearchKey() {
+        // private constructor to prevent instantiation
+    }
+
+    /**
+     * Build search key of text
+     *
+     * @param text text, may be null
+     * @return search key, null if text is null
+     */
+    @Nullable
+    public static String from(@Nullable String text) {
+        return text == null ? null : fold(text);
+    }
+
+    /**
+     * Fold text, stripping accents and folding case
+     *
+     * @param text text
+     * @return folded text
+     */
+    @NonNull
+    static String fold(@NonNull String text) {
+        // Decompose, accents become combining marks following their base letter
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+
+        for(int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if(Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+
+            c = Character.toLowerCase(c);
+            // Final sigma is the same letter as sigma
+            folded.append(c == '\u03c2' ? '\u03c3' : c);
+        }
+
+        return folded.toString();
+    }
+}
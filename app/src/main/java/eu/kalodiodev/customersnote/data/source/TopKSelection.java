@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Top K Selection
+ *
+ * <p>Selects the k best scored customers out of any number offered, in O(n log k) time
+ * and O(k) memory. The selected customers are kept in a min heap whose root is the worst
+ * of them, a customer offered is kept only if it beats the root</p>
+ *
+ * <p>Among equal scores, customers sorting first by sort key, then by id, are better</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class TopKSelection {
+
+    private final long[] mIds;
+    private final int[] mScores;
+    private final String[] mSortKeys;
+    private int mSize = 0;
+    private int mOffered = 0;
+
+    /**
+     * Top K Selection Constructor
+     *
+     * @param k maximum number of customers selected
+     */
+    TopKSelection(int k) {
+        if(k <= 0) {
+            throw new IllegalArgumentException("k must be positive, was " + k);
+        }
+        mIds = new long[k];
+        mScores = new int[k];
+        mSortKeys = new String[k];
+    }
+
+    /**
+     * Offer customer
+     *
+     * @param id customer id
+     * @param score relevance score
+     * @param sortKey key ordering equally scored customers, null sorts first
+     */
+    void offer(long id, int score, String sortKey) {
+        mOffered++;
+        if(sortKey == null) {
+            sortKey = "";
+        }
+
+        if(mSize < mIds.length) {
+            set(mSize, id, score, sortKey);
+            siftUp(mSize++);
+        } else if(isWorse(0, id, score, sortKey)) {
+            // Better than the worst one selected, replaces it
+            set(0, id, score, sortKey);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Number of customers offered
+     *
+     * @return customers offered, selected or not
+     */
+    int offered() {
+        return mOffered;
+    }
+
+    /**
+     * Ids of selected customers, best first. Empties the selection
+     *
+     * @return selected ids
+     */
+    @NonNull
+    long[] drainIds() {
+        long[] ids = new long[mSize];
+
+        // Worst is removed first, filling ids from the end
+        while(mSize > 0) {
+            ids[mSize - 1] = mIds[0];
+            mSize--;
+            if(mSize > 0) {
+                set(0, mIds[mSize], mScores[mSize], mSortKeys[mSize]);
+                siftDown(0);
+            }
+            mSortKeys[mSize] = null;
+        }
+
+        return ids;
+    }
+
+    private void set(int index, long id, int score, String sortKey) {
+        mIds[index] = id;
+        mScores[index] = score;
+        mSortKeys[index] = sortKey;
+    }
+
+    private void swap(int a, int b) {
+        long id = mIds[a];
+        int score = mScores[a];
+        String sortKey = mSortKeys[a];
+        set(a, mIds[b], mScores[b], mSortKeys[b]);
+        set(b, id, score, sortKey);
+    }
+
+    // Whether customer at index is worse than the one given
+    private boolean isWorse(int index, long id, int score, String sortKey) {
+        if(mScores[index] != score) {
+            return mScores[index] < score;
+        }
+        int order = mSortKeys[index].compareTo(sortKey);
+        if(order != 0) {
+            return order > 0;
+        }
+        return mIds[index] > id;
+    }
+
+    private void siftUp(int index) {
+        while(index > 0) {
+            int parent = (index - 1) / 2;
+            if(!isWorse(index, mIds[parent], mScores[parent], mSortKeys[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while(true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if((left < mSize) && isWorse(left, mIds[worst], mScores[worst], mSortKeys[worst])) {
+                worst = left;
+            }
+            if((right < mSize) && isWorse(right, mIds[worst], mScores[worst], mSortKeys[worst])) {
+                worst = right;
+            }
+            if(worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-Ahead Log Checkpointer
+ *
+ * <p>Copies the write-ahead log into the database file on a background thread, a while
+ * after writes, so that commits, which would otherwise checkpoint a grown log themselves,
+ * stay short. Writes within the delay share a single checkpoint</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+final class WalCheckpointer {
+    private static final String TAG = "WalCheckpointer";
+
+    // Copies what it can without waiting for readers or writers
+    static final String MODE_PASSIVE = "PASSIVE";
+    // Waits for writers and for readers of older log frames, until the log is copied in full
+    static final String MODE_FULL = "FULL";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final long mDelayMillis;
+
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Checkpoint scheduled and not run yet, guarded by this
+    private ScheduledFuture<?> mPending = null;
+
+    /**
+     * Checkpointer of database
+     *
+     * @param dbHelper helper of database in write-ahead logging mode
+     * @param delayMillis delay of checkpoint after first write
+     */
+    WalCheckpointer(@NonNull SQLiteOpenHelper dbHelper, long delayMillis) {
+        this.mDbHelper = dbHelper;
+        this.mDelayMillis = delayMillis;
+    }
+
+    /**
+     * Schedule checkpoint after a write, unless one is pending already
+     */
+    synchronized void onWrite() {
+        if((mPending != null) && !mPending.isDone()) {
+            return;
+        }
+
+        mPending = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (WalCheckpointer.this) {
+                    mPending = null;
+                }
+                try {
+                    checkpoint(mDbHelper.getWritableDatabase(), MODE_PASSIVE);
+                } catch (SQLiteException e) {
+                    Log.w(TAG, "run: checkpoint failed", e);
+                }
+            }
+        }, mDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel pending checkpoint, e.g. before database is closed
+     */
+    synchronized void cancel() {
+        if(mPending != null) {
+            mPending.cancel(false);
+            mPending = null;
+        }
+    }
+
+    /**
+     * Checkpoint database
+     *
+     * @param db database
+     * @param mode checkpoint mode, {@link #MODE_PASSIVE} or {@link #MODE_FULL}
+     * @return true if the log was copied into the database in full
+     */
+    static boolean checkpoint(@NonNull SQLiteDatabase db, @NonNull String mode) {
+        long start = System.nanoTime();
+
+        // Busy flag, pages in log and pages copied into database
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(" + mode + ")", null);
+        try {
+            if(!cursor.moveToFirst()) {
+                return true;
+            }
+            boolean busy = cursor.getInt(0) != 0;
+            int logPages = cursor.getInt(1);
+            int copiedPages = cursor.getInt(2);
+
+            Log.d(TAG, "checkpoint: " + mode + " copied " + copiedPages + " of " + logPages +
+                    " pages" + (busy ? ", busy" : "") + " in " +
+                    (System.nanoTime() - start) / 1000000 + " ms");
+            return !busy && (copiedPages == logPages);
+        } finally {
+            cursor.close();
+        }
+    }
+}
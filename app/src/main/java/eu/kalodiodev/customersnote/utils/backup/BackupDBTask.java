@@ -15,6 +15,7 @@
  */
 package eu.kalodiodev.customersnote.utils.backup;
 
+import android.content.ContentResolver;
 import android.os.AsyncTask;
 import android.os.Environment;
 
@@ -42,7 +43,15 @@ public class BackupDBTask implements IBackupDBTask {
 
     private IBackupDBTask.BackupEvents mBackupEvents;
 
-    public BackupDBTask() {
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Backup task
+     *
+     * @param contentResolver content resolver, the database is checkpointed through it
+     */
+    public BackupDBTask(ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
     }
 
     @Override
@@ -91,7 +100,7 @@ public class BackupDBTask implements IBackupDBTask {
             this.taskId = taskId;
             this.backupEvents = backupEvents;
             this.overwriteStatus = overwriteStatus;
-            this.mDbBackup = new LocalDdBackup();
+            this.mDbBackup = new LocalDdBackup(mContentResolver);
         }
 
         @Override
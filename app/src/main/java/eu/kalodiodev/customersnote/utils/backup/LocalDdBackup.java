@@ -15,9 +15,13 @@
  */
 package eu.kalodiodev.customersnote.utils.backup;
 
+import android.content.ContentResolver;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.os.Bundle;
 import android.os.Environment;
+import android.util.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -25,25 +29,64 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 
+import eu.kalodiodev.customersnote.data.source.CustomersContract;
+
 /**
  * Database File Backup or Restore
  *
+ * <p>In write-ahead logging mode, committed changes may still be in the database's -wal
+ * file, indexed by its -shm file. Backup copies them into the database file first, and
+ * a backup is a single file in rollback journal mode. Restore closes the database and
+ * removes the sidecar files of the replaced database, which would otherwise be applied
+ * to the restored one. The provider opens the database again only once the restored file
+ * is in place</p>
+ *
  * @author Raptodimos Athanasios
  */
 public class LocalDdBackup implements DbBackup{
 
+    private static final String TAG = "LocalDdBackup";
+
+    // Sidecar files of a database, write-ahead log, its shared memory index and rollback journal
+    private static final String WAL_SUFFIX = "-wal";
+    private static final String SHM_SUFFIX = "-shm";
+    private static final String JOURNAL_SUFFIX = "-journal";
+
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Backup or restore of the database owned by customers provider
+     *
+     * @param contentResolver content resolver
+     */
+    public LocalDdBackup(ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
+    }
+
     @Override
     public void backup(String sourceDatabase, String backupFolder, String filename) {
         File Database_file = new File(Environment.getDataDirectory() + sourceDatabase);
         File Directory = new File(Environment.getExternalStorageDirectory() + backupFolder);
         File file = new File(Directory.getPath(), filename);
 
+        // Copy committed changes from the log into the database file
+        boolean checkpointed = checkpoint();
+
         //Create Directories
         if ((Directory.mkdir()) || (Directory.exists())) {
             try {
+                // Sidecars of a previous backup do not belong to this one
+                deleteSidecars(file, WAL_SUFFIX, SHM_SUFFIX, JOURNAL_SUFFIX);
                 copyFile(Database_file, file);
-            } catch (IOException e) {
-                e.printStackTrace();
+
+                // Log left by a checkpoint that could not complete is folded into the backup
+                File wal = sidecar(Database_file, WAL_SUFFIX);
+                if(!checkpointed && (wal.length() > 0)) {
+                    copyFile(wal, sidecar(file, WAL_SUFFIX));
+                }
+                toRollbackJournal(file);
+            } catch (IOException | SQLiteException e) {
+                Log.e(TAG, "backup: database not backed up to " + file, e);
             }
         }
     }
@@ -55,11 +98,65 @@ public class LocalDdBackup implements DbBackup{
         File Directory = new File(Environment.getExternalStorageDirectory(), backupFolder);
         final File file = new File(Directory.getPath(), filename);
 
-        //Copy file
+        // Reads and writes wait until the restored file is in place
+        mContentResolver.call(CustomersContract.CONTENT_URI,
+                CustomersContract.METHOD_CLOSE_DATABASE, null, null);
         try {
+            deleteSidecars(Database_file, WAL_SUFFIX, SHM_SUFFIX, JOURNAL_SUFFIX);
+
+            //Copy file
             copyFile(file, Database_file);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.e(TAG, "restore: database not restored from " + file, e);
+        } finally {
+            // Database is opened again, in its configured mode, on next access
+            mContentResolver.call(CustomersContract.CONTENT_URI,
+                    CustomersContract.METHOD_REOPEN_DATABASE, null, null);
+        }
+    }
+
+    private boolean checkpoint() {
+        Bundle result = mContentResolver.call(CustomersContract.CONTENT_URI,
+                CustomersContract.METHOD_CHECKPOINT, null, null);
+        boolean complete = (result != null) &&
+                result.getBoolean(CustomersContract.EXTRA_CHECKPOINT_COMPLETE);
+        Log.d(TAG, "checkpoint: complete " + complete);
+        return complete;
+    }
+
+    /**
+     * Switch backup to rollback journal mode, applying and removing its log if any
+     *
+     * @param file backup database file
+     */
+    private static void toRollbackJournal(File file) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                file.toString(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            Cursor cursor = db.rawQuery("PRAGMA journal_mode = DELETE", null);
+            try {
+                if(cursor.moveToFirst()) {
+                    Log.d(TAG, "toRollbackJournal: backup journal mode " + cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+        deleteSidecars(file, WAL_SUFFIX, SHM_SUFFIX, JOURNAL_SUFFIX);
+    }
+
+    private static File sidecar(File database, String suffix) {
+        return new File(database.getPath() + suffix);
+    }
+
+    private static void deleteSidecars(File database, String... suffixes) {
+        for(String suffix : suffixes) {
+            File sidecar = sidecar(database, suffix);
+            if(sidecar.exists() && !sidecar.delete()) {
+                Log.w(TAG, "deleteSidecars: could not delete " + sidecar);
+            }
         }
     }
 
@@ -90,7 +187,7 @@ public class LocalDdBackup implements DbBackup{
             }
 
         } catch (SQLiteException e) {
-            e.printStackTrace();
+            Log.e(TAG, "checkDbVersion: could not compare database versions", e);
         }
 
         return version_ok;
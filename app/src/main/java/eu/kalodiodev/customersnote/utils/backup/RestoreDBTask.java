@@ -15,6 +15,7 @@
  */
 package eu.kalodiodev.customersnote.utils.backup;
 
+import android.content.ContentResolver;
 import android.os.AsyncTask;
 import android.os.Environment;
 import android.util.Log;
@@ -45,7 +46,15 @@ public class RestoreDBTask implements IRestoreDBTask {
 
     private IRestoreDBTask.RestoreEvents mRestoreEvents;
 
-    public RestoreDBTask() {
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Restore task
+     *
+     * @param contentResolver content resolver, the database is closed through it
+     */
+    public RestoreDBTask(ContentResolver contentResolver) {
+        this.mContentResolver = contentResolver;
     }
 
     @Override
@@ -97,7 +106,7 @@ public class RestoreDBTask implements IRestoreDBTask {
         RestoreTask(int taskId, IRestoreDBTask.RestoreEvents restoreEvents, boolean overwriteStatus) {
             this.taskId = taskId;
             mRestoreEvents = restoreEvents;
-            this.databaseBackup = new LocalDdBackup();
+            this.databaseBackup = new LocalDdBackup(mContentResolver);
             this.mOverwriteStatus = overwriteStatus;
         }
 
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.utils.metrics;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Latency Histogram
+ *
+ * <p>Histogram of latencies in microseconds, in the manner of HdrHistogram: buckets of
+ * powers of two, each split into linear sub buckets, so any recorded value is reported
+ * within 1/32 (about 3%) of its actual value, from microseconds to hours, in a few
+ * kilobytes of fixed memory. Recording is constant time and never allocates</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class LatencyHistogram {
+
+    // Sub buckets per power of two, values below are counted exactly
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    // Largest value recorded, larger values are recorded as it, about 19 hours
+    private static final int MAX_VALUE_BITS = 36;
+    static final long MAX_VALUE_MICROS = (1L << MAX_VALUE_BITS) - 1;
+
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT +
+            (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount = 0;
+    private long mTotalMicros = 0;
+    private long mMinMicros = Long.MAX_VALUE;
+    private long mMaxMicros = 0;
+
+    /**
+     * Record latency
+     *
+     * @param micros latency in microseconds, negative values are recorded as zero
+     */
+    public synchronized void record(long micros) {
+        micros = Math.max(0, Math.min(micros, MAX_VALUE_MICROS));
+
+        mCounts[indexOf(micros)]++;
+        mTotalCount++;
+        mTotalMicros += micros;
+        mMinMicros = Math.min(mMinMicros, micros);
+        mMaxMicros = Math.max(mMaxMicros, micros);
+    }
+
+    /**
+     * Forget all recorded latencies
+     */
+    public synchronized void reset() {
+        for(int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mTotalMicros = 0;
+        mMinMicros = Long.MAX_VALUE;
+        mMaxMicros = 0;
+    }
+
+    /**
+     * Take snapshot of recorded latencies
+     *
+     * @return snapshot, unaffected by later recordings
+     */
+    @NonNull
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(mTotalCount,
+                mTotalCount == 0 ? 0 : mMinMicros,
+                mMaxMicros,
+                mTotalCount == 0 ? 0 : mTotalMicros / mTotalCount,
+                valueAtPercentile(50),
+                valueAtPercentile(90),
+                valueAtPercentile(99));
+    }
+
+    // Caller holds lock
+    private long valueAtPercentile(double percentile) {
+        if(mTotalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mTotalCount));
+        long seen = 0;
+        for(int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if(seen >= rank) {
+                // Bucket's highest value, never above largest recorded
+                return Math.min(highestValueOf(i), mMaxMicros);
+            }
+        }
+        return mMaxMicros;
+    }
+
+    /**
+     * Bucket of value: values below SUB_BUCKET_COUNT have their own bucket, above that
+     * every power of two is split into SUB_BUCKET_HALF buckets
+     */
+    static int indexOf(long value) {
+        if(value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_HALF;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket;
+    }
+
+    /**
+     * Highest value counted in bucket
+     */
+    static long highestValueOf(int index) {
+        if(index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Latencies recorded up to some point, in microseconds
+     */
+    public static final class Snapshot {
+        public final long count;
+        public final long minMicros;
+        public final long maxMicros;
+        public final long meanMicros;
+        public final long p50Micros;
+        public final long p90Micros;
+        public final long p99Micros;
+
+        Snapshot(long count, long minMicros, long maxMicros, long meanMicros,
+                 long p50Micros, long p90Micros, long p99Micros) {
+            this.count = count;
+            this.minMicros = minMicros;
+            this.maxMicros = maxMicros;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " min=" + minMicros + " p50=" + p50Micros +
+                    " p90=" + p90Micros + " p99=" + p99Micros + " max=" + maxMicros +
+                    " mean=" + meanMicros + " (us)";
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017 Athanasios Raptodimos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.kalodiodev.customersnote.utils.metrics;
+
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Search Metrics
+ *
+ * <p>Latency histograms of the stages a search goes through, from the search term typed
+ * to the first customer shown. Stages measured on the main thread are chained: the latest
+ * search term typed is followed to its loader and to the first row bound once results
+ * arrive. Provider stages are measured on their own, per query</p>
+ *
+ * <p>Comparing stages tells where time goes as customers grow: SQL statement preparation,
+ * statement execution and cursor window fill on first count, or binding</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public final class SearchMetrics {
+
+    /**
+     * Search stages
+     */
+    public enum Stage {
+        /** Search term typed until its loader is created, typing debounce included */
+        QUERY_TEXT_TO_LOADER,
+        /** Provider query preparing the statement, cached results excluded */
+        PROVIDER_QUERY,
+        /** First count of a provider cursor, executing the statement and filling the window */
+        FIRST_GET_COUNT,
+        /** First row bound after new results are shown */
+        FIRST_BIND,
+        /** Loader created until first row of its results is bound */
+        LOADER_TO_FIRST_BIND,
+        /** Search term typed until first row of its results is bound */
+        QUERY_TEXT_TO_FIRST_BIND
+    }
+
+    /**
+     * Source of time, replaced in tests
+     */
+    interface Ticker {
+        long nanoTime();
+    }
+
+    private static final Ticker SYSTEM_TICKER = new Ticker() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private static SearchMetrics instance = null;
+
+    private final Ticker mTicker;
+
+    private final EnumMap<Stage, LatencyHistogram> mHistograms = new EnumMap<>(Stage.class);
+
+    // Start of stages chained on main thread, 0 when not started
+    private long mQueryTextNanos = 0;
+    private long mLoaderNanos = 0;
+
+    // Set once new results are shown, until their first row is bound
+    private volatile boolean mBindPending = false;
+
+    SearchMetrics(@NonNull Ticker ticker) {
+        this.mTicker = ticker;
+        for(Stage stage : Stage.values()) {
+            mHistograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Get app's search metrics
+     *
+     * @return search metrics
+     */
+    public static synchronized SearchMetrics getInstance() {
+        if(instance == null) {
+            instance = new SearchMetrics(SYSTEM_TICKER);
+        }
+        return instance;
+    }
+
+    /**
+     * Current time, start of a stage measured with {@link #record(Stage, long)}
+     *
+     * @return time in nanoseconds
+     */
+    public long now() {
+        return mTicker.nanoTime();
+    }
+
+    /**
+     * Record stage that started at given time and ends now
+     *
+     * @param stage stage
+     * @param startNanos start of stage, see {@link #now()}
+     */
+    public void record(@NonNull Stage stage, long startNanos) {
+        mHistograms.get(stage).record((mTicker.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Search term typed, latest one is followed to its results
+     */
+    public synchronized void onQueryText() {
+        mQueryTextNanos = mTicker.nanoTime();
+    }
+
+    /**
+     * Customers query created
+     */
+    public synchronized void onLoaderCreated() {
+        long now = mTicker.nanoTime();
+        if(mQueryTextNanos != 0) {
+            mHistograms.get(Stage.QUERY_TEXT_TO_LOADER).record((now - mQueryTextNanos) / 1000);
+        }
+        mLoaderNanos = now;
+    }
+
+    /**
+     * New results shown, next row bound is the first one of them
+     */
+    public void onResultsShown() {
+        mBindPending = true;
+    }
+
+    /**
+     * Row bound, only the first one after new results are shown is recorded
+     *
+     * @param startNanos start of binding, see {@link #now()}
+     */
+    public void onBind(long startNanos) {
+        if(!mBindPending) {
+            return;
+        }
+
+        synchronized(this) {
+            mBindPending = false;
+            long now = mTicker.nanoTime();
+            mHistograms.get(Stage.FIRST_BIND).record((now - startNanos) / 1000);
+            if(mLoaderNanos != 0) {
+                mHistograms.get(Stage.LOADER_TO_FIRST_BIND).record((now - mLoaderNanos) / 1000);
+                mLoaderNanos = 0;
+            }
+            if(mQueryTextNanos != 0) {
+                mHistograms.get(Stage.QUERY_TEXT_TO_FIRST_BIND).record(
+                        (now - mQueryTextNanos) / 1000);
+                mQueryTextNanos = 0;
+            }
+        }
+    }
+
+    /**
+     * Take snapshot of every stage's latencies
+     *
+     * @return latencies per stage, in stage order
+     */
+    @NonNull
+    public Map<Stage, LatencyHistogram.Snapshot> snapshot() {
+        EnumMap<Stage, LatencyHistogram.Snapshot> snapshot = new EnumMap<>(Stage.class);
+        for(Map.Entry<Stage, LatencyHistogram> entry : mHistograms.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forget all recorded latencies
+     */
+    public synchronized void reset() {
+        for(LatencyHistogram histogram : mHistograms.values()) {
+            histogram.reset();
+        }
+        mQueryTextNanos = 0;
+        mLoaderNanos = 0;
+        mBindPending = false;
+    }
+
+    /**
+     * Print latencies of every stage, one line each
+     *
+     * @param prefix line prefix
+     * @param writer writer
+     */
+    public void dump(@NonNull String prefix, @NonNull PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Search latencies:");
+        for(Map.Entry<Stage, LatencyHistogram.Snapshot> entry : snapshot().entrySet()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(entry.getKey());
+            writer.print(": ");
+            writer.println(entry.getValue());
+        }
+    }
+}
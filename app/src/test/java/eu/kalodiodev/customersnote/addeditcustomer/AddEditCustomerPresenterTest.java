@@ -15,6 +15,9 @@ import eu.kalodiodev.customersnote.data.Customer;
 import eu.kalodiodev.customersnote.data.ICustomersRepository;
 
 import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -110,6 +113,57 @@ public class AddEditCustomerPresenterTest {
         verify(view).setNotes(customer.getNotes());
     }
 
+    @Test
+    public void shouldReadCustomerByIdBeforeInitializingFields() {
+        mPresenter = new AddEditCustomerPresenter(5, view, mCustomersRepository);
+
+        // When the presenter is asked to load customer
+        mPresenter.initializeFields();
+
+        // Then customer is read in full by id, fields are left until it is read
+        verify(mCustomersRepository).getCustomer(mPresenter, 5);
+        verifyZeroInteractions(view);
+    }
+
+    @Test
+    public void shouldInitializeFieldsWithCustomerRead() {
+        customer.setId(5);
+        mPresenter = new AddEditCustomerPresenter(5, view, mCustomersRepository);
+        mPresenter.initializeFields();
+
+        // When customer has been read
+        mPresenter.onCustomerLoaded(customer);
+
+        // Then fields are initialized with customer properties
+        verify(view).setFirstName(customer.getFirstName());
+        verify(view).setNotes(customer.getNotes());
+    }
+
+    @Test
+    public void shouldNotSaveBeforeCustomerIsRead() {
+        mPresenter = new AddEditCustomerPresenter(5, view, mCustomersRepository);
+        mPresenter.initializeFields();
+
+        // When the presenter is asked to save before customer is read
+        mPresenter.save();
+
+        // Then empty fields never overwrite customer
+        verify(mCustomersRepository, never()).update(any(Customer.class),
+                any(ICustomersRepository.WriteCustomerCallBack.class));
+    }
+
+    @Test
+    public void shouldCloseViewWhenCustomerReadNoLongerExists() {
+        mPresenter = new AddEditCustomerPresenter(5, view, mCustomersRepository);
+        mPresenter.initializeFields();
+
+        // When customer was deleted before it was read
+        mPresenter.onCustomerLoaded(null);
+
+        // Then view should close
+        verify(view).close();
+    }
+
     @Test
     public void shouldLeaveEmptyFieldsAddingNewCustomer() {
         mPresenter = new AddEditCustomerPresenter(null, view, mCustomersRepository);
@@ -143,7 +197,8 @@ public class AddEditCustomerPresenterTest {
         saveNewCustomer();
 
         // Then new customer will be saved
-        verify(mCustomersRepository).save(customerCaptor.capture());
+        verify(mCustomersRepository).save(customerCaptor.capture(),
+                isNull(ICustomersRepository.SaveCustomerCallBack.class));
 
         // Customer saved
         Customer savedCustomer = customerCaptor.getValue();
@@ -185,7 +240,8 @@ public class AddEditCustomerPresenterTest {
         updateCustomer();
 
         // Presenter will update customer
-        verify(mCustomersRepository).update(customerCaptor.capture());
+        verify(mCustomersRepository).update(customerCaptor.capture(),
+                isNull(ICustomersRepository.WriteCustomerCallBack.class));
 
         // Update with customer
         Customer updatedCustomer = customerCaptor.getValue();
@@ -236,7 +292,7 @@ public class AddEditCustomerPresenterTest {
         deleteCustomer(false);
 
         // Then customer must be deleted
-        verify(mCustomersRepository).delete(customer);
+        verify(mCustomersRepository).delete(customer, null);
     }
 
     @Test
@@ -257,6 +313,30 @@ public class AddEditCustomerPresenterTest {
         verify(view).close();
     }
 
+    @Test
+    public void shouldCloseViewBeforeCustomerIsWritten() {
+        // with filled fields
+        withNonEmptyFields();
+
+        updateCustomer();
+
+        // Then view closes while update is still on the writer thread
+        verify(view).close();
+    }
+
+    @Test
+    public void shouldUpdateVersionEdited() {
+        withNonEmptyFields();
+        customer.setVersion(3);
+
+        updateCustomer();
+
+        // Then update is applied only to customer still at version edited
+        verify(mCustomersRepository).update(customerCaptor.capture(),
+                isNull(ICustomersRepository.WriteCustomerCallBack.class));
+        Assert.assertThat(customerCaptor.getValue().getVersion(), is(3));
+    }
+
     @Test
     public void shouldShowCancelEditConfirmationWhenCancelingEditingCustomer() {
         mPresenter = new AddEditCustomerPresenter(customer, view, mCustomersRepository);
@@ -1,6 +1,6 @@
 package eu.kalodiodev.customersnote.customers;
 
-import android.support.v4.app.LoaderManager;
+import android.database.Cursor;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -8,14 +8,37 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
 import eu.kalodiodev.customersnote.data.Customer;
 import eu.kalodiodev.customersnote.data.CustomersRepository;
-import eu.kalodiodev.customersnote.data.source.LoaderProvider;
+import eu.kalodiodev.customersnote.data.observable.Cancellation;
+import eu.kalodiodev.customersnote.data.observable.InvalidationTracker;
+import eu.kalodiodev.customersnote.data.observable.ObservableQuery;
+import eu.kalodiodev.customersnote.data.source.CustomerPages;
+import eu.kalodiodev.customersnote.data.source.CustomersQuery;
+import eu.kalodiodev.customersnote.data.source.QueryProvider;
 
+import static eu.kalodiodev.customersnote.data.source.CustomersContract.OPERATION_DELETE;
+import static eu.kalodiodev.customersnote.data.source.CustomersContract.OPERATION_INSERT;
+import static eu.kalodiodev.customersnote.data.source.CustomersContract.OPERATION_UPDATE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Customers Presenter Test
+ *
+ * <p>Customers are observed through a real invalidation tracker, queries are loaded
+ * when the test runs them and delivered at once</p>
  */
 @RunWith(MockitoJUnitRunner.class)
 public class CustomersPresenterTest {
@@ -24,22 +47,51 @@ public class CustomersPresenterTest {
     private CustomersContract.View mCustomersView;
 
     @Mock
-    private static LoaderManager mLoaderManager;
+    private QueryProvider mQueryProvider;
 
     @Mock
-    private LoaderProvider mLoaderProvider;
+    private CustomersRepository mCustomersRepository;
 
     @Mock
-    private CustomersRepository mCustomersRepository;
+    private SearchScheduler mSearchScheduler;
+
+    @Mock
+    private CustomersQuery mCustomersQuery;
+
+    @Mock
+    private CustomersQuery mSupersededQuery;
+
+    @Mock
+    private Cursor mCursor;
+
+    @Mock
+    private Cursor mSupersededCursor;
+
+    @Mock
+    private CustomerPages mCustomerPages;
+
+    private final Queue<Runnable> mLoads = new ArrayDeque<>();
+
+    private InvalidationTracker mTracker;
 
     private CustomersPresenter mCustomersPresenter;
 
     @Before
     public void setUp() throws Exception {
-        // MockitoAnnotations.initMocks(this);
+        mTracker = new InvalidationTracker(new Executor() {
+            @Override
+            public void execute(Runnable load) {
+                mLoads.add(load);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable delivery) {
+                delivery.run();
+            }
+        });
 
-        mCustomersPresenter = new CustomersPresenter(mLoaderProvider, mLoaderManager,
-                mCustomersView, mCustomersRepository);
+        mCustomersPresenter = new CustomersPresenter(mQueryProvider,
+                mCustomersView, mCustomersRepository, mSearchScheduler);
     }
 
     @Test
@@ -52,14 +104,201 @@ public class CustomersPresenterTest {
     }
 
     @Test
-    public void shouldSetNewSearchTermAndReloadCustomers() {
+    public void shouldScheduleSearchWhenSearchTermIsSet() {
         String searchTerm = "Test";
         mCustomersPresenter.setQueryText(searchTerm);
 
+        // Then search is scheduled, not loaded on every keystroke
+        verify(mSearchScheduler).schedule(searchTerm, null);
+        verify(mCustomersRepository, never()).getCustomers(any(CustomersPresenter.class), anyString());
+    }
+
+    @Test
+    public void shouldCancelQueryInFlightWhenSearchTermIsSet() {
+        ObservableQuery<Cursor> query = stubQuery("Tes", mCustomersQuery);
+        mCustomersPresenter.onLoadCustomers("Tes");
+
+        mCustomersPresenter.setQueryText("Test");
+
+        // Then scheduler is given the query of the superseded term to cancel
+        verify(mSearchScheduler).schedule("Test", query);
+    }
+
+    @Test
+    public void shouldReloadCustomersWhenScheduledSearchIsDue() {
+        String searchTerm = "Test";
+        mCustomersPresenter.onSearch(searchTerm);
+
         // Then Reloads Customers using search term provided
         verify(mCustomersRepository).getCustomers(mCustomersPresenter, searchTerm);
     }
 
+    @Test
+    public void shouldShowCustomersOfCurrentSearchTerm() {
+        stubQuery("Test", mCustomersQuery, mCursor);
+        mCustomersPresenter.onLoadCustomers("Test");
+
+        runLoads();
+
+        // Then customers are shown
+        verify(mCustomersView).showCustomers(mCursor);
+    }
+
+    @Test
+    public void shouldNotShowCustomersOfSupersededSearchTerm() {
+        stubQuery("Tes", mSupersededQuery);
+        stubQuery("Test", mCustomersQuery, mCursor);
+        mCustomersPresenter.onLoadCustomers("Tes");
+        mCustomersPresenter.onLoadCustomers("Test");
+
+        runLoads();
+
+        // Then stale customers are never loaded nor shown
+        verify(mSupersededQuery, never()).load(any(Cancellation.class));
+        verify(mCustomersView, never()).showCustomers(mSupersededCursor);
+        verify(mCustomersView).showCustomers(mCursor);
+    }
+
+    @Test
+    public void shouldReleaseCustomersShownOnceNewSearchIsShown() {
+        stubQuery("Tes", mSupersededQuery, mSupersededCursor);
+        stubQuery("Test", mCustomersQuery, mCursor);
+        mCustomersPresenter.onLoadCustomers("Tes");
+        runLoads();
+
+        mCustomersPresenter.onLoadCustomers("Test");
+        verify(mSupersededQuery, never()).release(mSupersededCursor);
+        runLoads();
+
+        // Then customers of previous search are shown until replaced, then released
+        verify(mCustomersView).showCustomers(mCursor);
+        verify(mSupersededQuery).release(mSupersededCursor);
+    }
+
+    @Test
+    public void shouldShowPagesOfAllCustomers() {
+        stubQuery("", mCustomersQuery, mCursor);
+        when(mCustomersQuery.isPaged()).thenReturn(true);
+        when(mQueryProvider.createCustomerPages(mCursor)).thenReturn(mCustomerPages);
+        mCustomersPresenter.onLoadCustomers("");
+
+        runLoads();
+
+        // Then first page is shown, following pages read as they are scrolled to
+        verify(mCustomersView).showCustomerPages(mCustomerPages);
+        verify(mCustomersView, never()).showCustomers(mCursor);
+    }
+
+    @Test
+    public void shouldApplyChangeOfSingleCustomerToPages() {
+        showPages();
+        when(mCustomerPages.applyChange(8, OPERATION_UPDATE)).thenReturn(true);
+
+        mCustomersPresenter.onCustomerChanged(8, OPERATION_UPDATE);
+        runLoads();
+
+        // Then only the pages of the customer are read again, customers are not reloaded
+        verify(mCustomerPages).applyChange(8, OPERATION_UPDATE);
+        verify(mCustomersQuery, times(1)).load(any(Cancellation.class));
+    }
+
+    @Test
+    public void shouldReloadCustomersWhenChangeCannotBeApplied() {
+        showPages();
+        when(mCustomerPages.applyChange(8, OPERATION_DELETE)).thenReturn(false);
+
+        mCustomersPresenter.onCustomerChanged(8, OPERATION_DELETE);
+        runLoads();
+
+        // Then customers are reloaded from the first page
+        verify(mCustomersQuery, times(2)).load(any(Cancellation.class));
+    }
+
+    @Test
+    public void shouldIgnoreChangeWhileSearchResultsAreShown() {
+        stubQuery("Test", mCustomersQuery, mCursor);
+        mCustomersPresenter.onLoadCustomers("Test");
+        runLoads();
+
+        mCustomersPresenter.onCustomerChanged(8, OPERATION_INSERT);
+        runLoads();
+
+        // Then search results are left to their query
+        verify(mCustomerPages, never()).applyChange(anyLong(), anyString());
+        verify(mCustomersQuery, times(1)).load(any(Cancellation.class));
+    }
+
+    @Test
+    public void shouldSearchAgainWhenSearchEverywhereIsSet() {
+        stubQuery("Test", mCustomersQuery);
+        mCustomersPresenter.onLoadCustomers("Test");
+
+        mCustomersPresenter.setSearchEverywhere(true);
+
+        // Then customers are reloaded with current search term
+        verify(mCustomersRepository).getCustomers(mCustomersPresenter, "Test");
+    }
+
+    @Test
+    public void shouldSearchAgainWhenSearchRankedIsSet() {
+        stubQuery("Test", mCustomersQuery);
+        mCustomersPresenter.onLoadCustomers("Test");
+
+        mCustomersPresenter.setSearchRanked(true);
+
+        // Then customers are reloaded with current search term
+        verify(mCustomersRepository).getCustomers(mCustomersPresenter, "Test");
+    }
+
+    @Test
+    public void shouldAskSuggestionWhenSearchFindsNoCustomers() {
+        stubQuery("Jonh", mCustomersQuery, mCursor);
+        when(mCursor.getCount()).thenReturn(0);
+        mCustomersPresenter.onLoadCustomers("Jonh");
+
+        runLoads();
+
+        // Then a correction of the search term is requested
+        verify(mCustomersRepository).getSearchSuggestion(mCustomersPresenter, "Jonh");
+    }
+
+    @Test
+    public void shouldShowCustomersOfSuggestedSearchTerm() {
+        stubQuery("Jonh", mCustomersQuery);
+        mCustomersPresenter.onLoadCustomers("Jonh");
+
+        mCustomersPresenter.onSearchSuggestion("Jonh", "john");
+
+        // Then suggestion is shown and its customers are loaded
+        verify(mCustomersView).showSearchSuggestion("john");
+        verify(mCustomersRepository).getCustomers(mCustomersPresenter, "john");
+    }
+
+    @Test
+    public void shouldIgnoreSuggestionOfSupersededSearchTerm() {
+        stubQuery("Jonhs", mCustomersQuery);
+        mCustomersPresenter.onLoadCustomers("Jonhs");
+
+        mCustomersPresenter.onSearchSuggestion("Jonh", "john");
+
+        // Then suggestion is never shown
+        verify(mCustomersView, never()).showSearchSuggestion("john");
+    }
+
+    @Test
+    public void shouldStopObservingCustomersWhenDestroyed() {
+        showPages();
+
+        mCustomersPresenter.destroy();
+
+        // Then changes of customers are no longer applied, cursor shown is released
+        verify(mCustomersRepository).removeOnCustomerChangedListener(mCustomersPresenter);
+        verify(mCustomersView).showCustomers(null);
+        verify(mCustomersQuery).release(mCursor);
+        mCustomersPresenter.onCustomerChanged(8, OPERATION_UPDATE);
+        verify(mCustomerPages, never()).applyChange(anyLong(), anyString());
+    }
+
     @Test
     public void shouldShowAddCustomer() {
         mCustomersPresenter.addCustomer();
@@ -76,4 +315,34 @@ public class CustomersPresenterTest {
         // Then should call view to show edit customer
         verify(mCustomersView).showEditCustomer(customer);
     }
-}
\ No newline at end of file
+
+    private ObservableQuery<Cursor> stubQuery(String searchTerm, CustomersQuery source) {
+        ObservableQuery<Cursor> query = mTracker.query(searchTerm,
+                new String[] {QueryProvider.TABLE_CUSTOMERS}, source);
+        when(mQueryProvider.createCustomersQuery(eq(searchTerm), anyBoolean(), anyBoolean()))
+                .thenReturn(query);
+        return query;
+    }
+
+    private void stubQuery(String searchTerm, CustomersQuery source, Cursor cursor) {
+        stubQuery(searchTerm, source);
+        when(source.load(any(Cancellation.class))).thenReturn(cursor);
+    }
+
+    private void runLoads() {
+        Runnable load;
+        while((load = mLoads.poll()) != null) {
+            load.run();
+        }
+    }
+
+    private void showPages() {
+        stubQuery("", mCustomersQuery, mCursor);
+        when(mCustomersQuery.isPaged()).thenReturn(true);
+        when(mQueryProvider.createCustomerPages(mCursor)).thenReturn(mCustomerPages);
+        mCustomersPresenter.onLoadCustomers("");
+        runLoads();
+
+        verify(mCustomersRepository).addOnCustomerChangedListener(mCustomersPresenter);
+    }
+}
@@ -0,0 +1,99 @@
+package eu.kalodiodev.customersnote.data.observable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Invalidation Tracker Test
+ *
+ * @author Athanasios Raptodimos
+ */
+public class InvalidationTrackerTest {
+
+    private static final String CUSTOMERS = "Customers";
+    private static final String PAGES = "CustomersPages";
+
+    private ObservableQueryTest.QueuedExecutor queryExecutor;
+    private ObservableQueryTest.QueuedExecutor deliveryExecutor;
+    private InvalidationTracker tracker;
+
+    @Before
+    public void setUp() {
+        queryExecutor = new ObservableQueryTest.QueuedExecutor();
+        deliveryExecutor = new ObservableQueryTest.QueuedExecutor();
+        tracker = new InvalidationTracker(queryExecutor, deliveryExecutor);
+    }
+
+    @Test
+    public void shouldShareQueryOfSameKey() {
+        ObservableQuery<String> first = tracker.query("search?q=jo", new String[] {CUSTOMERS},
+                new ObservableQueryTest.CountingSource());
+        ObservableQuery<String> second = tracker.query("search?q=jo", new String[] {CUSTOMERS},
+                new ObservableQueryTest.CountingSource());
+        ObservableQuery<String> other = tracker.query("search?q=joh", new String[] {CUSTOMERS},
+                new ObservableQueryTest.CountingSource());
+
+        // Then identical queries are one query
+        assertSame(first, second);
+        assertNotSame(first, other);
+    }
+
+    @Test
+    public void shouldInvalidateOnlyQueriesReadingTable() {
+        ObservableQueryTest.CountingSource searchSource = new ObservableQueryTest.CountingSource();
+        ObservableQueryTest.CountingSource pagesSource = new ObservableQueryTest.CountingSource();
+        ObservableQueryTest.RecordingObserver search = observe("search", CUSTOMERS, searchSource);
+        ObservableQueryTest.RecordingObserver pages = observe("pages", PAGES, pagesSource);
+        assertEquals(2, tracker.getObservedCount());
+
+        tracker.invalidate(CUSTOMERS);
+        run();
+
+        // Then search is loaded again, pages are left alone
+        assertEquals(Arrays.asList("result 1", "result 2"), search.results);
+        assertEquals(Collections.singletonList("result 1"), pages.results);
+
+        tracker.invalidate(CUSTOMERS, PAGES);
+        run();
+        assertEquals(Arrays.asList("result 1", "result 2"), pages.results);
+    }
+
+    @Test
+    public void shouldForgetQueryNoLongerObserved() {
+        ObservableQueryTest.CountingSource source = new ObservableQueryTest.CountingSource();
+        ObservableQuery<String> query = tracker.query("search", new String[] {CUSTOMERS}, source);
+        ObservableQuery.Subscription subscription = query.subscribe(
+                new ObservableQueryTest.RecordingObserver());
+        run();
+
+        subscription.unsubscribe();
+        tracker.invalidate(CUSTOMERS);
+        run();
+
+        // Then query unobserved is not loaded, and a new one is made for its key
+        assertEquals(0, tracker.getObservedCount());
+        assertEquals(1, source.loads);
+        assertNotSame(query, tracker.query("search", new String[] {CUSTOMERS},
+                new ObservableQueryTest.CountingSource()));
+    }
+
+    private ObservableQueryTest.RecordingObserver observe(String key, String table,
+                                                          ObservableQueryTest.CountingSource source) {
+        ObservableQueryTest.RecordingObserver observer = new ObservableQueryTest.RecordingObserver();
+        tracker.query(key, new String[] {table}, source).subscribe(observer);
+        run();
+        return observer;
+    }
+
+    private void run() {
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+    }
+}
@@ -0,0 +1,257 @@
+package eu.kalodiodev.customersnote.data.observable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Observable Query Test
+ *
+ * <p>Loads and deliveries are queued and run by the test, one step at a time</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+public class ObservableQueryTest {
+
+    private static final String TABLE = "Customers";
+
+    private QueuedExecutor queryExecutor;
+    private QueuedExecutor deliveryExecutor;
+    private CountingSource source;
+    private ObservableQuery<String> query;
+
+    @Before
+    public void setUp() {
+        queryExecutor = new QueuedExecutor();
+        deliveryExecutor = new QueuedExecutor();
+        source = new CountingSource();
+        InvalidationTracker tracker = new InvalidationTracker(queryExecutor, deliveryExecutor);
+        query = tracker.query("customers", new String[] {TABLE}, source);
+    }
+
+    @Test
+    public void shouldLoadOnceSubscribed() {
+        assertEquals(0, queryExecutor.size());
+
+        RecordingObserver observer = new RecordingObserver();
+        query.subscribe(observer);
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        // Then first result is delivered
+        assertEquals(Collections.singletonList("result 1"), observer.results);
+    }
+
+    @Test
+    public void shouldCoalesceInvalidationsWhileLoading() {
+        RecordingObserver observer = new RecordingObserver();
+        query.subscribe(observer);
+
+        // When invalidated many times while first load is in flight
+        query.invalidate();
+        query.invalidate();
+        query.invalidate();
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        // Then query is loaded once more, not once per invalidation
+        assertEquals(2, source.loads);
+        assertEquals(Collections.singletonList("result 2"), observer.results);
+    }
+
+    @Test
+    public void shouldReplaceResultNotYetDelivered() {
+        RecordingObserver observer = new RecordingObserver();
+        query.subscribe(observer);
+        queryExecutor.runAll();
+
+        // When loaded again before first result is delivered
+        query.invalidate();
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        // Then only latest result is delivered, the older one released undelivered
+        assertEquals(Collections.singletonList("result 2"), observer.results);
+        assertEquals(Collections.singletonList("result 1"), source.released);
+    }
+
+    @Test
+    public void shouldReleasePreviousResultOnceNewerIsDelivered() {
+        RecordingObserver observer = new RecordingObserver();
+        query.subscribe(observer);
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        query.invalidate();
+        queryExecutor.runAll();
+        assertTrue(source.released.isEmpty());
+        deliveryExecutor.runAll();
+
+        // Then result replaced is released after observers moved on
+        assertEquals(Arrays.asList("result 1", "result 2"), observer.results);
+        assertEquals(Collections.singletonList("result 1"), source.released);
+    }
+
+    @Test
+    public void shouldShareLoadAndLatestResultAmongSubscribers() {
+        RecordingObserver first = new RecordingObserver();
+        RecordingObserver second = new RecordingObserver();
+        query.subscribe(first);
+        query.subscribe(second);
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        RecordingObserver late = new RecordingObserver();
+        query.subscribe(late);
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        // Then one load serves every subscriber, late one given the latest result
+        assertEquals(1, source.loads);
+        assertEquals(Collections.singletonList("result 1"), first.results);
+        assertEquals(Collections.singletonList("result 1"), second.results);
+        assertEquals(Collections.singletonList("result 1"), late.results);
+    }
+
+    @Test
+    public void shouldReleaseResultAndCancelLoadWhenLastObserverLeaves() {
+        ObservableQuery.Subscription first = query.subscribe(new RecordingObserver());
+        ObservableQuery.Subscription second = query.subscribe(new RecordingObserver());
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+        query.invalidate();
+
+        first.unsubscribe();
+        assertTrue(source.released.isEmpty());
+        second.unsubscribe();
+
+        // Then result shown is released and load in flight is cancelled, its result too
+        assertEquals(Collections.singletonList("result 1"), source.released);
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+        assertEquals(1, source.loads);
+        assertFalse(query.isLoading());
+    }
+
+    @Test
+    public void shouldNotLoadAgainAfterCancelUntilInvalidated() {
+        RecordingObserver observer = new RecordingObserver();
+        query.subscribe(observer);
+
+        assertTrue(query.cancelLoad());
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        // Then cancelled load is neither delivered nor repeated
+        assertTrue(observer.results.isEmpty());
+        assertEquals(0, source.loads);
+
+        query.invalidate();
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+        assertEquals(Collections.singletonList("result 1"), observer.results);
+    }
+
+    @Test
+    public void shouldDeliverErrorAndRecoverOnInvalidation() {
+        RecordingObserver observer = new RecordingObserver();
+        query.subscribe(observer);
+        source.failNext = true;
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+
+        assertEquals(1, observer.errors.size());
+
+        query.invalidate();
+        queryExecutor.runAll();
+        deliveryExecutor.runAll();
+        assertEquals(Collections.singletonList("result 2"), observer.results);
+    }
+
+    @Test
+    public void shouldNotDeliverToUnsubscribedObserver() {
+        RecordingObserver observer = new RecordingObserver();
+        ObservableQuery.Subscription subscription = query.subscribe(observer);
+        queryExecutor.runAll();
+
+        subscription.unsubscribe();
+        deliveryExecutor.runAll();
+
+        // Then result loaded is released undelivered
+        assertTrue(observer.results.isEmpty());
+        assertEquals(Collections.singletonList("result 1"), source.released);
+    }
+
+    /**
+     * Executor running tasks when asked, in order
+     */
+    static final class QueuedExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        int size() {
+            return tasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Source numbering its results, recording those released
+     */
+    static final class CountingSource implements QuerySource<String> {
+        int loads = 0;
+        boolean failNext = false;
+        final List<String> released = new ArrayList<>();
+
+        @Override
+        public String load(Cancellation cancellation) {
+            loads++;
+            if(failNext) {
+                failNext = false;
+                throw new IllegalStateException("database locked");
+            }
+            return "result " + loads;
+        }
+
+        @Override
+        public void release(String result) {
+            released.add(result);
+        }
+    }
+
+    static final class RecordingObserver implements ObservableQuery.Observer<String> {
+        final List<String> results = new ArrayList<>();
+        final List<RuntimeException> errors = new ArrayList<>();
+
+        @Override
+        public void onNext(String result) {
+            results.add(result);
+        }
+
+        @Override
+        public void onError(RuntimeException error) {
+            errors.add(error);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customer Notes Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class CustomerNotesTest {
+
+    @Test
+    public void shouldDecodeUncompressedNotes() {
+        String notes = "Prefers calls after 5pm, ένα ραντεβού";
+
+        byte[] data = CustomerNotes.encode(notes, false);
+
+        assertEquals(notes, CustomerNotes.decode(data, false));
+    }
+
+    @Test
+    public void shouldCompressLargeNotes() {
+        StringBuilder log = new StringBuilder();
+        for(int i = 0; log.length() < 20 * 1024; i++) {
+            log.append("Meeting ").append(i).append(": discussed renewal of the service contract.\n");
+        }
+        String notes = log.toString();
+
+        byte[] data = CustomerNotes.encode(notes, true);
+
+        // Then meeting logs shrink to a fraction of their size, and read back whole
+        assertTrue("Compressed to " + data.length + " bytes", data.length < notes.length() / 4);
+        assertEquals(notes, CustomerNotes.decode(data, true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectCorruptNotes() {
+        byte[] data = CustomerNotes.encode("Notes compressed, then truncated", true);
+
+        CustomerNotes.decode(Arrays.copyOf(data, data.length / 2), true);
+    }
+
+    @Test
+    public void shouldKeepProjectionWithoutNotes() {
+        String[] projection = {CustomersContract.Columns._ID,
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME};
+
+        assertSame(projection, CustomerNotes.projection(null, projection));
+    }
+
+    @Test
+    public void shouldLookUpNotesInStatement() {
+        String[] projection = {CustomersContract.Columns._ID,
+                CustomersContract.Columns.CUSTOMERS_NOTES,
+                CustomersContract.Columns.CUSTOMERS_FIRST_NAME};
+
+        String[] withNotes = CustomerNotes.projection(null, projection);
+
+        // Then other columns keep their positions, compression flag is appended
+        assertEquals(projection.length + 1, withNotes.length);
+        assertEquals(projection[0], withNotes[0]);
+        assertEquals(projection[2], withNotes[2]);
+        assertTrue(withNotes[1].startsWith("COALESCE(" + CustomersContract.TABLE_NAME + "."));
+        assertTrue(withNotes[1].endsWith(" AS " + CustomersContract.Columns.CUSTOMERS_NOTES));
+        assertTrue(withNotes[3].contains(CustomersContract.NOTES_TABLE_NAME));
+    }
+}
@@ -0,0 +1,263 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import eu.kalodiodev.customersnote.BuildConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Customer Pages Test
+ *
+ * <p>Pages are read from a fake provider and applied at once, on the test thread</p>
+ *
+ * @author Athanasios Raptodimos
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class CustomerPagesTest {
+
+    private static final int PAGE_SIZE = 3;
+    private static final int MAX_RESIDENT_PAGES = 4;
+
+    private static final String[] PROJECTION = {
+            CustomersContract.Columns._ID,
+            CustomersContract.Columns.CUSTOMERS_FIRST_NAME_KEY
+    };
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private FakeCustomersProvider provider;
+    private CustomerPages pages;
+    private CustomerPages.OnPagesChangedListener listener;
+
+    @Before
+    public void setUp() {
+        provider = new FakeCustomersProvider();
+        ShadowContentResolver.registerProviderInternal(CustomersProvider.CONTENT_AUTHORITY, provider);
+        ContentResolver contentResolver = RuntimeEnvironment.application.getContentResolver();
+
+        // Customers a to g, first two pages a to c and d to f
+        String[] keys = {"a", "b", "c", "d", "e", "f", "g"};
+        for(int i = 0; i < keys.length; i++) {
+            provider.put(i + 1, keys[i]);
+        }
+
+        Cursor firstPage = contentResolver.query(CustomersContract.buildPageUri(null, PAGE_SIZE),
+                PROJECTION, null, null, null);
+        assertNotNull(firstPage);
+        pages = new CustomerPages(contentResolver, firstPage, PROJECTION, PAGE_SIZE,
+                MAX_RESIDENT_PAGES, DIRECT, DIRECT);
+
+        // Scrolled near the end of first page, second one is read
+        assertNotNull(pages.moveToPosition(PAGE_SIZE - 1));
+        assertEquals(2 * PAGE_SIZE, pages.getCount());
+
+        listener = mock(CustomerPages.OnPagesChangedListener.class);
+        pages.setOnPagesChangedListener(listener);
+    }
+
+    @Test
+    public void shouldReportCustomerInsertedIntoFirstPage() {
+        provider.put(8, "bb");
+
+        pages.applyChange(8, CustomersContract.OPERATION_INSERT);
+
+        // Then only the customer inserted is reported inserted
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onItemRangeChanged(0, 1);
+        inOrder.verify(listener).onItemRangeChanged(1, 1);
+        inOrder.verify(listener).onItemRangeInserted(2, 1);
+        inOrder.verify(listener).onItemRangeChanged(3, 1);
+        verifyNoMoreInteractions(listener);
+        assertEquals(7, pages.getCount());
+    }
+
+    @Test
+    public void shouldReportCustomerDeletedFromFirstPageReadAgain() {
+        provider.put(8, "bb");
+        pages.applyChange(8, CustomersContract.OPERATION_INSERT);
+        listener = mock(CustomerPages.OnPagesChangedListener.class);
+        pages.setOnPagesChangedListener(listener);
+
+        provider.remove(1);
+        pages.applyChange(1, CustomersContract.OPERATION_DELETE);
+
+        // Then first page read again is diffed against the page it replaces
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onItemRangeRemoved(0, 1);
+        inOrder.verify(listener).onItemRangeChanged(0, 1);
+        inOrder.verify(listener).onItemRangeChanged(1, 1);
+        inOrder.verify(listener).onItemRangeChanged(2, 1);
+        verifyNoMoreInteractions(listener);
+        assertEquals(6, pages.getCount());
+    }
+
+    @Test
+    public void shouldReportCustomerEditedInFirstPage() {
+        pages.applyChange(2, CustomersContract.OPERATION_UPDATE);
+
+        // Then customers stay in place, each is reported changed
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onItemRangeChanged(0, 1);
+        inOrder.verify(listener).onItemRangeChanged(1, 1);
+        inOrder.verify(listener).onItemRangeChanged(2, 1);
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void shouldReportCustomerInsertedIntoLaterPage() {
+        provider.put(9, "ee");
+
+        pages.applyChange(9, CustomersContract.OPERATION_INSERT);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onItemRangeChanged(3, 1);
+        inOrder.verify(listener).onItemRangeChanged(4, 1);
+        inOrder.verify(listener).onItemRangeInserted(5, 1);
+        inOrder.verify(listener).onItemRangeChanged(6, 1);
+        verifyNoMoreInteractions(listener);
+        assertEquals(7, pages.getCount());
+    }
+
+    @Test
+    public void shouldReportCustomerDeletedFromLaterPage() {
+        provider.remove(5);
+
+        pages.applyChange(5, CustomersContract.OPERATION_DELETE);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onItemRangeRemoved(4, 1);
+        inOrder.verify(listener).onItemRangeChanged(3, 1);
+        inOrder.verify(listener).onItemRangeChanged(4, 1);
+        verifyNoMoreInteractions(listener);
+        assertEquals(5, pages.getCount());
+    }
+
+    @Test
+    public void shouldReportCustomerEditedInLaterPage() {
+        pages.applyChange(4, CustomersContract.OPERATION_UPDATE);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onItemRangeChanged(3, 1);
+        inOrder.verify(listener).onItemRangeChanged(4, 1);
+        inOrder.verify(listener).onItemRangeChanged(5, 1);
+        verifyNoMoreInteractions(listener);
+    }
+
+    /**
+     * Customers in page order, answering customer and page queries
+     */
+    private static class FakeCustomersProvider extends ContentProvider {
+
+        private final List<Object[]> mCustomers = new ArrayList<>();
+
+        void put(long id, String sortKey) {
+            remove(id);
+            mCustomers.add(new Object[] {id, sortKey});
+            Collections.sort(mCustomers, new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] customer, Object[] other) {
+                    return CustomersPage.compare((String) customer[1], (Long) customer[0],
+                            (String) other[1], (Long) other[0]);
+                }
+            });
+        }
+
+        void remove(long id) {
+            for(int i = 0; i < mCustomers.size(); i++) {
+                if((Long) mCustomers.get(i)[0] == id) {
+                    mCustomers.remove(i);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(@NonNull Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            boolean byId = uri.getPathSegments().size() > 1;
+            String after = uri.getQueryParameter(CustomersContract.PARAM_AFTER);
+            String until = uri.getQueryParameter(CustomersContract.PARAM_UNTIL);
+            String limit = uri.getQueryParameter(CustomersContract.PARAM_LIMIT);
+
+            MatrixCursor cursor = new MatrixCursor(PROJECTION);
+            for(Object[] customer : mCustomers) {
+                long id = (Long) customer[0];
+                String sortKey = (String) customer[1];
+                if(byId) {
+                    if(id == ContentUris.parseId(uri)) {
+                        cursor.addRow(customer);
+                    }
+                    continue;
+                }
+                if((after != null) && (CustomersPage.compare(sortKey, id, after) <= 0)) {
+                    continue;
+                }
+                if(((until != null) && (CustomersPage.compare(sortKey, id, until) > 0)) ||
+                        ((limit != null) && (cursor.getCount() >= Integer.parseInt(limit)))) {
+                    break;
+                }
+                cursor.addRow(customer);
+            }
+            return cursor;
+        }
+
+        @Override
+        public String getType(@NonNull Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(@NonNull Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(@NonNull Uri uri, ContentValues values, String selection,
+                          String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customers Page Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class CustomersPageTest {
+
+    @Test
+    public void shouldReadSortKeyAndIdOfToken() {
+        String token = CustomersPage.token("γιωργοσ", 42);
+
+        assertEquals("γιωργοσ", CustomersPage.sortKeyOf(token));
+        assertEquals(42, CustomersPage.idOf(token));
+    }
+
+    @Test
+    public void shouldKeepSeparatorInSortKey() {
+        String token = CustomersPage.token("smith, john", 7);
+
+        // Then only the last separator splits the id off
+        assertEquals("smith, john", CustomersPage.sortKeyOf(token));
+        assertEquals(7, CustomersPage.idOf(token));
+    }
+
+    @Test
+    public void shouldHaveIdAloneInTokenOfCustomerWithoutKey() {
+        String token = CustomersPage.token(null, 3);
+
+        assertNull(CustomersPage.sortKeyOf(token));
+        assertEquals(3, CustomersPage.idOf(token));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTokenWithoutId() {
+        CustomersPage.idOf("john,");
+    }
+
+    @Test
+    public void shouldCompareCustomersInPageOrder() {
+        // Then customers without key come first, then keys by code point, then ids
+        assertTrue(CustomersPage.compare(null, 9, "alice", 1) < 0);
+        assertTrue(CustomersPage.compare("alice", 1, "alicia", 1) < 0);
+        assertTrue(CustomersPage.compare("zoe", 1, "γιωργοσ", 1) < 0);
+        assertTrue(CustomersPage.compare("john", 7, "john", 3) > 0);
+        assertEquals(0, CustomersPage.compare("John", 3, "john", 3));
+    }
+
+    @Test
+    public void shouldCompareCustomerWithToken() {
+        String token = CustomersPage.token("smith, john", 7);
+
+        assertTrue(CustomersPage.compare("smith, john", 6, token) < 0);
+        assertEquals(0, CustomersPage.compare("smith, john", 7, token));
+        assertTrue(CustomersPage.compare("smith, johnny", 1, token) > 0);
+    }
+}
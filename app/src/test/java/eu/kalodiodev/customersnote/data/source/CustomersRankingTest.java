@@ -0,0 +1,55 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customers Ranking Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class CustomersRankingTest {
+
+    @Test
+    public void shouldSplitTermsIntoFoldedTokens() {
+        assertArrayEquals(new String[] {"o", "brien", "γιωργοσ"},
+                CustomersRanking.queryTokens(new String[] {"O'Brien", "Γιώργος"}));
+    }
+
+    @Test
+    public void shouldTellMatchTypes() {
+        assertEquals(CustomersRanking.MATCH_EXACT, CustomersRanking.matchType("smith", "john smith"));
+        assertEquals(CustomersRanking.MATCH_FIELD_PREFIX, CustomersRanking.matchType("jo", "john smith"));
+        assertEquals(CustomersRanking.MATCH_WORD_PREFIX, CustomersRanking.matchType("sm", "john smith"));
+        assertEquals(CustomersRanking.MATCH_SUBSTRING, CustomersRanking.matchType("mit", "john smith"));
+        assertEquals(CustomersRanking.MATCH_NONE, CustomersRanking.matchType("xyz", "john smith"));
+    }
+
+    @Test
+    public void shouldRankExactLastNameAboveProfessionPrefix() {
+        String[] tokens = CustomersRanking.queryTokens(new String[] {"baker"});
+
+        int lastName = CustomersRanking.score(tokens,
+                new String[] {"anna", "baker", null, "teacher", null});
+        int profession = CustomersRanking.score(tokens,
+                new String[] {"anna", "smith", null, "bakery owner", null});
+
+        // Then exact last name scores more
+        assertTrue(lastName > profession);
+    }
+
+    @Test
+    public void shouldSumScoresOfTokens() {
+        String[] fields = {"john", "smith", "acme", "plumber", "2101234567"};
+
+        int one = CustomersRanking.score(CustomersRanking.queryTokens(new String[] {"john"}), fields);
+        int two = CustomersRanking.score(
+                CustomersRanking.queryTokens(new String[] {"john", "smith"}), fields);
+
+        assertEquals(2 * one, two);
+    }
+}
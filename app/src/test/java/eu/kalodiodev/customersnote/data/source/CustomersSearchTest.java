@@ -0,0 +1,55 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Customers Search Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class CustomersSearchTest {
+
+    @Test
+    public void shouldSplitSearchQueryIntoTerms() {
+        String[] terms = CustomersSearch.terms("  John   Smith ");
+
+        assertEquals(2, terms.length);
+        assertEquals("John", terms[0]);
+        assertEquals("Smith", terms[1]);
+    }
+
+    @Test
+    public void shouldBuildPrefixMatchExpression() {
+        String expression = CustomersSearch.buildMatchExpression(new String[] {"jo", "sm\"*"});
+
+        assertEquals("\"jo*\" \"sm*\"", expression);
+    }
+
+    @Test
+    public void shouldSplitMatchTokensAsSearchKeys() {
+        // Non ASCII symbols are token chars to the tokenizer, as to search keys
+        String expression = CustomersSearch.buildMatchExpression(new String[] {"o\u2019neil"});
+
+        assertEquals("\"o\u2019neil*\"", expression);
+        assertEquals("o\u2019neil", CustomersSearch.searchKeyTerm("o\u2019neil"));
+        assertEquals(" o\u2019neil", CustomersSearch.searchKey(new String[] {"O\u2019Neil"}));
+    }
+
+    @Test
+    public void shouldBuildSearchKeyOfTokensPrecededBySpace() {
+        String key = CustomersSearch.searchKey(
+                new String[] {"John-Paul", null, "Developer", "ACME Ltd", "+30 210"});
+
+        assertEquals(" john paul developer acme ltd 30 210", key);
+    }
+
+    @Test
+    public void shouldNormalizeSingleTokenSearchTerm() {
+        assertEquals("john", CustomersSearch.searchKeyTerm("JoHn"));
+        assertNull(CustomersSearch.searchKeyTerm("john-paul"));
+    }
+}
@@ -0,0 +1,42 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Customers Trigram Index Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class CustomersTrigramIndexTest {
+
+    @Test
+    public void shouldFoldLikeSearchKeys() {
+        assertEquals("john γιαννησ", CustomersTrigramIndex.fold("JoHN ΓΙΆΝΝΗΣ"));
+    }
+
+    @Test
+    public void shouldSeparateFieldsInSearchText() {
+        String text = CustomersTrigramIndex.searchText(
+                new String[] {"John", null, "Dev", "", "210", "Line\nbreak"});
+
+        assertEquals("john\n\ndev\n\n210\nline break", text);
+    }
+
+    @Test
+    public void shouldNotBuildTrigramsSpanningFields() {
+        Set<String> trigrams = CustomersTrigramIndex.trigrams("john\n210");
+
+        assertEquals(3, trigrams.size());
+        assertTrue(trigrams.contains("joh"));
+        assertTrue(trigrams.contains("ohn"));
+        assertTrue(trigrams.contains("210"));
+        assertFalse(trigrams.contains("hn\n"));
+    }
+}
@@ -0,0 +1,48 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Database Mode Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class DatabaseModeTest {
+
+    @Test
+    public void shouldSetPragmasOfWriteAheadLoggingMode() {
+        DatabaseMode mode = new DatabaseMode(true, "NORMAL", 2048, 8388608, 4000);
+
+        assertTrue(mode.isWriteAheadLogging());
+        assertEquals(Arrays.asList("PRAGMA synchronous = NORMAL", "PRAGMA cache_size = -2048"),
+                mode.settings());
+        assertEquals(Arrays.asList("PRAGMA mmap_size = 8388608", "PRAGMA wal_autocheckpoint = 4000"),
+                mode.queries());
+    }
+
+    @Test
+    public void shouldKeepDefaultsOfRollbackJournal() {
+        DatabaseMode mode = DatabaseMode.rollbackJournal();
+
+        // Then Android's defaults are left in place
+        assertFalse(mode.isWriteAheadLogging());
+        assertEquals(Collections.<String>emptyList(), mode.settings());
+        assertEquals(Collections.<String>emptyList(), mode.queries());
+    }
+
+    @Test
+    public void shouldNotSetAutoCheckpointWithoutLog() {
+        DatabaseMode mode = new DatabaseMode(false, "FULL", 0, 0, 4000);
+
+        assertEquals(Collections.singletonList("PRAGMA synchronous = FULL"), mode.settings());
+        assertEquals(Collections.<String>emptyList(), mode.queries());
+    }
+}
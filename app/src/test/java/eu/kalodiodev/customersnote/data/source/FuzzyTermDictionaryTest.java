@@ -0,0 +1,76 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fuzzy Term Dictionary Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class FuzzyTermDictionaryTest {
+
+    private FuzzyTermDictionary dictionary;
+
+    @Before
+    public void setUp() {
+        dictionary = new FuzzyTermDictionary();
+        for(String term : new String[] {"john", "joan", "jon", "smith", "papadopoulos"}) {
+            dictionary.add(term);
+        }
+    }
+
+    @Test
+    public void shouldMeasureOptimalStringAlignmentDistance() {
+        assertEquals(0, FuzzyTermDictionary.distance("john", "john"));
+        assertEquals(1, FuzzyTermDictionary.distance("john", "jon"));
+        assertEquals(1, FuzzyTermDictionary.distance("jonh", "john"));
+        assertEquals(3, FuzzyTermDictionary.distance("kitten", "sitting"));
+        // Then a substring is not edited again once swapped
+        assertEquals(3, FuzzyTermDictionary.distance("ca", "abc"));
+    }
+
+    @Test
+    public void shouldCorrectAdjacentCharactersSwapped() {
+        assertEquals("john", dictionary.closest("jonh", 1));
+        assertEquals("smith", dictionary.closest("smiht", 1));
+        assertEquals("john smith", NameFuzzyIndex.correct(dictionary, "Jonh smith"));
+    }
+
+    @Test
+    public void shouldFindClosestTermWithinDistance() {
+        assertEquals("smith", dictionary.closest("smiht", 2));
+        assertEquals("papadopoulos", dictionary.closest("papadopulos", 1));
+        assertNull(dictionary.closest("xyz", 1));
+    }
+
+    @Test
+    public void shouldPreferMostReferencedAmongEquallyClose() {
+        dictionary.add("joan");
+
+        assertEquals("joan", dictionary.closest("joen", 1));
+    }
+
+    @Test
+    public void shouldNotReturnRemovedTerm() {
+        dictionary.remove("smith");
+
+        assertFalse(dictionary.contains("smith"));
+        assertNull(dictionary.closest("smiht", 2));
+
+        dictionary.add("smith");
+        assertTrue(dictionary.contains("smith"));
+    }
+
+    @Test
+    public void shouldCorrectOnlyMisspelledTerms() {
+        assertEquals("John smith", NameFuzzyIndex.correct(dictionary, "John Smitth"));
+        assertNull(NameFuzzyIndex.correct(dictionary, "john smith"));
+    }
+}
@@ -0,0 +1,34 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Phone Number Key Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class PhoneNumberKeyTest {
+
+    @Test
+    public void shouldReverseDigitsOfFormattedNumber() {
+        assertEquals("765432101203", PhoneNumberKey.from("+30 (210) 123-4567"));
+    }
+
+    @Test
+    public void shouldGiveSameKeyPrefixToNumbersEndingTheSame() {
+        String local = PhoneNumberKey.from("2101234567");
+        String international = PhoneNumberKey.from("+30 210 123 4567");
+
+        assertEquals(local, international.substring(0, local.length()));
+    }
+
+    @Test
+    public void shouldHaveNoKeyWithoutDigits() {
+        assertNull(PhoneNumberKey.from(null));
+        assertNull(PhoneNumberKey.from("n/a"));
+    }
+}
@@ -0,0 +1,160 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.database.Cursor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Query Result Cache Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class QueryResultCacheTest {
+
+    private static final String[] COLUMNS = {"_id", "FirstName"};
+
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new QueryResultCache(100000);
+    }
+
+    @Test
+    public void shouldShareKeyOfUrisDifferingInParameterOrder() {
+        assertEquals(
+                QueryResultCache.buildKey("content://a/Customers/search?q=jo&mode=prefix",
+                        COLUMNS, null, null, "FirstNameKey"),
+                QueryResultCache.buildKey("content://a/Customers/search?mode=prefix&q=jo",
+                        COLUMNS, null, null, "FirstNameKey"));
+    }
+
+    @Test
+    public void shouldTellNullSelectionArgsFromEmptyOnes() {
+        assertFalse(QueryResultCache.buildKey("content://a/Customers", null, "x", null, null)
+                .equals(QueryResultCache.buildKey("content://a/Customers", null, "x",
+                        new String[0], null)));
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        CursorSnapshot snapshot = snapshot(2);
+
+        assertNull(cache.get("key"));
+        assertTrue(cache.put("key", QueryResultCache.SCOPE_ALL, snapshot, cache.generation()));
+
+        // Then repeated query is served from cache
+        assertSame(snapshot, cache.get("key"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWhenFull() {
+        CursorSnapshot snapshot = snapshot(20);
+        cache = new QueryResultCache(snapshot.getSizeBytes() * 4);
+
+        cache.put("a", QueryResultCache.SCOPE_ALL, snapshot, cache.generation());
+        cache.put("b", QueryResultCache.SCOPE_ALL, snapshot(20), cache.generation());
+        cache.put("c", QueryResultCache.SCOPE_ALL, snapshot(20), cache.generation());
+        cache.put("d", QueryResultCache.SCOPE_ALL, snapshot(20), cache.generation());
+        cache.get("a");
+        cache.put("e", QueryResultCache.SCOPE_ALL, snapshot(20), cache.generation());
+
+        // Then b, least recently used, is evicted
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertTrue(cache.sizeBytes() <= snapshot.getSizeBytes() * 4);
+    }
+
+    @Test
+    public void shouldNotCacheResultLargerThanQuarterOfCache() {
+        CursorSnapshot snapshot = snapshot(20);
+        cache = new QueryResultCache(snapshot.getSizeBytes() * 3);
+
+        assertFalse(cache.put("a", QueryResultCache.SCOPE_ALL, snapshot, cache.generation()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldInvalidateOnlyResultsOfChangedCustomers() {
+        cache.put("list", QueryResultCache.SCOPE_ALL, snapshot(3), cache.generation());
+        cache.put("customer 1", 1, snapshot(1), cache.generation());
+        cache.put("customer 2", 2, snapshot(1), cache.generation());
+
+        cache.invalidate(new long[] {1});
+
+        // Then lists and changed customer are dropped, other customers stay cached
+        assertNull(cache.get("list"));
+        assertNull(cache.get("customer 1"));
+        assertNotNull(cache.get("customer 2"));
+    }
+
+    @Test
+    public void shouldNotCacheResultOfQueryOverlappingChange() {
+        int generation = cache.generation();
+
+        cache.invalidate(new long[] {1});
+
+        // Then result read before change completed is not cached
+        assertFalse(cache.put("list", QueryResultCache.SCOPE_ALL, snapshot(3), generation));
+    }
+
+    @Test
+    public void shouldTellResultOfQueryOverlappingChangeBeforeItIsCopied() {
+        int generation = cache.generation();
+        assertTrue(cache.isCurrent(generation));
+
+        cache.invalidate(new long[] {1});
+
+        assertFalse(cache.isCurrent(generation));
+    }
+
+    @Test
+    public void shouldStopCopyingResultLargerThanCacheTakes() {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.getCount()).thenReturn(3);
+        when(cursor.getColumnCount()).thenReturn(1);
+        when(cursor.moveToNext()).thenReturn(true, true, true, false);
+        when(cursor.getType(0)).thenReturn(Cursor.FIELD_TYPE_STRING);
+        when(cursor.getString(0)).thenReturn(new String(new char[1000]));
+
+        assertNull(CursorSnapshot.of(cursor, 1000, 1000));
+
+        // Then copying stops at the first row past the size
+        verify(cursor, times(1)).getString(0);
+    }
+
+    @Test
+    public void shouldDropAllResults() {
+        cache.put("list", QueryResultCache.SCOPE_ALL, snapshot(3), cache.generation());
+        cache.put("customer 2", 2, snapshot(1), cache.generation());
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.sizeBytes());
+    }
+
+    private static CursorSnapshot snapshot(int rows) {
+        Object[][] values = new Object[rows][];
+        for(int i = 0; i < rows; i++) {
+            values[i] = new Object[] {(long) i, "Customer " + i};
+        }
+        return new CursorSnapshot(COLUMNS, values, null);
+    }
+}
@@ -0,0 +1,141 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Schema Migrator Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class SchemaMigratorTest {
+
+    @Test
+    public void shouldAcceptAscendingVersions() {
+        SchemaMigrator.checkOrder(Arrays.asList(
+                new SchemaMigration(1, "first"),
+                new SchemaMigration(3, "third"),
+                new SchemaMigration(4, "fourth")));
+    }
+
+    @Test
+    public void shouldRejectVersionsOutOfOrder() {
+        try {
+            SchemaMigrator.checkOrder(Arrays.asList(
+                    new SchemaMigration(2, "second"),
+                    new SchemaMigration(1, "first")));
+            fail("Migrations out of order must be rejected");
+        } catch (IllegalStateException e) {
+            // Then migration out of order is reported
+            assertTrue(e.getMessage().contains("version 1"));
+        }
+    }
+
+    @Test
+    public void shouldRejectDuplicateVersions() {
+        try {
+            SchemaMigrator.checkOrder(Arrays.asList(
+                    new SchemaMigration(2, "second"),
+                    new SchemaMigration(2, "again")));
+            fail("Duplicate migrations must be rejected");
+        } catch (IllegalStateException e) {
+            // Then duplicate is reported
+        }
+    }
+
+    @Test
+    public void shouldKeepStepsInOrder() {
+        SchemaMigration.Step first = new NoOpStep();
+        SchemaMigration.Step second = new NoOpStep();
+
+        SchemaMigration migration = new SchemaMigration(1, "steps").step(first).step(second);
+
+        assertEquals(Arrays.asList(first, second), migration.getSteps());
+    }
+
+    @Test
+    public void shouldRunBatchesAfterLastIdUntilNoRowsLeft() {
+        final long[] ids = {3, 5, 8, 13, 21};
+        final List<Long> afterIds = new ArrayList<>();
+
+        SchemaMigration.BatchStep step = new SchemaMigration.BatchStep(2) {
+            @Override
+            long runBatch(@NonNull SQLiteDatabase db, long afterId, int batchSize) {
+                afterIds.add(afterId);
+                long lastId = -1;
+                int count = 0;
+                for(long id : ids) {
+                    if((id > afterId) && (count < batchSize)) {
+                        lastId = id;
+                        count++;
+                    }
+                }
+                return lastId;
+            }
+        };
+
+        assertTrue(step.run(null));
+        assertTrue(step.run(null));
+        assertTrue(step.run(null));
+        assertFalse(step.run(null));
+
+        // Then every batch resumes after the last row of the previous one
+        assertEquals(Arrays.asList(-1L, 5L, 13L, 21L), afterIds);
+    }
+
+    @Test
+    public void shouldRecordMigrationWithItsLastStep() {
+        SQLiteDatabase db = mock(SQLiteDatabase.class);
+        Cursor applied = mock(Cursor.class);
+        when(db.query(eq(SchemaMigrator.TABLE_NAME), any(String[].class), isNull(String.class),
+                isNull(String[].class), isNull(String.class), isNull(String.class),
+                isNull(String.class))).thenReturn(applied);
+        SchemaMigration.Step first = mock(SchemaMigration.Step.class);
+        SchemaMigration.Step last = mock(SchemaMigration.Step.class);
+
+        int count = SchemaMigrator.migrate(db, Arrays.asList(
+                new SchemaMigration(1, "steps").step(first).step(last)));
+
+        // Then migration is recorded before the transaction of its last step commits
+        assertEquals(1, count);
+        InOrder inOrder = inOrder(db, first, last);
+        inOrder.verify(first).run(db);
+        inOrder.verify(db).setTransactionSuccessful();
+        inOrder.verify(db).endTransaction();
+        inOrder.verify(db).beginTransaction();
+        inOrder.verify(last).run(db);
+        inOrder.verify(db).insertWithOnConflict(eq(SchemaMigrator.TABLE_NAME), isNull(String.class),
+                any(ContentValues.class), anyInt());
+        inOrder.verify(db).setTransactionSuccessful();
+        inOrder.verify(db).endTransaction();
+    }
+
+    private static class NoOpStep implements SchemaMigration.Step {
+        @Override
+        public boolean run(@NonNull SQLiteDatabase db) {
+            return false;
+        }
+    }
+}
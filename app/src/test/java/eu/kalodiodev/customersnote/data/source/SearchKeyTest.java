@@ -0,0 +1,41 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Search Key Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class SearchKeyTest {
+
+    @Test
+    public void shouldStripTonosAndFoldCase() {
+        assertEquals(SearchKey.from("γιωργος"), SearchKey.from("Γιώργος"));
+        assertEquals(SearchKey.from("γιωργος"), SearchKey.from("ΓΙΩΡΓΟΣ"));
+    }
+
+    @Test
+    public void shouldFoldFinalSigma() {
+        assertEquals("παπαδοπουλοσ", SearchKey.from("Παπαδόπουλος"));
+    }
+
+    @Test
+    public void shouldStripDialytika() {
+        assertEquals("πραυνω", SearchKey.from("πραΰνω"));
+    }
+
+    @Test
+    public void shouldStripLatinAccents() {
+        assertEquals("jose muller", SearchKey.from("José Müller"));
+    }
+
+    @Test
+    public void shouldHaveNoKeyForNull() {
+        assertNull(SearchKey.from(null));
+    }
+}
@@ -0,0 +1,80 @@
+package eu.kalodiodev.customersnote.data.source;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Top K Selection Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class TopKSelectionTest {
+
+    @Test
+    public void shouldSelectBestScoredFirst() {
+        TopKSelection topK = new TopKSelection(3);
+        topK.offer(1, 5, "a");
+        topK.offer(2, 9, "b");
+        topK.offer(3, 1, "c");
+        topK.offer(4, 7, "d");
+        topK.offer(5, 8, "e");
+
+        assertEquals(5, topK.offered());
+        assertArrayEquals(new long[] {2, 5, 4}, topK.drainIds());
+    }
+
+    @Test
+    public void shouldBreakTiesBySortKeyThenId() {
+        TopKSelection topK = new TopKSelection(3);
+        topK.offer(7, 5, "maria");
+        topK.offer(3, 5, "anna");
+        topK.offer(9, 5, null);
+        topK.offer(2, 5, "anna");
+
+        // Then null sorts first, equal keys by id
+        assertArrayEquals(new long[] {9, 2, 3}, topK.drainIds());
+    }
+
+    @Test
+    public void shouldReturnFewerThanKWhenFewerOffered() {
+        TopKSelection topK = new TopKSelection(10);
+        topK.offer(1, 1, "a");
+
+        assertArrayEquals(new long[] {1}, topK.drainIds());
+    }
+
+    @Test
+    public void shouldMatchFullSort() {
+        Random random = new Random(3);
+        int n = 1000;
+        int k = 25;
+        long[][] customers = new long[n][];
+        TopKSelection topK = new TopKSelection(k);
+
+        for(int i = 0; i < n; i++) {
+            customers[i] = new long[] {i, random.nextInt(50)};
+            topK.offer(i, (int) customers[i][1], "");
+        }
+
+        // Sort by score descending, then id ascending
+        Arrays.sort(customers, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]);
+            }
+        });
+        long[] expected = new long[k];
+        for(int i = 0; i < k; i++) {
+            expected[i] = customers[i][0];
+        }
+
+        assertArrayEquals(expected, topK.drainIds());
+    }
+}
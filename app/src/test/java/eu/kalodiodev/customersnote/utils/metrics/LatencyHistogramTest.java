@@ -0,0 +1,68 @@
+package eu.kalodiodev.customersnote.utils.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Latency Histogram Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldCountSmallValuesExactly() {
+        for(int value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value)));
+        }
+    }
+
+    @Test
+    public void shouldBoundRelativeErrorOfLargeValues() {
+        Random random = new Random(5);
+        for(int i = 0; i < 10000; i++) {
+            long value = (long) (random.nextDouble() * LatencyHistogram.MAX_VALUE_MICROS);
+            long reported = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+
+            assertTrue(reported >= value);
+            assertTrue("Value " + value + " reported as " + reported,
+                    reported - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void shouldReportPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.count);
+        assertEquals(1, snapshot.minMicros);
+        assertEquals(1000, snapshot.maxMicros);
+        assertEquals(500, snapshot.meanMicros);
+        assertEquals(500, snapshot.p50Micros, 500 / 32);
+        assertEquals(900, snapshot.p90Micros, 900 / 32);
+        assertEquals(990, snapshot.p99Micros, 990 / 32);
+    }
+
+    @Test
+    public void shouldReportEmptyHistogramAsZeros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.reset();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.minMicros);
+        assertEquals(0, snapshot.p99Micros);
+    }
+}
@@ -0,0 +1,78 @@
+package eu.kalodiodev.customersnote.utils.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Search Metrics Test
+ *
+ * @author Athanasios Raptodimos
+ */
+
+public class SearchMetricsTest {
+
+    private long nanos = 1000000;
+
+    private SearchMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new SearchMetrics(new SearchMetrics.Ticker() {
+            @Override
+            public long nanoTime() {
+                return nanos;
+            }
+        });
+    }
+
+    @Test
+    public void shouldFollowSearchTermToFirstBind() {
+        metrics.onQueryText();
+        advanceMillis(300);
+        metrics.onLoaderCreated();
+        advanceMillis(40);
+        metrics.onResultsShown();
+        long bindStart = metrics.now();
+        advanceMillis(2);
+        metrics.onBind(bindStart);
+
+        Map<SearchMetrics.Stage, LatencyHistogram.Snapshot> snapshot = metrics.snapshot();
+
+        // Then every chained stage is recorded once
+        assertEquals(300000, snapshot.get(SearchMetrics.Stage.QUERY_TEXT_TO_LOADER).maxMicros);
+        assertEquals(42000, snapshot.get(SearchMetrics.Stage.LOADER_TO_FIRST_BIND).maxMicros,
+                42000 / 32);
+        assertEquals(342000, snapshot.get(SearchMetrics.Stage.QUERY_TEXT_TO_FIRST_BIND).maxMicros,
+                342000 / 32);
+        assertEquals(2000, snapshot.get(SearchMetrics.Stage.FIRST_BIND).maxMicros, 2000 / 32);
+    }
+
+    @Test
+    public void shouldRecordOnlyFirstBindOfResults() {
+        metrics.onResultsShown();
+        metrics.onBind(metrics.now());
+        metrics.onBind(metrics.now());
+
+        assertEquals(1, metrics.snapshot().get(SearchMetrics.Stage.FIRST_BIND).count);
+        // Results not loaded for a search term
+        assertEquals(0, metrics.snapshot().get(SearchMetrics.Stage.QUERY_TEXT_TO_FIRST_BIND).count);
+    }
+
+    @Test
+    public void shouldRecordStageMeasuredByCaller() {
+        long start = metrics.now();
+        advanceMillis(5);
+        metrics.record(SearchMetrics.Stage.FIRST_GET_COUNT, start);
+
+        assertEquals(5000, metrics.snapshot().get(SearchMetrics.Stage.FIRST_GET_COUNT).p50Micros,
+                5000 / 32);
+    }
+
+    private void advanceMillis(long millis) {
+        nanos += millis * 1000000;
+    }
+}